@@ -2,10 +2,20 @@ package com.atlassian.bitbucket.jenkins.internal.client;
 
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBuildStatus;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Client to post build status to remote server
  */
 public interface BitbucketBuildStatusClient {
 
     void post(BitbucketBuildStatus buildStatus);
+
+    /**
+     * Posts the build status without waiting for the server to respond.
+     *
+     * @param buildStatus the build status to post
+     * @return a future completed once the build status is posted
+     */
+    CompletableFuture<Void> postAsync(BitbucketBuildStatus buildStatus);
 }
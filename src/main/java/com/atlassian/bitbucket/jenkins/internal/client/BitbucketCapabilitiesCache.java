@@ -0,0 +1,118 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilities;
+import com.google.common.annotations.VisibleForTesting;
+import jenkins.util.Timer;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.client.BitbucketCapabilitiesClientImpl.CAPABILITIES_CACHE_DURATION;
+
+/**
+ * Caches the capabilities of one Bitbucket Server instance, along with the capability documents they link to, for
+ * every client of that instance. Capabilities rarely change, so once a value is older than the cache duration it
+ * keeps being served while it is refreshed in the background, and callers only wait for the first fetch.
+ */
+@ThreadSafe
+public class BitbucketCapabilitiesCache {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketCapabilitiesCache.class.getName());
+
+    private final LongSupplier clock;
+    private final long durationMillis;
+    private final Map<String, CachedValue<Object>> documents = new ConcurrentHashMap<>();
+    private final Executor refreshExecutor;
+    private final CachedValue<AtlassianServerCapabilities> serverCapabilities = new CachedValue<>();
+
+    public BitbucketCapabilitiesCache() {
+        this(CAPABILITIES_CACHE_DURATION, task -> Timer.get().execute(task), System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    BitbucketCapabilitiesCache(long durationMillis, Executor refreshExecutor, LongSupplier clock) {
+        this.durationMillis = durationMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the capabilities of the server, fetching them with the given loader if they have not been fetched yet.
+     *
+     * @param loader fetches the capabilities from the server
+     * @return the cached capabilities
+     */
+    public AtlassianServerCapabilities getServerCapabilities(Supplier<AtlassianServerCapabilities> loader) {
+        return serverCapabilities.get(loader);
+    }
+
+    /**
+     * Returns the capability document at the given URL, fetching it with the given loader if it has not been
+     * fetched yet.
+     *
+     * @param url    the URL of the document, as listed in the server capabilities
+     * @param loader fetches the document from the server
+     * @param <T>    the type of the document
+     * @return the cached document
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getCapabilityDocument(String url, Supplier<T> loader) {
+        return (T) documents.computeIfAbsent(url, key -> new CachedValue<>()).get((Supplier<Object>) loader);
+    }
+
+    private final class CachedValue<T> {
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long loadedAt;
+        private volatile T value;
+
+        private T get(Supplier<T> loader) {
+            T current = value;
+            if (current == null) {
+                synchronized (this) {
+                    if (value == null) {
+                        set(loader.get());
+                    }
+                    return value;
+                }
+            }
+            if (clock.getAsLong() - loadedAt >= durationMillis && refreshing.compareAndSet(false, true)) {
+                refresh(loader);
+            }
+            return current;
+        }
+
+        private void refresh(Supplier<T> loader) {
+            try {
+                refreshExecutor.execute(() -> {
+                    try {
+                        set(loader.get());
+                    } catch (RuntimeException e) {
+                        // Keep serving the old value, the next call retries the refresh
+                        LOGGER.log(Level.FINE, "Failed to refresh Bitbucket Server capabilities", e);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+            }
+        }
+
+        private void set(@CheckForNull T newValue) {
+            if (newValue != null) {
+                value = newValue;
+                loadedAt = clock.getAsLong();
+            }
+        }
+    }
+}
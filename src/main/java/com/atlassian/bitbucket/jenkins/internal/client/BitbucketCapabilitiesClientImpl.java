@@ -5,12 +5,9 @@ import com.atlassian.bitbucket.jenkins.internal.client.supply.BitbucketCapabilit
 import com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilities;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCICapabilities;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookSupportedEvents;
-import com.google.common.base.Supplier;
-import com.google.common.base.Suppliers;
 import okhttp3.HttpUrl;
 
 import javax.annotation.Nullable;
-import java.util.concurrent.TimeUnit;
 
 import static com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilities.RICH_BUILDSTATUS_CAPABILITY_KEY;
 import static com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilities.WEBHOOK_CAPABILITY_KEY;
@@ -26,11 +23,15 @@ public class BitbucketCapabilitiesClientImpl implements BitbucketCapabilitiesCli
     public static final long CAPABILITIES_CACHE_DURATION =
             parsePositiveLongFromSystemProperty("bitbucket.client.capabilities.cache.duration", 360000);
     private final BitbucketRequestExecutor bitbucketRequestExecutor;
-    private final Supplier<AtlassianServerCapabilities> capabilitiesCache;
+    private final BitbucketCapabilitiesCache capabilitiesCache;
+    private final BitbucketCapabilitiesSupplier capabilitiesSupplier;
 
-    BitbucketCapabilitiesClientImpl(BitbucketRequestExecutor bitbucketRequestExecutor, BitbucketCapabilitiesSupplier supplier) {
+    BitbucketCapabilitiesClientImpl(BitbucketRequestExecutor bitbucketRequestExecutor,
+                                    BitbucketCapabilitiesCache capabilitiesCache,
+                                    BitbucketCapabilitiesSupplier capabilitiesSupplier) {
         this.bitbucketRequestExecutor = bitbucketRequestExecutor;
-        capabilitiesCache = Suppliers.memoizeWithExpiration(supplier, CAPABILITIES_CACHE_DURATION, TimeUnit.MILLISECONDS);
+        this.capabilitiesCache = capabilitiesCache;
+        this.capabilitiesSupplier = capabilitiesSupplier;
     }
 
     @Override
@@ -44,7 +45,7 @@ public class BitbucketCapabilitiesClientImpl implements BitbucketCapabilitiesCli
 
     @Override
     public AtlassianServerCapabilities getServerCapabilities() {
-        return capabilitiesCache.get();
+        return capabilitiesCache.getServerCapabilities(capabilitiesSupplier::get);
     }
 
     @Override
@@ -71,6 +72,7 @@ public class BitbucketCapabilitiesClientImpl implements BitbucketCapabilitiesCli
             throw new IllegalStateException(
                     "URL to fetch supported webhook supported event is wrong. URL: " + urlStr);
         }
-        return bitbucketRequestExecutor.makeGetRequest(url, returnType).getBody();
+        return capabilitiesCache.getCapabilityDocument(urlStr,
+                () -> bitbucketRequestExecutor.makeGetRequest(url, returnType).getBody());
     }
 }
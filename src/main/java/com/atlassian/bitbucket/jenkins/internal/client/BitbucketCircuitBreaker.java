@@ -0,0 +1,295 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.CircuitBreakerOpenException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.ConnectionFailureException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.ServerErrorException;
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Stops sending requests to a Bitbucket Server instance that is down or struggling, so that callers fail straight away
+ * with a {@link CircuitBreakerOpenException} instead of each waiting for the connection to time out.
+ * <p>
+ * While {@link State#CLOSED closed} the outcome of the last {@link #WINDOW_SIZE} requests is recorded. A request fails
+ * if the server could not be reached or responded with a server error, and is slow if it took longer than
+ * {@link #SLOW_CALL_DURATION}. Once at least {@link #MINIMUM_CALLS} requests are recorded and the percentage that
+ * failed reaches {@link #FAILURE_RATE_THRESHOLD}, or the percentage that were slow reaches
+ * {@link #SLOW_CALL_RATE_THRESHOLD}, the breaker {@link State#OPEN opens} and rejects every request for
+ * {@link #OPEN_DURATION}. After that it is {@link State#HALF_OPEN half open} and lets {@link #HALF_OPEN_CALLS}
+ * requests through: a failure opens it again, and otherwise it closes unless too many of them were slow.
+ */
+@ThreadSafe
+public class BitbucketCircuitBreaker {
+
+    /**
+     * Percentage of failed requests that opens the breaker. Defaults to 50, and 0 disables the breaker.
+     */
+    static final int FAILURE_RATE_THRESHOLD =
+            (int) parsePositiveLongFromSystemProperty("bitbucket.circuitbreaker.failure.rate", 50);
+    /**
+     * Number of requests let through while half open. Defaults to 3.
+     */
+    static final int HALF_OPEN_CALLS =
+            (int) Math.max(1, parsePositiveLongFromSystemProperty("bitbucket.circuitbreaker.halfopen.calls", 3));
+    /**
+     * Number of requests that must be recorded before the breaker can open. Defaults to 10.
+     */
+    static final int MINIMUM_CALLS =
+            (int) parsePositiveLongFromSystemProperty("bitbucket.circuitbreaker.minimum.calls", 10);
+    /**
+     * How long the breaker stays open before letting requests through again. Defaults to 30 seconds in ms.
+     */
+    static final long OPEN_DURATION =
+            parsePositiveLongFromSystemProperty("bitbucket.circuitbreaker.open.duration", 30000);
+    /**
+     * Requests taking longer than this are slow. Defaults to 10 seconds in ms.
+     */
+    static final long SLOW_CALL_DURATION =
+            parsePositiveLongFromSystemProperty("bitbucket.circuitbreaker.slow.call.duration", 10000);
+    /**
+     * Percentage of slow requests that opens the breaker. Defaults to 100, and 0 never opens it for slow requests.
+     */
+    static final int SLOW_CALL_RATE_THRESHOLD =
+            (int) parsePositiveLongFromSystemProperty("bitbucket.circuitbreaker.slow.call.rate", 100);
+    /**
+     * Number of recent requests whose outcome is recorded. Defaults to 20.
+     */
+    static final int WINDOW_SIZE =
+            (int) Math.max(1, parsePositiveLongFromSystemProperty("bitbucket.circuitbreaker.window", 20));
+    private static final Logger LOGGER = Logger.getLogger(BitbucketCircuitBreaker.class.getName());
+
+    private final String baseUrl;
+    private final LongSupplier clock;
+    @GuardedBy("this")
+    private final boolean[] failures = new boolean[WINDOW_SIZE];
+    @GuardedBy("this")
+    private final boolean[] slowCalls = new boolean[WINDOW_SIZE];
+    @GuardedBy("this")
+    private int failureCount;
+    @GuardedBy("this")
+    private long generation;
+    @GuardedBy("this")
+    private int halfOpenPermits;
+    @GuardedBy("this")
+    private long openedAt;
+    @GuardedBy("this")
+    private int recordedCount;
+    @GuardedBy("this")
+    private long rejectedCount;
+    @GuardedBy("this")
+    private int slowCount;
+    @GuardedBy("this")
+    private State state = State.CLOSED;
+    @GuardedBy("this")
+    private int windowIndex;
+
+    public BitbucketCircuitBreaker(String baseUrl) {
+        this(baseUrl, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    BitbucketCircuitBreaker(String baseUrl, LongSupplier clock) {
+        this.baseUrl = baseUrl;
+        this.clock = clock;
+    }
+
+    /**
+     * Sends a request through the breaker.
+     *
+     * @param request sends the request and returns its result
+     * @param <T>     the type of the result
+     * @return the result of the request
+     * @throws CircuitBreakerOpenException if the breaker is open, and the request was not sent
+     */
+    public <T> T call(Supplier<T> request) {
+        long permit = acquirePermission();
+        long start = clock.getAsLong();
+        boolean failed = true;
+        try {
+            T result = request.get();
+            failed = false;
+            return result;
+        } catch (RuntimeException e) {
+            failed = isFailure(e);
+            throw e;
+        } finally {
+            record(permit, failed, clock.getAsLong() - start >= SLOW_CALL_DURATION);
+        }
+    }
+
+    /**
+     * Sends an asynchronous request through the breaker. The outcome is recorded when the returned future completes.
+     *
+     * @param request sends the request and returns a future for its result
+     * @param <T>     the type of the result
+     * @return the future for the result of the request, completed exceptionally with a
+     *         {@link CircuitBreakerOpenException} if the breaker is open and the request was not sent
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> request) {
+        long permit;
+        try {
+            permit = acquirePermission();
+        } catch (CircuitBreakerOpenException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+        long start = clock.getAsLong();
+        CompletableFuture<T> future;
+        try {
+            future = request.get();
+        } catch (RuntimeException e) {
+            record(permit, isFailure(e), false);
+            throw e;
+        }
+        // Return the future itself rather than the dependent stage, so that cancelling it cancels the request
+        future.whenComplete((result, throwable) -> record(permit,
+                throwable != null && isFailure(throwable instanceof CompletionException ? throwable.getCause() :
+                        throwable), clock.getAsLong() - start >= SLOW_CALL_DURATION));
+        return future;
+    }
+
+    /**
+     * @return the percentage of recorded requests that failed
+     */
+    public synchronized int getFailureRate() {
+        return recordedCount == 0 ? 0 : failureCount * 100 / recordedCount;
+    }
+
+    /**
+     * @return the number of requests rejected because the breaker was open
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return the percentage of recorded requests that were slow
+     */
+    public synchronized int getSlowCallRate() {
+        return recordedCount == 0 ? 0 : slowCount * 100 / recordedCount;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && getRemainingOpenMillis() <= 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return a short description of the state of the breaker, for administrators
+     */
+    public synchronized String getStatus() {
+        State current = getState();
+        if (current == State.OPEN) {
+            return String.format("Open, retrying in %d seconds", (getRemainingOpenMillis() + 999) / 1000);
+        }
+        return String.format("%s, %d%% of the last %d requests failed and %d%% were slow",
+                current == State.CLOSED ? "Closed" : "Half open", getFailureRate(), recordedCount, getSlowCallRate());
+    }
+
+    private synchronized long acquirePermission() {
+        if (FAILURE_RATE_THRESHOLD == 0) {
+            return generation;
+        }
+        if (state == State.OPEN) {
+            long remaining = getRemainingOpenMillis();
+            if (remaining > 0) {
+                rejectedCount++;
+                throw new CircuitBreakerOpenException(String.format(
+                        "Requests to %s are paused for %d seconds after too many failed or slow requests", baseUrl,
+                        (remaining + 999) / 1000), remaining);
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                rejectedCount++;
+                throw new CircuitBreakerOpenException(String.format(
+                        "Requests to %s are paused while checking whether it has recovered", baseUrl), 0);
+            }
+            halfOpenPermits--;
+        }
+        return generation;
+    }
+
+    /**
+     * Anything but an unreachable or failing server means the server is up, even if the request was wrong.
+     */
+    private static boolean isFailure(@Nullable Throwable throwable) {
+        return throwable instanceof ConnectionFailureException || throwable instanceof ServerErrorException;
+    }
+
+    private synchronized long getRemainingOpenMillis() {
+        return openedAt + OPEN_DURATION - clock.getAsLong();
+    }
+
+    private boolean isAboveThresholds() {
+        return failureCount * 100 >= FAILURE_RATE_THRESHOLD * recordedCount ||
+               (SLOW_CALL_RATE_THRESHOLD > 0 && slowCount * 100 >= SLOW_CALL_RATE_THRESHOLD * recordedCount);
+    }
+
+    private synchronized void record(long permit, boolean failed, boolean slow) {
+        if (FAILURE_RATE_THRESHOLD == 0 || permit != generation) {
+            // The breaker changed state while the request was in flight, so it no longer counts
+            return;
+        }
+        if (recordedCount == WINDOW_SIZE) {
+            failureCount -= failures[windowIndex] ? 1 : 0;
+            slowCount -= slowCalls[windowIndex] ? 1 : 0;
+        } else {
+            recordedCount++;
+        }
+        failures[windowIndex] = failed;
+        slowCalls[windowIndex] = slow;
+        failureCount += failed ? 1 : 0;
+        slowCount += slow ? 1 : 0;
+        windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                transitionTo(State.OPEN);
+            } else if (recordedCount >= Math.min(HALF_OPEN_CALLS, WINDOW_SIZE)) {
+                transitionTo(isAboveThresholds() ? State.OPEN : State.CLOSED);
+            }
+        } else if (state == State.CLOSED && recordedCount >= Math.min(MINIMUM_CALLS, WINDOW_SIZE) &&
+                   isAboveThresholds()) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        if (newState == State.OPEN) {
+            LOGGER.warning(String.format("Bitbucket - pausing requests to %s for %d ms, %d%% of the last %d " +
+                                         "requests failed and %d%% were slow", baseUrl, OPEN_DURATION,
+                    getFailureRate(), recordedCount, getSlowCallRate()));
+            openedAt = clock.getAsLong();
+        } else if (newState == State.CLOSED) {
+            LOGGER.info(String.format("Bitbucket - %s has recovered, resuming requests", baseUrl));
+        }
+        state = newState;
+        halfOpenPermits = newState == State.HALF_OPEN ? HALF_OPEN_CALLS : 0;
+        generation++;
+        failureCount = 0;
+        slowCount = 0;
+        recordedCount = 0;
+        windowIndex = 0;
+    }
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+}
@@ -12,13 +12,27 @@ import org.jenkinsci.plugins.displayurlapi.DisplayURLProvider;
 public class BitbucketClientFactoryImpl implements BitbucketClientFactory {
 
     private final BitbucketRequestExecutor bitbucketRequestExecutor;
+    private final BitbucketCapabilitiesCache capabilitiesCache;
     private final BitbucketCapabilitiesSupplier capabilitiesSupplier;
 
     BitbucketClientFactoryImpl(String serverUrl, BitbucketCredentials credentials, ObjectMapper objectMapper,
                                HttpRequestExecutor httpRequestExecutor) {
+        this(serverUrl, credentials, objectMapper, httpRequestExecutor, new BitbucketCapabilitiesCache());
+    }
+
+    BitbucketClientFactoryImpl(String serverUrl, BitbucketCredentials credentials, ObjectMapper objectMapper,
+                               HttpRequestExecutor httpRequestExecutor, BitbucketCapabilitiesCache capabilitiesCache) {
+        this(serverUrl, credentials, objectMapper, httpRequestExecutor, capabilitiesCache,
+                new BitbucketCircuitBreaker(serverUrl), new BitbucketRateLimiter());
+    }
+
+    BitbucketClientFactoryImpl(String serverUrl, BitbucketCredentials credentials, ObjectMapper objectMapper,
+                               HttpRequestExecutor httpRequestExecutor, BitbucketCapabilitiesCache capabilitiesCache,
+                               BitbucketCircuitBreaker circuitBreaker, BitbucketRateLimiter rateLimiter) {
         bitbucketRequestExecutor = new BitbucketRequestExecutor(serverUrl, httpRequestExecutor, objectMapper,
-                credentials);
+                credentials, circuitBreaker, rateLimiter);
         capabilitiesSupplier = new BitbucketCapabilitiesSupplier(bitbucketRequestExecutor);
+        this.capabilitiesCache = capabilitiesCache;
     }
 
     @Override
@@ -28,7 +42,7 @@ public class BitbucketClientFactoryImpl implements BitbucketClientFactory {
 
     @Override
     public BitbucketCapabilitiesClient getCapabilityClient() {
-        return new BitbucketCapabilitiesClientImpl(bitbucketRequestExecutor, capabilitiesSupplier);
+        return new BitbucketCapabilitiesClientImpl(bitbucketRequestExecutor, capabilitiesCache, capabilitiesSupplier);
     }
 
     @VisibleForTesting
@@ -6,18 +6,47 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.util.Objects.requireNonNull;
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
 
 /**
  * Client factory provider, use to ensure that expensive objects are only created once and re-used.
+ * <p>
+ * Factories are cached per base URL and credentials, with the least recently used factory evicted once there are
+ * more than {@link #FACTORY_CACHE_SIZE}. All factories for the same base URL share one
+ * {@link BitbucketCapabilitiesCache}, so the capabilities of an instance are fetched once rather than once per
+ * client, one {@link BitbucketCircuitBreaker}, so that an instance that is down is detected whatever credentials
+ * are used to call it, and one {@link BitbucketRateLimiter}.
  */
 @ThreadSafe
 @Singleton
 public class BitbucketClientFactoryProvider {
 
+    /**
+     * Maximum number of client factories to keep. Defaults to 100.
+     */
+    static final int FACTORY_CACHE_SIZE =
+            (int) parsePositiveLongFromSystemProperty("bitbucket.client.factory.cache.size", 100);
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final Map<String, BitbucketCapabilitiesCache> capabilitiesCaches = new ConcurrentHashMap<>();
+    private final Map<String, BitbucketCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, BitbucketRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final Map<FactoryKey, BitbucketClientFactory> factories =
+            new LinkedHashMap<FactoryKey, BitbucketClientFactory>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<FactoryKey, BitbucketClientFactory> eldest) {
+                    return size() > FACTORY_CACHE_SIZE;
+                }
+            };
     private final HttpRequestExecutor httpRequestExecutor;
 
     @Inject
@@ -35,10 +64,61 @@ public class BitbucketClientFactoryProvider {
     public BitbucketClientFactory getClient(String baseUrl, BitbucketCredentials credentials) {
         requireNonNull(baseUrl, "Bitbucket Server base url cannot be null.");
         requireNonNull(credentials, "Credentials can't be null. For no credentials use anonymous.");
-        return new BitbucketClientFactoryImpl(
-                baseUrl,
-                credentials,
-                objectMapper,
-                httpRequestExecutor);
+        FactoryKey key = new FactoryKey(baseUrl, sha256Hex(credentials.toHeaderValue()));
+        synchronized (factories) {
+            return factories.computeIfAbsent(key, k -> new BitbucketClientFactoryImpl(
+                    baseUrl,
+                    credentials,
+                    objectMapper,
+                    httpRequestExecutor,
+                    capabilitiesCaches.computeIfAbsent(removeEnd(baseUrl, "/"),
+                            url -> new BitbucketCapabilitiesCache()),
+                    getCircuitBreaker(baseUrl),
+                    rateLimiters.computeIfAbsent(removeEnd(baseUrl, "/"), url -> new BitbucketRateLimiter())));
+        }
+    }
+
+    /**
+     * Return the circuit breaker all requests to the given base URL go through.
+     *
+     * @param baseUrl the URL of the server
+     * @return the circuit breaker for the server
+     */
+    public BitbucketCircuitBreaker getCircuitBreaker(String baseUrl) {
+        requireNonNull(baseUrl, "Bitbucket Server base url cannot be null.");
+        return circuitBreakers.computeIfAbsent(removeEnd(baseUrl, "/"), BitbucketCircuitBreaker::new);
+    }
+
+    /**
+     * Identifies a factory by the server it connects to and a hash of the authorization header it sends, so that a
+     * factory is never shared between different credentials and changing the secret of a credential creates a new
+     * factory. Only the hash is kept, so that the key doesn't hold on to the secret.
+     */
+    private static final class FactoryKey {
+
+        private final String authorizationHash;
+        private final String baseUrl;
+
+        private FactoryKey(String baseUrl, String authorizationHash) {
+            this.baseUrl = baseUrl;
+            this.authorizationHash = authorizationHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FactoryKey that = (FactoryKey) o;
+            return baseUrl.equals(that.baseUrl) && authorizationHash.equals(that.authorizationHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, authorizationHash);
+        }
     }
 }
@@ -4,6 +4,9 @@ import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketResponse;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client to do the mirror related operation for a given repository
@@ -31,4 +34,14 @@ public interface BitbucketMirrorClient {
      * @return mirrored repository details
      */
     BitbucketMirroredRepository getRepositoryDetails(BitbucketMirroredRepositoryDescriptor repositoryDescriptor);
+
+    /**
+     * Returns the mirrored repository details for the given repository url asynchronously, so the details of several
+     * mirrors can be fetched at once. Cancelling the returned future cancels the request.
+     *
+     * @param repositoryDescriptor the descriptor of repository.
+     * @return a future completed with the response holding the mirrored repository details
+     */
+    CompletableFuture<BitbucketResponse<BitbucketMirroredRepository>> getRepositoryDetailsAsync(
+            BitbucketMirroredRepositoryDescriptor repositoryDescriptor);
 }
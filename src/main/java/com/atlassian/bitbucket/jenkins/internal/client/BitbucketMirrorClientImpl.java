@@ -4,9 +4,12 @@ import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClient
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketResponse;
 import com.fasterxml.jackson.core.type.TypeReference;
 import okhttp3.HttpUrl;
 
+import java.util.concurrent.CompletableFuture;
+
 import static java.util.Objects.requireNonNull;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 
@@ -39,6 +42,18 @@ public class BitbucketMirrorClientImpl implements BitbucketMirrorClient {
     @Override
     public BitbucketMirroredRepository getRepositoryDetails(
             BitbucketMirroredRepositoryDescriptor repositoryDescriptor) {
+        return bitbucketRequestExecutor.makeGetRequest(getRepositoryUrl(repositoryDescriptor),
+                BitbucketMirroredRepository.class).getBody();
+    }
+
+    @Override
+    public CompletableFuture<BitbucketResponse<BitbucketMirroredRepository>> getRepositoryDetailsAsync(
+            BitbucketMirroredRepositoryDescriptor repositoryDescriptor) {
+        return bitbucketRequestExecutor.makeGetRequestAsync(getRepositoryUrl(repositoryDescriptor),
+                BitbucketMirroredRepository.class);
+    }
+
+    private static HttpUrl getRepositoryUrl(BitbucketMirroredRepositoryDescriptor repositoryDescriptor) {
         String repoUrl = repositoryDescriptor.getSelfLink();
         if (isEmpty(repoUrl)) {
             throw new BitbucketClientException("Empty Repo URL");
@@ -48,7 +63,6 @@ public class BitbucketMirrorClientImpl implements BitbucketMirrorClient {
         if (mirrorUrl == null) {
             throw new BitbucketClientException("Invalid repo URL " + repoUrl);
         }
-
-        return bitbucketRequestExecutor.makeGetRequest(mirrorUrl, BitbucketMirroredRepository.class).getBody();
+        return mirrorUrl;
     }
 }
@@ -0,0 +1,221 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.google.common.annotations.VisibleForTesting;
+import jenkins.util.Timer;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Limits the rate of requests sent to one Bitbucket Server instance, so that bursts of requests, such as every job
+ * registering its webhook after a restart, don't trip the rate limiting of the server.
+ * <p>
+ * Each request takes a token from a bucket that holds up to {@link #BURST} tokens and is refilled at {@link #RATE}
+ * tokens a second, and waits for a token if the bucket is empty. Requests made by background work, marked with
+ * {@link #inBackground(Supplier)}, can't take the last {@link #INTERACTIVE_RESERVE} percent of the bucket and wait
+ * while any interactive request is waiting, so bulk work can't hold up requests a user is waiting for.
+ * <p>
+ * Asynchronous requests use {@link #acquireAsync()}, which schedules the retries on the Jenkins {@link Timer} rather
+ * than blocking the calling thread.
+ */
+@ThreadSafe
+public class BitbucketRateLimiter {
+
+    /**
+     * Most tokens the bucket holds, and so the largest burst of requests sent at once. Defaults to 20.
+     */
+    static final int BURST = (int) Math.max(1, parsePositiveLongFromSystemProperty("bitbucket.ratelimit.burst", 20));
+    /**
+     * Percentage of the bucket only interactive requests can take. Defaults to 25.
+     */
+    static final int INTERACTIVE_RESERVE =
+            (int) Math.min(100, parsePositiveLongFromSystemProperty("bitbucket.ratelimit.interactive.reserve", 25));
+    /**
+     * Requests per second sent to each server. Defaults to 0, which doesn't limit requests.
+     */
+    static final long RATE = parsePositiveLongFromSystemProperty("bitbucket.ratelimit.rate", 0);
+    private static final ThreadLocal<Lane> currentLane = ThreadLocal.withInitial(() -> Lane.INTERACTIVE);
+
+    private final int burst;
+    private final LongSupplier clock;
+    private final long rate;
+    private final int reserved;
+    private final Supplier<ScheduledExecutorService> scheduler;
+    @GuardedBy("this")
+    private long refilledAt;
+    @GuardedBy("this")
+    private double tokens;
+    @GuardedBy("this")
+    private int waitingInteractive;
+
+    public BitbucketRateLimiter() {
+        this(RATE, BURST, System::currentTimeMillis, Timer::get);
+    }
+
+    @VisibleForTesting
+    BitbucketRateLimiter(long rate, int burst, LongSupplier clock, Supplier<ScheduledExecutorService> scheduler) {
+        this.rate = rate;
+        this.burst = burst;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        reserved = Math.min(burst - 1, burst * INTERACTIVE_RESERVE / 100);
+        tokens = burst;
+        refilledAt = clock.getAsLong();
+    }
+
+    /**
+     * Runs the given work with its requests in the background lane.
+     *
+     * @param work the work to run
+     * @param <T>  the type of the result
+     * @return the result of the work
+     */
+    public static <T> T inBackground(Supplier<T> work) {
+        Lane previous = currentLane.get();
+        currentLane.set(Lane.BACKGROUND);
+        try {
+            return work.get();
+        } finally {
+            currentLane.set(previous);
+        }
+    }
+
+    /**
+     * Runs the given work with its requests in the background lane.
+     *
+     * @param work the work to run
+     */
+    public static void inBackground(Runnable work) {
+        inBackground(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Waits until a request can be sent in the lane of the current thread.
+     *
+     * @throws BitbucketClientException if interrupted while waiting
+     */
+    public void acquire() {
+        if (rate == 0) {
+            return;
+        }
+        Lane lane = currentLane.get();
+        synchronized (this) {
+            if (lane == Lane.INTERACTIVE) {
+                waitingInteractive++;
+            }
+            try {
+                long delay;
+                while ((delay = tryAcquire(lane)) > 0) {
+                    wait(delay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BitbucketClientException("Interrupted while waiting to send a request", e);
+            } finally {
+                stopWaiting(lane);
+            }
+        }
+    }
+
+    /**
+     * Returns a future completed once a request can be sent in the lane of the current thread. The calling thread
+     * never waits; while the bucket is empty, trying again is scheduled for when the next token is due.
+     *
+     * @return a future completed once a token was taken, or completed exceptionally with a
+     *         {@link BitbucketClientException} if waiting for a token could not be scheduled
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        if (rate == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Lane lane = currentLane.get();
+        synchronized (this) {
+            if (lane == Lane.INTERACTIVE) {
+                waitingInteractive++;
+            }
+        }
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        tryAcquireAsync(lane, acquired);
+        return acquired;
+    }
+
+    /**
+     * Takes a token for a request in the given lane if there is one.
+     *
+     * @param lane the lane of the request
+     * @return 0 if a token was taken, or else how long to wait before trying again in ms
+     */
+    @VisibleForTesting
+    synchronized long tryAcquire(Lane lane) {
+        long now = clock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1000.0);
+        refilledAt = now;
+
+        // Background requests leave the reserved tokens, and any token at all while an interactive request waits
+        int floor = lane == Lane.BACKGROUND ? reserved : 0;
+        boolean yieldToInteractive = lane == Lane.BACKGROUND && waitingInteractive > 0;
+        if (!yieldToInteractive && tokens >= floor + 1) {
+            tokens -= 1;
+            return 0;
+        }
+        double missing = yieldToInteractive ? 1 : floor + 1 - tokens;
+        return Math.max(1, (long) Math.ceil(missing * 1000 / rate));
+    }
+
+    private void tryAcquireAsync(Lane lane, CompletableFuture<Void> acquired) {
+        long delay;
+        synchronized (this) {
+            if (acquired.isDone()) {
+                // Cancelled while waiting
+                stopWaiting(lane);
+                return;
+            }
+            delay = tryAcquire(lane);
+            if (delay == 0) {
+                stopWaiting(lane);
+            }
+        }
+        if (delay == 0) {
+            acquired.complete(null);
+            return;
+        }
+        try {
+            scheduler.get().schedule(() -> tryAcquireAsync(lane, acquired), delay, MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                stopWaiting(lane);
+            }
+            acquired.completeExceptionally(
+                    new BitbucketClientException("Could not schedule waiting to send a request", e));
+        }
+    }
+
+    @GuardedBy("this")
+    private void stopWaiting(Lane lane) {
+        if (lane == Lane.INTERACTIVE) {
+            waitingInteractive--;
+            // Let background requests waiting on interactive ones check again
+            notifyAll();
+        }
+    }
+
+    /**
+     * The priority of a request: interactive for requests a user is waiting for, and background for bulk work.
+     */
+    public enum Lane {
+        BACKGROUND,
+        INTERACTIVE
+    }
+}
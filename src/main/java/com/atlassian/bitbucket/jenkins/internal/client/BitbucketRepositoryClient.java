@@ -1,14 +1,89 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
 import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentNode;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentType;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 
+import javax.annotation.CheckForNull;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
 /**
  * Repository client, used to interact with a remote repository for all operations except cloning
  * source code.
  */
 public interface BitbucketRepositoryClient {
 
+    /**
+     * Returns the branches of the repository. The pages of branches are fetched as the stream is consumed, so the
+     * stream should be closed if it is not consumed to the end.
+     *
+     * @param filterText only branches whose name contains this text are returned, or all branches if blank
+     * @return the branches of the repository
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the repository does not exist
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketBranch> getBranches(@CheckForNull String filterText);
+
+    /**
+     * Returns the branches of the repository accepted by the given filter. Branches are filtered as each page is
+     * read, so those not accepted are never built.
+     *
+     * @param filterText only branches whose name contains this text are returned, or all branches if blank
+     * @param filter     accepts the branches to return
+     * @return the accepted branches of the repository
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the repository does not exist
+     * @throws BitbucketClientException for all errors not already captured
+     * @see #getBranches(String)
+     */
+    Stream<BitbucketBranch> getBranches(@CheckForNull String filterText, Predicate<? super BitbucketBranch> filter);
+
+    /**
+     * Returns the type of the given path at the given commit.
+     *
+     * @param path the path in the repository
+     * @param at   the commit, branch or tag to look the path up at
+     * @return the type of the path
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the path does not exist at the given commit
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    BitbucketContentType getContentType(String path, String at);
+
+    /**
+     * Returns the files, directories and submodules in the given directory at the given commit. The pages of the
+     * directory are fetched as the stream is consumed.
+     *
+     * @param path the path of the directory in the repository, or an empty string for the root directory
+     * @param at   the commit, branch or tag to list the directory at
+     * @return the content of the directory
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the directory does not exist at the given commit
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketContentNode> getDirectoryContent(String path, String at);
+
+    /**
+     * Returns the raw content of the given file at the given commit.
+     *
+     * @param path the path of the file in the repository
+     * @param at   the commit, branch or tag to read the file at
+     * @return the content of the file
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the file does not exist at the given commit
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    byte[] getRawContent(String path, String at);
+
     /**
      * Make the call out to Bitbucket and read the response.
      *
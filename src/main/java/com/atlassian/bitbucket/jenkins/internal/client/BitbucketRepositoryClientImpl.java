@@ -1,9 +1,29 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.BitbucketPageStreamUtil;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.OffsetPageFetcher;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentNode;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentType;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketDirectory;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
 import okhttp3.HttpUrl;
 
+import javax.annotation.CheckForNull;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.FutureUtils.thenApply;
+import static java.lang.String.valueOf;
 import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.stripToNull;
 
 public class BitbucketRepositoryClientImpl implements BitbucketRepositoryClient {
@@ -19,18 +39,111 @@ public class BitbucketRepositoryClientImpl implements BitbucketRepositoryClient
     }
 
     @Override
-    public BitbucketRepository getRepository() {
-        HttpUrl.Builder urlBuilder = bitbucketRequestExecutor.getCoreRestPath().newBuilder()
-                .addPathSegment("projects")
-                .addPathSegment(projectKey)
-                .addPathSegment("repos")
-                .addPathSegment(repositorySlug);
+    public Stream<BitbucketBranch> getBranches(@CheckForNull String filterText) {
+        return getBranches(filterText, branch -> true);
+    }
 
-        return bitbucketRequestExecutor.makeGetRequest(urlBuilder.build(), BitbucketRepository.class).getBody();
+    @Override
+    public Stream<BitbucketBranch> getBranches(@CheckForNull String filterText,
+                                               Predicate<? super BitbucketBranch> filter) {
+        HttpUrl.Builder urlBuilder = getRepositoryUrl().newBuilder()
+                .addPathSegment("branches")
+                .addQueryParameter("orderBy", "ALPHABETICAL");
+        if (isNotBlank(filterText)) {
+            urlBuilder.addQueryParameter("filterText", filterText);
+        }
+        HttpUrl url = urlBuilder.build();
+        BitbucketPage<BitbucketBranch> firstPage =
+                bitbucketRequestExecutor.makeGetPageRequest(url, BitbucketBranch.class, filter).getBody();
+        return BitbucketPageStreamUtil.toPrefetchingStream(firstPage,
+                new BranchPageFetcher(url, bitbucketRequestExecutor, filter))
+                .map(BitbucketPage::getValues).flatMap(Collection::stream);
+    }
+
+    @Override
+    public BitbucketContentType getContentType(String path, String at) {
+        HttpUrl url = getContentUrl("browse", path).newBuilder()
+                .addQueryParameter("at", at)
+                .addQueryParameter("type", "true")
+                .build();
+        String type = bitbucketRequestExecutor.makeGetRequest(url,
+                new TypeReference<Map<String, String>>() {}).getBody().get("type");
+        try {
+            return BitbucketContentType.valueOf(valueOf(type));
+        } catch (IllegalArgumentException e) {
+            throw new BitbucketClientException("Unknown type of path " + path + ": " + type, e);
+        }
+    }
+
+    @Override
+    public Stream<BitbucketContentNode> getDirectoryContent(String path, String at) {
+        HttpUrl url = getContentUrl("browse", path).newBuilder()
+                .addQueryParameter("at", at)
+                .build();
+        BitbucketPage<BitbucketContentNode> firstPage =
+                bitbucketRequestExecutor.makeGetRequest(url, BitbucketDirectory.class).getBody().getChildren();
+        return BitbucketPageStreamUtil.toStream(firstPage, previous -> bitbucketRequestExecutor.makeGetRequest(
+                url.newBuilder().addQueryParameter("start", valueOf(previous.getNextPageStart())).build(),
+                BitbucketDirectory.class).getBody().getChildren())
+                .map(BitbucketPage::getValues).flatMap(Collection::stream);
+    }
+
+    @Override
+    public byte[] getRawContent(String path, String at) {
+        HttpUrl url = getContentUrl("raw", path).newBuilder()
+                .addQueryParameter("at", at)
+                .build();
+        return bitbucketRequestExecutor.makeGetRawRequest(url).getBody();
+    }
+
+    @Override
+    public BitbucketRepository getRepository() {
+        return bitbucketRequestExecutor.makeGetRequest(getRepositoryUrl(), BitbucketRepository.class).getBody();
     }
 
     @Override
     public BitbucketWebhookClient getWebhookClient() {
         return new BitbucketWebhookClientImpl(bitbucketRequestExecutor, projectKey, repositorySlug);
     }
+
+    private HttpUrl getContentUrl(String resource, String path) {
+        HttpUrl.Builder urlBuilder = getRepositoryUrl().newBuilder().addPathSegment(resource);
+        if (isNotBlank(path)) {
+            urlBuilder.addPathSegments(path);
+        }
+        return urlBuilder.build();
+    }
+
+    private HttpUrl getRepositoryUrl() {
+        return bitbucketRequestExecutor.getCoreRestPath().newBuilder()
+                .addPathSegment("projects")
+                .addPathSegment(projectKey)
+                .addPathSegment("repos")
+                .addPathSegment(repositorySlug)
+                .build();
+    }
+
+    static class BranchPageFetcher implements OffsetPageFetcher<BitbucketBranch> {
+
+        private final HttpUrl url;
+        private final BitbucketRequestExecutor bitbucketRequestExecutor;
+
+        private final Predicate<? super BitbucketBranch> filter;
+
+        BranchPageFetcher(HttpUrl url, BitbucketRequestExecutor bitbucketRequestExecutor,
+                          Predicate<? super BitbucketBranch> filter) {
+            this.url = url;
+            this.bitbucketRequestExecutor = bitbucketRequestExecutor;
+            this.filter = filter;
+        }
+
+        @Override
+        public CompletableFuture<BitbucketPage<BitbucketBranch>> fetch(int start) {
+            HttpUrl pageUrl = url.newBuilder().addQueryParameter("start", valueOf(start)).build();
+            // Pages still being fetched are cancelled when the stream is closed, which has to reach the request
+            return thenApply(
+                    bitbucketRequestExecutor.makeGetPageRequestAsync(pageUrl, BitbucketBranch.class, filter),
+                    BitbucketResponse::getBody);
+        }
+    }
 }
@@ -2,48 +2,86 @@ package com.atlassian.bitbucket.jenkins.internal.client;
 
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.NoContentException;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.StreamingPageReader;
 import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketResponse;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import org.apache.http.HttpHeaders;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.client.HttpRequestExecutor.ResponseConsumer.EMPTY_RESPONSE;
+import static com.atlassian.bitbucket.jenkins.internal.util.FutureUtils.thenCompose;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.util.Objects.requireNonNull;
 import static okhttp3.HttpUrl.parse;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
 
 public class BitbucketRequestExecutor {
 
     private static final String API_VERSION = "1.0";
+    /**
+     * The largest body read by {@link #makeGetRawRequest(HttpUrl)}, in bytes.
+     */
+    static final long MAX_RAW_BODY_SIZE =
+            parsePositiveLongFromSystemProperty("bitbucket.client.raw.max.size", 10 * 1024 * 1024);
     private static final Logger log = Logger.getLogger(BitbucketRequestExecutor.class.getName());
 
     private final HttpUrl bitbucketBaseUrl;
+    private final String basePath;
     private final HttpUrl bitbucketCoreRestPathUrl;
+    private final BitbucketCircuitBreaker circuitBreaker;
     private final BitbucketCredentials credentials;
     private final ObjectMapper objectMapper;
     private final HttpRequestExecutor httpRequestExecutor;
+    // Sends each attempt through the circuit breaker, so the wait before a retry doesn't count towards slow requests
+    private final HttpRequestExecutor guardedRequestExecutor;
+    private final BitbucketRateLimiter rateLimiter;
+    // The executor only ever sends one set of credentials, so the URL and result type identify identical requests
+    private final RequestCoalescer<String> requestCoalescer = new RequestCoalescer<>();
+    private final BitbucketResponseCache responseCache;
 
     public BitbucketRequestExecutor(String bitbucketBaseUrl,
                                     HttpRequestExecutor httpRequestExecutor, ObjectMapper objectMapper,
                                     BitbucketCredentials credentials) {
+        this(bitbucketBaseUrl, httpRequestExecutor, objectMapper, credentials,
+                new BitbucketCircuitBreaker(bitbucketBaseUrl), new BitbucketRateLimiter());
+    }
+
+    public BitbucketRequestExecutor(String bitbucketBaseUrl,
+                                    HttpRequestExecutor httpRequestExecutor, ObjectMapper objectMapper,
+                                    BitbucketCredentials credentials, BitbucketCircuitBreaker circuitBreaker,
+                                    BitbucketRateLimiter rateLimiter) {
         this.bitbucketBaseUrl = requireNonNull(parse(requireNonNull(bitbucketBaseUrl)));
+        basePath = removeEnd(this.bitbucketBaseUrl.encodedPath(), "/");
         this.bitbucketCoreRestPathUrl = this.bitbucketBaseUrl.newBuilder()
                 .addPathSegment("rest")
                 .addPathSegment("api")
                 .addPathSegment(API_VERSION)
                 .build();
         this.httpRequestExecutor = httpRequestExecutor;
+        guardedRequestExecutor = httpRequestExecutor.withAttemptGuard(circuitBreaker::call);
         this.objectMapper = objectMapper;
         this.credentials = credentials;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        responseCache = new BitbucketResponseCache(this.bitbucketBaseUrl);
     }
 
     /**
@@ -55,6 +93,15 @@ public class BitbucketRequestExecutor {
         return bitbucketBaseUrl;
     }
 
+    /**
+     * Returns the circuit breaker all requests to the server go through.
+     *
+     * @return the circuit breaker
+     */
+    public BitbucketCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
     /**
      * Provide the base Rest path
      *
@@ -64,19 +111,51 @@ public class BitbucketRequestExecutor {
         return bitbucketCoreRestPathUrl;
     }
 
+    /**
+     * Returns the coalescer that lets one GET request stand in for identical ones made while it is in flight.
+     *
+     * @return the request coalescer
+     */
+    public RequestCoalescer<String> getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Returns the cache of read-only responses that are revalidated with conditional requests.
+     *
+     * @return the response cache
+     */
+    public BitbucketResponseCache getResponseCache() {
+        return responseCache;
+    }
+
     /**
      * Make a DELETE request to given URL.
      *
      * @param url, the delete URL
      */
     public void makeDeleteRequest(HttpUrl url) {
-        httpRequestExecutor.executeDelete(url, credentials);
+        execute(url, executor -> {
+            executor.executeDelete(url, credentials);
+            return null;
+        });
+    }
+
+    /**
+     * Make a DELETE request to given URL asynchronously.
+     *
+     * @param url, the delete URL
+     * @return a future completed once the resource is deleted
+     */
+    public CompletableFuture<Void> makeDeleteRequestAsync(HttpUrl url) {
+        return executeAsync(url, () -> httpRequestExecutor.executeDeleteAsync(url, credentials));
     }
 
     /**
      * Make a GET request to the url given. This method will add authentication headers as needed.
      * If the requested resource is paged, or the return type is generified use this method,
-     * otherwise the {@link #makeGetRequest(HttpUrl, Class)} is most likely a better choice.
+     * otherwise the {@link #makeGetRequest(HttpUrl, Class)} is most likely a better choice. Callers making the same
+     * request while it is in flight share its result, which must not be modified.
      *
      * @param url        url to connect to
      * @param returnType type reference used when getting generified objects (such as pages)
@@ -85,14 +164,17 @@ public class BitbucketRequestExecutor {
      * @see #makeGetRequest(HttpUrl, Class)
      */
     public <T> BitbucketResponse<T> makeGetRequest(HttpUrl url, TypeReference<T> returnType) {
-        return makeGetRequest(url, in -> objectMapper.readValue(in, returnType));
+        String key = returnType.getType().getTypeName() + " " + url;
+        return requestCoalescer.execute(key,
+                () -> makeGetRequest(url, key, in -> objectMapper.readValue(in, returnType)));
     }
 
     /**
      * Make a GET request to the url given. This method will add authentication headers as needed.
      * <em>Note!</em> this method <em>cannot</em> be used to retrieve entities that makes use of
      * generics (such as {@link BitbucketPage}) for that use {@link #makeGetRequest(HttpUrl,
-     * TypeReference)} instead.
+     * TypeReference)} instead. Callers making the same request while it is in flight share its result, which must not
+     * be modified.
      *
      * @param url        url to connect to
      * @param returnType class of the desired return type. Do note that if the type is generified
@@ -102,7 +184,88 @@ public class BitbucketRequestExecutor {
      * @see #makeGetRequest(HttpUrl, TypeReference)
      */
     public <T> BitbucketResponse<T> makeGetRequest(HttpUrl url, Class<T> returnType) {
-        return makeGetRequest(url, in -> objectMapper.readValue(in, returnType));
+        String key = returnType.getTypeName() + " " + url;
+        return requestCoalescer.execute(key,
+                () -> makeGetRequest(url, key, in -> objectMapper.readValue(in, returnType)));
+    }
+
+    /**
+     * Make a GET request to the url given asynchronously.
+     *
+     * @param url        url to connect to
+     * @param returnType type reference used when getting generified objects (such as pages)
+     * @param <T>        type to return
+     * @return a future completed with the deserialized object of type T
+     * @see #makeGetRequest(HttpUrl, TypeReference)
+     */
+    public <T> CompletableFuture<BitbucketResponse<T>> makeGetRequestAsync(HttpUrl url, TypeReference<T> returnType) {
+        return makeGetRequestAsync(url, in -> objectMapper.readValue(in, returnType));
+    }
+
+    /**
+     * Make a GET request to the url given asynchronously.
+     *
+     * @param url        url to connect to
+     * @param returnType class of the desired return type
+     * @param <T>        type to return
+     * @return a future completed with the deserialized object of type T
+     * @see #makeGetRequest(HttpUrl, Class)
+     */
+    public <T> CompletableFuture<BitbucketResponse<T>> makeGetRequestAsync(HttpUrl url, Class<T> returnType) {
+        return makeGetRequestAsync(url, in -> objectMapper.readValue(in, returnType));
+    }
+
+    /**
+     * Make a GET request for a page of the given type. The values of the page are read one at a time and only those
+     * accepted by the filter are kept, so that a large page doesn't build values the caller will throw away.
+     *
+     * @param url       url to connect to
+     * @param valueType class of the values of the page
+     * @param filter    accepts the values to keep
+     * @param <T>       type of the values
+     * @return the page, holding only the accepted values
+     * @see StreamingPageReader
+     */
+    public <T> BitbucketResponse<BitbucketPage<T>> makeGetPageRequest(HttpUrl url, Class<T> valueType,
+                                                                      Predicate<? super T> filter) {
+        return makeGetRequest(url, new StreamingPageReader<>(objectMapper, valueType, filter)::read);
+    }
+
+    /**
+     * Make a GET request for a page of the given type asynchronously.
+     *
+     * @param url       url to connect to
+     * @param valueType class of the values of the page
+     * @param filter    accepts the values to keep
+     * @param <T>       type of the values
+     * @return a future completed with the page, holding only the accepted values
+     * @see #makeGetPageRequest(HttpUrl, Class, Predicate)
+     */
+    public <T> CompletableFuture<BitbucketResponse<BitbucketPage<T>>> makeGetPageRequestAsync(
+            HttpUrl url, Class<T> valueType, Predicate<? super T> filter) {
+        return makeGetRequestAsync(url, new StreamingPageReader<>(objectMapper, valueType, filter)::read);
+    }
+
+    /**
+     * Make a GET request to the url given and return the body as it was sent, such as the raw content of a file.
+     * The body is read into memory, so bodies larger than {@link #MAX_RAW_BODY_SIZE} are refused.
+     *
+     * @param url url to connect to
+     * @return the body of the response
+     * @throws BitbucketClientException if the body is too large, or for all errors not already captured
+     */
+    public BitbucketResponse<byte[]> makeGetRawRequest(HttpUrl url) {
+        return makeGetRawRequest(url, MAX_RAW_BODY_SIZE);
+    }
+
+    @VisibleForTesting
+    BitbucketResponse<byte[]> makeGetRawRequest(HttpUrl url, long maxSize) {
+        return execute(url, executor -> executor.executeGet(url, credentials,
+                response -> {
+                    ensureNonEmptyBody(response);
+                    return new BitbucketResponse<>(response.headers().toMultimap(),
+                            readBytes(url, requireNonNull(response.body()), maxSize));
+                }));
     }
 
     /**
@@ -118,8 +281,30 @@ public class BitbucketRequestExecutor {
     public <T, R> BitbucketResponse<R> makePostRequest(HttpUrl url, T requestPayload, Headers headers,
                                                        Class<R> returnType) {
         ObjectReader<R> reader = in -> objectMapper.readValue(in, returnType);
-        return httpRequestExecutor.executePost(url, credentials, marshall(requestPayload), response ->
-                new BitbucketResponse<>(response.headers().toMultimap(), unmarshall(reader, response.body())), headers);
+        String body = marshall(requestPayload);
+        return execute(url, executor -> executor.executePost(url, credentials, body, response ->
+                new BitbucketResponse<>(response.headers().toMultimap(), unmarshall(reader, response.body())),
+                headers));
+    }
+
+    /**
+     * Makes a POST request to the given URL with given request payload asynchronously.
+     *
+     * @param url             the URL to make the request to
+     * @param requestPayload, JSON payload which will be marshalled to send it with POST
+     * @param returnType,     class of expected return type
+     * @param <T>             type of Request payload
+     * @param <R>             return type
+     * @return a future completed with the result
+     * @see #makePostRequest(HttpUrl, Object, Headers, Class)
+     */
+    public <T, R> CompletableFuture<BitbucketResponse<R>> makePostRequestAsync(HttpUrl url, T requestPayload,
+                                                                               Headers headers, Class<R> returnType) {
+        ObjectReader<R> reader = in -> objectMapper.readValue(in, returnType);
+        String body = marshall(requestPayload);
+        return executeAsync(url, () -> httpRequestExecutor.executePostAsync(url, credentials, body, response ->
+                new BitbucketResponse<>(response.headers().toMultimap(), unmarshall(reader, response.body())),
+                headers));
     }
 
     /**
@@ -130,7 +315,22 @@ public class BitbucketRequestExecutor {
      * @param <T>            Type of Request payload
      */
     public <T> void makePostRequest(HttpUrl url, T requestPayload, Headers headers) {
-        httpRequestExecutor.executePost(url, credentials, marshall(requestPayload), EMPTY_RESPONSE, headers);
+        String body = marshall(requestPayload);
+        execute(url, executor -> executor.executePost(url, credentials, body, EMPTY_RESPONSE, headers));
+    }
+
+    /**
+     * Makes a POST request to the given URL with given request payload asynchronously.
+     *
+     * @param url            the URL to make the request to
+     * @param requestPayload JSON payload which will be marshalled to send it with POST
+     * @param <T>            Type of Request payload
+     * @return a future completed once the request is done
+     */
+    public <T> CompletableFuture<Void> makePostRequestAsync(HttpUrl url, T requestPayload, Headers headers) {
+        String body = marshall(requestPayload);
+        return executeAsync(url, () ->
+                httpRequestExecutor.executePostAsync(url, credentials, body, EMPTY_RESPONSE, headers));
     }
 
     /**
@@ -145,8 +345,27 @@ public class BitbucketRequestExecutor {
      */
     public <T, R> BitbucketResponse<R> makePutRequest(HttpUrl url, T requestPayload, Class<R> returnType) {
         ObjectReader<R> reader = in -> objectMapper.readValue(in, returnType);
-        return httpRequestExecutor.executePut(url, credentials, marshall(requestPayload), response ->
-                new BitbucketResponse<>(response.headers().toMultimap(), unmarshall(reader, response.body())));
+        String body = marshall(requestPayload);
+        return execute(url, executor -> executor.executePut(url, credentials, body, response ->
+                new BitbucketResponse<>(response.headers().toMultimap(), unmarshall(reader, response.body()))));
+    }
+
+    /**
+     * Makes a PUT request to the the given URL with given request payload asynchronously.
+     *
+     * @param url            the URL to make the request to
+     * @param requestPayload JSON payload which will be marshalled to send it with PUT
+     * @param returnType,    Class of expected return type
+     * @param <T>            Type of result
+     * @param <R>            Type of return
+     * @return a future completed with the result
+     */
+    public <T, R> CompletableFuture<BitbucketResponse<R>> makePutRequestAsync(HttpUrl url, T requestPayload,
+                                                                              Class<R> returnType) {
+        ObjectReader<R> reader = in -> objectMapper.readValue(in, returnType);
+        String body = marshall(requestPayload);
+        return executeAsync(url, () -> httpRequestExecutor.executePutAsync(url, credentials, body, response ->
+                new BitbucketResponse<>(response.headers().toMultimap(), unmarshall(reader, response.body()))));
     }
 
     private void ensureNonEmptyBody(Response response) {
@@ -158,13 +377,85 @@ public class BitbucketRequestExecutor {
     }
 
     private <T> BitbucketResponse<T> makeGetRequest(HttpUrl url, ObjectReader<T> reader) {
-        return httpRequestExecutor.executeGet(url, credentials,
+        return execute(url, executor -> executor.executeGet(url, credentials,
                 response -> {
                     ensureNonEmptyBody(response);
                     T result = unmarshall(reader, response.body());
                     return new BitbucketResponse<>(
                             response.headers().toMultimap(), result);
-                });
+                }));
+    }
+
+    private <T> BitbucketResponse<T> makeGetRequest(HttpUrl url, String key, ObjectReader<T> reader) {
+        if (!responseCache.isCacheable(url)) {
+            return makeGetRequest(url, reader);
+        }
+        BitbucketResponseCache.Entry cached = responseCache.get(key);
+        Headers.Builder headers = new Headers.Builder();
+        if (cached != null && cached.getEtag() != null) {
+            headers.add(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            headers.add(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+        }
+        return execute(url, executor -> executor.executeGet(url, credentials, headers.build(),
+                response -> {
+                    if (response.code() == HTTP_NOT_MODIFIED && cached != null) {
+                        responseCache.recordHit();
+                        // Parsed again, so that no two callers share a result
+                        return new BitbucketResponse<>(cached.getHeaders().toMultimap(),
+                                unmarshall(reader, cached.openBody()));
+                    }
+                    ensureNonEmptyBody(response);
+                    // Buffered to know its size; the cacheable resources are all small
+                    byte[] body = readBytes(response.body());
+                    BitbucketResponse<T> result = new BitbucketResponse<>(
+                            response.headers().toMultimap(), unmarshall(reader, new ByteArrayInputStream(body)));
+                    responseCache.put(key, response.headers(), body);
+                    return result;
+                }));
+    }
+
+    private <T> CompletableFuture<BitbucketResponse<T>> makeGetRequestAsync(HttpUrl url, ObjectReader<T> reader) {
+        return executeAsync(url, () -> httpRequestExecutor.executeGetAsync(url, credentials,
+                response -> {
+                    ensureNonEmptyBody(response);
+                    T result = unmarshall(reader, response.body());
+                    return new BitbucketResponse<>(response.headers().toMultimap(), result,
+                            response.receivedResponseAtMillis() - response.sentRequestAtMillis());
+                }));
+    }
+
+    private <T> T execute(HttpUrl url, Function<HttpRequestExecutor, T> request) {
+        if (!isOnServer(url)) {
+            return request.apply(httpRequestExecutor);
+        }
+        // Wait for the rate limiter first, so that the wait doesn't count towards slow requests
+        rateLimiter.acquire();
+        return request.apply(guardedRequestExecutor);
+    }
+
+    private <T> CompletableFuture<T> executeAsync(HttpUrl url, Supplier<CompletableFuture<T>> request) {
+        if (!isOnServer(url)) {
+            return request.get();
+        }
+        // Wait for the rate limiter first, without blocking the caller, so that the wait doesn't count towards slow
+        // requests
+        return thenCompose(rateLimiter.acquireAsync(), acquired -> circuitBreaker.callAsync(request));
+    }
+
+    /**
+     * Returns whether the URL is on the server this executor was created for. Requests to other servers, such as
+     * the mirrors of a repository, don't go through the circuit breaker and rate limiter of this server, so that an
+     * unreachable mirror doesn't pause requests to the server and mirrors don't use up its requests.
+     */
+    private boolean isOnServer(HttpUrl url) {
+        if (!url.scheme().equals(bitbucketBaseUrl.scheme()) || !url.host().equals(bitbucketBaseUrl.host()) ||
+            url.port() != bitbucketBaseUrl.port()) {
+            return false;
+        }
+        String path = url.encodedPath();
+        return path.equals(basePath) || path.startsWith(basePath + "/");
     }
 
     private <T> String marshall(T requestPayload) {
@@ -177,10 +468,36 @@ public class BitbucketRequestExecutor {
         }
     }
 
+    private byte[] readBytes(HttpUrl url, ResponseBody body, long maxSize) {
+        try {
+            // The length is not always sent, so at most one byte more than allowed is read to find out
+            if (body.contentLength() > maxSize || body.source().request(maxSize + 1)) {
+                throw new BitbucketClientException(
+                        "The response from " + url + " is larger than " + maxSize + " bytes");
+            }
+            return body.source().readByteArray();
+        } catch (IOException e) {
+            log.info("Bitbucket - io exception while reading the body, Reason " + e.getMessage());
+            throw new BitbucketClientException(e);
+        }
+    }
+
+    private byte[] readBytes(ResponseBody body) {
+        try {
+            return body.bytes();
+        } catch (IOException e) {
+            log.info("Bitbucket - io exception while reading the body, Reason " + e.getMessage());
+            throw new BitbucketClientException(e);
+        }
+    }
+
     private <T> T unmarshall(ObjectReader<T> reader, ResponseBody body) {
-        requireNonNull(body);
+        return unmarshall(reader, requireNonNull(body).byteStream());
+    }
+
+    private <T> T unmarshall(ObjectReader<T> reader, InputStream in) {
         try {
-            return reader.readObject(body.byteStream());
+            return reader.readObject(in);
         } catch (IOException e) {
             log.info("Bitbucket - io exception while unmarshalling the body, Reason " + e.getMessage());
             throw new BitbucketClientException(e);
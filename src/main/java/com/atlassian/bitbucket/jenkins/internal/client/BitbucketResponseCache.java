@@ -0,0 +1,174 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import org.apache.http.HttpHeaders;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+/**
+ * Keeps the responses of read-only resources that rarely change, with the {@code ETag} and {@code Last-Modified}
+ * validators they were sent with, so that reading them again is a conditional request. When the server answers that
+ * the resource is not modified the cached body is used instead of downloading it again. Only the raw body is kept
+ * and it is parsed again for every caller, so that callers never share a result one of them could change.
+ * <p>
+ * Only resources on an allow-list are cached: server and capability documents, projects, repositories and the
+ * mirrors of a repository. The cache holds at most {@link #MAX_SIZE} bytes of response bodies, evicting the least
+ * recently used responses first. Each {@link BitbucketRequestExecutor} has a cache of its own, so a response is never
+ * served to other credentials than it was fetched with.
+ */
+@ThreadSafe
+public class BitbucketResponseCache {
+
+    /**
+     * Most bytes of response bodies to keep per executor. Defaults to 1 MB, and 0 disables the cache.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.client.response.cache.size", 1 << 20);
+    private static final List<Pattern> CACHEABLE_PATHS = Arrays.asList(
+            Pattern.compile("/rest/(.+/)?capabilities"),
+            Pattern.compile("/rest/api/1\\.0/projects/[^/]+"),
+            Pattern.compile("/rest/api/1\\.0/projects/[^/]+/repos/[^/]+"),
+            Pattern.compile("/rest/mirroring/1\\.0/repos/[^/]+/mirrors"));
+
+    private final HttpUrl baseUrl;
+    private final String basePath;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final long maxSize;
+    private final AtomicLong missCount = new AtomicLong();
+    @GuardedBy("this")
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long size;
+
+    public BitbucketResponseCache(HttpUrl baseUrl) {
+        this(baseUrl, MAX_SIZE);
+    }
+
+    BitbucketResponseCache(HttpUrl baseUrl, long maxSize) {
+        this.baseUrl = baseUrl;
+        basePath = removeEnd(baseUrl.encodedPath(), "/");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the number of responses served from the cache after the server answered not modified
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of cacheable requests the server sent a new response for
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the cached response for the given key, to validate with the server before it is used.
+     *
+     * @param key identifies the request, including the type of its result
+     * @return the cached response, or null if there is none
+     */
+    @CheckForNull
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Whether responses from the given URL may be cached.
+     *
+     * @param url the URL of the request
+     * @return true if the resource is on the allow-list
+     */
+    public boolean isCacheable(HttpUrl url) {
+        if (maxSize == 0 || url.encodedQuery() != null || !url.scheme().equals(baseUrl.scheme()) ||
+            !url.host().equals(baseUrl.host()) || url.port() != baseUrl.port()) {
+            return false;
+        }
+        String path = url.encodedPath();
+        if (!path.startsWith(basePath)) {
+            return false;
+        }
+        String relativePath = removeEnd(path.substring(basePath.length()), "/");
+        return CACHEABLE_PATHS.stream().anyMatch(pattern -> pattern.matcher(relativePath).matches());
+    }
+
+    /**
+     * Caches a response, unless it carries no validators or is too big for the cache.
+     *
+     * @param key     identifies the request, including the type of its result
+     * @param headers the headers of the response, including its validators
+     * @param body    the body of the response, which must not be changed afterwards
+     */
+    public synchronized void put(String key, Headers headers, byte[] body) {
+        missCount.incrementAndGet();
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous.body.length;
+        }
+        Entry entry = new Entry(headers, body);
+        if ((entry.getEtag() == null && entry.getLastModified() == null) || body.length > maxSize) {
+            return;
+        }
+        entries.put(key, entry);
+        size += body.length;
+        for (Iterator<Entry> it = entries.values().iterator(); size > maxSize && it.hasNext(); ) {
+            size -= it.next().body.length;
+            it.remove();
+        }
+    }
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    /**
+     * A cached response and the validators to check it is still current.
+     */
+    public static final class Entry {
+
+        private final byte[] body;
+        private final Headers headers;
+
+        private Entry(Headers headers, byte[] body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @CheckForNull
+        public String getEtag() {
+            return headers.get(HttpHeaders.ETAG);
+        }
+
+        public Headers getHeaders() {
+            return headers;
+        }
+
+        @CheckForNull
+        public String getLastModified() {
+            return headers.get(HttpHeaders.LAST_MODIFIED);
+        }
+
+        /**
+         * @return a new stream over the cached body
+         */
+        public InputStream openBody() {
+            return new ByteArrayInputStream(body);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookRequest;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -21,6 +23,18 @@ public interface BitbucketWebhookClient {
      */
     Stream<BitbucketWebhook> getWebhooks(String... eventId);
 
+    /**
+     * Returns a stream of the existing webhooks accepted by the given filter. Webhooks are filtered as each page is
+     * read, so those not accepted are never built.
+     *
+     * @param filter   accepts the webhooks to return
+     * @param eventId, Event id filters. These ids are the same as the one recieved as
+     *                 {@link com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookSupportedEvents}
+     * @return a stream of webhooks.
+     * @see #getWebhooks(String...)
+     */
+    Stream<BitbucketWebhook> getWebhooks(Predicate<? super BitbucketWebhook> filter, String... eventId);
+
     /**
      * Registers the given webhook in the Bitbucket Server.
      *
@@ -29,6 +43,14 @@ public interface BitbucketWebhookClient {
      */
     BitbucketWebhook registerWebhook(BitbucketWebhookRequest request);
 
+    /**
+     * Registers the given webhook in the Bitbucket Server asynchronously.
+     *
+     * @param request Webhook details
+     * @return a future completed with the registered webhook
+     */
+    CompletableFuture<BitbucketWebhook> registerWebhookAsync(BitbucketWebhookRequest request);
+
     /**
      * deletes a webhook with given id
      *
@@ -36,6 +58,14 @@ public interface BitbucketWebhookClient {
      */
     void deleteWebhook(int webhookId);
 
+    /**
+     * deletes a webhook with given id asynchronously
+     *
+     * @param webhookId, webhook id.
+     * @return a future completed once the webhook is deleted
+     */
+    CompletableFuture<Void> deleteWebhookAsync(int webhookId);
+
     /**
      * Updates the existing webhook
      * @param id webhook identifier
@@ -43,4 +73,12 @@ public interface BitbucketWebhookClient {
      * @return updated webhook
      */
     BitbucketWebhook updateWebhook(int id, BitbucketWebhookRequest request);
+
+    /**
+     * Updates the existing webhook asynchronously
+     * @param id webhook identifier
+     * @param request webhook with update field
+     * @return a future completed with the updated webhook
+     */
+    CompletableFuture<BitbucketWebhook> updateWebhookAsync(int id, BitbucketWebhookRequest request);
 }
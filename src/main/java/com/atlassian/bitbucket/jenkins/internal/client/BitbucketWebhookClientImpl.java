@@ -2,17 +2,21 @@ package com.atlassian.bitbucket.jenkins.internal.client;
 
 import com.atlassian.bitbucket.jenkins.internal.client.paging.BitbucketPageStreamUtil;
 import com.atlassian.bitbucket.jenkins.internal.client.paging.NextPageFetcher;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.OffsetPageFetcher;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketResponse;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookRequest;
-import com.fasterxml.jackson.core.type.TypeReference;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.FutureUtils.thenApply;
 import static java.lang.String.valueOf;
 import static java.util.Arrays.stream;
 import static java.util.Objects.requireNonNull;
@@ -44,6 +48,14 @@ public class BitbucketWebhookClientImpl implements BitbucketWebhookClient {
         bitbucketRequestExecutor.makeDeleteRequest(deleteUrl);
     }
 
+    @Override
+    public CompletableFuture<Void> deleteWebhookAsync(int webhookId) {
+        HttpUrl deleteUrl = url.newBuilder()
+                .addPathSegment(String.valueOf(webhookId))
+                .build();
+        return bitbucketRequestExecutor.makeDeleteRequestAsync(deleteUrl);
+    }
+
     @Override
     public BitbucketWebhook updateWebhook(int id, BitbucketWebhookRequest request) {
         HttpUrl updateUrl = url.newBuilder()
@@ -52,14 +64,29 @@ public class BitbucketWebhookClientImpl implements BitbucketWebhookClient {
         return bitbucketRequestExecutor.makePutRequest(updateUrl, request, BitbucketWebhook.class).getBody();
     }
 
+    @Override
+    public CompletableFuture<BitbucketWebhook> updateWebhookAsync(int id, BitbucketWebhookRequest request) {
+        HttpUrl updateUrl = url.newBuilder()
+                .addPathSegment(String.valueOf(id))
+                .build();
+        return thenApply(bitbucketRequestExecutor.makePutRequestAsync(updateUrl, request, BitbucketWebhook.class),
+                BitbucketResponse::getBody);
+    }
+
     @Override
     public Stream<BitbucketWebhook> getWebhooks(String... eventIdFilter) {
+        return getWebhooks(webhook -> true, eventIdFilter);
+    }
+
+    @Override
+    public Stream<BitbucketWebhook> getWebhooks(Predicate<? super BitbucketWebhook> filter, String... eventIdFilter) {
         HttpUrl.Builder urlBuilder = url.newBuilder();
         stream(eventIdFilter).forEach(eventId -> urlBuilder.addQueryParameter("event", eventId));
         HttpUrl url = urlBuilder.build();
         BitbucketPage<BitbucketWebhook> firstPage =
-                bitbucketRequestExecutor.makeGetRequest(url, new TypeReference<BitbucketPage<BitbucketWebhook>>() {}).getBody();
-        return BitbucketPageStreamUtil.toStream(firstPage, new NextPageFetcherImpl(url, bitbucketRequestExecutor))
+                bitbucketRequestExecutor.makeGetPageRequest(url, BitbucketWebhook.class, filter).getBody();
+        return BitbucketPageStreamUtil.toPrefetchingStream(firstPage,
+                new NextPageFetcherImpl(url, bitbucketRequestExecutor, filter))
                 .map(BitbucketPage::getValues).flatMap(Collection::stream);
     }
 
@@ -72,15 +99,32 @@ public class BitbucketWebhookClientImpl implements BitbucketWebhookClient {
                 BitbucketWebhook.class).getBody();
     }
 
-    static class NextPageFetcherImpl implements NextPageFetcher<BitbucketWebhook> {
+    @Override
+    public CompletableFuture<BitbucketWebhook> registerWebhookAsync(BitbucketWebhookRequest request) {
+        return thenApply(bitbucketRequestExecutor.makePostRequestAsync(
+                url,
+                request,
+                Headers.of(Collections.emptyMap()),
+                BitbucketWebhook.class), BitbucketResponse::getBody);
+    }
+
+    static class NextPageFetcherImpl implements NextPageFetcher<BitbucketWebhook>, OffsetPageFetcher<BitbucketWebhook> {
 
         private final HttpUrl url;
         private final BitbucketRequestExecutor bitbucketRequestExecutor;
+        private final Predicate<? super BitbucketWebhook> filter;
 
         NextPageFetcherImpl(HttpUrl url,
                             BitbucketRequestExecutor bitbucketRequestExecutor) {
+            this(url, bitbucketRequestExecutor, webhook -> true);
+        }
+
+        NextPageFetcherImpl(HttpUrl url,
+                            BitbucketRequestExecutor bitbucketRequestExecutor,
+                            Predicate<? super BitbucketWebhook> filter) {
             this.url = url;
             this.bitbucketRequestExecutor = bitbucketRequestExecutor;
+            this.filter = filter;
         }
 
         @Override
@@ -88,13 +132,23 @@ public class BitbucketWebhookClientImpl implements BitbucketWebhookClient {
             if (previous.isLastPage()) {
                 throw new IllegalArgumentException("Last page does not have next page");
             }
-            return bitbucketRequestExecutor.makeGetRequest(
-                    nextPageUrl(previous),
-                    new TypeReference<BitbucketPage<BitbucketWebhook>>() {}).getBody();
+            return bitbucketRequestExecutor.makeGetPageRequest(
+                    nextPageUrl(previous), BitbucketWebhook.class, filter).getBody();
+        }
+
+        @Override
+        public CompletableFuture<BitbucketPage<BitbucketWebhook>> fetch(int start) {
+            // Pages still being fetched are cancelled when the stream is closed, which has to reach the request
+            return thenApply(bitbucketRequestExecutor.makeGetPageRequestAsync(
+                    pageUrl(start), BitbucketWebhook.class, filter), BitbucketResponse::getBody);
         }
 
         private HttpUrl nextPageUrl(BitbucketPage<BitbucketWebhook> previous) {
-            return url.newBuilder().addQueryParameter("start", valueOf(previous.getNextPageStart())).build();
+            return pageUrl(previous.getNextPageStart());
+        }
+
+        private HttpUrl pageUrl(int start) {
+            return url.newBuilder().addQueryParameter("start", valueOf(start)).build();
         }
     }
 }
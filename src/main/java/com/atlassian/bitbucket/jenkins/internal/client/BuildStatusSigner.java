@@ -0,0 +1,143 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBuildStatus;
+import com.atlassian.bitbucket.jenkins.internal.provider.DefaultInstanceKeyPairProvider;
+import com.atlassian.bitbucket.jenkins.internal.provider.InstanceKeyPairProvider;
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Base64;
+import java.util.function.LongSupplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Signs rich build statuses with the private key of the Jenkins instance.
+ * <p>
+ * Looking up the key and initialising a {@link Signature} for it cost more than signing a status, so the key is cached
+ * and re-read every {@link #KEY_REFRESH_INTERVAL} milliseconds to pick up a rotated instance identity, and each thread
+ * keeps a {@link Signature} initialised with the current key. A {@link Signature} resets itself after signing, so it
+ * can be used again straight away.
+ */
+@ThreadSafe
+public class BuildStatusSigner {
+
+    /**
+     * How often to re-read the instance key. Defaults to 1 minute in ms.
+     */
+    public static final long KEY_REFRESH_INTERVAL =
+            parsePositiveLongFromSystemProperty("bitbucket.buildstatus.signing.key.refresh", 60000);
+    private static final String SIGNING_ALGORITHM = "SHA256";
+
+    private final LongSupplier clock;
+    private final InstanceKeyPairProvider instanceKeyPairProvider;
+    private final ThreadLocal<ThreadSignature> signatures = new ThreadLocal<>();
+    private volatile CachedKey cachedKey;
+
+    public BuildStatusSigner(InstanceKeyPairProvider instanceKeyPairProvider) {
+        this(instanceKeyPairProvider, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    BuildStatusSigner(InstanceKeyPairProvider instanceKeyPairProvider, LongSupplier clock) {
+        this.instanceKeyPairProvider = instanceKeyPairProvider;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the signer using the identity of this Jenkins instance
+     */
+    public static BuildStatusSigner getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @return the name of the signature algorithm, as sent to Bitbucket Server alongside the signature
+     */
+    public String getAlgorithm() {
+        return getKey().algorithm;
+    }
+
+    /**
+     * Signs the key, ref, state and URL of the build status.
+     *
+     * @param buildStatus the build status to sign
+     * @return the Base64 encoded signature
+     * @throws GeneralSecurityException if the status could not be signed
+     */
+    public String sign(BitbucketBuildStatus buildStatus) throws GeneralSecurityException {
+        Signature sig = getSignature();
+        try {
+            sig.update(buildStatus.getKey().getBytes(UTF_8));
+            if (buildStatus.getRef() != null) {
+                sig.update(buildStatus.getRef().getBytes(UTF_8));
+            }
+            sig.update(buildStatus.getState().getBytes(UTF_8));
+            sig.update(buildStatus.getUrl().getBytes(UTF_8));
+            return Base64.getEncoder().encodeToString(sig.sign());
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // Don't reuse a signature left part way through signing
+            signatures.remove();
+            throw e;
+        }
+    }
+
+    private CachedKey getKey() {
+        CachedKey current = cachedKey;
+        long now = clock.getAsLong();
+        if (current == null || now - current.loadedAt >= KEY_REFRESH_INTERVAL) {
+            RSAPrivateKey key = instanceKeyPairProvider.getPrivate();
+            // Keep the same instance if the key hasn't changed, so threads don't initialise their signatures again
+            current = current != null && current.key.equals(key) ?
+                    new CachedKey(current.key, current.algorithm, now) :
+                    new CachedKey(key, SIGNING_ALGORITHM + "with" + key.getAlgorithm(), now);
+            cachedKey = current;
+        }
+        return current;
+    }
+
+    private Signature getSignature() throws GeneralSecurityException {
+        CachedKey key = getKey();
+        ThreadSignature threadSignature = signatures.get();
+        if (threadSignature == null || threadSignature.key != key.key) {
+            Signature sig = Signature.getInstance(key.algorithm);
+            sig.initSign(key.key);
+            threadSignature = new ThreadSignature(key.key, sig);
+            signatures.set(threadSignature);
+        }
+        return threadSignature.signature;
+    }
+
+    private static final class CachedKey {
+
+        private final String algorithm;
+        private final RSAPrivateKey key;
+        private final long loadedAt;
+
+        private CachedKey(RSAPrivateKey key, String algorithm, long loadedAt) {
+            this.key = key;
+            this.algorithm = algorithm;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class DefaultHolder {
+
+        private static final BuildStatusSigner INSTANCE = new BuildStatusSigner(new DefaultInstanceKeyPairProvider());
+    }
+
+    private static final class ThreadSignature {
+
+        private final RSAPrivateKey key;
+        private final Signature signature;
+
+        private ThreadSignature(RSAPrivateKey key, Signature signature) {
+            this.key = key;
+            this.signature = signature;
+        }
+    }
+}
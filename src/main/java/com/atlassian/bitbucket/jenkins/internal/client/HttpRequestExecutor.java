@@ -8,10 +8,17 @@ import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.Response;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 /**
  * Responsible for making remote HTTP calls to the given URL using passed in credentials. The implementation is tightly
  * bound with OkHttpClient library. Methods also takes {@link ResponseConsumer} instead of returning response in order
  * to have better handle on cleaning of resources.
+ * <p>
+ * Each call has an asynchronous variant that returns straight away and completes its future once the request is done,
+ * without holding a thread while waiting for the server. The future completes exceptionally with the same exceptions
+ * the synchronous call would throw, and cancelling it cancels the request.
  */
 @ImplementedBy(HttpRequestExecutorImpl.class)
 public interface HttpRequestExecutor {
@@ -30,6 +37,16 @@ public interface HttpRequestExecutor {
      */
     void executeDelete(HttpUrl url, BitbucketCredentials credentials);
 
+    /**
+     * Executes a delete call asynchronously.
+     *
+     * @param url         the delete url
+     * @param credentials credentials to use for deletion
+     * @return a future completed once the resource is deleted
+     * @see #executeDelete(HttpUrl, BitbucketCredentials)
+     */
+    CompletableFuture<Void> executeDeleteAsync(HttpUrl url, BitbucketCredentials credentials);
+
     /**
      * Executes a Get call to a given URL.
      *
@@ -47,6 +64,33 @@ public interface HttpRequestExecutor {
      */
     <T> T executeGet(HttpUrl url, BitbucketCredentials credentials, ResponseConsumer<T> consumer);
 
+    /**
+     * Executes a Get call to a given URL with the given headers. A {@code 304 Not Modified} response to a conditional
+     * request is passed to the consumer like a successful one.
+     *
+     * @param url         The URL to hit on bitbucket server end
+     * @param credentials Credentials that will be used in making calls
+     * @param headers     the headers to send with the request
+     * @param consumer    on successful execution, {@link Response} will be passed to consumer
+     * @param <T>         result that consumer wish to return
+     * @return result
+     * @see #executeGet(HttpUrl, BitbucketCredentials, ResponseConsumer)
+     */
+    <T> T executeGet(HttpUrl url, BitbucketCredentials credentials, Headers headers, ResponseConsumer<T> consumer);
+
+    /**
+     * Executes a Get call to a given URL asynchronously.
+     *
+     * @param url         The URL to hit on bitbucket server end
+     * @param credentials Credentials that will be used in making calls
+     * @param consumer    on successful execution, {@link Response} will be passed to consumer
+     * @param <T>         result that consumer wish to return
+     * @return a future completed with the result
+     * @see #executeGet(HttpUrl, BitbucketCredentials, ResponseConsumer)
+     */
+    <T> CompletableFuture<T> executeGetAsync(HttpUrl url, BitbucketCredentials credentials,
+                                             ResponseConsumer<T> consumer);
+
     /**
      * Executes a POST with a given URL and request payload, with any custom headers.
      *
@@ -67,6 +111,21 @@ public interface HttpRequestExecutor {
     <T> T executePost(HttpUrl url, BitbucketCredentials credentials, String requestBodyAsJson,
                       ResponseConsumer<T> consumer, Headers headers);
 
+    /**
+     * Executes a POST with a given URL and request payload, with any custom headers, asynchronously.
+     *
+     * @param url               The URL to hit on bitbucket server end
+     * @param credentials       Credentials that will be used in making calls
+     * @param requestBodyAsJson the request payload to send in JSON format
+     * @param consumer          on successful execution, {@link Response} will be passed to consumer
+     * @param headers           the headers to send with the request
+     * @param <T>               result that consumer wish to return
+     * @return a future completed with the result computed by consumer
+     * @see #executePost(HttpUrl, BitbucketCredentials, String, ResponseConsumer, Headers)
+     */
+    <T> CompletableFuture<T> executePostAsync(HttpUrl url, BitbucketCredentials credentials, String requestBodyAsJson,
+                                              ResponseConsumer<T> consumer, Headers headers);
+
     /**
      * Executes a PUT with a given URL and request payload.
      *
@@ -86,6 +145,42 @@ public interface HttpRequestExecutor {
     <T> T executePut(HttpUrl url, BitbucketCredentials credentials, String requestBodyAsJson,
                      ResponseConsumer<T> consumer);
 
+    /**
+     * Executes a PUT with a given URL and request payload asynchronously.
+     *
+     * @param url               The URL to hit on bitbucket server end
+     * @param credentials       Credentials that will be used in making calls
+     * @param requestBodyAsJson the request payload to send in JSON format
+     * @param consumer          on successful execution, {@link Response} will be passed to consumer
+     * @param <T>               Type of result
+     * @return a future completed with the result computed by consumer
+     * @see #executePut(HttpUrl, BitbucketCredentials, String, ResponseConsumer)
+     */
+    <T> CompletableFuture<T> executePutAsync(HttpUrl url, BitbucketCredentials credentials, String requestBodyAsJson,
+                                             ResponseConsumer<T> consumer);
+
+    /**
+     * Returns an executor that sends every attempt at a request made with the synchronous methods through the given
+     * guard. Retries, and the wait before them, happen outside the guard.
+     *
+     * @param guard the guard to send each attempt through, such as a circuit breaker
+     * @return the guarded executor
+     */
+    HttpRequestExecutor withAttemptGuard(AttemptGuard guard);
+
+    /**
+     * Wraps a single attempt at sending a request.
+     */
+    interface AttemptGuard {
+
+        /**
+         * @param attempt sends the request once and returns its result
+         * @param <T>     the type of the result
+         * @return the result of the attempt
+         */
+        <T> T attempt(Supplier<T> attempt);
+    }
+
     interface ResponseConsumer<T> {
 
         ResponseConsumer<Void> EMPTY_RESPONSE = response -> null;
@@ -0,0 +1,77 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lets one request stand in for identical requests made while it is in flight: the first caller for a key sends the
+ * request, and callers asking for the same key before it completes wait for and share its result, or its failure,
+ * instead of sending the request again. Nothing is kept once the request completes, so later callers always send a new
+ * request.
+ * <p>
+ * Callers sharing a result share the same object, so results must not be modified.
+ *
+ * @param <K> the type of the key identifying identical requests
+ */
+@ThreadSafe
+public class RequestCoalescer<K> {
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final ConcurrentMap<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sentCount = new AtomicLong();
+
+    /**
+     * Sends the request, or waits for the identical request already in flight.
+     *
+     * @param key     identifies identical requests
+     * @param request sends the request and returns its result
+     * @param <T>     the type of the result
+     * @return the result of the request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(K key, Supplier<T> request) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCount.incrementAndGet();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        sentCount.incrementAndGet();
+        try {
+            T result = request.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return the number of requests not sent because an identical request was in flight
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of requests sent
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+}
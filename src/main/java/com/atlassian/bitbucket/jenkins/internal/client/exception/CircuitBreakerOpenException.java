@@ -0,0 +1,22 @@
+package com.atlassian.bitbucket.jenkins.internal.client.exception;
+
+/**
+ * The request was not sent because recent requests to the server failed or were too slow, and the circuit breaker for
+ * the server is open.
+ */
+public class CircuitBreakerOpenException extends BitbucketClientException {
+
+    private final long retryAfterMillis;
+
+    public CircuitBreakerOpenException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return how long until the circuit breaker lets a request through again, in ms
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -2,16 +2,63 @@ package com.atlassian.bitbucket.jenkins.internal.client.paging;
 
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 
+import javax.annotation.CheckForNull;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
 /**
- * Provides a way to return Stream of page based on first page and {@link NextPageFetcher}.
+ * Provides a way to return Stream of page based on first page and {@link NextPageFetcher} or
+ * {@link OffsetPageFetcher}.
  */
 public final class BitbucketPageStreamUtil {
 
+    /**
+     * How many pages to fetch ahead of the consumer of a prefetching stream. Defaults to 2.
+     */
+    static final int PREFETCH_DEPTH = (int) parsePositiveLongFromSystemProperty("bitbucket.paging.prefetch", 2);
+
+    /**
+     * Returns a Stream of Bitbucket Pages that fetches the next {@link #PREFETCH_DEPTH} pages while the current one
+     * is consumed.
+     *
+     * @param firstPage   First Page
+     * @param pageFetcher Used for fetching the following pages
+     * @param <T>         Type for Page
+     * @return Stream of pages.
+     * @see #toPrefetchingStream(BitbucketPage, OffsetPageFetcher, int)
+     */
+    public static <T> Stream<BitbucketPage<T>> toPrefetchingStream(@CheckForNull BitbucketPage<T> firstPage,
+                                                                   OffsetPageFetcher<T> pageFetcher) {
+        return toPrefetchingStream(firstPage, pageFetcher, PREFETCH_DEPTH);
+    }
+
+    /**
+     * Returns a Stream of Bitbucket Pages that fetches up to {@code depth} pages ahead of the consumer. The offset of
+     * each page after the next one is worked out from the size of the last page, and if the server pages differently,
+     * for example because elements were added in the meantime, the pages fetched ahead are dropped and fetched again
+     * from the right offset. Closing the stream cancels the pages still being fetched.
+     *
+     * @param firstPage   First Page
+     * @param pageFetcher Used for fetching the following pages
+     * @param depth       how many pages to fetch ahead, 0 fetches each page only once it is needed
+     * @param <T>         Type for Page
+     * @return Stream of pages.
+     */
+    public static <T> Stream<BitbucketPage<T>> toPrefetchingStream(@CheckForNull BitbucketPage<T> firstPage,
+                                                                   OffsetPageFetcher<T> pageFetcher, int depth) {
+        PrefetchingPageIterator<T> iterator = new PrefetchingPageIterator<>(pageFetcher, firstPage, depth);
+        Iterable<BitbucketPage<T>> iterable = () -> iterator;
+        return StreamSupport.stream(iterable.spliterator(), false).onClose(iterator::cancelPending);
+    }
+
     /**
      * Returns a Stream of Bitbucket Pages. {@link NextPageFetcher} provides a way for individual client to provide a way
      * to fetch next page.
@@ -63,4 +110,103 @@ public final class BitbucketPageStreamUtil {
             return result;
         }
     }
+
+    private static class PrefetchingPageIterator<T> implements Iterator<BitbucketPage<T>> {
+
+        private final int depth;
+        private final OffsetPageFetcher<T> pageFetcher;
+        private final Deque<PendingPage<T>> pending = new ArrayDeque<>();
+        private BitbucketPage<T> firstPage;
+        private boolean hasMore;
+        private int nextPageStart;
+        private int requestStart;
+        private int step;
+
+        PrefetchingPageIterator(OffsetPageFetcher<T> pageFetcher, @CheckForNull BitbucketPage<T> firstPage,
+                                int depth) {
+            this.pageFetcher = pageFetcher;
+            this.firstPage = firstPage;
+            this.depth = Math.max(0, depth);
+            hasMore = firstPage != null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasMore;
+        }
+
+        @Override
+        public BitbucketPage<T> next() {
+            if (!hasMore) {
+                throw new NoSuchElementException("There are no more pages");
+            }
+            BitbucketPage<T> page;
+            if (firstPage != null) {
+                page = firstPage;
+                firstPage = null;
+            } else {
+                if (pending.isEmpty() || pending.peek().start != nextPageStart) {
+                    restartFrom(nextPageStart);
+                    request();
+                }
+                page = await(pending.poll().future);
+            }
+
+            if (page.isLastPage()) {
+                hasMore = false;
+                cancelPending();
+            } else {
+                nextPageStart = page.getNextPageStart();
+                step = Math.max(0, nextPageStart - page.getStart());
+                if (!pending.isEmpty() && pending.peek().start != nextPageStart) {
+                    restartFrom(nextPageStart);
+                } else if (pending.isEmpty()) {
+                    requestStart = nextPageStart;
+                }
+                // Only the next page can be requested when its size can't tell where the ones after start
+                int lookahead = step > 0 ? depth : Math.min(depth, 1);
+                while (pending.size() < lookahead) {
+                    request();
+                }
+            }
+            return page;
+        }
+
+        void cancelPending() {
+            pending.forEach(page -> page.future.cancel(true));
+            pending.clear();
+        }
+
+        private static <T> BitbucketPage<T> await(CompletableFuture<BitbucketPage<T>> future) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        private void request() {
+            pending.add(new PendingPage<>(requestStart, pageFetcher.fetch(requestStart)));
+            requestStart += step;
+        }
+
+        private void restartFrom(int start) {
+            cancelPending();
+            requestStart = start;
+        }
+    }
+
+    private static final class PendingPage<T> {
+
+        private final CompletableFuture<BitbucketPage<T>> future;
+        private final int start;
+
+        private PendingPage(int start, CompletableFuture<BitbucketPage<T>> future) {
+            this.start = start;
+            this.future = future;
+        }
+    }
 }
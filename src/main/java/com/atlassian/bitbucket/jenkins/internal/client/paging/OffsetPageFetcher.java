@@ -0,0 +1,22 @@
+package com.atlassian.bitbucket.jenkins.internal.client.paging;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches a page by its start offset rather than from the previous page, so that pages can be requested before the
+ * previous one has arrived.
+ *
+ * @param <T> the type of elements in BitbucketPage
+ */
+public interface OffsetPageFetcher<T> {
+
+    /**
+     * Starts fetching the page at the given offset.
+     *
+     * @param start the offset of the first element of the page
+     * @return a future completed with the page
+     */
+    CompletableFuture<BitbucketPage<T>> fetch(int start);
+}
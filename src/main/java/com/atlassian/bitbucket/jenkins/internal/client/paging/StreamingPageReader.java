@@ -0,0 +1,93 @@
+package com.atlassian.bitbucket.jenkins.internal.client.paging;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reads a page of a paged resource one value at a time, rather than building every value of the page before any is
+ * looked at. Values the filter doesn't accept are dropped as soon as they are read, so reading a large page only
+ * holds on to the values the caller wants. The paging fields are read wherever they are in the response.
+ *
+ * @param <T> the type of the values of the page
+ */
+public final class StreamingPageReader<T> {
+
+    private final Predicate<? super T> filter;
+    private final ObjectMapper objectMapper;
+    private final Class<T> valueType;
+
+    public StreamingPageReader(ObjectMapper objectMapper, Class<T> valueType, Predicate<? super T> filter) {
+        this.objectMapper = objectMapper;
+        this.valueType = valueType;
+        this.filter = filter;
+    }
+
+    /**
+     * Reads a page from the given stream.
+     *
+     * @param in the JSON of the page
+     * @return the page, holding only the values accepted by the filter
+     * @throws IOException if the stream could not be read or is not a page
+     */
+    public BitbucketPage<T> read(InputStream in) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a page");
+            }
+            BitbucketPage<T> page = new BitbucketPage<>();
+            List<T> values = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "isLastPage":
+                        page.setLastPage(parser.getValueAsBoolean());
+                        break;
+                    case "limit":
+                        page.setLimit(parser.getValueAsInt());
+                        break;
+                    case "nextPageStart":
+                        page.setNextPageStart(parser.getValueAsInt());
+                        break;
+                    case "size":
+                        page.setSize(parser.getValueAsInt());
+                        break;
+                    case "start":
+                        page.setStart(parser.getValueAsInt());
+                        break;
+                    case "values":
+                        readValues(parser, values);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            page.setValues(values);
+            return page;
+        }
+    }
+
+    private void readValues(JsonParser parser, List<T> values) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected the values of the page");
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            T value = objectMapper.readValue(parser, valueType);
+            if (filter.test(value)) {
+                values.add(value);
+            }
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package com.atlassian.bitbucket.jenkins.internal.config;
 
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRateLimiter;
+import com.atlassian.bitbucket.jenkins.internal.http.HttpClientSettings;
+import com.atlassian.bitbucket.jenkins.internal.http.HttpClientSettingsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketRepositoryCache;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import com.atlassian.bitbucket.jenkins.internal.scm.MirrorLatencyTable;
+import com.atlassian.bitbucket.jenkins.internal.scm.MirroredRepositoriesCache;
+import com.atlassian.bitbucket.jenkins.internal.scm.RepositoryContentCache;
+import com.google.inject.Injector;
 import hudson.Extension;
 import hudson.model.AbstractProject;
 import hudson.security.ACL;
@@ -16,6 +24,7 @@ import jenkins.scm.api.SCMSource;
 import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.CheckForNull;
@@ -33,11 +42,13 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 @Extension
 @SuppressWarnings(
         "unused") // Stapler calls many of the methods via reflection (such as the setServerList)
-public class BitbucketPluginConfiguration extends GlobalConfiguration {
+public class BitbucketPluginConfiguration extends GlobalConfiguration implements HttpClientSettingsProvider {
 
+    private static final int DEFAULT_WEBHOOK_TRIGGER_THREADS = 10;
     private static final Logger LOGGER = Logger.getLogger(BitbucketPluginConfiguration.class.getName());
 
     private List<BitbucketServerConfiguration> serverList = new ArrayList<>();
+    private Integer webhookTriggerThreads;
 
     public BitbucketPluginConfiguration() {
         getConfigFile().getXStream().alias("atl-bbs-configuration", BitbucketServerConfiguration.class);
@@ -59,12 +70,29 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
                 .collect(Collectors.toList()));
         if (aggregate.kind == Kind.OK) {
             save();
-            updateJobs(oldBaseUrls);
+            Injector injector = Jenkins.get().getInjector();
+            if (injector != null) {
+                // Repositories may now resolve differently, such as with other credentials or on another server
+                injector.getInstance(BitbucketRepositoryCache.class).invalidateAll();
+                injector.getInstance(MirroredRepositoriesCache.class).invalidateAll();
+                injector.getInstance(MirrorLatencyTable.class).invalidateAll();
+                injector.getInstance(RepositoryContentCache.class).invalidateAll();
+            }
+            // Rebuilding every job of a server is bulk work, so leave room for requests users are waiting for
+            BitbucketRateLimiter.inBackground(() -> updateJobs(oldBaseUrls));
             return true;
         }
         return false;
     }
 
+    @Override
+    public Map<String, HttpClientSettings> getHttpClientSettings() {
+        return serverList.stream()
+                .filter(server -> !isBlank(server.getBaseUrl()))
+                .collect(Collectors.toMap(BitbucketServerConfiguration::getBaseUrl,
+                        BitbucketServerConfiguration::getHttpClientSettings, (first, second) -> first));
+    }
+
     public Optional<BitbucketServerConfiguration> getServerById(@CheckForNull String serverId) {
         if (isBlank(serverId)) {
             return empty();
@@ -86,6 +114,20 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
         this.serverList = requireNonNull(serverList);
     }
 
+    /**
+     * Returns the maximum number of webhook triggers polling for changes at the same time, across all instances
+     *
+     * @return the maximum number of webhook trigger workers
+     */
+    public int getWebhookTriggerThreads() {
+        return webhookTriggerThreads == null ? DEFAULT_WEBHOOK_TRIGGER_THREADS : webhookTriggerThreads;
+    }
+
+    @DataBoundSetter
+    public void setWebhookTriggerThreads(int webhookTriggerThreads) {
+        this.webhookTriggerThreads = Math.max(webhookTriggerThreads, 1);
+    }
+
     /**
      * Returns a list of all servers that have been configured by the user and pass the process() function with no
      * errors.
@@ -4,11 +4,14 @@ import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.AuthorizationException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.CircuitBreakerOpenException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.ConnectionFailureException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentialsModule;
+import com.atlassian.bitbucket.jenkins.internal.http.HttpClientSettings;
+import com.atlassian.bitbucket.jenkins.internal.http.HttpRequestExecutorImpl;
 import com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilities;
 import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
@@ -59,7 +62,14 @@ public class BitbucketServerConfiguration
     private final String adminCredentialsId;
     private final String id;
     private String baseUrl;
+    private int connectTimeout;
+    private int keepAlive;
+    private int maxIdleConnections;
+    private int maxRequestsPerHost;
+    private int readTimeout;
     private String serverName;
+    private int webhookTriggerThreads;
+    private int writeTimeout;
 
     @DataBoundConstructor
     public BitbucketServerConfiguration(
@@ -125,10 +135,90 @@ public class BitbucketServerConfiguration
         this.baseUrl = trimToEmpty(baseUrl);
     }
 
+    /**
+     * Returns how long to wait for a connection to the instance
+     *
+     * @return the connect timeout in seconds, or 0 for the default
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = Math.max(connectTimeout, 0);
+    }
+
+    /**
+     * Returns the settings of the HTTP client used to call this instance
+     *
+     * @return the HTTP client settings
+     */
+    public HttpClientSettings getHttpClientSettings() {
+        return new HttpClientSettings(maxIdleConnections, keepAlive, maxRequestsPerHost, connectTimeout, readTimeout,
+                writeTimeout);
+    }
+
     public String getId() {
         return id;
     }
 
+    /**
+     * Returns how long an idle connection to the instance is kept open for reuse
+     *
+     * @return the keep-alive in seconds, or 0 for the default
+     */
+    public int getKeepAlive() {
+        return keepAlive;
+    }
+
+    @DataBoundSetter
+    public void setKeepAlive(int keepAlive) {
+        this.keepAlive = Math.max(keepAlive, 0);
+    }
+
+    /**
+     * Returns how many idle connections to the instance are kept open for reuse
+     *
+     * @return the maximum number of idle connections, or 0 for the default
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    @DataBoundSetter
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = Math.max(maxIdleConnections, 0);
+    }
+
+    /**
+     * Returns how many asynchronous requests, such as build status updates, may be sent to the instance at once
+     *
+     * @return the maximum number of requests in flight, or 0 for the default
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    @DataBoundSetter
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = Math.max(maxRequestsPerHost, 0);
+    }
+
+    /**
+     * Returns how long to wait for the instance to send data
+     *
+     * @return the read timeout in seconds, or 0 for the default
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = Math.max(readTimeout, 0);
+    }
+
     /**
      * Returns the name assigned to the server in Jenkins
      *
@@ -149,6 +239,41 @@ public class BitbucketServerConfiguration
         this.serverName = trimToEmpty(serverName);
     }
 
+    /**
+     * Returns the maximum number of webhook triggers that may poll this instance at the same time, so that a slow or
+     * busy instance cannot hold on to every webhook trigger worker
+     *
+     * @return the maximum number of webhook trigger workers for this instance, or 0 if it is only limited by
+     *         {@link BitbucketPluginConfiguration#getWebhookTriggerThreads()}
+     */
+    public int getWebhookTriggerThreads() {
+        return webhookTriggerThreads;
+    }
+
+    /**
+     * Sets the maximum number of webhook triggers that may poll this instance at the same time
+     *
+     * @param webhookTriggerThreads the maximum number of workers, or 0 for no limit of its own
+     */
+    @DataBoundSetter
+    public void setWebhookTriggerThreads(int webhookTriggerThreads) {
+        this.webhookTriggerThreads = Math.max(webhookTriggerThreads, 0);
+    }
+
+    /**
+     * Returns how long to wait while sending data to the instance
+     *
+     * @return the write timeout in seconds, or 0 for the default
+     */
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    @DataBoundSetter
+    public void setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = Math.max(writeTimeout, 0);
+    }
+
     /**
      * Checks that the configuration is valid
      *
@@ -238,6 +363,8 @@ public class BitbucketServerConfiguration
 
         @Inject
         private BitbucketClientFactoryProvider clientFactoryProvider;
+        @Inject
+        private HttpRequestExecutorImpl httpRequestExecutor;
         private transient JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
 
         @SuppressWarnings("MethodMayBeStatic")
@@ -338,6 +465,10 @@ public class BitbucketServerConfiguration
                     return FormValidation.ok("Jenkins can connect with Bitbucket Server.");
                 }
                 return FormValidation.error("This is not the URL of a Bitbucket Server instance. Enter a different URL and try again.");
+            } catch (CircuitBreakerOpenException e) {
+                return FormValidation.error(
+                        "Requests to this server are paused after too many failures. Try again in %d seconds.",
+                        (e.getRetryAfterMillis() + 999) / 1000);
             } catch (ConnectionFailureException e) {
                 return FormValidation.error(
                         "Could not connect to remote server, please ensure url is correct and server is running");
@@ -352,6 +483,27 @@ public class BitbucketServerConfiguration
             }
         }
 
+        /**
+         * Describes the state of the circuit breaker for the given server, for display on the configuration page.
+         *
+         * @param baseUrl the URL of the server
+         * @return the state of the circuit breaker
+         */
+        public String getCircuitBreakerStatus(String baseUrl) {
+            return clientFactoryProvider.getCircuitBreaker(baseUrl).getStatus();
+        }
+
+        /**
+         * Describes the use of the connection pool for the given server, for display on the configuration page.
+         *
+         * @param baseUrl the URL of the server
+         * @return the state of the connection pool, or null if no request has been sent to the server
+         */
+        @Nullable
+        public String getConnectionPoolStatus(String baseUrl) {
+            return httpRequestExecutor.getConnectionPoolStatus(baseUrl);
+        }
+
         @Override
         public String getDisplayName() {
             return "Instance details";
@@ -0,0 +1,89 @@
+package com.atlassian.bitbucket.jenkins.internal.http;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * Connection pool, dispatcher and timeout settings of the HTTP client used to call one Bitbucket Server instance. A
+ * value of 0 keeps the default of the underlying client.
+ */
+@Immutable
+public class HttpClientSettings {
+
+    /**
+     * Keeps every default of the underlying client.
+     */
+    public static final HttpClientSettings DEFAULT = new HttpClientSettings(0, 0, 0, 0, 0, 0);
+
+    private final int connectTimeoutSeconds;
+    private final int keepAliveSeconds;
+    private final int maxIdleConnections;
+    private final int maxRequestsPerHost;
+    private final int readTimeoutSeconds;
+    private final int writeTimeoutSeconds;
+
+    /**
+     * @param maxIdleConnections    how many idle connections to keep open, defaults to 5
+     * @param keepAliveSeconds      how long an idle connection is kept open, defaults to 5 minutes
+     * @param maxRequestsPerHost    how many asynchronous requests may be in flight at once, defaults to 5
+     * @param connectTimeoutSeconds how long to wait for a connection, defaults to 10 seconds
+     * @param readTimeoutSeconds    how long to wait for data from the server, defaults to 10 seconds
+     * @param writeTimeoutSeconds   how long to wait while sending data to the server, defaults to 10 seconds
+     */
+    public HttpClientSettings(int maxIdleConnections, int keepAliveSeconds, int maxRequestsPerHost,
+                              int connectTimeoutSeconds, int readTimeoutSeconds, int writeTimeoutSeconds) {
+        this.maxIdleConnections = Math.max(0, maxIdleConnections);
+        this.keepAliveSeconds = Math.max(0, keepAliveSeconds);
+        this.maxRequestsPerHost = Math.max(0, maxRequestsPerHost);
+        this.connectTimeoutSeconds = Math.max(0, connectTimeoutSeconds);
+        this.readTimeoutSeconds = Math.max(0, readTimeoutSeconds);
+        this.writeTimeoutSeconds = Math.max(0, writeTimeoutSeconds);
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    public int getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public int getReadTimeoutSeconds() {
+        return readTimeoutSeconds;
+    }
+
+    public int getWriteTimeoutSeconds() {
+        return writeTimeoutSeconds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HttpClientSettings that = (HttpClientSettings) o;
+        return connectTimeoutSeconds == that.connectTimeoutSeconds &&
+               keepAliveSeconds == that.keepAliveSeconds &&
+               maxIdleConnections == that.maxIdleConnections &&
+               maxRequestsPerHost == that.maxRequestsPerHost &&
+               readTimeoutSeconds == that.readTimeoutSeconds &&
+               writeTimeoutSeconds == that.writeTimeoutSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(connectTimeoutSeconds, keepAliveSeconds, maxIdleConnections, maxRequestsPerHost,
+                readTimeoutSeconds, writeTimeoutSeconds);
+    }
+}
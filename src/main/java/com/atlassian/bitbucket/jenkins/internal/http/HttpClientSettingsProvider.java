@@ -0,0 +1,17 @@
+package com.atlassian.bitbucket.jenkins.internal.http;
+
+import hudson.ExtensionPoint;
+
+import java.util.Map;
+
+/**
+ * Supplies the HTTP client settings of each configured Bitbucket Server instance. Looked up as an extension, so that
+ * the HTTP client doesn't depend on where instances are configured.
+ */
+public interface HttpClientSettingsProvider extends ExtensionPoint {
+
+    /**
+     * @return the settings of each configured instance, by base URL
+     */
+    Map<String, HttpClientSettings> getHttpClientSettings();
+}
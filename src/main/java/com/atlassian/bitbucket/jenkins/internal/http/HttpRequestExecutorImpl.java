@@ -3,39 +3,118 @@ package com.atlassian.bitbucket.jenkins.internal.http;
 import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.client.HttpRequestExecutor;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.Extension;
 import hudson.Plugin;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 import okhttp3.*;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.client.HttpRequestExecutor.ResponseConsumer.EMPTY_RESPONSE;
 import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
 import static java.net.HttpURLConnection.*;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.http.HttpHeaders.AUTHORIZATION;
+import static org.apache.http.HttpHeaders.IF_MODIFIED_SINCE;
+import static org.apache.http.HttpHeaders.IF_NONE_MATCH;
+import static org.apache.http.HttpHeaders.RETRY_AFTER;
 
+/**
+ * Sends requests with OkHttp, retrying transient failures according to a {@link RetryPolicy}. A request is only sent
+ * again when doing so is safe: a connection that could not be opened, a 429 or 503 response, or any other server error
+ * or timeout for an idempotent method.
+ */
+@Singleton
 public class HttpRequestExecutorImpl implements HttpRequestExecutor {
 
     private static final int BAD_REQUEST_FAMILY = 4;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final Set<String> IDEMPOTENT_METHODS =
+            new HashSet<>(Arrays.asList("DELETE", "GET", "HEAD", "OPTIONS", "PUT"));
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
     private static final Logger log = Logger.getLogger(HttpRequestExecutorImpl.class.getName());
     private static final int SERVER_ERROR_FAMILY = 5;
 
+    private final AttemptGuard attemptGuard;
+    private final LongSupplier clock;
     private final Call.Factory httpCallFactory;
+    private final RetryPolicy retryPolicy;
+    private final AtomicLong retriesExhaustedCount;
+    private final AtomicLong retryCount;
+    private final Supplier<ScheduledExecutorService> retryScheduler;
+    private final Sleeper sleeper;
 
     @Inject
     public HttpRequestExecutorImpl() {
-        this(new OkHttpClient.Builder().addInterceptor(new UserAgentInterceptor()).build());
+        this(new PerServerCallFactory(new OkHttpClient.Builder().addInterceptor(new UserAgentInterceptor()).build()),
+                RetryPolicy.fromSystemProperties());
     }
 
+    /**
+     * Creates an executor that sends each request once.
+     *
+     * @param httpCallFactory the factory to create calls with
+     */
     public HttpRequestExecutorImpl(Call.Factory httpCallFactory) {
+        this(httpCallFactory, RetryPolicy.NO_RETRY);
+    }
+
+    public HttpRequestExecutorImpl(Call.Factory httpCallFactory, RetryPolicy retryPolicy) {
+        this(httpCallFactory, retryPolicy, Thread::sleep, Timer::get, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    HttpRequestExecutorImpl(Call.Factory httpCallFactory, RetryPolicy retryPolicy, Sleeper sleeper,
+                            Supplier<ScheduledExecutorService> retryScheduler, LongSupplier clock) {
         this.httpCallFactory = httpCallFactory;
+        this.retryPolicy = retryPolicy;
+        this.sleeper = sleeper;
+        this.retryScheduler = retryScheduler;
+        this.clock = clock;
+        attemptGuard = HttpRequestExecutorImpl::sendUnguarded;
+        retriesExhaustedCount = new AtomicLong();
+        retryCount = new AtomicLong();
+    }
+
+    /**
+     * Creates a view of the executor that sends each attempt through the guard, and shares everything else.
+     */
+    private HttpRequestExecutorImpl(HttpRequestExecutorImpl executor, AttemptGuard attemptGuard) {
+        httpCallFactory = executor.httpCallFactory;
+        retryPolicy = executor.retryPolicy;
+        sleeper = executor.sleeper;
+        retryScheduler = executor.retryScheduler;
+        clock = executor.clock;
+        retriesExhaustedCount = executor.retriesExhaustedCount;
+        retryCount = executor.retryCount;
+        this.attemptGuard = attemptGuard;
     }
 
     @Override
@@ -44,12 +123,32 @@ public class HttpRequestExecutorImpl implements HttpRequestExecutor {
         executeRequest(requestBuilder, credentials, EMPTY_RESPONSE);
     }
 
+    @Override
+    public CompletableFuture<Void> executeDeleteAsync(HttpUrl url, BitbucketCredentials credentials) {
+        Request.Builder requestBuilder = new Request.Builder().url(url).delete();
+        return executeRequestAsync(requestBuilder, credentials, EMPTY_RESPONSE);
+    }
+
     @Override
     public <T> T executeGet(HttpUrl url, BitbucketCredentials credentials, ResponseConsumer<T> consumer) {
         Request.Builder requestBuilder = new Request.Builder().url(url);
         return executeRequest(requestBuilder, credentials, consumer);
     }
 
+    @Override
+    public <T> T executeGet(HttpUrl url, BitbucketCredentials credentials, Headers headers,
+                            ResponseConsumer<T> consumer) {
+        Request.Builder requestBuilder = new Request.Builder().url(url).headers(headers);
+        return executeRequest(requestBuilder, credentials, consumer);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeGetAsync(HttpUrl url, BitbucketCredentials credentials,
+                                                    ResponseConsumer<T> consumer) {
+        Request.Builder requestBuilder = new Request.Builder().url(url);
+        return executeRequestAsync(requestBuilder, credentials, consumer);
+    }
+
     @Override
     public <T> T executePost(HttpUrl url, BitbucketCredentials credential, String requestBodyAsJson,
                              ResponseConsumer<T> consumer, Headers headers) {
@@ -58,6 +157,15 @@ public class HttpRequestExecutorImpl implements HttpRequestExecutor {
         return executeRequest(requestBuilder, credential, consumer);
     }
 
+    @Override
+    public <T> CompletableFuture<T> executePostAsync(HttpUrl url, BitbucketCredentials credential,
+                                                     String requestBodyAsJson, ResponseConsumer<T> consumer,
+                                                     Headers headers) {
+        Request.Builder requestBuilder =
+                new Request.Builder().post(RequestBody.create(JSON, requestBodyAsJson)).url(url).headers(headers);
+        return executeRequestAsync(requestBuilder, credential, consumer);
+    }
+
     @Override
     public <T> T executePut(HttpUrl url, BitbucketCredentials credentials, String requestBodyAsJson,
                             ResponseConsumer<T> consumer) {
@@ -66,28 +174,241 @@ public class HttpRequestExecutorImpl implements HttpRequestExecutor {
         return executeRequest(requestBuilder, credentials, consumer);
     }
 
+    @Override
+    public <T> CompletableFuture<T> executePutAsync(HttpUrl url, BitbucketCredentials credentials,
+                                                    String requestBodyAsJson, ResponseConsumer<T> consumer) {
+        Request.Builder requestBuilder =
+                new Request.Builder().put(RequestBody.create(JSON, requestBodyAsJson)).url(url);
+        return executeRequestAsync(requestBuilder, credentials, consumer);
+    }
+
+    /**
+     * Describes the use of the connection pool of the given instance, for administrators.
+     *
+     * @param baseUrl the base URL of the instance
+     * @return the pool status, or null if not known
+     */
+    @Nullable
+    public String getConnectionPoolStatus(String baseUrl) {
+        return httpCallFactory instanceof PerServerCallFactory ?
+                ((PerServerCallFactory) httpCallFactory).getPoolStatus(baseUrl) : null;
+    }
+
+    /**
+     * Makes the next requests use the HTTP client settings as they are now, rather than those looked up before.
+     */
+    public void httpClientSettingsChanged() {
+        if (httpCallFactory instanceof PerServerCallFactory) {
+            ((PerServerCallFactory) httpCallFactory).invalidateSettings();
+        }
+    }
+
+    /**
+     * @return how many times a request has been sent again after a transient failure
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return how many requests failed with a transient error after running out of attempts or budget
+     */
+    public long getRetriesExhaustedCount() {
+        return retriesExhaustedCount.get();
+    }
+
+    @Override
+    public HttpRequestExecutor withAttemptGuard(AttemptGuard guard) {
+        return new HttpRequestExecutorImpl(this, guard);
+    }
+
     private <T> T executeRequest(Request.Builder requestBuilder, BitbucketCredentials credentials,
                                  ResponseConsumer<T> consumer) {
-        try {
-            addAuthentication(credentials, requestBuilder);
-            Response response = httpCallFactory.newCall(requestBuilder.build()).execute();
-            int responseCode = response.code();
+        addAuthentication(credentials, requestBuilder);
+        Request request = requestBuilder.build();
+        boolean idempotent = IDEMPOTENT_METHODS.contains(request.method());
+        long deadline = clock.getAsLong() + retryPolicy.getBudgetMillis();
+        for (int attempt = 1; ; attempt++) {
+            int attemptNumber = attempt;
+            AtomicLong delay = new AtomicLong(-1);
+            try {
+                return attemptGuard.attempt(() ->
+                        sendAttempt(request, idempotent, attemptNumber, deadline, delay, consumer));
+            } catch (BitbucketClientException e) {
+                if (delay.get() < 0) {
+                    throw e;
+                }
+            }
+            retryCount.incrementAndGet();
+            try {
+                sleeper.sleep(delay.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BitbucketClientException("Interrupted while waiting to retry the request", e);
+            }
+        }
+    }
 
+    /**
+     * Sends a request once. An attempt that should be retried fails like the last attempt would, so that the guard
+     * around it sees the failure, and leaves how long to wait before the next attempt in {@code retryDelay}.
+     */
+    private <T> T sendAttempt(Request request, boolean idempotent, int attempt, long deadline,
+                              AtomicLong retryDelay, ResponseConsumer<T> consumer) {
+        try {
+            Response response = newCall(request, deadline).execute();
             try (ResponseBody body = response.body()) {
-                if (response.isSuccessful()) {
+                if (isSuccessful(request, response)) {
                     log.fine("Bitbucket - call successful");
                     return consumer.consume(response);
                 }
-                handleError(responseCode, body == null ? null : body.string());
+                retryDelay.set(handleFailedResponse(response, body, idempotent, attempt, deadline));
+                if (response.code() / 100 == SERVER_ERROR_FAMILY) {
+                    throw new ServerErrorException("The server failed to service request", response.code(), null);
+                }
+                throw new UnhandledErrorException("Unhandled error", response.code(), null);
             }
-        } catch (ConnectException | SocketTimeoutException e) {
-            log.log(Level.FINE, "Bitbucket - Connection failed", e);
-            throw new ConnectionFailureException(e);
         } catch (IOException e) {
-            log.log(Level.FINE, "Bitbucket - io exception", e);
-            throw new BitbucketClientException(e);
+            retryDelay.set(handleFailure(e, idempotent, attempt, deadline));
+            throw new ConnectionFailureException(e);
+        }
+    }
+
+    /**
+     * Creates a call limited to what is left of the budget of the request, so that a server that stops responding
+     * can't hold the request up for longer than the budget.
+     */
+    private Call newCall(Request request, long deadline) {
+        Call call = httpCallFactory.newCall(request);
+        if (retryPolicy.getBudgetMillis() > 0) {
+            call.timeout().timeout(Math.max(1, deadline - clock.getAsLong()), TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
+
+    private static <T> T sendUnguarded(Supplier<T> attempt) {
+        return attempt.get();
+    }
+
+    private <T> CompletableFuture<T> executeRequestAsync(Request.Builder requestBuilder,
+                                                         BitbucketCredentials credentials,
+                                                         ResponseConsumer<T> consumer) {
+        addAuthentication(credentials, requestBuilder);
+        AsyncRequest<T> asyncRequest = new AsyncRequest<>(requestBuilder.build(), consumer);
+        asyncRequest.attempt();
+        return asyncRequest.future;
+    }
+
+    /**
+     * A not modified response is only successful for a conditional request, whose caller has the cached response it
+     * refers to. Sent to any other request it is an error, as there is no body to read.
+     */
+    private static boolean isSuccessful(Request request, Response response) {
+        return response.isSuccessful() || (response.code() == HTTP_NOT_MODIFIED && isConditional(request));
+    }
+
+    private static boolean isConditional(Request request) {
+        return request.header(IF_NONE_MATCH) != null || request.header(IF_MODIFIED_SINCE) != null;
+    }
+
+    /**
+     * Maps a response that was not successful to an exception, unless the request should be retried.
+     *
+     * @return how long to wait before retrying the request, in ms
+     * @throws IOException if the body of the response could not be read
+     */
+    private long handleFailedResponse(Response response, @Nullable ResponseBody body, boolean idempotent,
+                                      int attempt, long deadline) throws IOException {
+        int responseCode = response.code();
+        String bodyString = body == null ? null : body.string();
+        long delay = isRetryable(responseCode, idempotent) ?
+                getRetryDelay(attempt, deadline, response.header(RETRY_AFTER)) : -1;
+        if (delay < 0) {
+            handleError(responseCode, bodyString);
+            throw new UnhandledErrorException("Unhandled error", -1, null);
+        }
+        log.fine("Bitbucket - responded with " + responseCode + ", retrying in " + delay + "ms");
+        return delay;
+    }
+
+    /**
+     * Maps a request that failed without a response to an exception, unless the request should be retried.
+     *
+     * @return how long to wait before retrying the request, in ms
+     */
+    private long handleFailure(IOException e, boolean idempotent, int attempt, long deadline) {
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            // The call ran out of the budget for the request
+            log.log(Level.FINE, "Bitbucket - request timed out", e);
+            throw new ConnectionFailureException(e);
+        }
+        if (e instanceof ConnectException || e instanceof SocketTimeoutException) {
+            // The request may have reached the server before a timeout, so only retry one that is safe to repeat
+            long delay = e instanceof ConnectException || idempotent ? getRetryDelay(attempt, deadline, null) : -1;
+            if (delay < 0) {
+                log.log(Level.FINE, "Bitbucket - Connection failed", e);
+                throw new ConnectionFailureException(e);
+            }
+            log.fine("Bitbucket - Connection failed, retrying in " + delay + "ms");
+            return delay;
+        }
+        log.log(Level.FINE, "Bitbucket - io exception", e);
+        throw new BitbucketClientException(e);
+    }
+
+    /**
+     * Too many requests and unavailable responses are sent before the server acts on a request, so those are always
+     * safe to retry. Other server errors are only retried for methods that can safely be repeated.
+     */
+    private static boolean isRetryable(int responseCode, boolean idempotent) {
+        if (responseCode == HTTP_TOO_MANY_REQUESTS || responseCode == HTTP_UNAVAILABLE) {
+            return true;
+        }
+        return idempotent && responseCode / 100 == SERVER_ERROR_FAMILY;
+    }
+
+    /**
+     * @return how long to wait before the next attempt, in ms, or -1 if the request should not be retried
+     */
+    private long getRetryDelay(int attempt, long deadline, @Nullable String retryAfter) {
+        if (attempt >= retryPolicy.getMaxAttempts()) {
+            if (retryPolicy.getMaxAttempts() > 1) {
+                retriesExhaustedCount.incrementAndGet();
+            }
+            return -1;
+        }
+        long now = clock.getAsLong();
+        long delay = parseRetryAfter(retryAfter, now);
+        if (delay < 0) {
+            delay = retryPolicy.getBackoffMillis(attempt, ThreadLocalRandom.current().nextDouble());
+        }
+        if (now + delay > deadline) {
+            retriesExhaustedCount.incrementAndGet();
+            return -1;
+        }
+        return delay;
+    }
+
+    /**
+     * @return the wait asked for by a {@code Retry-After} header in either seconds or HTTP date form, in ms, or -1
+     *         if there is no valid header
+     */
+    private static long parseRetryAfter(@Nullable String retryAfter, long now) {
+        if (isBlank(retryAfter)) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try a date
+        }
+        try {
+            return Math.max(0,
+                    ZonedDateTime.parse(retryAfter.trim(), RFC_1123_DATE_TIME).toInstant().toEpochMilli() - now);
+        } catch (DateTimeParseException e) {
+            log.fine("Bitbucket - ignoring invalid Retry-After header: " + retryAfter);
+            return -1;
         }
-        throw new UnhandledErrorException("Unhandled error", -1, null);
     }
 
     private void addAuthentication(BitbucketCredentials credential, Request.Builder requestBuilder) {
@@ -132,6 +453,108 @@ public class HttpRequestExecutorImpl implements HttpRequestExecutor {
         throw new UnhandledErrorException("Unhandled error", responseCode, body);
     }
 
+    /**
+     * A request sent with {@link Call#enqueue(Callback)}, whose retries are scheduled rather than waited for. Each
+     * attempt is limited to what is left of the budget of the request, and cancelling the future cancels the attempt
+     * in progress.
+     */
+    private final class AsyncRequest<T> implements Callback {
+
+        private final ResponseConsumer<T> consumer;
+        private final AtomicReference<Call> currentCall = new AtomicReference<>();
+        private final long deadline;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final boolean idempotent;
+        private final Request request;
+        private volatile int attempt;
+
+        private AsyncRequest(Request request, ResponseConsumer<T> consumer) {
+            this.request = request;
+            this.consumer = consumer;
+            idempotent = IDEMPOTENT_METHODS.contains(request.method());
+            deadline = clock.getAsLong() + retryPolicy.getBudgetMillis();
+            future.whenComplete((result, throwable) -> {
+                Call call = currentCall.get();
+                if (future.isCancelled() && call != null) {
+                    call.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            if (future.isDone()) {
+                // Cancelled
+                return;
+            }
+            try {
+                retry(handleFailure(e, idempotent, attempt, deadline));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try {
+                long delay;
+                try (ResponseBody body = response.body()) {
+                    if (isSuccessful(request, response)) {
+                        log.fine("Bitbucket - call successful");
+                        future.complete(consumer.consume(response));
+                        return;
+                    }
+                    delay = handleFailedResponse(response, body, idempotent, attempt, deadline);
+                } catch (IOException e) {
+                    delay = handleFailure(e, idempotent, attempt, deadline);
+                }
+                retry(delay);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void attempt() {
+            try {
+                attempt++;
+                Call call = newCall(request, deadline);
+                currentCall.set(call);
+                if (future.isDone()) {
+                    call.cancel();
+                    return;
+                }
+                call.enqueue(this);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void retry(long delay) {
+            retryCount.incrementAndGet();
+            retryScheduler.get().schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+
+        @Inject
+        private HttpRequestExecutorImpl httpRequestExecutor;
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof HttpClientSettingsProvider) {
+                httpRequestExecutor.httpClientSettingsChanged();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+
+        void sleep(long millis) throws InterruptedException;
+    }
+
     /**
      * Having this as a client level interceptor means we can configure it once to set the
      * user-agent and not have to worry about setting the header for every request.
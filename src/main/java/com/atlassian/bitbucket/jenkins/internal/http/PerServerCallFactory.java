@@ -0,0 +1,177 @@
+package com.atlassian.bitbucket.jenkins.internal.http;
+
+import com.google.common.annotations.VisibleForTesting;
+import hudson.ExtensionList;
+import jenkins.model.Jenkins;
+import okhttp3.*;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.util.Collections.emptyMap;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+/**
+ * Creates calls with a client of their own for each configured Bitbucket Server instance, so that the connection pool,
+ * dispatcher limits and timeouts can be set per instance. Each client is derived from one base client and shares its
+ * thread pool. Requests to a URL that isn't below the base URL of a configured instance, such as a mirror, use the
+ * base client.
+ * <p>
+ * The settings are looked up once and kept until {@link #invalidateSettings()} is called, as the lookup goes through
+ * every configured instance and would otherwise run for every request.
+ */
+@ThreadSafe
+public class PerServerCallFactory implements Call.Factory {
+
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+
+    private final OkHttpClient baseClient;
+    private final Map<String, ServerClient> clients = new ConcurrentHashMap<>();
+    private final Supplier<Map<String, HttpClientSettings>> settingsSupplier;
+    private volatile Map<String, HttpClientSettings> settings;
+
+    public PerServerCallFactory(OkHttpClient baseClient) {
+        this(baseClient, PerServerCallFactory::lookupSettings);
+    }
+
+    @VisibleForTesting
+    PerServerCallFactory(OkHttpClient baseClient, Supplier<Map<String, HttpClientSettings>> settingsSupplier) {
+        this.baseClient = baseClient;
+        this.settingsSupplier = settingsSupplier;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return getClient(request.url()).newCall(request);
+    }
+
+    /**
+     * Describes the use of the connection pool and dispatcher of the given instance, for administrators.
+     *
+     * @param baseUrl the base URL of the instance
+     * @return the pool status, or null if no request has been sent to the instance
+     */
+    @CheckForNull
+    public String getPoolStatus(String baseUrl) {
+        ServerClient serverClient = clients.get(removeEnd(baseUrl, "/"));
+        if (serverClient == null) {
+            return null;
+        }
+        ConnectionPool pool = serverClient.client.connectionPool();
+        Dispatcher dispatcher = serverClient.client.dispatcher();
+        return String.format("%d open connections, %d idle, %d requests running and %d queued",
+                pool.connectionCount(), pool.idleConnectionCount(), dispatcher.runningCallsCount(),
+                dispatcher.queuedCallsCount());
+    }
+
+    /**
+     * Drops the settings looked up so far, so that the next request looks them up again. Called when the settings
+     * may have changed, such as when the plugin configuration is saved.
+     */
+    public void invalidateSettings() {
+        settings = null;
+    }
+
+    @VisibleForTesting
+    OkHttpClient getClient(HttpUrl url) {
+        String requestUrl = url.toString();
+        String serverUrl = null;
+        HttpClientSettings serverSettings = null;
+        for (Map.Entry<String, HttpClientSettings> entry : getSettings().entrySet()) {
+            String baseUrl = removeEnd(entry.getKey(), "/");
+            if (isBelow(requestUrl, baseUrl) && (serverUrl == null || baseUrl.length() > serverUrl.length())) {
+                serverUrl = baseUrl;
+                serverSettings = entry.getValue();
+            }
+        }
+        if (serverUrl == null) {
+            return baseClient;
+        }
+        HttpClientSettings settings = serverSettings;
+        return clients.compute(serverUrl, (key, existing) -> {
+            if (existing != null) {
+                if (existing.settings.equals(settings)) {
+                    return existing;
+                }
+                // Requests in flight finish on the old client, but its idle connections are no longer needed
+                existing.client.connectionPool().evictAll();
+            }
+            return new ServerClient(settings, createClient(settings));
+        }).client;
+    }
+
+    private Map<String, HttpClientSettings> getSettings() {
+        Map<String, HttpClientSettings> current = settings;
+        if (current == null) {
+            // Looking them up twice when racing an invalidation is harmless
+            current = settingsSupplier.get();
+            settings = current;
+        }
+        return current;
+    }
+
+    private static boolean isBelow(String url, String baseUrl) {
+        if (!url.startsWith(baseUrl)) {
+            return false;
+        }
+        if (url.length() == baseUrl.length()) {
+            return true;
+        }
+        char next = url.charAt(baseUrl.length());
+        return next == '/' || next == '?' || next == '#';
+    }
+
+    private static Map<String, HttpClientSettings> lookupSettings() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return emptyMap();
+        }
+        Map<String, HttpClientSettings> settings = new HashMap<>();
+        ExtensionList.lookup(HttpClientSettingsProvider.class)
+                .forEach(provider -> settings.putAll(provider.getHttpClientSettings()));
+        return settings;
+    }
+
+    private OkHttpClient createClient(HttpClientSettings settings) {
+        OkHttpClient.Builder builder = baseClient.newBuilder();
+
+        Dispatcher dispatcher = new Dispatcher(baseClient.dispatcher().executorService());
+        if (settings.getMaxRequestsPerHost() > 0) {
+            dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), settings.getMaxRequestsPerHost()));
+            dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+        }
+        builder.dispatcher(dispatcher);
+
+        builder.connectionPool(new ConnectionPool(
+                settings.getMaxIdleConnections() > 0 ? settings.getMaxIdleConnections() : DEFAULT_MAX_IDLE_CONNECTIONS,
+                settings.getKeepAliveSeconds() > 0 ? settings.getKeepAliveSeconds() : DEFAULT_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS));
+
+        if (settings.getConnectTimeoutSeconds() > 0) {
+            builder.connectTimeout(settings.getConnectTimeoutSeconds(), TimeUnit.SECONDS);
+        }
+        if (settings.getReadTimeoutSeconds() > 0) {
+            builder.readTimeout(settings.getReadTimeoutSeconds(), TimeUnit.SECONDS);
+        }
+        if (settings.getWriteTimeoutSeconds() > 0) {
+            builder.writeTimeout(settings.getWriteTimeoutSeconds(), TimeUnit.SECONDS);
+        }
+        return builder.build();
+    }
+
+    private static final class ServerClient {
+
+        private final OkHttpClient client;
+        private final HttpClientSettings settings;
+
+        private ServerClient(HttpClientSettings settings, OkHttpClient client) {
+            this.settings = settings;
+            this.client = client;
+        }
+    }
+}
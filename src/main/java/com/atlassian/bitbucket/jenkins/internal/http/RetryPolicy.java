@@ -0,0 +1,81 @@
+package com.atlassian.bitbucket.jenkins.internal.http;
+
+import javax.annotation.concurrent.Immutable;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Decides how often, and how long to wait before, a failed request to Bitbucket Server is tried again.
+ * <p>
+ * The wait doubles with every retry, starting at the initial backoff and capped at the maximum backoff. Half of each
+ * wait is random, so that requests failed by the same outage don't all come back at once. No retry is made once it
+ * would end after the budget for the request, counted from when it was first sent.
+ */
+@Immutable
+public class RetryPolicy {
+
+    /**
+     * Sends each request once.
+     */
+    public static final RetryPolicy NO_RETRY = new RetryPolicy(1, 0, 0, 0);
+
+    private final int maxAttempts;
+    private final long budgetMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * @param maxAttempts          how many times to send a request at most, including the first attempt
+     * @param initialBackoffMillis the wait before the first retry, in ms
+     * @param maxBackoffMillis     the longest wait between retries, in ms
+     * @param budgetMillis         the longest a request may take with all its retries, in ms
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, long budgetMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoffMillis);
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * The policy configured with system properties:
+     * <ul>
+     *     <li>{@code bitbucket.http.retry.attempts}: attempts per request, defaults to 3</li>
+     *     <li>{@code bitbucket.http.retry.backoff.initial}: first wait in ms, defaults to 200</li>
+     *     <li>{@code bitbucket.http.retry.backoff.max}: longest wait in ms, defaults to 5 seconds</li>
+     *     <li>{@code bitbucket.http.retry.budget}: longest time per request in ms, defaults to 30 seconds</li>
+     * </ul>
+     *
+     * @return the configured policy
+     */
+    public static RetryPolicy fromSystemProperties() {
+        return new RetryPolicy(
+                (int) parsePositiveLongFromSystemProperty("bitbucket.http.retry.attempts", 3),
+                parsePositiveLongFromSystemProperty("bitbucket.http.retry.backoff.initial", 200),
+                parsePositiveLongFromSystemProperty("bitbucket.http.retry.backoff.max", 5000),
+                parsePositiveLongFromSystemProperty("bitbucket.http.retry.budget", 30000));
+    }
+
+    /**
+     * @param retry  the number of the retry about to be made, starting at 1
+     * @param jitter a random number between 0 (inclusive) and 1 (exclusive)
+     * @return how long to wait before the retry, in ms
+     */
+    public long getBackoffMillis(int retry, double jitter) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < retry && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoffMillis);
+        long half = backoff / 2;
+        return backoff - half + (long) (half * jitter);
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
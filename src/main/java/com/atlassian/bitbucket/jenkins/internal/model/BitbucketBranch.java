@@ -0,0 +1,44 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketBranch {
+
+    private final String displayId;
+    private final String id;
+    private final boolean isDefault;
+    private final String latestCommit;
+
+    @JsonCreator
+    public BitbucketBranch(
+            @JsonProperty(value = "id", required = true) String id,
+            @JsonProperty(value = "displayId", required = true) String displayId,
+            @JsonProperty(value = "latestCommit", required = true) String latestCommit,
+            @JsonProperty(value = "isDefault") boolean isDefault) {
+        this.id = requireNonNull(id, "id");
+        this.displayId = requireNonNull(displayId, "displayId");
+        this.latestCommit = requireNonNull(latestCommit, "latestCommit");
+        this.isDefault = isDefault;
+    }
+
+    public String getDisplayId() {
+        return displayId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLatestCommit() {
+        return latestCommit;
+    }
+
+    public boolean isDefault() {
+        return isDefault;
+    }
+}
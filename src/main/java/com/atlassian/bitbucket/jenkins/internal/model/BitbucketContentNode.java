@@ -0,0 +1,39 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A file, directory or submodule in a directory of a repository.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketContentNode {
+
+    private final String name;
+    private final BitbucketContentType type;
+
+    @JsonCreator
+    public BitbucketContentNode(
+            @JsonProperty(value = "path", required = true) Map<String, Object> path,
+            @JsonProperty(value = "type", required = true) BitbucketContentType type) {
+        this(String.valueOf(requireNonNull(path, "path").get("name")), type);
+    }
+
+    public BitbucketContentNode(String name, BitbucketContentType type) {
+        this.name = requireNonNull(name, "name");
+        this.type = requireNonNull(type, "type");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BitbucketContentType getType() {
+        return type;
+    }
+}
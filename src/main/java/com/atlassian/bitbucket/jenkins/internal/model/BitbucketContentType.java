@@ -0,0 +1,10 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+/**
+ * The type of a path in a repository, as returned when browsing its content.
+ */
+public enum BitbucketContentType {
+    DIRECTORY,
+    FILE,
+    SUBMODULE
+}
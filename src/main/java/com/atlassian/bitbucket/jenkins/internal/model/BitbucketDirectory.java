@@ -0,0 +1,26 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A page of the content of a directory of a repository, as returned when browsing it.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketDirectory {
+
+    private final BitbucketPage<BitbucketContentNode> children;
+
+    @JsonCreator
+    public BitbucketDirectory(
+            @JsonProperty(value = "children", required = true) BitbucketPage<BitbucketContentNode> children) {
+        this.children = requireNonNull(children, "children");
+    }
+
+    public BitbucketPage<BitbucketContentNode> getChildren() {
+        return children;
+    }
+}
@@ -11,17 +11,33 @@ import java.util.Map;
 public class BitbucketResponse<T> {
 
     private final T body;
+    private final long elapsedMillis;
     private final Map<String, List<String>> headers;
 
     public BitbucketResponse(Map<String, List<String>> headers, T body) {
+        this(headers, body, -1);
+    }
+
+    public BitbucketResponse(Map<String, List<String>> headers, T body, long elapsedMillis) {
         this.headers = headers;
         this.body = body;
+        this.elapsedMillis = elapsedMillis;
     }
 
     public T getBody() {
         return body;
     }
 
+    /**
+     * Returns how long the server took to respond, from sending the request until receiving the response headers.
+     * Time spent waiting to send the request is not included.
+     *
+     * @return the time taken in milliseconds, or -1 if it was not measured
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
     public Map<String, List<String>> getHeaders() {
         return headers;
     }
@@ -10,14 +10,21 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositor
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketResponse;
+import com.google.common.annotations.VisibleForTesting;
 import hudson.util.ListBoxModel;
 import hudson.util.ListBoxModel.Option;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.FutureUtils.thenApply;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
@@ -26,24 +33,60 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 public class BitbucketMirrorHandler {
 
+    /**
+     * The mirror selection that clones from whichever in-sync mirror has been answering fastest, or from the primary
+     * server when no mirror is in sync.
+     */
+    public static final String NEAREST_MIRROR = "(nearest)";
+
     private static final String DEFAULT_UPSTREAM_SERVER = "Primary Server";
     private static final Option DEFAULT_OPTION_SELECTED = new Option(DEFAULT_UPSTREAM_SERVER, "", true);
     private static final Logger LOGGER = Logger.getLogger(BitbucketMirrorHandler.class.getName());
+    private static final String NEAREST_MIRROR_DISPLAY_NAME = "Nearest mirror";
+    /**
+     * Milliseconds to wait for the mirrors of a repository to send their details, after which the mirrors that haven't
+     * answered are left out. Defaults to 10 seconds.
+     */
+    private static final long MIRROR_TIMEOUT =
+            parsePositiveLongFromSystemProperty("bitbucket.mirror.timeout", TimeUnit.SECONDS.toMillis(10));
 
     private final BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final BitbucketRepoFetcher bitbucketRepoFetcher;
+    private final MirrorLatencyTable mirrorLatencyTable;
+    private final MirroredRepositoriesCache mirroredRepositoriesCache;
+    private final long mirrorTimeoutMillis;
 
     public BitbucketMirrorHandler(
             BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
             JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
-            BitbucketRepoFetcher bitbucketRepoFetcher) {
+            BitbucketRepoFetcher bitbucketRepoFetcher,
+            MirroredRepositoriesCache mirroredRepositoriesCache,
+            MirrorLatencyTable mirrorLatencyTable) {
+        this(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials, bitbucketRepoFetcher,
+                mirroredRepositoriesCache, mirrorLatencyTable, MIRROR_TIMEOUT);
+    }
+
+    @VisibleForTesting
+    BitbucketMirrorHandler(
+            BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+            JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+            BitbucketRepoFetcher bitbucketRepoFetcher,
+            MirroredRepositoriesCache mirroredRepositoriesCache,
+            MirrorLatencyTable mirrorLatencyTable,
+            long mirrorTimeoutMillis) {
         this.bitbucketClientFactoryProvider = bitbucketClientFactoryProvider;
         this.jenkinsToBitbucketCredentials = jenkinsToBitbucketCredentials;
         this.bitbucketRepoFetcher = bitbucketRepoFetcher;
+        this.mirroredRepositoriesCache = mirroredRepositoriesCache;
+        this.mirrorLatencyTable = mirrorLatencyTable;
+        this.mirrorTimeoutMillis = mirrorTimeoutMillis;
     }
 
     public EnrichedBitbucketMirroredRepository fetchRepository(MirrorFetchRequest mirrorFetchRequest) {
+        if (NEAREST_MIRROR.equals(mirrorFetchRequest.getExistingMirrorSelection())) {
+            return fetchNearestRepository(mirrorFetchRequest);
+        }
         return this.fetchRepositories(mirrorFetchRequest)
                 .stream()
                 .filter(r -> r.getMirroringDetails().getMirrorName().equals(mirrorFetchRequest.getExistingMirrorSelection()))
@@ -70,7 +113,8 @@ public class BitbucketMirrorHandler {
                 .stream()
                 .map(mirroredRepo -> createOption(existingSelection, mirroredRepo))
                 .collect(Collectors.toList());
-        boolean isPresent = mirrors
+        boolean isNearest = NEAREST_MIRROR.equals(existingSelection);
+        boolean isPresent = isNearest || mirrors
                 .stream()
                 .anyMatch(option -> option.selected);
         if (isPresent) {
@@ -78,6 +122,7 @@ public class BitbucketMirrorHandler {
         } else {
             options.add(DEFAULT_OPTION_SELECTED);
         }
+        options.add(new Option(NEAREST_MIRROR_DISPLAY_NAME, NEAREST_MIRROR, isNearest));
         options.addAll(mirrors);
         return options;
     }
@@ -88,20 +133,45 @@ public class BitbucketMirrorHandler {
         return options;
     }
 
+    private EnrichedBitbucketMirroredRepository fetchNearestRepository(MirrorFetchRequest mirrorFetchRequest) {
+        String bitbucketBaseUrl = mirrorFetchRequest.getBitbucketServerBaseUrl();
+        return fetchRepositories(mirrorFetchRequest)
+                .stream()
+                .filter(r -> r.getMirroringDetails().getStatus() == BitbucketMirroredRepositoryStatus.AVAILABLE)
+                .min(Comparator.comparingLong(r ->
+                        mirrorLatencyTable.getLatency(bitbucketBaseUrl, r.getMirroringDetails().getMirrorName())))
+                .orElseThrow(() -> new MirrorFetchException("No mirror of the repository is in sync"));
+    }
+
     private List<EnrichedBitbucketMirroredRepository> fetchRepositories(MirrorFetchRequest mirrorFetchRequest) {
         String bitbucketBaseUrl =
                 requireNonNull(mirrorFetchRequest.getBitbucketServerBaseUrl(), "Bitbucket base Url not found");
+        return mirroredRepositoriesCache.get(bitbucketBaseUrl, mirrorFetchRequest.getCredentialsId(),
+                mirrorFetchRequest.getProjectNameOrKey(), mirrorFetchRequest.getRepoNameOrSlug(),
+                () -> fetchRepositories(bitbucketBaseUrl, mirrorFetchRequest));
+    }
 
+    private List<EnrichedBitbucketMirroredRepository> fetchRepositories(String bitbucketBaseUrl,
+                                                                        MirrorFetchRequest mirrorFetchRequest) {
         BitbucketCredentials jobOrGlobalConf =
                 jenkinsToBitbucketCredentials.toBitbucketCredentials(mirrorFetchRequest.getCredentialsId());
         BitbucketClientFactory client = bitbucketClientFactoryProvider.getClient(bitbucketBaseUrl, jobOrGlobalConf);
         BitbucketRepository repository =
                 bitbucketRepoFetcher.fetchRepo(client, mirrorFetchRequest.getProjectNameOrKey(), mirrorFetchRequest.getRepoNameOrSlug());
         BitbucketMirrorClient mirrorClient = client.getMirroredRepositoriesClient(repository.getId());
-        return mirrorClient.getMirroredRepositoryDescriptors()
-                .getValues()
-                .stream()
-                .map(repoDescriptor -> fetchMirroredRepo(mirrorClient, repoDescriptor, repository.getId()))
+        List<BitbucketMirroredRepositoryDescriptor> descriptors =
+                mirrorClient.getMirroredRepositoryDescriptors().getValues();
+        // Ask every mirror at once, so the mirrors only take as long as the slowest of them rather than all together
+        List<CompletableFuture<BitbucketMirroredRepository>> details = descriptors.stream()
+                .map(repoDescriptor -> fetchMirroredRepoAsync(bitbucketBaseUrl, mirrorClient, repoDescriptor))
+                .collect(Collectors.toList());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mirrorTimeoutMillis);
+        List<BitbucketMirroredRepository> mirroredRepos = new ArrayList<>(descriptors.size());
+        for (int i = 0; i < descriptors.size(); i++) {
+            mirroredRepos.add(awaitMirroredRepo(bitbucketBaseUrl, details.get(i), descriptors.get(i),
+                    repository.getId(), deadline));
+        }
+        return mirroredRepos.stream()
                 .filter(BitbucketMirroredRepository::isAvailable)
                 .map(mirrorDetails -> new EnrichedBitbucketMirroredRepository(repository, mirrorDetails))
                 .collect(Collectors.toList());
@@ -126,16 +196,48 @@ public class BitbucketMirrorHandler {
         }
     }
 
-    private BitbucketMirroredRepository fetchMirroredRepo(BitbucketMirrorClient client,
+    private BitbucketMirroredRepository awaitMirroredRepo(String bitbucketBaseUrl,
+                                                          CompletableFuture<BitbucketMirroredRepository> details,
                                                           BitbucketMirroredRepositoryDescriptor repoDescriptor,
-                                                          int repositoryId) {
+                                                          int repositoryId, long deadline) {
+        String mirrorName = repoDescriptor.getMirrorServer().getName();
+        try {
+            return details.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | CancellationException e) {
+            LOGGER.log(FINE, "Failed to retrieve repository information from mirror: " + mirrorName,
+                    e instanceof ExecutionException ? e.getCause() : e);
+        } catch (TimeoutException e) {
+            LOGGER.fine("Timed out retrieving repository information from mirror: " + mirrorName);
+            details.cancel(true);
+            mirrorLatencyTable.recordLatency(bitbucketBaseUrl, mirrorName,
+                    TimeUnit.MILLISECONDS.toNanos(mirrorTimeoutMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            details.cancel(true);
+        }
+        return new BitbucketMirroredRepository(false, emptyMap(), mirrorName, repositoryId,
+                BitbucketMirroredRepositoryStatus.NOT_MIRRORED);
+    }
+
+    private CompletableFuture<BitbucketMirroredRepository> fetchMirroredRepoAsync(
+            String bitbucketBaseUrl, BitbucketMirrorClient client,
+            BitbucketMirroredRepositoryDescriptor repoDescriptor) {
         try {
-            return client.getRepositoryDetails(repoDescriptor);
+            CompletableFuture<BitbucketResponse<BitbucketMirroredRepository>> response =
+                    client.getRepositoryDetailsAsync(repoDescriptor);
+            // Timed by the request itself, so waiting before it is sent doesn't count against the mirror
+            response.thenAccept(r -> {
+                if (r.getElapsedMillis() >= 0) {
+                    mirrorLatencyTable.recordLatency(bitbucketBaseUrl, repoDescriptor.getMirrorServer().getName(),
+                            TimeUnit.MILLISECONDS.toNanos(r.getElapsedMillis()));
+                }
+            });
+            // Cancelling the details cancels the request, as happens once a mirror has taken too long
+            return thenApply(response, BitbucketResponse::getBody);
         } catch (BitbucketClientException e) {
-            LOGGER.log(FINE, "Failed to retrieve repository information from mirror: " +
-                             repoDescriptor.getMirrorServer().getName(), e);
-            return new BitbucketMirroredRepository(false, emptyMap(),
-                    repoDescriptor.getMirrorServer().getName(), repositoryId, BitbucketMirroredRepositoryStatus.NOT_MIRRORED);
+            CompletableFuture<BitbucketMirroredRepository> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
     }
 }
@@ -0,0 +1,162 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+/**
+ * Remembers the repositories that the project and repository names of jobs resolved to, so that building the SCMs of
+ * many jobs of the same repository, such as when Jenkins starts or the jobs are rebuilt after a configuration change,
+ * doesn't search Bitbucket Server again for every job. Resolved repositories are kept for
+ * {@link #CACHE_DURATION} milliseconds, and are dropped earlier when a webhook reports a change to the repository or
+ * the Bitbucket Server configuration is saved.
+ * <p>
+ * Repositories are kept per server and credentials, so a repository is never resolved for credentials other than the
+ * ones it was looked up with.
+ */
+@Singleton
+@ThreadSafe
+public class BitbucketRepositoryCache {
+
+    /**
+     * Milliseconds to keep a resolved repository for. Defaults to 10 minutes.
+     */
+    static final long CACHE_DURATION = parsePositiveLongFromSystemProperty("bitbucket.scm.repository.cache.duration",
+            TimeUnit.MINUTES.toMillis(10));
+
+    private final LongSupplier clock;
+    private final long durationMillis;
+    private final Map<Key, CachedRepository> repositories = new ConcurrentHashMap<>();
+
+    @Inject
+    public BitbucketRepositoryCache() {
+        this(CACHE_DURATION, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    BitbucketRepositoryCache(long durationMillis, LongSupplier clock) {
+        this.durationMillis = durationMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the repository the given names resolved to, if it was resolved recently.
+     *
+     * @param baseUrl        the base URL of the server
+     * @param credentialsId  the ID of the credentials the repository was looked up with
+     * @param projectName    the project name or key the repository was looked up with
+     * @param repositoryName the repository name or slug the repository was looked up with
+     * @return the resolved repository, or null if it has not been resolved recently
+     */
+    @CheckForNull
+    public BitbucketRepository get(String baseUrl, @Nullable String credentialsId, String projectName,
+                                   String repositoryName) {
+        Key key = new Key(baseUrl, credentialsId, projectName, repositoryName);
+        CachedRepository cached = repositories.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (clock.getAsLong() - cached.resolvedAt >= durationMillis) {
+            repositories.remove(key, cached);
+            return null;
+        }
+        return cached.repository;
+    }
+
+    /**
+     * Drops every resolved repository, such as when the server configuration changes.
+     */
+    public void invalidateAll() {
+        repositories.clear();
+    }
+
+    /**
+     * Drops the resolved repository wherever it is cached, so that it is looked up again after it has changed.
+     *
+     * @param repository the repository that has changed
+     */
+    public void invalidate(BitbucketRepository repository) {
+        String selfLink = repository.getSelfLink();
+        repositories.entrySet().removeIf(entry -> {
+            BitbucketRepository cached = entry.getValue().repository;
+            return cached.getProject().getKey().equalsIgnoreCase(repository.getProject().getKey()) &&
+                   cached.getSlug().equalsIgnoreCase(repository.getSlug()) &&
+                   (isBlank(selfLink) || selfLink.startsWith(entry.getKey().baseUrl));
+        });
+    }
+
+    /**
+     * Remembers the repository the given names resolved to.
+     *
+     * @param baseUrl        the base URL of the server
+     * @param credentialsId  the ID of the credentials the repository was looked up with
+     * @param projectName    the project name or key the repository was looked up with
+     * @param repositoryName the repository name or slug the repository was looked up with
+     * @param repository     the resolved repository
+     */
+    public void put(String baseUrl, @Nullable String credentialsId, String projectName, String repositoryName,
+                    BitbucketRepository repository) {
+        repositories.put(new Key(baseUrl, credentialsId, projectName, repositoryName),
+                new CachedRepository(repository, clock.getAsLong()));
+    }
+
+    private static final class CachedRepository {
+
+        private final BitbucketRepository repository;
+        private final long resolvedAt;
+
+        private CachedRepository(BitbucketRepository repository, long resolvedAt) {
+            this.repository = repository;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    private static final class Key {
+
+        private final String baseUrl;
+        private final String credentialsId;
+        private final String projectName;
+        private final String repositoryName;
+
+        private Key(String baseUrl, @Nullable String credentialsId, String projectName, String repositoryName) {
+            this.baseUrl = removeEnd(baseUrl, "/");
+            this.credentialsId = credentialsId;
+            this.projectName = projectName;
+            this.repositoryName = repositoryName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return baseUrl.equals(key.baseUrl) &&
+                   Objects.equals(credentialsId, key.credentialsId) &&
+                   projectName.equals(key.projectName) &&
+                   repositoryName.equals(key.repositoryName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, credentialsId, projectName, repositoryName);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
@@ -9,6 +10,11 @@ import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCr
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketJobIndex;
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookTriggerImpl.BitbucketWebhookTriggerDescriptor;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
 import com.google.inject.Guice;
 import hudson.Extension;
 import hudson.FilePath;
@@ -18,6 +24,7 @@ import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitException;
 import hudson.plugins.git.GitSCM;
 import hudson.plugins.git.GitTool;
 import hudson.plugins.git.SubmoduleConfig;
@@ -25,10 +32,16 @@ import hudson.plugins.git.UserRemoteConfig;
 import hudson.plugins.git.browser.Stash;
 import hudson.plugins.git.extensions.GitSCMExtension;
 import hudson.plugins.git.extensions.GitSCMExtensionDescriptor;
+import hudson.plugins.git.extensions.impl.CloneOption;
 import hudson.scm.*;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
 import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.gitclient.GitClient;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.HttpResponse;
@@ -40,10 +53,13 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.model.RepositoryState.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorHandler.NEAREST_MIRROR;
 import static java.lang.Math.max;
 import static java.lang.String.format;
 import static java.util.Collections.emptyList;
@@ -53,8 +69,9 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 public class BitbucketSCM extends SCM {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketSCM.class.getName());
+    private static final String MIRROR_REF_SPEC = "+refs/heads/*:refs/bitbucket-mirror/heads/*";
 
-    private GitSCM gitSCM;
+    private volatile GitSCM gitSCM;
     // avoid a difficult upgrade task.
     private final List<BranchSpec> branches;
     private final List<GitSCMExtension> extensions;
@@ -63,6 +80,8 @@ public class BitbucketSCM extends SCM {
     // this is to enable us to support future multiple repositories
     private final List<BitbucketSCMRepository> repositories;
     private volatile boolean isWebhookRegistered;
+    // Not saved, as a lookup still pending when the SCM is loaded is worked out from its clone URL
+    private transient volatile boolean resolutionPending;
 
     @DataBoundConstructor
     public BitbucketSCM(
@@ -77,54 +96,13 @@ public class BitbucketSCM extends SCM {
             @CheckForNull String serverId,
             @CheckForNull String mirrorName) {
         this(id, branches, extensions, gitTool, serverId, repositoryName);
-
-        DescriptorImpl descriptor = (DescriptorImpl) getDescriptor();
-        Optional<BitbucketServerConfiguration> mayBeServerConf = descriptor.getConfiguration(serverId);
-        if (!mayBeServerConf.isPresent()) {
-            LOGGER.info("No Bitbucket Server configuration for serverId " + serverId);
-            setEmptyRepsitory(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            return;
-        }
-
-        BitbucketServerConfiguration serverConfiguration = mayBeServerConf.get();
-        GlobalCredentialsProvider globalCredentialsProvider = serverConfiguration.getGlobalCredentialsProvider(
-                format("Bitbucket SCM: Query Bitbucket for project [%s] repo [%s] mirror[%s]",
-                        projectName,
-                        repositoryName,
-                        mirrorName));
-        BitbucketScmHelper scmHelper =
-                descriptor.getBitbucketScmHelper(serverConfiguration.getBaseUrl(), credentialsId);
-        if (isBlank(projectName)) {
-            LOGGER.info("Error creating the Bitbucket SCM: The project name is blank");
-            setEmptyRepsitory(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            return;
-        }
-        if (isBlank(repositoryName)) {
-            LOGGER.info("Error creating the Bitbucket SCM: The repository name is blank");
-            setEmptyRepsitory(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            return;
-        }
-
-        if (!isBlank(mirrorName)) {
-            try {
-                EnrichedBitbucketMirroredRepository mirroredRepository =
-                        descriptor.createMirrorHandler(scmHelper)
-                                .fetchRepository(
-                                        new MirrorFetchRequest(
-                                                serverConfiguration.getBaseUrl(),
-                                                credentialsId,
-                                                globalCredentialsProvider,
-                                                projectName,
-                                                repositoryName,
-                                                mirrorName));
-                setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirroredRepository);
-                return;
-            } catch (MirrorFetchException ex) {
-                setEmptyRepsitory(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            }
+        if (((DescriptorImpl) getDescriptor()).isLazyResolution()) {
+            // Use the names as they were entered until the repository has been looked up
+            publish(createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName));
+            deferResolution();
         } else {
-            BitbucketRepository repository = scmHelper.getRepository(projectName, repositoryName);
-            setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
+            publish(resolve(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName));
         }
     }
 
@@ -137,8 +115,21 @@ public class BitbucketSCM extends SCM {
             @CheckForNull String gitTool,
             @CheckForNull String serverId,
             BitbucketRepository repository) {
+        this(id, branches, credentialsId, sshCredentialsId, extensions, gitTool, serverId, "", repository);
+    }
+
+    public BitbucketSCM(
+            @CheckForNull String id,
+            @CheckForNull List<BranchSpec> branches,
+            @CheckForNull String credentialsId,
+            @CheckForNull String sshCredentialsId,
+            @CheckForNull List<GitSCMExtension> extensions,
+            @CheckForNull String gitTool,
+            @CheckForNull String serverId,
+            String mirrorName,
+            BitbucketRepository repository) {
         this(id, branches, extensions, gitTool, serverId, repository.getName());
-        setRepositoryDetails(credentialsId, sshCredentialsId, serverId, "", repository);
+        publish(createResolution(credentialsId, sshCredentialsId, serverId, mirrorName, repository));
     }
 
     /**
@@ -147,9 +138,17 @@ public class BitbucketSCM extends SCM {
      * @param oldScm old scm to copy values from
      */
     public BitbucketSCM(BitbucketSCM oldScm) {
-        this(oldScm.getId(), oldScm.getBranches(), oldScm.getCredentialsId(), oldScm.getSshCredentialsId(), oldScm.getExtensions(),
-                oldScm.getGitTool(), oldScm.getProjectName(), oldScm.getRepositoryName(), oldScm.getServerId(),
-                oldScm.getMirrorName());
+        this(oldScm.getId(), oldScm.getBranches(), oldScm.getExtensions(), oldScm.getGitTool(), oldScm.getServerId(),
+                oldScm.getRepositoryName());
+        if (oldScm.getGitSCM() != null && ((DescriptorImpl) getDescriptor()).isLazyResolution()) {
+            // Keep using the clone URL and self link the old SCM was saved with until they have been looked up again
+            repositories.addAll(oldScm.getRepositories());
+            gitSCM = oldScm.getGitSCM();
+            deferResolution();
+        } else {
+            publish(resolve(oldScm.getCredentialsId(), oldScm.getSshCredentialsId(), oldScm.getProjectName(),
+                    oldScm.getRepositoryName(), oldScm.getServerId(), oldScm.getMirrorName()));
+        }
     }
 
     private BitbucketSCM(
@@ -191,6 +190,7 @@ public class BitbucketSCM extends SCM {
             @Nullable Launcher launcher,
             TaskListener listener)
             throws IOException, InterruptedException {
+        resolveIfPending();
         return gitSCM.calcRevisionsFromBuild(build, workspace, launcher, listener);
     }
 
@@ -203,7 +203,12 @@ public class BitbucketSCM extends SCM {
             @CheckForNull File changelogFile,
             @CheckForNull SCMRevisionState baseline)
             throws IOException, InterruptedException {
-        gitSCM.checkout(build, launcher, workspace, listener, changelogFile, baseline);
+        resolveIfPending();
+        GitSCM scm = gitSCM;
+        if (NEAREST_MIRROR.equals(getMirrorName())) {
+            seedFromNearestMirror(scm, build, workspace, listener);
+        }
+        scm.checkout(build, launcher, workspace, listener, changelogFile, baseline);
     }
 
     @Override
@@ -214,6 +219,7 @@ public class BitbucketSCM extends SCM {
             TaskListener listener,
             SCMRevisionState baseline)
             throws IOException, InterruptedException {
+        resolveIfPending();
         return gitSCM.compareRemoteRevisionWith(project, launcher, workspace, listener, baseline);
     }
 
@@ -310,10 +316,37 @@ public class BitbucketSCM extends SCM {
         return isWebhookRegistered;
     }
 
+    /**
+     * Returns whether the repository still has to be looked up, so the SCM only knows the names it was saved with.
+     */
+    public boolean isResolutionPending() {
+        return resolutionPending;
+    }
+
     public BitbucketSCMRepository getBitbucketSCMRepository() {
         return repositories.get(0);
     }
 
+    protected Object readResolve() {
+        if (gitSCM != null && !repositories.isEmpty() && !isBlank(getProjectName()) &&
+            !isBlank(getRepositoryName()) &&
+            getUserRemoteConfigs().stream().map(UserRemoteConfig::getUrl).allMatch(url -> isBlank(url))) {
+            // Saved before the repository could be looked up
+            deferResolution();
+        }
+        return this;
+    }
+
+    private void deferResolution() {
+        resolutionPending = true;
+        try {
+            Timer.get().execute(this::resolveIfPending);
+        } catch (RejectedExecutionException e) {
+            // The repository is looked up on first use instead
+            LOGGER.fine("Could not schedule looking up the repository of the Bitbucket SCM " + id);
+        }
+    }
+
     private String getCloneUrl(List<BitbucketNamedLink> cloneUrls, CloneProtocol protocol) {
         return cloneUrls.stream()
                 .filter(link -> Objects.equals(protocol.name, link.getName()))
@@ -322,8 +355,23 @@ public class BitbucketSCM extends SCM {
                 .orElse("");
     }
 
-    private void initialize(String cloneUrl, String selfLink, BitbucketSCMRepository bitbucketSCMRepository) {
-        repositories.add(bitbucketSCMRepository);
+    private Resolution createEmptyResolution(@CheckForNull String credentialsId,
+                                             @CheckForNull String sshCredentialsId,
+                                             @CheckForNull String projectName,
+                                             @CheckForNull String repositoryName,
+                                             @CheckForNull String serverId,
+                                             @CheckForNull String mirrorName) {
+        projectName = Objects.toString(projectName, "");
+        repositoryName = Objects.toString(repositoryName, "");
+        mirrorName = Objects.toString(mirrorName, "");
+        BitbucketRepository repository =
+                new BitbucketRepository(-1, repositoryName, null, new BitbucketProject(projectName, null, projectName),
+                        repositoryName, AVAILABLE);
+        return createResolution(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
+    }
+
+    private Resolution createResolution(String cloneUrl, String selfLink,
+                                        BitbucketSCMRepository bitbucketSCMRepository) {
         String credentialsId = isBlank(bitbucketSCMRepository.getSshCredentialsId()) ?
                 bitbucketSCMRepository.getCredentialsId() : bitbucketSCMRepository.getSshCredentialsId();
 
@@ -331,49 +379,203 @@ public class BitbucketSCM extends SCM {
                 new UserRemoteConfig(cloneUrl, bitbucketSCMRepository.getRepositorySlug(), null, credentialsId);
         // self-link include /browse which needs to be trimmed
         String repositoryUrl = selfLink.substring(0, max(selfLink.indexOf("/browse"), 0));
-        gitSCM = new GitSCM(singletonList(remoteConfig), branches, false, emptyList(), new Stash(repositoryUrl),
-                gitTool, extensions);
+        GitSCM newGitSCM = new GitSCM(singletonList(remoteConfig), branches, false, emptyList(),
+                new Stash(repositoryUrl), gitTool, extensions);
+        return new Resolution(bitbucketSCMRepository, newGitSCM, !isBlank(cloneUrl));
     }
 
-    private void setEmptyRepsitory(@CheckForNull String credentialsId,
-                                   @CheckForNull String sshCredentialsId,
-                                   @CheckForNull String projectName,
-                                   @CheckForNull String repositoryName,
-                                   @CheckForNull String serverId,
-                                   @CheckForNull String mirrorName) {
-        projectName = Objects.toString(projectName, "");
-        repositoryName = Objects.toString(repositoryName, "");
-        mirrorName = Objects.toString(mirrorName, "");
-        BitbucketRepository repository =
-                new BitbucketRepository(-1, repositoryName, null, new BitbucketProject(projectName, null, projectName),
-                        repositoryName, AVAILABLE);
-        setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
-    }
-
-    private void setRepositoryDetails(@CheckForNull String credentialsId, @CheckForNull String sshCredentialsId,
-                                      @Nullable String serverId, String mirrorName, BitbucketRepository repository) {
+    private Resolution createResolution(@CheckForNull String credentialsId, @CheckForNull String sshCredentialsId,
+                                        @Nullable String serverId, String mirrorName,
+                                        BitbucketRepository repository) {
         CloneProtocol cloneProtocol = isBlank(sshCredentialsId) ? CloneProtocol.HTTP : CloneProtocol.SSH;
         String cloneUrl = getCloneUrl(repository.getCloneUrls(), cloneProtocol);
         BitbucketSCMRepository bitbucketSCMRepository =
                 new BitbucketSCMRepository(credentialsId, sshCredentialsId, repository.getProject().getName(),
                         repository.getProject().getKey(), repository.getName(), repository.getSlug(),
                         serverId, mirrorName);
-        initialize(cloneUrl, repository.getSelfLink(), bitbucketSCMRepository);
+        return createResolution(cloneUrl, repository.getSelfLink(), bitbucketSCMRepository);
     }
 
-    private void setRepositoryDetails(@CheckForNull String credentialsId, @CheckForNull String sshCredentialsId, @Nullable String serverId,
-                                      EnrichedBitbucketMirroredRepository repository) {
-        if (isBlank(serverId)) {
-            return;
-        }
+    private Resolution createResolution(@CheckForNull String credentialsId, @CheckForNull String sshCredentialsId,
+                                        @Nullable String serverId, String mirrorName,
+                                        EnrichedBitbucketMirroredRepository repository) {
         CloneProtocol cloneProtocol = isBlank(sshCredentialsId) ? CloneProtocol.HTTP : CloneProtocol.SSH;
         String cloneUrl = getCloneUrl(repository.getMirroringDetails().getCloneUrls(), cloneProtocol);
         BitbucketRepository underlyingRepo = repository.getRepository();
         BitbucketSCMRepository bitbucketSCMRepository =
                 new BitbucketSCMRepository(credentialsId, sshCredentialsId, underlyingRepo.getProject().getName(),
                         underlyingRepo.getProject().getKey(), underlyingRepo.getName(), underlyingRepo.getSlug(),
-                        serverId, repository.getMirroringDetails().getMirrorName());
-        initialize(cloneUrl, underlyingRepo.getSelfLink(), bitbucketSCMRepository);
+                        serverId, mirrorName);
+        return createResolution(cloneUrl, underlyingRepo.getSelfLink(), bitbucketSCMRepository);
+    }
+
+    private void publish(Resolution resolution) {
+        if (repositories.isEmpty()) {
+            repositories.add(resolution.repository);
+        } else {
+            repositories.set(0, resolution.repository);
+        }
+        gitSCM = resolution.gitSCM;
+    }
+
+    /**
+     * Looks up the repository. Nothing is changed on the SCM itself; the result is only applied by
+     * {@link #publish(Resolution)}, so a failed lookup never leaves the SCM half updated.
+     */
+    private Resolution resolve(@CheckForNull String credentialsId, @CheckForNull String sshCredentialsId,
+                               @CheckForNull String projectName, @CheckForNull String repositoryName,
+                               @CheckForNull String serverId, @CheckForNull String mirrorName) {
+        DescriptorImpl descriptor = (DescriptorImpl) getDescriptor();
+        Optional<BitbucketServerConfiguration> mayBeServerConf = descriptor.getConfiguration(serverId);
+        if (!mayBeServerConf.isPresent()) {
+            LOGGER.info("No Bitbucket Server configuration for serverId " + serverId);
+            return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName);
+        }
+
+        BitbucketServerConfiguration serverConfiguration = mayBeServerConf.get();
+        GlobalCredentialsProvider globalCredentialsProvider = serverConfiguration.getGlobalCredentialsProvider(
+                format("Bitbucket SCM: Query Bitbucket for project [%s] repo [%s] mirror[%s]",
+                        projectName,
+                        repositoryName,
+                        mirrorName));
+        BitbucketScmHelper scmHelper =
+                descriptor.getBitbucketScmHelper(serverConfiguration.getBaseUrl(), credentialsId);
+        if (isBlank(projectName)) {
+            LOGGER.info("Error creating the Bitbucket SCM: The project name is blank");
+            return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName);
+        }
+        if (isBlank(repositoryName)) {
+            LOGGER.info("Error creating the Bitbucket SCM: The repository name is blank");
+            return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName);
+        }
+
+        // The nearest mirror is only used to seed each checkout, see seedFromNearestMirror
+        if (!isBlank(mirrorName) && !NEAREST_MIRROR.equals(mirrorName)) {
+            try {
+                EnrichedBitbucketMirroredRepository mirroredRepository =
+                        descriptor.createMirrorHandler(scmHelper)
+                                .fetchRepository(
+                                        new MirrorFetchRequest(
+                                                serverConfiguration.getBaseUrl(),
+                                                credentialsId,
+                                                globalCredentialsProvider,
+                                                projectName,
+                                                repositoryName,
+                                                mirrorName));
+                return createResolution(credentialsId, sshCredentialsId, serverId, mirrorName, mirroredRepository);
+            } catch (MirrorFetchException ex) {
+                return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName,
+                        serverId, mirrorName);
+            }
+        }
+        BitbucketRepository repository = scmHelper.getRepository(projectName, repositoryName);
+        return createResolution(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
+    }
+
+    /**
+     * Fetches the branches of the nearest mirror into the workspace before the checkout fetches from the primary
+     * server. The primary server still decides which commit is built, so a mirror that has not yet synced the latest
+     * push only means more is fetched from the primary server. The remote of the job is left unchanged, which keeps
+     * the build data and changelogs of the job comparable between builds.
+     */
+    private void seedFromNearestMirror(GitSCM scm, Run<?, ?> build, FilePath workspace, TaskListener listener)
+            throws InterruptedException {
+        CloneOption cloneOption = scm.getExtensions().get(CloneOption.class);
+        if (cloneOption != null && (cloneOption.isShallow() || !isBlank(cloneOption.getReference()))) {
+            // Fetching the full history from the mirror would defeat these options
+            return;
+        }
+        BitbucketSCMRepository repository = getBitbucketSCMRepository();
+        DescriptorImpl descriptor = (DescriptorImpl) getDescriptor();
+        Optional<BitbucketServerConfiguration> mayBeServerConf = descriptor.getConfiguration(getServerId());
+        if (!mayBeServerConf.isPresent() || scm.getUserRemoteConfigs().isEmpty()) {
+            return;
+        }
+        BitbucketServerConfiguration serverConfiguration = mayBeServerConf.get();
+        UserRemoteConfig remoteConfig = scm.getUserRemoteConfigs().get(0);
+        try {
+            GlobalCredentialsProvider globalCredentialsProvider = serverConfiguration.getGlobalCredentialsProvider(
+                    format("Bitbucket SCM: Find the nearest mirror of project [%s] repo [%s]",
+                            getProjectName(), getRepositoryName()));
+            EnrichedBitbucketMirroredRepository mirroredRepository = descriptor
+                    .createMirrorHandler(descriptor.getBitbucketScmHelper(serverConfiguration.getBaseUrl(),
+                            repository.getCredentialsId()))
+                    .fetchRepository(new MirrorFetchRequest(serverConfiguration.getBaseUrl(),
+                            repository.getCredentialsId(), globalCredentialsProvider, getProjectName(),
+                            getRepositoryName(), NEAREST_MIRROR));
+            CloneProtocol cloneProtocol =
+                    isBlank(repository.getSshCredentialsId()) ? CloneProtocol.HTTP : CloneProtocol.SSH;
+            String mirrorUrl = getCloneUrl(mirroredRepository.getMirroringDetails().getCloneUrls(), cloneProtocol);
+            if (isBlank(mirrorUrl)) {
+                return;
+            }
+
+            GitClient git = scm.createClient(listener, build.getEnvironment(listener), build, workspace);
+            if (!git.hasGitRepo()) {
+                git.init();
+                git.setRemoteUrl(remoteConfig.getName(), remoteConfig.getUrl());
+            }
+            if (remoteConfig.getCredentialsId() != null) {
+                StandardUsernameCredentials credentials = CredentialsProvider.findCredentialById(
+                        remoteConfig.getCredentialsId(), StandardUsernameCredentials.class, build,
+                        URIRequirementBuilder.fromUri(mirrorUrl).build());
+                if (credentials != null) {
+                    git.addCredentials(mirrorUrl, credentials);
+                }
+            }
+            listener.getLogger().println("Fetching from the nearest mirror " +
+                                         mirroredRepository.getMirroringDetails().getMirrorName());
+            // Kept apart from the remote tracking branches, so they only ever come from the primary server
+            git.fetch_()
+                    .from(new URIish(mirrorUrl), singletonList(new RefSpec(MIRROR_REF_SPEC)))
+                    .tags(false)
+                    .execute();
+        } catch (MirrorFetchException e) {
+            listener.getLogger().println("No mirror is available, fetching from the primary server only");
+        } catch (BitbucketClientException | GitException | IOException | URISyntaxException e) {
+            listener.getLogger().println("Could not fetch from the nearest mirror, fetching from the primary " +
+                                         "server only: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Looks up the repository, if the SCM was created or loaded without looking it up and no lookup has succeeded
+     * since.
+     */
+    public void resolveIfPending() {
+        if (!resolutionPending) {
+            return;
+        }
+        // Looked up without holding the lock, so a slow server doesn't hold up every other use of the SCM
+        BitbucketSCMRepository repository = getBitbucketSCMRepository();
+        Resolution resolution = resolve(repository.getCredentialsId(), repository.getSshCredentialsId(),
+                getProjectName(), getRepositoryName(), repository.getServerId(), repository.getMirrorName());
+        // A failed lookup keeps what the SCM was saved with, and is tried again on next use
+        if (!resolution.resolved) {
+            return;
+        }
+        synchronized (this) {
+            if (!resolutionPending) {
+                // Another lookup has already been published
+                return;
+            }
+            publish(resolution);
+            resolutionPending = false;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null && jenkins.getInjector() != null) {
+            // Webhooks find jobs by the project key and slug, which may only be known now
+            jenkins.getInjector().getInstance(BitbucketJobIndex.class).update(this);
+            BitbucketWebhookTriggerDescriptor triggerDescriptor =
+                    jenkins.getDescriptorByType(BitbucketWebhookTriggerDescriptor.class);
+            if (triggerDescriptor != null) {
+                // The webhook can only be registered once the repository is known
+                triggerDescriptor.registerWebhooks(this);
+            }
+        }
     }
 
     @Symbol("BbS")
@@ -391,6 +593,14 @@ public class BitbucketSCM extends SCM {
         private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
         @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+        @Inject
+        private BitbucketRepositoryCache repositoryCache;
+        @Inject
+        private MirroredRepositoriesCache mirroredRepositoriesCache;
+        @Inject
+        private MirrorLatencyTable mirrorLatencyTable;
+        @Inject
+        private RepositoryContentCache contentCache;
         private transient JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
 
         public DescriptorImpl() {
@@ -540,18 +750,37 @@ public class BitbucketSCM extends SCM {
             this.jenkinsToBitbucketCredentials = jenkinsToBitbucketCredentials;
         }
 
+        /**
+         * Whether repositories are looked up in the background and on first use, rather than while the SCM is
+         * constructed.
+         *
+         * @return true if the SCM should be constructed from the details it was configured or saved with
+         */
+        boolean isLazyResolution() {
+            return Boolean.getBoolean(BitbucketScmHelper.LAZY_RESOLUTION_PROPERTY);
+        }
+
+        /**
+         * Returns the cache of the files read with {@link BitbucketSCMFileSystem}.
+         */
+        RepositoryContentCache getContentCache() {
+            return contentCache;
+        }
+
         BitbucketScmHelper getBitbucketScmHelper(String bitbucketUrl,
                                                  @Nullable String credentialsId) {
             return new BitbucketScmHelper(bitbucketUrl,
                     bitbucketClientFactoryProvider,
-                    credentialsId, jenkinsToBitbucketCredentials);
+                    credentialsId, jenkinsToBitbucketCredentials, repositoryCache);
         }
 
         private BitbucketMirrorHandler createMirrorHandler(BitbucketScmHelper helper) {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    mirroredRepositoriesCache,
+                    mirrorLatencyTable);
         }
 
         Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
@@ -564,4 +793,20 @@ public class BitbucketSCM extends SCM {
             }
         }
     }
+
+    /**
+     * The details of a repository as they were looked up, before they are published on the SCM.
+     */
+    private static final class Resolution {
+
+        private final GitSCM gitSCM;
+        private final BitbucketSCMRepository repository;
+        private final boolean resolved;
+
+        private Resolution(BitbucketSCMRepository repository, GitSCM gitSCM, boolean resolved) {
+            this.gitSCM = gitSCM;
+            this.repository = repository;
+            this.resolved = resolved;
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentNode;
+import jenkins.scm.api.SCMFile;
+
+import javax.annotation.CheckForNull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A file or directory of a {@link BitbucketSCMFileSystem}. Its type is looked up when it is first needed, unless it
+ * came from listing its parent directory.
+ */
+class BitbucketSCMFile extends SCMFile {
+
+    private final BitbucketSCMFileSystem fileSystem;
+    private volatile Type knownType;
+
+    BitbucketSCMFile(BitbucketSCMFileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+        knownType = Type.DIRECTORY;
+    }
+
+    private BitbucketSCMFile(BitbucketSCMFile parent, String name, @CheckForNull Type knownType) {
+        super(parent, name);
+        fileSystem = parent.fileSystem;
+        this.knownType = knownType;
+    }
+
+    @Override
+    public Iterable<SCMFile> children() throws IOException {
+        List<BitbucketContentNode> content = fileSystem.getDirectoryContent(getPath());
+        return content.stream()
+                .<SCMFile>map(node -> new BitbucketSCMFile(this, node.getName(),
+                        BitbucketSCMFileSystem.toType(node.getType())))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public InputStream content() throws IOException {
+        if (type() == Type.DIRECTORY) {
+            throw new IOException(getPath() + " is a directory");
+        }
+        return new ByteArrayInputStream(fileSystem.getContent(getPath()));
+    }
+
+    @Override
+    public long lastModified() {
+        return fileSystem.lastModified();
+    }
+
+    @Override
+    protected SCMFile newChild(String name, boolean assumeIsDirectory) {
+        return new BitbucketSCMFile(this, name, assumeIsDirectory ? Type.DIRECTORY : null);
+    }
+
+    @Override
+    protected Type type() throws IOException {
+        Type type = knownType;
+        if (type == null) {
+            type = fileSystem.getType(getPath());
+            knownType = type;
+        }
+        return type;
+    }
+}
@@ -0,0 +1,267 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentNode;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentType;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.plugins.git.BranchSpec;
+import hudson.scm.SCM;
+import hudson.scm.SCMDescriptor;
+import jenkins.plugins.git.AbstractGitSCMSource;
+import jenkins.scm.api.*;
+
+import javax.annotation.CheckForNull;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.apache.commons.lang3.StringUtils.containsAny;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Reads the files of a Bitbucket repository with the browse and raw REST resources, so that a Jenkinsfile can be
+ * read, and the criteria of a multibranch project checked, without fetching the repository. What is read at a commit
+ * hash is kept in a {@link RepositoryContentCache}.
+ */
+public class BitbucketSCMFileSystem extends SCMFileSystem {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSCMFileSystem.class.getName());
+
+    private final RepositoryContentCache cache;
+    private final BitbucketRepositoryClient client;
+    private final String commit;
+    private final String repository;
+
+    BitbucketSCMFileSystem(BitbucketRepositoryClient client, String repository, String commit,
+                           @CheckForNull SCMRevision rev, RepositoryContentCache cache) {
+        super(rev);
+        this.cache = cache;
+        this.client = client;
+        this.commit = commit;
+        this.repository = repository;
+    }
+
+    @Override
+    public SCMFile getRoot() {
+        return new BitbucketSCMFile(this);
+    }
+
+    @Override
+    public long lastModified() {
+        // Looking up the commit date would take another request, and nothing reading the files needs it
+        return 0L;
+    }
+
+    byte[] getContent(String path) throws IOException {
+        try {
+            return cache.getContent(repository, commit, path, () -> client.getRawContent(path, commit));
+        } catch (NotFoundException e) {
+            throw new FileNotFoundException(path);
+        } catch (BitbucketClientException e) {
+            throw new IOException("Could not read " + path + " at " + commit, e);
+        }
+    }
+
+    List<BitbucketContentNode> getDirectoryContent(String path) throws IOException {
+        try (Stream<BitbucketContentNode> content = client.getDirectoryContent(path, commit)) {
+            return content.collect(Collectors.toList());
+        } catch (NotFoundException e) {
+            throw new FileNotFoundException(path);
+        } catch (BitbucketClientException e) {
+            throw new IOException("Could not list " + path + " at " + commit, e);
+        }
+    }
+
+    SCMFile.Type getType(String path) throws IOException {
+        if (path.isEmpty()) {
+            return SCMFile.Type.DIRECTORY;
+        }
+        try {
+            return cache.getType(repository, commit, path, () -> {
+                try {
+                    return toType(client.getContentType(path, commit));
+                } catch (NotFoundException e) {
+                    return SCMFile.Type.NONEXISTENT;
+                }
+            });
+        } catch (BitbucketClientException e) {
+            throw new IOException("Could not look up " + path + " at " + commit, e);
+        }
+    }
+
+    /**
+     * Returns what identifies the repository in a {@link RepositoryContentCache}, so that content is never shared
+     * between servers or credentials.
+     */
+    static String getRepositoryKey(String baseUrl, @CheckForNull String credentialsId, String projectKey,
+                                   String repositorySlug) {
+        return String.join(" ", baseUrl, Objects.toString(credentialsId, ""), projectKey, repositorySlug);
+    }
+
+    static SCMFile.Type toType(BitbucketContentType type) {
+        switch (type) {
+            case DIRECTORY:
+                return SCMFile.Type.DIRECTORY;
+            case FILE:
+                return SCMFile.Type.REGULAR_FILE;
+            default:
+                return SCMFile.Type.OTHER;
+        }
+    }
+
+    @Extension
+    public static class BuilderImpl extends SCMFileSystem.Builder {
+
+        @Override
+        public boolean supports(SCM source) {
+            return source instanceof BitbucketSCM;
+        }
+
+        @Override
+        public boolean supports(SCMSource source) {
+            return source instanceof BitbucketSCMSource;
+        }
+
+        @CheckForNull
+        @Override
+        public SCMFileSystem build(Item owner, SCM scm, @CheckForNull SCMRevision rev) {
+            BitbucketSCM bitbucketSCM = (BitbucketSCM) scm;
+            bitbucketSCM.resolveIfPending();
+            String commit = getHash(rev);
+            if (commit == null) {
+                List<BranchSpec> branches = bitbucketSCM.getBranches();
+                if (branches.size() != 1) {
+                    return null;
+                }
+                commit = getRef(branches.get(0).getName(), bitbucketSCM.getRepositorySlug(),
+                        bitbucketSCM.getMirrorName());
+            }
+            if (commit == null) {
+                return null;
+            }
+            BitbucketSCM.DescriptorImpl descriptor = (BitbucketSCM.DescriptorImpl) bitbucketSCM.getDescriptor();
+            Optional<BitbucketServerConfiguration> serverConfiguration =
+                    descriptor.getConfiguration(bitbucketSCM.getServerId());
+            if (!serverConfiguration.isPresent()) {
+                return null;
+            }
+            String baseUrl = serverConfiguration.get().getBaseUrl();
+            return create(descriptor.getBitbucketScmHelper(baseUrl, bitbucketSCM.getCredentialsId()),
+                    descriptor.getContentCache(), baseUrl, bitbucketSCM.getCredentialsId(),
+                    bitbucketSCM.getProjectKey(), bitbucketSCM.getRepositorySlug(), commit, rev);
+        }
+
+        @CheckForNull
+        @Override
+        public SCMFileSystem build(SCMSource source, SCMHead head, @CheckForNull SCMRevision rev) {
+            BitbucketSCMSource bitbucketSCMSource = (BitbucketSCMSource) source;
+            bitbucketSCMSource.resolveIfPending();
+            String commit = getHash(rev);
+            if (commit == null) {
+                commit = getRef(head.getName(), bitbucketSCMSource.getMirrorName());
+            }
+            if (commit == null) {
+                return null;
+            }
+            BitbucketSCMSource.DescriptorImpl descriptor =
+                    (BitbucketSCMSource.DescriptorImpl) bitbucketSCMSource.getDescriptor();
+            Optional<BitbucketServerConfiguration> serverConfiguration =
+                    descriptor.getConfiguration(bitbucketSCMSource.getServerId());
+            if (!serverConfiguration.isPresent()) {
+                return null;
+            }
+            String baseUrl = serverConfiguration.get().getBaseUrl();
+            return create(descriptor.getBitbucketScmHelper(baseUrl, bitbucketSCMSource.getCredentialsId()),
+                    descriptor.getContentCache(), baseUrl, bitbucketSCMSource.getCredentialsId(),
+                    bitbucketSCMSource.getProjectKey(), bitbucketSCMSource.getRepositorySlug(), commit, rev);
+        }
+
+        @Override
+        protected boolean supportsDescriptor(SCMDescriptor descriptor) {
+            return descriptor instanceof BitbucketSCM.DescriptorImpl;
+        }
+
+        @Override
+        protected boolean supportsDescriptor(SCMSourceDescriptor descriptor) {
+            return descriptor instanceof BitbucketSCMSource.DescriptorImpl;
+        }
+
+        @CheckForNull
+        private static SCMFileSystem create(BitbucketScmHelper scmHelper, RepositoryContentCache contentCache,
+                                            String baseUrl, @CheckForNull String credentialsId, String projectKey,
+                                            String repositorySlug, String commit, @CheckForNull SCMRevision rev) {
+            if (isBlank(projectKey) || isBlank(repositorySlug)) {
+                return null;
+            }
+            try {
+                BitbucketRepositoryClient client = scmHelper.getRepositoryClient(projectKey, repositorySlug);
+                return new BitbucketSCMFileSystem(client,
+                        getRepositoryKey(baseUrl, credentialsId, projectKey, repositorySlug), commit, rev,
+                        contentCache);
+            } catch (BitbucketClientException e) {
+                // Files are read from a checkout instead
+                LOGGER.fine("Could not create a client for " + projectKey + "/" + repositorySlug + ": " +
+                            e.getMessage());
+                return null;
+            }
+        }
+
+        @CheckForNull
+        private static String getHash(@CheckForNull SCMRevision rev) {
+            return rev instanceof AbstractGitSCMSource.SCMRevisionImpl ?
+                    ((AbstractGitSCMSource.SCMRevisionImpl) rev).getHash() : null;
+        }
+
+        /**
+         * Returns what to read the files of a branch spec at when there is no revision. Branch specs name branches
+         * the way the Git plugin does, such as <code>*&#47;master</code>, {@code <remote>/master} or
+         * {@code refs/heads/master}. Specs naming other remotes or refs, patterns and parameters can't be looked up
+         * on the server.
+         *
+         * @param branchSpec the name of the branch spec
+         * @param remoteName the name of the remote of the SCM, which is the slug of its repository
+         * @param mirrorName the name of the mirror of the SCM
+         * @return the branch or ref, or null if the files have to be read from a checkout
+         */
+        @CheckForNull
+        @VisibleForTesting
+        static String getRef(String branchSpec, @CheckForNull String remoteName, @CheckForNull String mirrorName) {
+            String ref;
+            if (branchSpec.startsWith("*/")) {
+                ref = branchSpec.substring(2);
+            } else if (isNotBlank(remoteName) && branchSpec.startsWith(remoteName + "/")) {
+                ref = branchSpec.substring(remoteName.length() + 1);
+            } else if (branchSpec.startsWith("refs/heads/") || branchSpec.startsWith("refs/tags/") ||
+                       !branchSpec.contains("/")) {
+                ref = branchSpec;
+            } else {
+                // Such as origin/master or refs/remotes/origin/master, which aren't branches of this repository
+                return null;
+            }
+            return getRef(ref, mirrorName);
+        }
+
+        /**
+         * Returns what to read the files of a branch at when there is no revision. The latest commit of a branch is
+         * only sure to be on the primary server, so when a mirror is configured the files are read from a checkout.
+         */
+        @CheckForNull
+        private static String getRef(String branch, @CheckForNull String mirrorName) {
+            if (isNotBlank(mirrorName) || isBlank(branch) || containsAny(branch, '*', '?', '$', ':')) {
+                return null;
+            }
+            return branch;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import jenkins.scm.api.SCMProbe;
+import jenkins.scm.api.SCMProbeStat;
+
+import java.io.IOException;
+
+/**
+ * Checks whether a branch meets the criteria of a multibranch project, such as having a Jenkinsfile, by looking the
+ * paths up with a {@link BitbucketSCMFileSystem} instead of fetching the branch.
+ */
+class BitbucketSCMProbe extends SCMProbe {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient BitbucketSCMFileSystem fileSystem;
+    private final String name;
+
+    BitbucketSCMProbe(BitbucketSCMFileSystem fileSystem, String name) {
+        this.fileSystem = fileSystem;
+        this.name = name;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns when the branch was last modified, which is not known without another request per branch. The criteria
+     * of multibranch projects only look at which files exist, and {@link SCMProbe} allows 0 for an unknown time.
+     *
+     * @return always 0
+     */
+    @Override
+    public long lastModified() {
+        return fileSystem.lastModified();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SCMProbeStat stat(String path) throws IOException {
+        return SCMProbeStat.fromType(fileSystem.getType(path));
+    }
+}
@@ -63,7 +63,8 @@ public class BitbucketSCMRepository {
     }
 
     public boolean isMirrorConfigured() {
-        return !isEmpty(mirrorName);
+        // The nearest mirror changes from build to build, so changes are picked up from the primary server
+        return !isEmpty(mirrorName) && !BitbucketMirrorHandler.NEAREST_MIRROR.equals(mirrorName);
     }
 
     public boolean isPersonal() {
@@ -1,10 +1,13 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
@@ -21,13 +24,20 @@ import hudson.plugins.git.extensions.GitSCMExtensionDescriptor;
 import hudson.scm.SCM;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import jenkins.plugins.git.AbstractGitSCMSource;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
 import jenkins.plugins.git.GitSCMSource;
+import jenkins.plugins.git.GitSCMSourceContext;
+import jenkins.plugins.git.GitSCMSourceRequest;
 import jenkins.scm.api.*;
+import jenkins.scm.api.trait.SCMSourceRequest;
 import jenkins.scm.api.trait.SCMSourceTrait;
 import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
 import jenkins.scm.impl.TagSCMHeadCategory;
 import jenkins.scm.impl.UncategorizedSCMHeadCategory;
 import jenkins.scm.impl.form.NamedArrayList;
+import jenkins.util.Timer;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -39,22 +49,33 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.atlassian.bitbucket.jenkins.internal.model.RepositoryState.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorHandler.NEAREST_MIRROR;
 import static java.lang.String.format;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public class BitbucketSCMSource extends SCMSource {
 
+    /**
+     * When set, branches are discovered by listing them with the Bitbucket Server REST API rather than by fetching
+     * the repository, as long as only branches are discovered and no mirror is configured.
+     */
+    static final String REST_DISCOVERY_PROPERTY = "bitbucket.scm.rest.discovery";
     private static final Logger LOGGER = Logger.getLogger(BitbucketSCMSource.class.getName());
     private final List<SCMSourceTrait> traits;
-    private CustomGitSCMSource gitSCMSource;
-    private BitbucketSCMRepository repository;
+    private volatile CustomGitSCMSource gitSCMSource;
+    private volatile BitbucketSCMRepository repository;
+    // Not saved, as a lookup still pending when the source is loaded is worked out from its clone URL
+    private transient volatile boolean resolutionPending;
     private volatile boolean webhookRegistered;
 
     @DataBoundConstructor
@@ -73,53 +94,13 @@ public class BitbucketSCMSource extends SCMSource {
             this.traits.addAll(traits);
         }
 
-        BitbucketSCMSource.DescriptorImpl descriptor = (BitbucketSCMSource.DescriptorImpl) getDescriptor();
-        Optional<BitbucketServerConfiguration> mayBeServerConf = descriptor.getConfiguration(serverId);
-        if (!mayBeServerConf.isPresent()) {
-            LOGGER.info("No Bitbucket Server configuration for serverId " + serverId);
-            setEmptyRepository(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            return;
-        }
-
-        BitbucketServerConfiguration serverConfiguration = mayBeServerConf.get();
-        GlobalCredentialsProvider globalCredentialsProvider = serverConfiguration.getGlobalCredentialsProvider(
-                format("Bitbucket SCM: Query Bitbucket for project [%s] repo [%s] mirror[%s]",
-                        projectName,
-                        repositoryName,
-                        mirrorName));
-        String baseUrl = serverConfiguration.getBaseUrl();
-        BitbucketScmHelper scmHelper =
-                descriptor.getBitbucketScmHelper(baseUrl, credentialsId);
-        if (isBlank(projectName)) {
-            LOGGER.info("Error creating the Bitbucket SCM: The project name is blank");
-            setEmptyRepository(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            return;
-        }
-        if (isBlank(repositoryName)) {
-            LOGGER.info("Error creating the Bitbucket SCM: The repository name is blank");
-            setEmptyRepository(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            return;
-        }
-
-        if (isNotBlank(mirrorName)) {
-            try {
-                EnrichedBitbucketMirroredRepository mirroredRepository =
-                        descriptor.createMirrorHandler(scmHelper)
-                                .fetchRepository(
-                                        new MirrorFetchRequest(
-                                                serverConfiguration.getBaseUrl(),
-                                                credentialsId,
-                                                globalCredentialsProvider,
-                                                projectName,
-                                                repositoryName,
-                                                mirrorName));
-                setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirroredRepository);
-            } catch (MirrorFetchException ex) {
-                setEmptyRepository(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
-            }
+        if (((DescriptorImpl) getDescriptor()).isLazyResolution()) {
+            // Use the names as they were entered until the repository has been looked up
+            publish(createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName));
+            deferResolution();
         } else {
-            BitbucketRepository localRepo = scmHelper.getRepository(projectName, repositoryName);
-            setRepositoryDetails(credentialsId, sshCredentialsId, serverId, "", localRepo);
+            publish(resolve(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName));
         }
     }
 
@@ -129,8 +110,16 @@ public class BitbucketSCMSource extends SCMSource {
      * @param oldScm old scm to copy values from
      */
     public BitbucketSCMSource(BitbucketSCMSource oldScm) {
-        this(oldScm.getId(), oldScm.getCredentialsId(), oldScm.getSshCredentialsId(), oldScm.getTraits(),
-                oldScm.getProjectName(), oldScm.getRepositoryName(), oldScm.getServerId(), oldScm.getMirrorName());
+        super.setId(oldScm.getId());
+        traits = new ArrayList<>(oldScm.getTraits());
+        if (oldScm.gitSCMSource != null && ((DescriptorImpl) getDescriptor()).isLazyResolution()) {
+            // Keep using the clone URL the old source was saved with until it has been looked up again
+            publish(createResolution(oldScm.getRemote(), oldScm.getBitbucketSCMRepository()));
+            deferResolution();
+        } else {
+            publish(resolve(oldScm.getCredentialsId(), oldScm.getSshCredentialsId(), oldScm.getProjectName(),
+                    oldScm.getRepositoryName(), oldScm.getServerId(), oldScm.getMirrorName()));
+        }
     }
 
     @Override
@@ -138,20 +127,14 @@ public class BitbucketSCMSource extends SCMSource {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Building SCM for " + head.getName() + " at revision " + revision);
         }
+        resolveIfPending();
         return gitSCMSource.build(head, revision);
     }
 
     @Override
     public void afterSave() {
         super.afterSave();
-        if (!webhookRegistered && isValid()) {
-            SCMSourceOwner owner = getOwner();
-            if (owner instanceof ComputedFolder) {
-                getTriggers((ComputedFolder<?>) owner)
-                        .forEach(triggerDesc ->
-                                webhookRegistered = triggerDesc.addTrigger(owner, this));
-            }
-        }
+        registerWebhook();
     }
 
     public BitbucketSCMRepository getBitbucketSCMRepository() {
@@ -229,7 +212,43 @@ public class BitbucketSCMSource extends SCMSource {
     protected void retrieve(@CheckForNull SCMSourceCriteria criteria, SCMHeadObserver observer,
                             @CheckForNull SCMHeadEvent<?> event,
                             TaskListener listener) throws IOException, InterruptedException {
-        gitSCMSource.accessibleRetrieve(criteria, observer, event, listener);
+        resolveIfPending();
+        GitSCMSourceContext<?, ?> context = new GitSCMSourceContext<>(criteria, observer).withTraits(getTraits());
+        if (isRestDiscoverable(context)) {
+            retrieveBranches(context, event, listener);
+        } else {
+            gitSCMSource.accessibleRetrieve(criteria, observer, event, listener);
+        }
+    }
+
+    /**
+     * Returns whether listing the branches with the REST API finds the same heads as fetching the repository would.
+     * Tags, other refs and custom ref specs are only found by fetching.
+     */
+    @VisibleForTesting
+    boolean isRestDiscoverable(GitSCMSourceContext<?, ?> context) {
+        return ((DescriptorImpl) getDescriptor()).isRestDiscovery() && isValid() && isBlank(getMirrorName()) &&
+               context.wantBranches() && !context.wantTags() && !context.wantOtherRefs() &&
+               context.refSpecs().stream().allMatch(AbstractGitSCMSource.REF_SPEC_DEFAULT::equals);
+    }
+
+    protected Object readResolve() {
+        if (gitSCMSource != null && repository != null && isBlank(getRemote()) &&
+            !isBlank(repository.getProjectName()) && !isBlank(repository.getRepositoryName())) {
+            // Saved before the repository could be looked up
+            deferResolution();
+        }
+        return this;
+    }
+
+    private void deferResolution() {
+        resolutionPending = true;
+        try {
+            Timer.get().execute(this::resolveIfPending);
+        } catch (RejectedExecutionException e) {
+            // The repository is looked up on first use instead
+            LOGGER.fine("Could not schedule looking up the repository of the Bitbucket SCM source " + getId());
+        }
     }
 
     private String getCloneUrl(List<BitbucketNamedLink> cloneUrls, CloneProtocol cloneProtocol) {
@@ -240,35 +259,217 @@ public class BitbucketSCMSource extends SCMSource {
                 .orElse("");
     }
 
-    private void initialize(String cloneUrl, BitbucketSCMRepository bitbucketSCMRepository) {
-        repository = bitbucketSCMRepository;
+    /**
+     * Returns the names of the branches the observer or event is interested in.
+     *
+     * @return the names of the branches, or null if every branch is wanted
+     */
+    @CheckForNull
+    @VisibleForTesting
+    Set<String> getWantedBranches(SCMHeadObserver observer, @CheckForNull SCMHeadEvent<?> event) {
+        Set<String> wanted = null;
+        Set<SCMHead> includes = observer.getIncludes();
+        if (includes != null) {
+            wanted = includes.stream().map(SCMHead::getName).collect(Collectors.toSet());
+        }
+        if (event != null) {
+            Set<String> eventHeads = event.heads(this).keySet().stream()
+                    .map(SCMHead::getName)
+                    .collect(Collectors.toSet());
+            if (wanted == null) {
+                wanted = eventHeads;
+            } else {
+                wanted.retainAll(eventHeads);
+            }
+        }
+        return wanted;
+    }
+
+    private Resolution createResolution(String cloneUrl, BitbucketSCMRepository bitbucketSCMRepository) {
         String credentialsId = isBlank(bitbucketSCMRepository.getSshCredentialsId()) ?
                 bitbucketSCMRepository.getCredentialsId() : bitbucketSCMRepository.getSshCredentialsId();
         UserRemoteConfig remoteConfig =
                 new UserRemoteConfig(cloneUrl, bitbucketSCMRepository.getRepositorySlug(), null, credentialsId);
-        gitSCMSource = new CustomGitSCMSource(remoteConfig.getUrl());
-        gitSCMSource.setTraits(traits);
-        gitSCMSource.setCredentialsId(credentialsId);
+        CustomGitSCMSource newGitSCMSource = new CustomGitSCMSource(remoteConfig.getUrl());
+        newGitSCMSource.setTraits(traits);
+        newGitSCMSource.setCredentialsId(credentialsId);
+        return new Resolution(bitbucketSCMRepository, newGitSCMSource, isNotBlank(cloneUrl));
+    }
+
+    private void registerWebhook() {
+        if (!webhookRegistered && isValid()) {
+            SCMSourceOwner owner = getOwner();
+            if (owner instanceof ComputedFolder) {
+                getTriggers((ComputedFolder<?>) owner)
+                        .forEach(triggerDesc ->
+                                webhookRegistered = triggerDesc.addTrigger(owner, this));
+            }
+        }
+    }
+
+    private void publish(Resolution resolution) {
+        repository = resolution.repository;
+        gitSCMSource = resolution.gitSCMSource;
+    }
+
+    /**
+     * Looks up the repository. Nothing is changed on the source itself; the result is only applied by
+     * {@link #publish(Resolution)}, so a failed lookup never leaves the source half updated.
+     */
+    private Resolution resolve(@Nullable String credentialsId, @Nullable String sshCredentialsId,
+                               @CheckForNull String projectName, @CheckForNull String repositoryName,
+                               @CheckForNull String serverId, @CheckForNull String mirrorName) {
+        BitbucketSCMSource.DescriptorImpl descriptor = (BitbucketSCMSource.DescriptorImpl) getDescriptor();
+        Optional<BitbucketServerConfiguration> mayBeServerConf = descriptor.getConfiguration(serverId);
+        if (!mayBeServerConf.isPresent()) {
+            LOGGER.info("No Bitbucket Server configuration for serverId " + serverId);
+            return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName);
+        }
+
+        BitbucketServerConfiguration serverConfiguration = mayBeServerConf.get();
+        GlobalCredentialsProvider globalCredentialsProvider = serverConfiguration.getGlobalCredentialsProvider(
+                format("Bitbucket SCM: Query Bitbucket for project [%s] repo [%s] mirror[%s]",
+                        projectName,
+                        repositoryName,
+                        mirrorName));
+        String baseUrl = serverConfiguration.getBaseUrl();
+        BitbucketScmHelper scmHelper =
+                descriptor.getBitbucketScmHelper(baseUrl, credentialsId);
+        if (isBlank(projectName)) {
+            LOGGER.info("Error creating the Bitbucket SCM: The project name is blank");
+            return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName);
+        }
+        if (isBlank(repositoryName)) {
+            LOGGER.info("Error creating the Bitbucket SCM: The repository name is blank");
+            return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName, serverId,
+                    mirrorName);
+        }
+
+        // Branch sources are built by the Git plugin and can't be seeded from a mirror, so the nearest mirror
+        // falls back to the primary server, which always has the latest commits
+        if (isNotBlank(mirrorName) && !NEAREST_MIRROR.equals(mirrorName)) {
+            try {
+                EnrichedBitbucketMirroredRepository mirroredRepository =
+                        descriptor.createMirrorHandler(scmHelper)
+                                .fetchRepository(
+                                        new MirrorFetchRequest(
+                                                serverConfiguration.getBaseUrl(),
+                                                credentialsId,
+                                                globalCredentialsProvider,
+                                                projectName,
+                                                repositoryName,
+                                                mirrorName));
+                return createResolution(credentialsId, sshCredentialsId, serverId, mirrorName, mirroredRepository);
+            } catch (MirrorFetchException ex) {
+                return createEmptyResolution(credentialsId, sshCredentialsId, projectName, repositoryName,
+                        serverId, mirrorName);
+            }
+        }
+        BitbucketRepository localRepo = scmHelper.getRepository(projectName, repositoryName);
+        return createResolution(credentialsId, sshCredentialsId, serverId,
+                NEAREST_MIRROR.equals(mirrorName) ? mirrorName : "", localRepo);
+    }
+
+    void resolveIfPending() {
+        if (!resolutionPending) {
+            return;
+        }
+        // Looked up without holding the lock, so a slow server doesn't hold up every other use of the source
+        BitbucketSCMRepository previousRepository = repository;
+        Resolution resolution = resolve(previousRepository.getCredentialsId(),
+                previousRepository.getSshCredentialsId(), getProjectName(), getRepositoryName(),
+                previousRepository.getServerId(), previousRepository.getMirrorName());
+        // A failed lookup keeps what the source was saved with, and is tried again on next use
+        if (!resolution.resolved) {
+            return;
+        }
+        synchronized (this) {
+            if (!resolutionPending) {
+                // Another lookup has already been published
+                return;
+            }
+            publish(resolution);
+            resolutionPending = false;
+        }
+        // The webhook could not be registered while the clone URL was unknown
+        registerWebhook();
+    }
+
+    /**
+     * Lists the branches with the REST API and hands them to the request, which applies the filters of the traits,
+     * checks the criteria with a {@link BitbucketSCMProbe} and stops as soon as the observer has seen what it wants.
+     */
+    @VisibleForTesting
+    void retrieveBranches(GitSCMSourceContext<?, ?> context, @CheckForNull SCMHeadEvent<?> event,
+                          TaskListener listener) throws IOException, InterruptedException {
+        Set<String> wanted = getWantedBranches(context.observer(), event);
+        if (wanted != null && wanted.isEmpty()) {
+            return;
+        }
+        BitbucketServerConfiguration serverConfiguration = ((DescriptorImpl) getDescriptor())
+                .getConfiguration(getServerId())
+                .orElseThrow(() -> new IOException("No Bitbucket Server configuration for serverId " + getServerId()));
+        BitbucketRepositoryClient client = ((DescriptorImpl) getDescriptor())
+                .getBitbucketScmHelper(serverConfiguration.getBaseUrl(), getCredentialsId())
+                .getRepositoryClient(getProjectKey(), getRepositorySlug());
+        RepositoryContentCache contentCache = ((DescriptorImpl) getDescriptor()).getContentCache();
+        String repositoryKey = BitbucketSCMFileSystem.getRepositoryKey(serverConfiguration.getBaseUrl(),
+                getCredentialsId(), getProjectKey(), getRepositorySlug());
+        // A single branch is looked up by name rather than by listing them all
+        String filterText = wanted != null && wanted.size() == 1 ? wanted.iterator().next() : null;
+        PrintStream logger = listener.getLogger();
+        int count = 0;
+        try (GitSCMSourceRequest request = context.newRequest(this, listener);
+             Stream<BitbucketBranch> branches = client.getBranches(filterText,
+                     branch -> wanted == null || wanted.contains(branch.getDisplayId()))) {
+            logger.println("Listing branches of " + getProjectKey() + "/" + getRepositorySlug() +
+                           " from Bitbucket Server");
+            for (Iterator<BitbucketBranch> it = branches.iterator(); it.hasNext(); ) {
+                BitbucketBranch branch = it.next();
+                count++;
+                SCMSourceRequest.RevisionLambda<GitBranchSCMHead, GitBranchSCMRevision> revisionFactory =
+                        head -> new GitBranchSCMRevision(head, branch.getLatestCommit());
+                SCMSourceRequest.ProbeLambda<GitBranchSCMHead, GitBranchSCMRevision> probeFactory =
+                        (head, revision) -> new BitbucketSCMProbe(new BitbucketSCMFileSystem(client, repositoryKey,
+                                branch.getLatestCommit(), revision, contentCache), head.getName());
+                if (request.process(new GitBranchSCMHead(branch.getDisplayId()), revisionFactory, probeFactory,
+                        (head, revision, isMatch) -> logger.println("Checking branch " + head.getName() +
+                                                                    (isMatch ? ": met criteria" :
+                                                                            ": does not meet criteria")))) {
+                    logger.format("Processed %d branches (query complete)%n", count);
+                    return;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } catch (BitbucketClientException e) {
+            throw new IOException("Could not list the branches of " + getProjectKey() + "/" + getRepositorySlug(), e);
+        }
+        logger.format("Processed %d branches%n", count);
     }
 
     @SuppressWarnings("Duplicates")
-    private void setEmptyRepository(@Nullable String credentialsId,
-                                    @Nullable String sshCredentialsId,
-                                    @CheckForNull String projectName,
-                                    @CheckForNull String repositoryName,
-                                    @CheckForNull String serverId,
-                                    @CheckForNull String mirrorName) {
+    private Resolution createEmptyResolution(@Nullable String credentialsId,
+                                             @Nullable String sshCredentialsId,
+                                             @CheckForNull String projectName,
+                                             @CheckForNull String repositoryName,
+                                             @CheckForNull String serverId,
+                                             @CheckForNull String mirrorName) {
         projectName = Objects.toString(projectName, "");
         repositoryName = Objects.toString(repositoryName, "");
         mirrorName = Objects.toString(mirrorName, "");
         BitbucketRepository repository =
                 new BitbucketRepository(-1, repositoryName, null, new BitbucketProject(projectName, null, projectName),
                         repositoryName, AVAILABLE);
-        setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
+        return createResolution(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
     }
 
-    private void setRepositoryDetails(@Nullable String credentialsId, @Nullable String sshCredentialsId,
-                                      @Nullable String serverId, String mirrorName, BitbucketRepository repository) {
+    private Resolution createResolution(@Nullable String credentialsId, @Nullable String sshCredentialsId,
+                                        @Nullable String serverId, String mirrorName,
+                                        BitbucketRepository repository) {
         CloneProtocol cloneProtocol = isBlank(sshCredentialsId) ? CloneProtocol.HTTP : CloneProtocol.SSH;
         String cloneUrl = getCloneUrl(repository.getCloneUrls(), cloneProtocol);
         if (cloneUrl.isEmpty()) {
@@ -278,15 +479,13 @@ public class BitbucketSCMSource extends SCMSource {
                 new BitbucketSCMRepository(credentialsId, sshCredentialsId, repository.getProject().getName(),
                         repository.getProject().getKey(), repository.getName(), repository.getSlug(),
                         serverId, mirrorName);
-        initialize(cloneUrl, bitbucketSCMRepository);
+        return createResolution(cloneUrl, bitbucketSCMRepository);
     }
 
     @SuppressWarnings("Duplicates")
-    private void setRepositoryDetails(@Nullable String credentialsId, @Nullable String sshCredentialsId,
-                                      @Nullable String serverId, EnrichedBitbucketMirroredRepository repository) {
-        if (isBlank(serverId)) {
-            return;
-        }
+    private Resolution createResolution(@Nullable String credentialsId, @Nullable String sshCredentialsId,
+                                        @Nullable String serverId, String mirrorName,
+                                        EnrichedBitbucketMirroredRepository repository) {
         CloneProtocol cloneProtocol = isBlank(sshCredentialsId) ? CloneProtocol.HTTP : CloneProtocol.SSH;
         String cloneUrl = getCloneUrl(repository.getMirroringDetails().getCloneUrls(), cloneProtocol);
         if (cloneUrl.isEmpty()) {
@@ -296,8 +495,8 @@ public class BitbucketSCMSource extends SCMSource {
         BitbucketSCMRepository bitbucketSCMRepository =
                 new BitbucketSCMRepository(credentialsId, sshCredentialsId, underlyingRepo.getProject().getName(),
                         underlyingRepo.getProject().getKey(), underlyingRepo.getName(), underlyingRepo.getSlug(),
-                        serverId, repository.getMirroringDetails().getMirrorName());
-        initialize(cloneUrl, bitbucketSCMRepository);
+                        serverId, mirrorName);
+        return createResolution(cloneUrl, bitbucketSCMRepository);
     }
 
     @Symbol("BbS")
@@ -317,6 +516,14 @@ public class BitbucketSCMSource extends SCMSource {
         private BitbucketScmFormValidationDelegate formValidation;
         @Inject
         private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+        @Inject
+        private BitbucketRepositoryCache repositoryCache;
+        @Inject
+        private MirroredRepositoriesCache mirroredRepositoriesCache;
+        @Inject
+        private MirrorLatencyTable mirrorLatencyTable;
+        @Inject
+        private RepositoryContentCache contentCache;
 
         @Inject
         private RetryingWebhookHandler retryingWebhookHandler;
@@ -467,11 +674,37 @@ public class BitbucketSCMSource extends SCMSource {
             return new SCMHeadCategory[]{UncategorizedSCMHeadCategory.DEFAULT, TagSCMHeadCategory.DEFAULT};
         }
 
+        /**
+         * Whether repositories are looked up in the background and on first use, rather than while the source is
+         * constructed.
+         *
+         * @return true if the source should be constructed from the details it was configured or saved with
+         */
+        boolean isLazyResolution() {
+            return Boolean.getBoolean(BitbucketScmHelper.LAZY_RESOLUTION_PROPERTY);
+        }
+
+        /**
+         * Whether branches are discovered with the REST API rather than by fetching the repository.
+         *
+         * @return true if branches should be listed with the REST API when the traits allow it
+         */
+        boolean isRestDiscovery() {
+            return Boolean.getBoolean(REST_DISCOVERY_PROPERTY);
+        }
+
+        /**
+         * Returns the cache of the files read with {@link BitbucketSCMFileSystem}.
+         */
+        RepositoryContentCache getContentCache() {
+            return contentCache;
+        }
+
         BitbucketScmHelper getBitbucketScmHelper(String bitbucketUrl,
                                                  @Nullable String credentialsId) {
             return new BitbucketScmHelper(bitbucketUrl,
                     bitbucketClientFactoryProvider,
-                    credentialsId, jenkinsToBitbucketCredentials);
+                    credentialsId, jenkinsToBitbucketCredentials, repositoryCache);
         }
 
         Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
@@ -482,7 +715,9 @@ public class BitbucketSCMSource extends SCMSource {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    mirroredRepositoriesCache,
+                    mirrorLatencyTable);
         }
     }
 
@@ -504,4 +739,20 @@ public class BitbucketSCMSource extends SCMSource {
             super.retrieve(criteria, observer, event, listener);
         }
     }
+
+    /**
+     * The details of a repository as they were looked up, before they are published on the source.
+     */
+    private static final class Resolution {
+
+        private final CustomGitSCMSource gitSCMSource;
+        private final BitbucketSCMRepository repository;
+        private final boolean resolved;
+
+        private Resolution(BitbucketSCMRepository repository, CustomGitSCMSource gitSCMSource, boolean resolved) {
+            this.gitSCMSource = gitSCMSource;
+            this.repository = repository;
+            this.resolved = resolved;
+        }
+    }
 }
@@ -29,6 +29,7 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.*;
 
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorHandler.NEAREST_MIRROR;
 import static java.lang.String.format;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
@@ -172,7 +173,8 @@ public class BitbucketSCMStep extends SCMStep {
         BitbucketScmHelper scmHelper =
                 descriptor.getBitbucketScmHelper(serverConfiguration.getBaseUrl(), credentialsId);
         BitbucketRepository repository;
-        if (!isBlank(mirrorName)) {
+        // The nearest mirror is only used to seed each checkout, so the job keeps cloning from the primary server
+        if (!isBlank(mirrorName) && !NEAREST_MIRROR.equals(mirrorName)) {
             try {
                 EnrichedBitbucketMirroredRepository mirroredRepository =
                         descriptor.createMirrorHandler(scmHelper)
@@ -203,7 +205,9 @@ public class BitbucketSCMStep extends SCMStep {
         BitbucketRepository bitbucketRepository =
                 new BitbucketRepository(repositoryId, repositoryName, bitbucketProject,
                         repositorySlug, RepositoryState.AVAILABLE, cloneUrls, selfLink);
-        return new BitbucketSCM(id, branches, credentialsId, sshCredentialsId, null, null, serverId, bitbucketRepository);
+        String scmMirrorName = NEAREST_MIRROR.equals(mirrorName) ? NEAREST_MIRROR : "";
+        return new BitbucketSCM(id, branches, credentialsId, sshCredentialsId, null, null, serverId, scmMirrorName,
+                bitbucketRepository);
     }
 
     private String getCloneUrl(List<BitbucketNamedLink> cloneUrls) {
@@ -230,6 +234,12 @@ public class BitbucketSCMStep extends SCMStep {
         private BitbucketScmFormFillDelegate formFill;
         @Inject
         private BitbucketScmFormValidationDelegate formValidation;
+        @Inject
+        private BitbucketRepositoryCache repositoryCache;
+        @Inject
+        private MirroredRepositoriesCache mirroredRepositoriesCache;
+        @Inject
+        private MirrorLatencyTable mirrorLatencyTable;
         private transient JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
 
         @Override
@@ -364,7 +374,9 @@ public class BitbucketSCMStep extends SCMStep {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    mirroredRepositoriesCache,
+                    mirrorLatencyTable);
         }
 
         private BitbucketScmHelper getBitbucketScmHelper(String bitbucketUrl,
@@ -372,7 +384,7 @@ public class BitbucketSCMStep extends SCMStep {
             injectJenkinsToBitbucketCredentials();
             return new BitbucketScmHelper(bitbucketUrl,
                     bitbucketClientFactoryProvider,
-                    credentialsId, jenkinsToBitbucketCredentials);
+                    credentialsId, jenkinsToBitbucketCredentials, repositoryCache);
         }
 
         private Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
@@ -56,12 +56,16 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
     private final BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final JenkinsProvider jenkinsProvider;
+    private final MirrorLatencyTable mirrorLatencyTable;
+    private final MirroredRepositoriesCache mirroredRepositoriesCache;
 
     @Inject
     public BitbucketScmFormFillDelegate(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                                         BitbucketPluginConfiguration bitbucketPluginConfiguration,
                                         JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
-                                        JenkinsProvider jenkinsProvider) {
+                                        JenkinsProvider jenkinsProvider,
+                                        MirroredRepositoriesCache mirroredRepositoriesCache,
+                                        MirrorLatencyTable mirrorLatencyTable) {
         this.bitbucketClientFactoryProvider =
                 requireNonNull(bitbucketClientFactoryProvider, "bitbucketClientFactoryProvider");
         this.bitbucketPluginConfiguration =
@@ -70,6 +74,10 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
                 requireNonNull(jenkinsToBitbucketCredentials, "jenkinsToBitbucketCredentils");
         this.jenkinsProvider =
                 requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.mirroredRepositoriesCache =
+                requireNonNull(mirroredRepositoriesCache, "mirroredRepositoriesCache");
+        this.mirrorLatencyTable =
+                requireNonNull(mirrorLatencyTable, "mirrorLatencyTable");
     }
 
     @Override
@@ -242,6 +250,7 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
 
     private BitbucketMirrorHandler createMirrorHandlerUsingRepoSearch() {
         return new BitbucketMirrorHandler(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials,
-                (client, project, repo) -> BitbucketSearchHelper.getRepositoryByNameOrSlug(project, repo, client));
+                (client, project, repo) -> BitbucketSearchHelper.getRepositoryByNameOrSlug(project, repo, client),
+                mirroredRepositoriesCache, mirrorLatencyTable);
     }
 }
@@ -37,12 +37,16 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
     private final BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final JenkinsProvider jenkinsProvider;
+    private final MirrorLatencyTable mirrorLatencyTable;
+    private final MirroredRepositoriesCache mirroredRepositoriesCache;
 
     @Inject
     public BitbucketScmFormValidationDelegate(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                                               BitbucketPluginConfiguration bitbucketPluginConfiguration,
                                               JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
-                                              JenkinsProvider jenkinsProvider) {
+                                              JenkinsProvider jenkinsProvider,
+                                              MirroredRepositoriesCache mirroredRepositoriesCache,
+                                              MirrorLatencyTable mirrorLatencyTable) {
         this.bitbucketClientFactoryProvider =
                 requireNonNull(bitbucketClientFactoryProvider, "bitbucketClientFactoryProvider");
         this.bitbucketPluginConfiguration =
@@ -51,6 +55,10 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
                 requireNonNull(jenkinsToBitbucketCredentials, "jenkinsToBitbucketCredentials");
         this.jenkinsProvider =
                 requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.mirroredRepositoriesCache =
+                requireNonNull(mirroredRepositoriesCache, "mirroredRepositoriesCache");
+        this.mirrorLatencyTable =
+                requireNonNull(mirrorLatencyTable, "mirrorLatencyTable");
     }
 
     @Override
@@ -228,7 +236,8 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
         return bitbucketPluginConfiguration.getServerById(serverId)
                 .flatMap(serverConfiguration ->
                         new BitbucketMirrorHandler(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials,
-                                (client, project, repo) -> getRepositoryByNameOrSlug(project, repo, client)).fetchAsListBox(
+                                (client, project, repo) -> getRepositoryByNameOrSlug(project, repo, client),
+                                mirroredRepositoriesCache, mirrorLatencyTable).fetchAsListBox(
                                 new MirrorFetchRequest(
                                         serverConfiguration.getBaseUrl(),
                                         credentialsId,
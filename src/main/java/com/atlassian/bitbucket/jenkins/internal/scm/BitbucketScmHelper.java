@@ -2,6 +2,7 @@ package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
@@ -18,27 +19,51 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 
 public class BitbucketScmHelper {
 
+    /**
+     * When set, {@link BitbucketSCM} and {@link BitbucketSCMSource} are constructed without contacting Bitbucket
+     * Server: they keep the repository details they were configured or saved with and look the repository up in the
+     * background, or when they are first used if that hasn't happened yet.
+     */
+    static final String LAZY_RESOLUTION_PROPERTY = "bitbucket.scm.lazy.resolution";
     private static final Logger LOGGER = Logger.getLogger(BitbucketScmHelper.class.getName());
+    private final String bitbucketBaseUrl;
     private final BitbucketClientFactory clientFactory;
+    private final String credentialsId;
+    private final BitbucketRepositoryCache repositoryCache;
 
     public BitbucketScmHelper(String bitbucketBaseUrl,
                               BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                               @Nullable String credentialsId,
-                              JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials) {
+                              JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+                              BitbucketRepositoryCache repositoryCache) {
+        this.bitbucketBaseUrl = bitbucketBaseUrl;
+        this.credentialsId = credentialsId;
+        this.repositoryCache = repositoryCache;
         clientFactory = bitbucketClientFactoryProvider.getClient(bitbucketBaseUrl,
                 jenkinsToBitbucketCredentials.toBitbucketCredentials(credentialsId));
     }
 
+    public BitbucketRepositoryClient getRepositoryClient(String projectKey, String repositorySlug) {
+        return clientFactory.getProjectClient(projectKey).getRepositoryClient(repositorySlug);
+    }
+
     public BitbucketRepository getRepository(String projectName, String repositoryName) {
         if (isBlank(projectName) || isBlank(repositoryName)) {
             LOGGER.info("Error creating the Bitbucket SCM: The projectName and repositoryName must not be blank");
             return new BitbucketRepository(-1, repositoryName, null, new BitbucketProject(projectName, null, projectName),
                     repositoryName, RepositoryState.AVAILABLE);
         }
+        BitbucketRepository cached = repositoryCache.get(bitbucketBaseUrl, credentialsId, projectName, repositoryName);
+        if (cached != null) {
+            return cached;
+        }
         try {
             BitbucketProject project = getProjectByNameOrKey(projectName, clientFactory);
             try {
-                return getRepositoryByNameOrSlug(projectName, repositoryName, clientFactory);
+                BitbucketRepository repository = getRepositoryByNameOrSlug(projectName, repositoryName, clientFactory);
+                // Only found repositories are kept, so that lookups that failed are tried again by the next job
+                repositoryCache.put(bitbucketBaseUrl, credentialsId, projectName, repositoryName, repository);
+                return repository;
             } catch (NotFoundException e) {
                 LOGGER.info("Error creating the Bitbucket SCM: Cannot find the repository " + project.getName() + "/" +
                             repositoryName);
@@ -0,0 +1,59 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+/**
+ * Keeps how long each mirror took to answer the requests for its repository details, as a moving average so that a
+ * single slow or fast answer doesn't decide which mirror is nearest. Every time the mirrors of a repository are
+ * fetched the table is updated, and mirrors that time out count as having taken the whole timeout.
+ */
+@Singleton
+@ThreadSafe
+public class MirrorLatencyTable {
+
+    // How much the latest answer counts towards the average
+    private static final double WEIGHT = 0.3;
+
+    private final Map<List<String>, Long> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the average time the mirror took to answer.
+     *
+     * @param upstreamBaseUrl the base URL of the upstream server of the mirror
+     * @param mirrorName      the name of the mirror
+     * @return the average latency in nanoseconds, or {@link Long#MAX_VALUE} if the mirror has not answered yet
+     */
+    long getLatency(String upstreamBaseUrl, String mirrorName) {
+        return latencies.getOrDefault(key(upstreamBaseUrl, mirrorName), Long.MAX_VALUE);
+    }
+
+    /**
+     * Forgets how long every mirror took to answer, such as when the server configuration changes.
+     */
+    public void invalidateAll() {
+        latencies.clear();
+    }
+
+    /**
+     * Records how long the mirror took to answer.
+     *
+     * @param upstreamBaseUrl the base URL of the upstream server of the mirror
+     * @param mirrorName      the name of the mirror
+     * @param latencyNanos    the time the mirror took to answer in nanoseconds
+     */
+    void recordLatency(String upstreamBaseUrl, String mirrorName, long latencyNanos) {
+        latencies.merge(key(upstreamBaseUrl, mirrorName), latencyNanos,
+                (average, latest) -> Math.round(average + WEIGHT * (latest - average)));
+    }
+
+    private static List<String> key(String upstreamBaseUrl, String mirrorName) {
+        return Arrays.asList(removeEnd(upstreamBaseUrl, "/"), mirrorName);
+    }
+}
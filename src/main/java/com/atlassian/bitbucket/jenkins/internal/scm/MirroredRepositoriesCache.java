@@ -0,0 +1,97 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+/**
+ * Keeps the mirrors of a repository for a short while, so that filling in the mirror dropdown and then saving the
+ * job, or constructing several SCMs of the same mirrored repository, asks the mirrors for their details once.
+ * Mirrors are kept per server and credentials, and are dropped when the Bitbucket Server configuration is saved.
+ */
+@Singleton
+@ThreadSafe
+public class MirroredRepositoriesCache {
+
+    /**
+     * Milliseconds to keep the mirrors of a repository for. Defaults to 30 seconds, and 0 disables the cache.
+     */
+    static final long CACHE_DURATION = parsePositiveLongFromSystemProperty("bitbucket.mirror.cache.duration",
+            TimeUnit.SECONDS.toMillis(30));
+
+    private final LongSupplier clock;
+    private final long durationMillis;
+    private final Map<List<String>, CachedMirrors> mirrors = new ConcurrentHashMap<>();
+
+    @Inject
+    public MirroredRepositoriesCache() {
+        this(CACHE_DURATION, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    MirroredRepositoriesCache(long durationMillis, LongSupplier clock) {
+        this.durationMillis = durationMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the mirrors of the repository, fetching them with the given loader unless they were fetched recently.
+     * Nothing is kept if the loader fails.
+     *
+     * @param baseUrl          the base URL of the upstream server
+     * @param credentialsId    the ID of the credentials the mirrors are fetched with
+     * @param projectNameOrKey the project name or key of the repository
+     * @param repoNameOrSlug   the repository name or slug
+     * @param loader           fetches the mirrors
+     * @return the mirrors of the repository
+     */
+    List<EnrichedBitbucketMirroredRepository> get(String baseUrl, @Nullable String credentialsId,
+                                                  String projectNameOrKey, String repoNameOrSlug,
+                                                  Supplier<List<EnrichedBitbucketMirroredRepository>> loader) {
+        if (durationMillis == 0) {
+            return loader.get();
+        }
+        List<String> key = Arrays.asList(removeEnd(baseUrl, "/"), credentialsId, projectNameOrKey, repoNameOrSlug);
+        long now = clock.getAsLong();
+        CachedMirrors cached = mirrors.get(key);
+        if (cached != null && now - cached.fetchedAt < durationMillis) {
+            return cached.repositories;
+        }
+        List<EnrichedBitbucketMirroredRepository> repositories = loader.get();
+        mirrors.put(key, new CachedMirrors(repositories, now));
+        // Drop what has expired, so that repositories that are no longer looked at don't stay around
+        mirrors.values().removeIf(entry -> now - entry.fetchedAt >= durationMillis);
+        return repositories;
+    }
+
+    /**
+     * Drops the mirrors of every repository, such as when the server configuration changes.
+     */
+    public void invalidateAll() {
+        mirrors.clear();
+    }
+
+    private static final class CachedMirrors {
+
+        private final long fetchedAt;
+        private final List<EnrichedBitbucketMirroredRepository> repositories;
+
+        private CachedMirrors(List<EnrichedBitbucketMirroredRepository> repositories, long fetchedAt) {
+            this.repositories = repositories;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.google.common.annotations.VisibleForTesting;
+import jenkins.scm.api.SCMFile;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Keeps the types and contents of the files read with {@link BitbucketSCMFileSystem}, so that indexing branches that
+ * haven't changed, or that point at the same commit, doesn't ask Bitbucket Server for their Jenkinsfile again. Only
+ * what was read at a full commit hash is kept, since the content at a commit never changes, and the cache holds at
+ * most {@link #MAX_SIZE} bytes of content, evicting what was least recently used first.
+ */
+@Singleton
+@ThreadSafe
+public class RepositoryContentCache {
+
+    /**
+     * Most bytes of file content to keep. Defaults to 4 MB, and 0 disables the cache.
+     */
+    static final long MAX_SIZE = parsePositiveLongFromSystemProperty("bitbucket.scm.content.cache.size", 4 << 20);
+    private static final Pattern COMMIT_HASH = Pattern.compile("[0-9a-f]{40}");
+    // Roughly what keeping a type costs, so that many lookups of missing files can't grow the cache unbounded
+    private static final int TYPE_SIZE = 64;
+
+    private final long maxSize;
+    @GuardedBy("this")
+    private final Map<List<String>, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long size;
+
+    @Inject
+    public RepositoryContentCache() {
+        this(MAX_SIZE);
+    }
+
+    @VisibleForTesting
+    RepositoryContentCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the content of the file, reading it with the given loader unless it was read at the same commit before.
+     *
+     * @param repository identifies the repository, including the server and credentials it is read with
+     * @param commit     the commit the file is read at
+     * @param path       the path of the file
+     * @param loader     reads the file
+     * @return the content of the file
+     */
+    byte[] getContent(String repository, String commit, String path, Supplier<byte[]> loader) {
+        return get(Arrays.asList("content", repository, commit, path), commit, loader);
+    }
+
+    /**
+     * Returns the type of the path, looking it up with the given loader unless it was looked up at the same commit
+     * before.
+     *
+     * @param repository identifies the repository, including the server and credentials it is read with
+     * @param commit     the commit the path is looked up at
+     * @param path       the path
+     * @param loader     looks up the type
+     * @return the type of the path
+     */
+    SCMFile.Type getType(String repository, String commit, String path, Supplier<SCMFile.Type> loader) {
+        return get(Arrays.asList("type", repository, commit, path), commit, loader);
+    }
+
+    /**
+     * Drops every file that was read, such as when the server configuration changes.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        size = 0;
+    }
+
+    private <T> T get(List<String> key, String commit, Supplier<T> loader) {
+        if (maxSize == 0 || !COMMIT_HASH.matcher(commit).matches()) {
+            return loader.get();
+        }
+        synchronized (this) {
+            @SuppressWarnings("unchecked")
+            T cached = (T) entries.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Loaded without holding the lock, and if two threads load the same entry the last one is kept
+        T value = loader.get();
+        long valueSize = sizeOf(value);
+        if (valueSize > maxSize) {
+            return value;
+        }
+        synchronized (this) {
+            Object previous = entries.put(key, value);
+            if (previous != null) {
+                size -= sizeOf(previous);
+            }
+            size += valueSize;
+            Iterator<Object> it = entries.values().iterator();
+            while (size > maxSize && it.hasNext()) {
+                size -= sizeOf(it.next());
+                it.remove();
+            }
+        }
+        return value;
+    }
+
+    private static long sizeOf(Object value) {
+        return value instanceof byte[] ? ((byte[]) value).length : TYPE_SIZE;
+    }
+}
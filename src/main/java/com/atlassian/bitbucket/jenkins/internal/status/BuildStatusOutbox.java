@@ -0,0 +1,519 @@
+package com.atlassian.bitbucket.jenkins.internal.status;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRateLimiter;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.AuthorizationException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BadRequestException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBuildStatus;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCICapabilities;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import com.cloudbees.plugins.credentials.Credentials;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.format;
+
+/**
+ * A durable queue of build statuses waiting to be posted to Bitbucket Server. When enabled (see
+ * {@link #ENABLED_PROPERTY}) {@link BuildStatusPoster} hands statuses to the outbox instead of posting them on the
+ * build's thread. Each status is saved to its own file under {@code JENKINS_HOME/bitbucket-build-status-outbox} until
+ * it has been posted, so statuses queued before a restart are still sent after it.
+ * <p>
+ * A single background thread posts the statuses. A status that can't be posted is retried with exponential backoff
+ * until {@link #MAX_ATTEMPTS_PROPERTY} attempts have been made; errors that retrying can't fix, such as the server
+ * configuration having been removed, fail it straight away. Failed statuses are kept for administrators to inspect
+ * and retry on the {@link BuildStatusOutboxLink} page, for up to {@link #FAILED_RETENTION_PROPERTY} milliseconds and
+ * at most {@link #MAX_FAILED_PROPERTY} of them, after which the oldest are discarded.
+ * <p>
+ * Only the latest status for a build status key on a commit is worth posting, so a status that has not been sent yet
+ * is replaced when a newer one for the same server, repository, commit and key is queued, and a status identical to
+ * the one already waiting is dropped.
+ */
+@Singleton
+public class BuildStatusOutbox {
+
+    static final String ENABLED_PROPERTY = "bitbucket.buildstatus.async.enabled";
+    static final String FAILED_RETENTION_PROPERTY = "bitbucket.buildstatus.async.failed.retention";
+    static final String INITIAL_BACKOFF_PROPERTY = "bitbucket.buildstatus.async.backoff.initial";
+    static final String MAX_ATTEMPTS_PROPERTY = "bitbucket.buildstatus.async.attempts";
+    static final String MAX_BACKOFF_PROPERTY = "bitbucket.buildstatus.async.backoff.max";
+    static final String MAX_FAILED_PROPERTY = "bitbucket.buildstatus.async.failed.max";
+
+    private static final String DIRECTORY_NAME = "bitbucket-build-status-outbox";
+    private static final Logger LOGGER = Logger.getLogger(BuildStatusOutbox.class.getName());
+
+    private final LongSupplier clock;
+    private final AtomicLong duplicateStatuses = new AtomicLong();
+    private final boolean enabled;
+    private final long failedRetentionMillis;
+    private final Map<List<String>, String> idsByKey = new HashMap<>();
+    private final long initialBackoffMillis;
+    private final int maxAttempts;
+    private final long maxBackoffMillis;
+    private final int maxFailed;
+    private final Map<String, PendingBuildStatus> statuses = new LinkedHashMap<>();
+    private final AtomicLong supersededStatuses = new AtomicLong();
+    @Inject
+    private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
+    private File directory;
+    private String inFlightId;
+    @Inject
+    private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    private boolean loaded;
+    private ScheduledFuture<?> nextDispatch;
+    private long nextDispatchAt;
+    @Inject
+    private BitbucketPluginConfiguration pluginConfiguration;
+    private ScheduledExecutorService scheduler;
+    private Sender sender = this::send;
+    private boolean shutDown;
+
+    public BuildStatusOutbox() {
+        this(Boolean.getBoolean(ENABLED_PROPERTY),
+                (int) parsePositiveLongFromSystemProperty(MAX_ATTEMPTS_PROPERTY, 10),
+                parsePositiveLongFromSystemProperty(INITIAL_BACKOFF_PROPERTY, TimeUnit.SECONDS.toMillis(5)),
+                parsePositiveLongFromSystemProperty(MAX_BACKOFF_PROPERTY, TimeUnit.MINUTES.toMillis(10)),
+                parsePositiveLongFromSystemProperty(FAILED_RETENTION_PROPERTY, TimeUnit.DAYS.toMillis(7)),
+                (int) parsePositiveLongFromSystemProperty(MAX_FAILED_PROPERTY, 1000),
+                System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    BuildStatusOutbox(boolean enabled, int maxAttempts, long initialBackoffMillis, long maxBackoffMillis,
+                      long failedRetentionMillis, int maxFailed, LongSupplier clock) {
+        this.enabled = enabled;
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(maxBackoffMillis, initialBackoffMillis);
+        this.failedRetentionMillis = failedRetentionMillis;
+        this.maxFailed = maxFailed;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if build statuses should be queued and posted in the background; false if they should be posted
+     *         on the build's thread
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Saves the status and queues it to be posted in the background, replacing any status for the same commit and
+     * key that is still waiting to be posted.
+     *
+     * @param status the status to post
+     */
+    public void enqueue(PendingBuildStatus status) {
+        synchronized (this) {
+            load();
+            List<String> key = getKey(status);
+            PendingBuildStatus existing = statuses.get(idsByKey.get(key));
+            if (existing != null) {
+                if (!existing.isFailed() && isSameStatus(existing, status)) {
+                    duplicateStatuses.incrementAndGet();
+                    LOGGER.fine(format("Dropping duplicate build status for commit %s of %s",
+                            status.getRevisionSha1(), status.getJobFullName()));
+                    return;
+                }
+                // A status being posted can't be recalled, the newer status is posted after it
+                if (!existing.getId().equals(inFlightId)) {
+                    remove(existing);
+                    supersededStatuses.incrementAndGet();
+                }
+            }
+            statuses.put(status.getId(), status);
+            idsByKey.put(key, status.getId());
+            save(status);
+        }
+        scheduleDispatch(clock.getAsLong());
+    }
+
+    /**
+     * @return the number of statuses dropped because an identical status was already waiting to be posted
+     */
+    public long getDuplicateStatuses() {
+        return duplicateStatuses.get();
+    }
+
+    /**
+     * @return the statuses that failed permanently or ran out of attempts, oldest first
+     */
+    public synchronized List<PendingBuildStatus> getFailedStatuses() {
+        return statuses.values().stream().filter(PendingBuildStatus::isFailed).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the statuses waiting to be posted, oldest first
+     */
+    public synchronized List<PendingBuildStatus> getPendingStatuses() {
+        return statuses.values().stream().filter(status -> !status.isFailed()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of statuses replaced by a newer status for the same commit and key before being posted
+     */
+    public long getSupersededStatuses() {
+        return supersededStatuses.get();
+    }
+
+    /**
+     * Loads the statuses saved before Jenkins was last stopped and starts posting them.
+     */
+    public void load() {
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            File[] files = getDirectory().listFiles((dir, name) -> name.endsWith(".xml"));
+            if (files == null || files.length == 0) {
+                return;
+            }
+            List<PendingBuildStatus> saved = new ArrayList<>();
+            for (File file : files) {
+                try {
+                    saved.add((PendingBuildStatus) new XmlFile(file).read());
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Discarding unreadable build status " + file, e);
+                    deleteFile(file);
+                }
+            }
+            saved.sort(Comparator.comparingLong(PendingBuildStatus::getCreatedAt));
+            saved.forEach(status -> {
+                statuses.put(status.getId(), status);
+                idsByKey.put(getKey(status), status.getId());
+            });
+            pruneFailed(clock.getAsLong());
+            LOGGER.info(format("Loaded %d build statuses waiting to be posted to Bitbucket Server", saved.size()));
+        }
+        scheduleDispatch(clock.getAsLong());
+    }
+
+    /**
+     * Queues a failed status to be posted again, with a fresh set of attempts.
+     *
+     * @param id the ID of the status
+     * @return true if the status was queued; false if there is no failed status with the ID
+     */
+    public boolean retry(String id) {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            PendingBuildStatus status = statuses.get(id);
+            if (status == null || !status.isFailed()) {
+                return false;
+            }
+            status.reset(now);
+            save(status);
+        }
+        scheduleDispatch(now);
+        return true;
+    }
+
+    /**
+     * Queues the failed statuses to be posted again, with a fresh set of attempts.
+     */
+    public void retryFailed() {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            for (PendingBuildStatus status : statuses.values()) {
+                if (status.isFailed()) {
+                    status.reset(now);
+                    save(status);
+                }
+            }
+        }
+        scheduleDispatch(now);
+    }
+
+    @VisibleForTesting
+    void dispatch() {
+        List<PendingBuildStatus> ready;
+        long now = clock.getAsLong();
+        synchronized (this) {
+            nextDispatch = null;
+            ready = statuses.values().stream()
+                    .filter(status -> !status.isFailed() && status.getNextAttemptAt() <= now)
+                    .collect(Collectors.toList());
+        }
+        for (PendingBuildStatus status : ready) {
+            attempt(status);
+        }
+        OptionalLong next;
+        synchronized (this) {
+            pruneFailed(clock.getAsLong());
+            // Dispatched again for the next attempt, or to discard the next failed status that expires
+            next = statuses.values().stream()
+                    .mapToLong(status -> status.isFailed() ?
+                            status.getLastAttemptAt() + failedRetentionMillis : status.getNextAttemptAt())
+                    .min();
+        }
+        if (next.isPresent()) {
+            scheduleDispatch(next.getAsLong());
+        }
+    }
+
+    /**
+     * Stops posting statuses when Jenkins shuts down. Statuses that have not been posted yet are still saved, and
+     * are posted after Jenkins starts again.
+     */
+    @Terminator
+    public void shutdown() throws InterruptedException {
+        ScheduledExecutorService current;
+        synchronized (this) {
+            shutDown = true;
+            current = scheduler;
+            if (current == null) {
+                return;
+            }
+        }
+        current.shutdownNow();
+        if (!current.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOGGER.warning("A build status was still being posted on shutdown");
+        }
+    }
+
+    @VisibleForTesting
+    void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    @VisibleForTesting
+    void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @VisibleForTesting
+    void setSender(Sender sender) {
+        this.sender = sender;
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning("Failed to delete " + file);
+        }
+    }
+
+    private static boolean isPermanent(RuntimeException e) {
+        return e instanceof AuthorizationException || e instanceof BadRequestException ||
+               e instanceof NotFoundException || e instanceof UnknownServerException;
+    }
+
+    private static List<String> getKey(PendingBuildStatus status) {
+        BitbucketSCMRepository repository = status.getRepository();
+        return Arrays.asList(repository.getServerId(), repository.getProjectKey(), repository.getRepositorySlug(),
+                status.getRevisionSha1(), status.getLegacyBuildStatus().getKey());
+    }
+
+    private static boolean isSameStatus(PendingBuildStatus status, PendingBuildStatus other) {
+        BitbucketBuildStatus buildStatus = status.getLegacyBuildStatus();
+        BitbucketBuildStatus otherBuildStatus = other.getLegacyBuildStatus();
+        return buildStatus.getState().equals(otherBuildStatus.getState()) &&
+               buildStatus.getUrl().equals(otherBuildStatus.getUrl());
+    }
+
+    private void attempt(PendingBuildStatus status) {
+        synchronized (this) {
+            if (!statuses.containsKey(status.getId())) {
+                // Replaced by a newer status since the statuses to post were picked
+                return;
+            }
+            inFlightId = status.getId();
+        }
+        try {
+            BitbucketRateLimiter.inBackground(() -> sender.send(status));
+            synchronized (this) {
+                remove(status);
+            }
+            LOGGER.fine(format("Posted build status for commit %s of %s", status.getRevisionSha1(),
+                    status.getJobFullName()));
+        } catch (RuntimeException e) {
+            long now = clock.getAsLong();
+            boolean failed = isPermanent(e) || status.getAttempts() + 1 >= maxAttempts;
+            // Double the wait after every attempt, up to the maximum
+            long backoff = Math.min(initialBackoffMillis << Math.min(status.getAttempts(), 30), maxBackoffMillis);
+            synchronized (this) {
+                if (!status.getId().equals(idsByKey.get(getKey(status)))) {
+                    // A newer status for the same commit and key was queued while this one was being posted
+                    remove(status);
+                    supersededStatuses.incrementAndGet();
+                    return;
+                }
+                status.recordFailure(String.valueOf(e.getMessage()), now, now + backoff, failed);
+                save(status);
+                if (failed) {
+                    pruneFailed(now);
+                }
+            }
+            if (failed) {
+                LOGGER.log(Level.WARNING, format("Giving up posting build status for commit %s of %s after %d attempts",
+                        status.getRevisionSha1(), status.getJobFullName(), status.getAttempts()), e);
+            } else {
+                LOGGER.log(Level.FINE, format("Failed to post build status for commit %s of %s, retrying in %d ms",
+                        status.getRevisionSha1(), status.getJobFullName(), backoff), e);
+            }
+        } finally {
+            synchronized (this) {
+                inFlightId = null;
+            }
+        }
+    }
+
+    private synchronized File getDirectory() {
+        if (directory == null) {
+            directory = new File(Jenkins.get().getRootDir(), DIRECTORY_NAME);
+        }
+        return directory;
+    }
+
+    private File getFile(PendingBuildStatus status) {
+        return new File(getDirectory(), status.getId() + ".xml");
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketBuildStatusOutbox"));
+        }
+        return scheduler;
+    }
+
+    /**
+     * Discards the failed statuses that have been kept for longer than the retention period, and then the oldest
+     * ones while there are more than the maximum.
+     */
+    private void pruneFailed(long now) {
+        List<PendingBuildStatus> failed = statuses.values().stream()
+                .filter(PendingBuildStatus::isFailed)
+                .sorted(Comparator.comparingLong(PendingBuildStatus::getLastAttemptAt))
+                .collect(Collectors.toList());
+        int remaining = failed.size();
+        for (PendingBuildStatus status : failed) {
+            if (remaining <= maxFailed && now - status.getLastAttemptAt() < failedRetentionMillis) {
+                break;
+            }
+            LOGGER.info(format("Discarding build status for commit %s of %s that could not be posted",
+                    status.getRevisionSha1(), status.getJobFullName()));
+            remove(status);
+            remaining--;
+        }
+    }
+
+    private void remove(PendingBuildStatus status) {
+        statuses.remove(status.getId());
+        idsByKey.remove(getKey(status), status.getId());
+        deleteFile(getFile(status));
+    }
+
+    private void save(PendingBuildStatus status) {
+        try {
+            XmlFile file = new XmlFile(getFile(status));
+            file.mkdirs();
+            file.write(status);
+        } catch (IOException e) {
+            // Still posted from memory, it just won't survive a restart
+            LOGGER.log(Level.WARNING, "Failed to save build status to " + getFile(status), e);
+        }
+    }
+
+    private synchronized void scheduleDispatch(long at) {
+        if (shutDown) {
+            // Saved, so posted after Jenkins starts again
+            return;
+        }
+        if (nextDispatch != null) {
+            if (nextDispatchAt <= at) {
+                return;
+            }
+            nextDispatch.cancel(false);
+        }
+        nextDispatchAt = at;
+        nextDispatch = getScheduler().schedule(this::dispatch, Math.max(at - clock.getAsLong(), 0),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void send(PendingBuildStatus status) {
+        BitbucketServerConfiguration server = pluginConfiguration.getServerById(status.getRepository().getServerId())
+                .orElseThrow(() -> new UnknownServerException(
+                        "The Bitbucket Server configuration for the build status no longer exists"));
+        BitbucketClientFactory client = bitbucketClientFactoryProvider.getClient(server.getBaseUrl(),
+                jenkinsToBitbucketCredentials.toBitbucketCredentials(getAdminCredentials(server, status)));
+        BitbucketCICapabilities ciCapabilities = client.getCapabilityClient().getCICapabilities();
+        BitbucketBuildStatus buildStatus = status.getRichBuildStatus() != null &&
+                                           ciCapabilities.supportsRichBuildStatus() ?
+                status.getRichBuildStatus() : status.getLegacyBuildStatus();
+        client.getBuildStatusClient(status.getRevisionSha1(), status.getRepository(), ciCapabilities)
+                .post(buildStatus);
+    }
+
+    @CheckForNull
+    private Credentials getAdminCredentials(BitbucketServerConfiguration server, PendingBuildStatus status) {
+        Item job;
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            job = Jenkins.get().getItemByFullName(status.getJobFullName());
+        }
+        GlobalCredentialsProvider credentialsProvider = job == null ?
+                server.getGlobalCredentialsProvider("Build status for " + status.getJobFullName()) :
+                server.getGlobalCredentialsProvider(job);
+        return credentialsProvider.getGlobalAdminCredentials().orElse(null);
+    }
+
+    /**
+     * Posts a status to Bitbucket Server, throwing if it could not be posted.
+     */
+    interface Sender {
+
+        void send(PendingBuildStatus status);
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Inject
+        private BuildStatusOutbox outbox;
+
+        @Override
+        public void onLoaded() {
+            outbox.load();
+        }
+    }
+
+    private static final class UnknownServerException extends RuntimeException {
+
+        private UnknownServerException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.atlassian.bitbucket.jenkins.internal.status;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Lists the build statuses in the {@link BuildStatusOutbox} that are waiting to be posted or have failed, and lets
+ * administrators retry the failed ones. Only shown when the outbox is enabled.
+ */
+@Extension
+public class BuildStatusOutboxLink extends ManagementLink {
+
+    public static final String RELATIVE_PATH = "bitbucket-build-status-outbox";
+
+    @Inject
+    private BuildStatusOutbox outbox;
+
+    @RequirePOST
+    @SuppressWarnings("unused") // Stapler
+    public HttpResponse doRetry(@QueryParameter String id) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        outbox.retry(id);
+        return HttpResponses.redirectToDot();
+    }
+
+    @RequirePOST
+    @SuppressWarnings("unused") // Stapler
+    public HttpResponse doRetryFailed() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        outbox.retryFailed();
+        return HttpResponses.redirectToDot();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.BuildStatusOutboxLink_description();
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return Messages.BuildStatusOutboxLink_displayName();
+    }
+
+    public List<PendingBuildStatus> getFailedStatuses() {
+        return outbox.getFailedStatuses();
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return outbox.isEnabled() ? "notepad.png" : null;
+    }
+
+    public List<PendingBuildStatus> getPendingStatuses() {
+        return outbox.getPendingStatuses();
+    }
+
+    @CheckForNull
+    @Override
+    public String getUrlName() {
+        return RELATIVE_PATH;
+    }
+
+    @SuppressWarnings("unused") // Jelly
+    public Date toDate(long millis) {
+        return new Date(millis);
+    }
+}
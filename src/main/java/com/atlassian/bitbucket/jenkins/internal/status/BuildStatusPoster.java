@@ -27,6 +27,8 @@ public class BuildStatusPoster extends RunListener<Run<?, ?>> {
     private static final String BUILD_STATUS_ERROR_MSG = "Failed to post build status, additional information:";
     private static final String BUILD_STATUS_FORMAT =
             "Posting build status of %s to %s for commit id [%s] and ref '%s'";
+    private static final String BUILD_STATUS_QUEUED_FORMAT =
+            "Queued build status of %s to be posted to %s for commit id [%s] and ref '%s'";
     private static final Logger LOGGER = Logger.getLogger(BuildStatusPoster.class.getName());
     private static final String NO_SERVER_MSG =
             "Failed to post build status as the provided Bitbucket Server config does not exist";
@@ -40,6 +42,8 @@ public class BuildStatusPoster extends RunListener<Run<?, ?>> {
     private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     @Inject
     private BitbucketBuildStatusFactory bitbucketBuildStatusFactory;
+    @Inject
+    private BuildStatusOutbox buildStatusOutbox;
 
     public BuildStatusPoster() {
     }
@@ -65,13 +69,29 @@ public class BuildStatusPoster extends RunListener<Run<?, ?>> {
     public void postBuildStatus(BitbucketRevisionAction revisionAction, Run<?, ?> run, TaskListener listener) {
         Optional<BitbucketServerConfiguration> serverOptional =
                 pluginConfiguration.getServerById(revisionAction.getBitbucketSCMRepo().getServerId());
-        if (serverOptional.isPresent()) {
+        if (serverOptional.isPresent() && buildStatusOutbox != null && buildStatusOutbox.isEnabled()) {
+            enqueueBuildStatus(serverOptional.get(), revisionAction, run, listener);
+        } else if (serverOptional.isPresent()) {
             postBuildStatus(serverOptional.get(), revisionAction, run, listener);
         } else {
             listener.error(NO_SERVER_MSG);
         }
     }
 
+    private void enqueueBuildStatus(BitbucketServerConfiguration server, BitbucketRevisionAction revisionAction,
+                                    Run<?, ?> run, TaskListener listener) {
+        // Which of the two is posted is decided once the capabilities of the server are known
+        BitbucketBuildStatus legacyBuildStatus = bitbucketBuildStatusFactory.createLegacyBuildStatus(run);
+        BitbucketBuildStatus richBuildStatus =
+                useLegacyBuildStatus() ? null : bitbucketBuildStatusFactory.createRichBuildStatus(run);
+        listener.getLogger().println(String.format(BUILD_STATUS_QUEUED_FORMAT,
+                legacyBuildStatus.getState(), server.getServerName(), revisionAction.getRevisionSha1(),
+                richBuildStatus == null ? null : richBuildStatus.getRef()));
+        buildStatusOutbox.enqueue(new PendingBuildStatus(revisionAction.getBitbucketSCMRepo(),
+                revisionAction.getRevisionSha1(), run.getParent().getFullName(), legacyBuildStatus, richBuildStatus,
+                System.currentTimeMillis()));
+    }
+
     private void postBuildStatus(BitbucketServerConfiguration server, BitbucketRevisionAction revisionAction,
                                  Run<?, ?> run, TaskListener listener) {
         GlobalCredentialsProvider globalCredentialsProvider = server.getGlobalCredentialsProvider(run.getParent());
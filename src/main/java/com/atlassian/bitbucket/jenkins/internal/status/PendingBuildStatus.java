@@ -0,0 +1,122 @@
+package com.atlassian.bitbucket.jenkins.internal.status;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBuildStatus;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+
+import javax.annotation.CheckForNull;
+import java.util.UUID;
+
+/**
+ * A build status waiting in the {@link BuildStatusOutbox} to be posted to Bitbucket Server. Both forms of the status
+ * are kept because which one is posted depends on the capabilities of the server at the time it is sent.
+ */
+public class PendingBuildStatus {
+
+    private final long createdAt;
+    private final String id;
+    private final String jobFullName;
+    private final BitbucketBuildStatus legacyBuildStatus;
+    private final BitbucketSCMRepository repository;
+    private final String revisionSha1;
+    private final BitbucketBuildStatus richBuildStatus;
+    private int attempts;
+    private boolean failed;
+    private long lastAttemptAt;
+    private String lastError;
+    private long nextAttemptAt;
+
+    /**
+     * @param repository        the repository the build checked out
+     * @param revisionSha1      the commit the status is for
+     * @param jobFullName       the full name of the job that was built, used to track credentials usage
+     * @param legacyBuildStatus the status to post to servers without rich build status support
+     * @param richBuildStatus   the status to post to servers with rich build status support, or {@code null} to
+     *                          always post the legacy status
+     * @param createdAt         when the status was queued, in milliseconds since the epoch
+     */
+    public PendingBuildStatus(BitbucketSCMRepository repository, String revisionSha1, String jobFullName,
+                              BitbucketBuildStatus legacyBuildStatus,
+                              @CheckForNull BitbucketBuildStatus richBuildStatus, long createdAt) {
+        this.id = UUID.randomUUID().toString();
+        this.repository = repository;
+        this.revisionSha1 = revisionSha1;
+        this.jobFullName = jobFullName;
+        this.legacyBuildStatus = legacyBuildStatus;
+        this.richBuildStatus = richBuildStatus;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getJobFullName() {
+        return jobFullName;
+    }
+
+    /**
+     * @return when posting the status was last attempted, in milliseconds since the epoch, or when it was queued if
+     *         it has not been attempted yet
+     */
+    public long getLastAttemptAt() {
+        // Statuses saved before this was recorded have it unset
+        return lastAttemptAt == 0 ? createdAt : lastAttemptAt;
+    }
+
+    @CheckForNull
+    public String getLastError() {
+        return lastError;
+    }
+
+    public BitbucketBuildStatus getLegacyBuildStatus() {
+        return legacyBuildStatus;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public BitbucketSCMRepository getRepository() {
+        return repository;
+    }
+
+    public String getRevisionSha1() {
+        return revisionSha1;
+    }
+
+    @CheckForNull
+    public BitbucketBuildStatus getRichBuildStatus() {
+        return richBuildStatus;
+    }
+
+    /**
+     * @return true if posting the status failed permanently or ran out of attempts, and it will not be retried
+     *         unless an administrator asks for it
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    void recordFailure(String error, long attemptedAt, long nextAttemptAt, boolean failed) {
+        this.attempts++;
+        this.lastAttemptAt = attemptedAt;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        this.failed = failed;
+    }
+
+    void reset(long nextAttemptAt) {
+        this.attempts = 0;
+        this.failed = false;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
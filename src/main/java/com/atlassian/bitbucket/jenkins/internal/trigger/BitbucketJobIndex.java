@@ -0,0 +1,343 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.plugins.git.GitSCM;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn.ParameterizedJob;
+import jenkins.triggers.SCMTriggerItem;
+import org.eclipse.jgit.transport.URIish;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.Locale.ROOT;
+
+/**
+ * Keeps track of which jobs with a {@link BitbucketWebhookTriggerImpl} build which repositories, so that an incoming
+ * webhook only needs to look at the jobs that could possibly match it rather than every item in Jenkins.
+ * <p>
+ * Jobs using a {@link BitbucketSCM} are indexed by project key and repository slug, jobs using a plain {@link GitSCM}
+ * are indexed by their (case insensitive) remote URLs. The index is only a pre-filter: the server, mirror and clone
+ * URL checks in {@link BitbucketWebhookConsumer} are still applied to every job it returns.
+ * <p>
+ * The index is kept up to date by {@link ItemListenerImpl} and {@link SaveableListenerImpl} and is rebuilt in full
+ * when Jenkins finishes loading its items. A {@link BitbucketSCM} that looks its repository up in the background
+ * reports back through {@link #update(BitbucketSCM)}, as its project key and slug may only be known then.
+ */
+@Singleton
+public class BitbucketJobIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketJobIndex.class.getName());
+
+    private final Map<String, Set<String>> jobsByCloneUrl = new HashMap<>();
+    private final Map<RepositoryKey, Set<String>> jobsByRepository = new HashMap<>();
+    private final Map<ScmKey, Set<String>> jobsByScm = new HashMap<>();
+    private final Map<String, Set<Object>> keysByJob = new HashMap<>();
+    private boolean initialized;
+
+    /**
+     * Returns the jobs that build the given repository, either through a {@link BitbucketSCM} pointing at the same
+     * project and repository or through a {@link GitSCM} using one of the given clone URLs.
+     *
+     * @param repository the repository the webhook was raised for
+     * @param cloneLinks the clone URLs of the repository
+     * @return the candidate jobs, which must still be checked against the event
+     */
+    public Collection<ParameterizedJob<?, ?>> getJobs(BitbucketRepository repository, Collection<String> cloneLinks) {
+        Set<String> jobNames = new HashSet<>();
+        synchronized (this) {
+            if (!initialized) {
+                rebuild();
+            }
+            jobNames.addAll(jobsByRepository.getOrDefault(
+                    new RepositoryKey(repository.getProject().getKey(), repository.getSlug()), emptySet()));
+            cloneLinks.forEach(link -> jobNames.addAll(jobsByCloneUrl.getOrDefault(normalize(link), emptySet())));
+        }
+        return getJobs(jobNames);
+    }
+
+    /**
+     * Returns the jobs with a webhook trigger that use the given SCM.
+     *
+     * @param scm the SCM to find the jobs of
+     * @return the jobs using the SCM
+     */
+    public Collection<ParameterizedJob<?, ?>> getJobs(BitbucketSCM scm) {
+        Set<String> jobNames;
+        synchronized (this) {
+            if (!initialized) {
+                rebuild();
+            }
+            jobNames = new HashSet<>(jobsByScm.getOrDefault(new ScmKey(scm.getId()), emptySet()));
+        }
+        return getJobs(jobNames);
+    }
+
+    private Collection<ParameterizedJob<?, ?>> getJobs(Set<String> jobNames) {
+        List<ParameterizedJob<?, ?>> jobs = new ArrayList<>(jobNames.size());
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            for (String jobName : jobNames) {
+                ParameterizedJob<?, ?> job = Jenkins.get().getItemByFullName(jobName, ParameterizedJob.class);
+                if (job == null) {
+                    // The job has gone without us hearing about it, make sure it is not looked up again
+                    remove(jobName);
+                } else {
+                    jobs.add(job);
+                }
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Discards the current index and rebuilds it from every job in Jenkins.
+     */
+    public synchronized void rebuild() {
+        jobsByCloneUrl.clear();
+        jobsByRepository.clear();
+        jobsByScm.clear();
+        keysByJob.clear();
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            Jenkins.get().getAllItems(ParameterizedJob.class).forEach(this::index);
+        }
+        initialized = true;
+        LOGGER.fine(format("Indexed %d jobs with a Bitbucket webhook trigger", keysByJob.size()));
+    }
+
+    synchronized void remove(String jobName) {
+        Set<Object> keys = keysByJob.remove(jobName);
+        if (keys == null) {
+            return;
+        }
+        for (Object key : keys) {
+            Map<?, Set<String>> index = getIndex(key);
+            Set<String> jobs = index.get(key);
+            if (jobs != null) {
+                jobs.remove(jobName);
+                if (jobs.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexes the jobs using the given SCM again, after it has looked up the repository it was saved with.
+     *
+     * @param scm the SCM whose repository details have changed
+     */
+    public void update(BitbucketSCM scm) {
+        Set<String> jobNames;
+        synchronized (this) {
+            if (!initialized) {
+                // The whole index will be built on first use
+                return;
+            }
+            jobNames = new HashSet<>(jobsByScm.getOrDefault(new ScmKey(scm.getId()), emptySet()));
+        }
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            for (String jobName : jobNames) {
+                Item job = Jenkins.get().getItemByFullName(jobName);
+                if (job == null) {
+                    remove(jobName);
+                } else {
+                    update(job);
+                }
+            }
+        }
+    }
+
+    synchronized void update(Item item) {
+        if (!initialized) {
+            // The whole index will be built on first use
+            return;
+        }
+        remove(item.getFullName());
+        if (item instanceof ParameterizedJob) {
+            index((ParameterizedJob<?, ?>) item);
+        }
+    }
+
+    private static Collection<? extends SCM> getScms(ParameterizedJob<?, ?> job) {
+        if (job instanceof WorkflowJob) {
+            WorkflowJob workflowJob = (WorkflowJob) job;
+            if (workflowJob.getDefinition() instanceof CpsScmFlowDefinition) {
+                return singleton(((CpsScmFlowDefinition) workflowJob.getDefinition()).getScm());
+            }
+            return emptySet();
+        }
+        SCMTriggerItem triggerItem = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job);
+        return triggerItem == null ? emptySet() : triggerItem.getSCMs();
+    }
+
+    private static boolean hasWebhookTrigger(ParameterizedJob<?, ?> job) {
+        return job.getTriggers().values().stream().anyMatch(BitbucketWebhookTriggerImpl.class::isInstance);
+    }
+
+    private static String normalize(String cloneUrl) {
+        return cloneUrl.toLowerCase(ROOT);
+    }
+
+    private Map<?, Set<String>> getIndex(Object key) {
+        if (key instanceof RepositoryKey) {
+            return jobsByRepository;
+        }
+        return key instanceof ScmKey ? jobsByScm : jobsByCloneUrl;
+    }
+
+    private void index(ParameterizedJob<?, ?> job) {
+        if (!hasWebhookTrigger(job)) {
+            return;
+        }
+        Set<Object> keys = new HashSet<>();
+        for (SCM scm : getScms(job)) {
+            if (scm instanceof BitbucketSCM) {
+                keys.add(new ScmKey(((BitbucketSCM) scm).getId()));
+                for (BitbucketSCMRepository repository : ((BitbucketSCM) scm).getRepositories()) {
+                    // A repository that was never looked up has no key or slug, the SCM key still finds the job
+                    if (repository.getProjectKey() != null && repository.getRepositorySlug() != null) {
+                        keys.add(new RepositoryKey(repository.getProjectKey(), repository.getRepositorySlug()));
+                    }
+                }
+            } else if (scm instanceof GitSCM) {
+                ((GitSCM) scm).getRepositories().stream()
+                        .flatMap(remote -> remote.getURIs().stream())
+                        .map(URIish::toString)
+                        .map(BitbucketJobIndex::normalize)
+                        .forEach(keys::add);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        String jobName = job.getFullName();
+        keysByJob.put(jobName, keys);
+        for (Object key : keys) {
+            if (key instanceof RepositoryKey) {
+                jobsByRepository.computeIfAbsent((RepositoryKey) key, k -> new HashSet<>()).add(jobName);
+            } else if (key instanceof ScmKey) {
+                jobsByScm.computeIfAbsent((ScmKey) key, k -> new HashSet<>()).add(jobName);
+            } else {
+                jobsByCloneUrl.computeIfAbsent((String) key, k -> new HashSet<>()).add(jobName);
+            }
+        }
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Inject
+        private BitbucketJobIndex jobIndex;
+
+        @Override
+        public void onCreated(Item item) {
+            jobIndex.update(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            jobIndex.remove(item.getFullName());
+        }
+
+        @Override
+        public void onLoaded() {
+            jobIndex.rebuild();
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            jobIndex.remove(oldFullName);
+            jobIndex.update(item);
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            jobIndex.update(item);
+        }
+    }
+
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+
+        @Inject
+        private BitbucketJobIndex jobIndex;
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof ParameterizedJob) {
+                jobIndex.update((Item) o);
+            }
+        }
+    }
+
+    private static final class RepositoryKey {
+
+        private final String projectKey;
+        private final String repositorySlug;
+
+        private RepositoryKey(String projectKey, String repositorySlug) {
+            this.projectKey = projectKey.toLowerCase(ROOT);
+            this.repositorySlug = repositorySlug.toLowerCase(ROOT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            RepositoryKey that = (RepositoryKey) o;
+            return projectKey.equals(that.projectKey) && repositorySlug.equals(that.repositorySlug);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectKey, repositorySlug);
+        }
+    }
+
+    private static final class ScmKey {
+
+        private final String scmId;
+
+        private ScmKey(String scmId) {
+            this.scmId = scmId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return scmId.equals(((ScmKey) o).scmId);
+        }
+
+        @Override
+        public int hashCode() {
+            return scmId.hashCode();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.Job;
+import jenkins.triggers.SCMTriggerItem;
+
+import javax.annotation.CheckForNull;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Merges webhook triggers for the same job before they are handed to the executor running them.
+ * <ul>
+ *     <li>Triggers arriving within the debounce window of the first one are merged into a single
+ *     {@link BitbucketTriggerWorker} carrying all of their causes, actions and ref changes.</li>
+ *     <li>Triggers arriving while a worker for the job is running are merged into one pending trigger, which is
+ *     scheduled like any other once the running worker finishes. At most one worker runs per job.</li>
+ * </ul>
+ */
+public class BitbucketTriggerCoalescer {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketTriggerCoalescer.class.getName());
+
+    private final long debounceMillis;
+    private final AtomicLong executedTriggers = new AtomicLong();
+    private final Executor executor;
+    private final AtomicLong mergedTriggers = new AtomicLong();
+    private final Map<Job<?, ?>, PendingTrigger> pending = new HashMap<>();
+    private final Set<Job<?, ?>> running = new HashSet<>();
+    private final Supplier<ScheduledExecutorService> scheduler;
+
+    public BitbucketTriggerCoalescer(Executor executor, long debounceMillis,
+                                     Supplier<ScheduledExecutorService> scheduler) {
+        this.executor = executor;
+        this.debounceMillis = debounceMillis;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the number of workers handed to the executor
+     */
+    public long getExecutedTriggers() {
+        return executedTriggers.get();
+    }
+
+    /**
+     * @return the number of triggers merged into another trigger for the same job instead of running on their own
+     */
+    public long getMergedTriggers() {
+        return mergedTriggers.get();
+    }
+
+    /**
+     * Schedules a trigger for the job, merging it with any trigger for the same job that has not started yet.
+     *
+     * @param job               the job to trigger
+     * @param triggerItem       the job as an {@link SCMTriggerItem}
+     * @param cause             the cause of the trigger
+     * @param additionalActions additional actions to add to the build
+     * @param refChanges        the ref changes the worker may build without polling, or empty to always poll
+     */
+    public void schedule(@CheckForNull Job<?, ?> job, SCMTriggerItem triggerItem, Cause cause,
+                         List<Action> additionalActions, List<BitbucketRefChange> refChanges) {
+        if (job == null) {
+            execute(null, new PendingTrigger(triggerItem, cause, additionalActions, refChanges));
+            return;
+        }
+        synchronized (this) {
+            PendingTrigger existing = pending.get(job);
+            if (existing != null) {
+                existing.merge(cause, additionalActions, refChanges);
+                mergedTriggers.incrementAndGet();
+                LOGGER.fine(format("Merged webhook trigger for %s into a pending trigger", job.getFullName()));
+                return;
+            }
+            pending.put(job, new PendingTrigger(triggerItem, cause, additionalActions, refChanges));
+            if (running.contains(job)) {
+                // Dispatched once the running worker completes
+                return;
+            }
+        }
+        scheduleDispatch(job);
+    }
+
+    /**
+     * Called by a worker when it finishes. Triggers that arrived while it was running go through the debounce window
+     * and the executor again, so a busy job doesn't hold on to a worker thread other jobs are waiting for.
+     */
+    private void complete(Job<?, ?> job) {
+        synchronized (this) {
+            running.remove(job);
+            if (!pending.containsKey(job)) {
+                return;
+            }
+        }
+        scheduleDispatch(job);
+    }
+
+    private BitbucketTriggerWorker createWorker(@CheckForNull Job<?, ?> job, PendingTrigger trigger) {
+        return new BitbucketTriggerWorker(job, trigger.triggerItem, new CauseAction(trigger.causes),
+                new ArrayList<>(trigger.actions), trigger.getRefChanges(), job == null ? null : () -> complete(job));
+    }
+
+    private void dispatch(Job<?, ?> job) {
+        PendingTrigger trigger;
+        synchronized (this) {
+            if (running.contains(job)) {
+                return;
+            }
+            trigger = pending.remove(job);
+            if (trigger == null) {
+                return;
+            }
+            running.add(job);
+        }
+        try {
+            execute(job, trigger);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                running.remove(job);
+            }
+            throw e;
+        }
+    }
+
+    private void scheduleDispatch(Job<?, ?> job) {
+        if (debounceMillis <= 0) {
+            dispatch(job);
+        } else {
+            scheduler.get().schedule(() -> dispatch(job), debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void execute(@CheckForNull Job<?, ?> job, PendingTrigger trigger) {
+        executedTriggers.incrementAndGet();
+        executor.execute(createWorker(job, trigger));
+    }
+
+    private static final class PendingTrigger {
+
+        private final Set<Action> actions = new LinkedHashSet<>();
+        private final List<Cause> causes = new ArrayList<>();
+        private final Map<String, BitbucketRefChange> refChanges = new LinkedHashMap<>();
+        private final SCMTriggerItem triggerItem;
+        private boolean pollRequired;
+
+        private PendingTrigger(SCMTriggerItem triggerItem, Cause cause, List<Action> additionalActions,
+                               List<BitbucketRefChange> refChanges) {
+            this.triggerItem = triggerItem;
+            merge(cause, additionalActions, refChanges);
+        }
+
+        private List<BitbucketRefChange> getRefChanges() {
+            return pollRequired ? Collections.emptyList() : new ArrayList<>(refChanges.values());
+        }
+
+        private void merge(Cause cause, List<Action> additionalActions, List<BitbucketRefChange> changes) {
+            causes.add(cause);
+            actions.addAll(additionalActions);
+            // A trigger without ref changes has to poll, so the merged trigger has to as well
+            pollRequired |= changes.isEmpty();
+            // Later changes to the same ref supersede earlier ones
+            changes.forEach(change -> {
+                refChanges.remove(change.getRef().getId());
+                refChanges.put(change.getRef().getId(), change);
+            });
+        }
+    }
+}
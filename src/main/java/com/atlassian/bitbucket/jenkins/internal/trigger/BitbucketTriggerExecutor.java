@@ -0,0 +1,215 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.plugins.git.GitSCM;
+import hudson.scm.SCM;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.eclipse.jgit.transport.URIish;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Locale.ROOT;
+
+/**
+ * Runs {@link BitbucketTriggerWorker}s fairly across Bitbucket Server instances and repositories.
+ * <p>
+ * Work is queued per (server, repository) key and the keys are served round-robin, so a burst of pushes to one
+ * repository cannot starve triggers for other repositories. The total number of workers is capped by
+ * {@link com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration#getWebhookTriggerThreads()}
+ * and the number running against one server by
+ * {@link com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration#getWebhookTriggerThreads()},
+ * so one slow instance cannot occupy every worker. Both limits are read every time work is dispatched, so changes
+ * to the configuration apply straight away.
+ */
+public class BitbucketTriggerExecutor implements Executor {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketTriggerExecutor.class.getName());
+
+    private final Map<TriggerKey, Integer> activeByKey = new HashMap<>();
+    private final Map<String, Integer> activeByServer = new HashMap<>();
+    private final ExecutorService executor;
+    private final IntSupplier maxThreads;
+    private final ToIntFunction<String> maxThreadsPerServer;
+    private final Map<TriggerKey, Deque<Runnable>> queues = new LinkedHashMap<>();
+    private int active;
+
+    /**
+     * @param maxThreads          supplies the maximum number of workers running at once
+     * @param maxThreadsPerServer supplies the maximum number of workers running at once against a server, given
+     *                            its id; zero or less for no limit other than the overall one
+     */
+    public BitbucketTriggerExecutor(IntSupplier maxThreads, ToIntFunction<String> maxThreadsPerServer) {
+        this(maxThreads, maxThreadsPerServer, Executors.newCachedThreadPool(
+                new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketWebhookTrigger")));
+    }
+
+    BitbucketTriggerExecutor(IntSupplier maxThreads, ToIntFunction<String> maxThreadsPerServer,
+                             ExecutorService executor) {
+        this.maxThreads = maxThreads;
+        this.maxThreadsPerServer = maxThreadsPerServer;
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        TriggerKey key = TriggerKey.of(task);
+        synchronized (this) {
+            queues.computeIfAbsent(key, k -> new ArrayDeque<>()).add(task);
+        }
+        dispatch();
+    }
+
+    /**
+     * @return the number of running workers for each (server, repository) key
+     */
+    public synchronized Map<String, Integer> getActiveWorkers() {
+        Map<String, Integer> result = new TreeMap<>();
+        activeByKey.forEach((key, count) -> result.put(key.toString(), count));
+        return result;
+    }
+
+    /**
+     * @return the number of workers waiting to run for each (server, repository) key
+     */
+    public synchronized Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> result = new TreeMap<>();
+        queues.forEach((key, queue) -> result.put(key.toString(), queue.size()));
+        return result;
+    }
+
+    private static <K> void decrement(Map<K, Integer> counts, K key) {
+        counts.computeIfPresent(key, (k, count) -> count <= 1 ? null : count - 1);
+    }
+
+    private void complete(TriggerKey key) {
+        synchronized (this) {
+            active--;
+            decrement(activeByKey, key);
+            decrement(activeByServer, key.serverId);
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        List<Map.Entry<TriggerKey, Runnable>> toRun = new ArrayList<>();
+        synchronized (this) {
+            while (active < Math.max(maxThreads.getAsInt(), 1)) {
+                Map.Entry<TriggerKey, Runnable> next = nextTask();
+                if (next == null) {
+                    break;
+                }
+                TriggerKey key = next.getKey();
+                active++;
+                activeByKey.merge(key, 1, Integer::sum);
+                activeByServer.merge(key.serverId, 1, Integer::sum);
+                toRun.add(next);
+            }
+        }
+        for (Map.Entry<TriggerKey, Runnable> entry : toRun) {
+            TriggerKey key = entry.getKey();
+            Runnable task = entry.getValue();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Webhook trigger for " + key + " failed", e);
+                } finally {
+                    complete(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Takes the next task from the first key, in round-robin order, whose server has capacity. The key is then moved
+     * to the back of the line.
+     */
+    private Map.Entry<TriggerKey, Runnable> nextTask() {
+        Iterator<Map.Entry<TriggerKey, Deque<Runnable>>> iterator = queues.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<TriggerKey, Deque<Runnable>> entry = iterator.next();
+            TriggerKey key = entry.getKey();
+            int serverLimit = maxThreadsPerServer.applyAsInt(key.serverId);
+            if (serverLimit > 0 && activeByServer.getOrDefault(key.serverId, 0) >= serverLimit) {
+                continue;
+            }
+            Deque<Runnable> queue = entry.getValue();
+            Runnable task = queue.poll();
+            iterator.remove();
+            if (!queue.isEmpty()) {
+                queues.put(key, queue);
+            }
+            return new AbstractMap.SimpleImmutableEntry<>(key, task);
+        }
+        return null;
+    }
+
+    /**
+     * Identifies the Bitbucket Server instance and repository a trigger polls.
+     */
+    static final class TriggerKey {
+
+        private static final TriggerKey UNKNOWN = new TriggerKey("", "");
+
+        private final String repository;
+        private final String serverId;
+
+        private TriggerKey(String serverId, String repository) {
+            this.serverId = serverId;
+            this.repository = repository;
+        }
+
+        static TriggerKey of(Runnable task) {
+            if (!(task instanceof BitbucketTriggerWorker)) {
+                return UNKNOWN;
+            }
+            for (SCM scm : ((BitbucketTriggerWorker) task).getSCMs()) {
+                if (scm instanceof BitbucketSCM && !((BitbucketSCM) scm).getRepositories().isEmpty()) {
+                    BitbucketSCMRepository repository = ((BitbucketSCM) scm).getBitbucketSCMRepository();
+                    return new TriggerKey(Objects.toString(repository.getServerId(), ""),
+                            (repository.getProjectKey() + '/' + repository.getRepositorySlug()).toLowerCase(ROOT));
+                } else if (scm instanceof GitSCM) {
+                    Optional<URIish> uri = ((GitSCM) scm).getRepositories().stream()
+                            .flatMap(remote -> remote.getURIs().stream())
+                            .findFirst();
+                    if (uri.isPresent()) {
+                        // Not linked to a configured server, so not subject to a per-server limit
+                        return new TriggerKey("", uri.get().toString().toLowerCase(ROOT));
+                    }
+                }
+            }
+            return UNKNOWN;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TriggerKey that = (TriggerKey) o;
+            return serverId.equals(that.serverId) && repository.equals(that.repository);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serverId, repository);
+        }
+
+        @Override
+        public String toString() {
+            return serverId + ':' + repository;
+        }
+    }
+}
@@ -1,11 +1,29 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import hudson.Util;
 import hudson.model.Action;
 import hudson.model.Job;
+import hudson.model.Run;
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.RevisionParameterAction;
+import hudson.plugins.git.extensions.GitSCMExtension;
+import hudson.plugins.git.extensions.impl.MessageExclusion;
+import hudson.plugins.git.extensions.impl.PathRestriction;
+import hudson.plugins.git.extensions.impl.UserExclusion;
+import hudson.plugins.git.util.BuildData;
 import hudson.scm.PollingResult;
+import hudson.scm.SCM;
 import hudson.util.StreamTaskListener;
 import jenkins.triggers.SCMTriggerItem;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.flow.FlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 
 import javax.annotation.CheckForNull;
 import java.io.File;
@@ -15,6 +33,7 @@ import java.text.DateFormat;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 public class BitbucketTriggerWorker implements Runnable {
 
@@ -23,6 +42,9 @@ public class BitbucketTriggerWorker implements Runnable {
     private final List<Action> actions = new ArrayList<>();
     @CheckForNull
     private final Job<?, ?> job;
+    @CheckForNull
+    private final Runnable onComplete;
+    private final List<BitbucketRefChange> refChanges;
     private final SCMTriggerItem triggerItem;
 
     public BitbucketTriggerWorker(
@@ -30,10 +52,40 @@ public class BitbucketTriggerWorker implements Runnable {
             SCMTriggerItem triggerItem,
             Action causeAction,
             List<Action> additionalActions) {
+        this(job, triggerItem, causeAction, additionalActions, Collections.emptyList());
+    }
+
+    /**
+     * Creates a worker that, where possible, builds the revision carried by the webhook instead of polling.
+     *
+     * @param job               the job to trigger
+     * @param triggerItem       the job as an {@link SCMTriggerItem}
+     * @param causeAction       the cause of the build
+     * @param additionalActions additional actions to add to the build
+     * @param refChanges        the added or updated refs from the webhook; if empty the job is always polled
+     */
+    public BitbucketTriggerWorker(
+            @CheckForNull Job<?, ?> job,
+            SCMTriggerItem triggerItem,
+            Action causeAction,
+            List<Action> additionalActions,
+            List<BitbucketRefChange> refChanges) {
+        this(job, triggerItem, causeAction, additionalActions, refChanges, null);
+    }
+
+    BitbucketTriggerWorker(
+            @CheckForNull Job<?, ?> job,
+            SCMTriggerItem triggerItem,
+            Action causeAction,
+            List<Action> additionalActions,
+            List<BitbucketRefChange> refChanges,
+            @CheckForNull Runnable onComplete) {
         actions.add(causeAction);
         actions.addAll(additionalActions);
         this.triggerItem = triggerItem;
         this.job = job;
+        this.refChanges = refChanges;
+        this.onComplete = onComplete;
     }
 
     @Override
@@ -55,6 +107,30 @@ public class BitbucketTriggerWorker implements Runnable {
 
     @Override
     public void run() {
+        try {
+            trigger();
+        } finally {
+            // Hands the job back even if the trigger failed, otherwise later triggers for it would be dropped
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        }
+    }
+
+    public List<Action> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
+
+    @CheckForNull
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    public SCMTriggerItem getTriggerItem() {
+        return triggerItem;
+    }
+
+    private void trigger() {
         if (job == null) {
             return;
         }
@@ -63,6 +139,11 @@ public class BitbucketTriggerWorker implements Runnable {
 
             long start = System.currentTimeMillis();
             PrintStream logger = listener.getLogger();
+            WebhookRevision webhookRevision = resolveWebhookRevision();
+            if (webhookRevision.isResolved()) {
+                scheduleWebhookRevision(webhookRevision, logger);
+                return;
+            }
             logger.println(
                     "Starting polling: "
                             + DateFormat.getDateTimeInstance().format(new Date(start)));
@@ -83,17 +164,139 @@ public class BitbucketTriggerWorker implements Runnable {
         }
     }
 
-    public List<Action> getActions() {
-        return Collections.unmodifiableList(actions);
+    /**
+     * Returns whether the SCM ignores some commits when polling, such as commits that only touch excluded paths.
+     * Only polling looks at the commits themselves, so the revision of the webhook can't be built directly.
+     */
+    private static boolean hasPollingExclusions(GitSCM gitSCM) {
+        for (GitSCMExtension extension : gitSCM.getExtensions()) {
+            if (extension instanceof PathRestriction || extension instanceof UserExclusion ||
+                extension instanceof MessageExclusion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBuilt(Job<?, ?> job, String revision) {
+        Run<?, ?> lastBuild = job.getLastBuild();
+        if (lastBuild == null || !ObjectId.isId(revision)) {
+            return false;
+        }
+        ObjectId sha1 = ObjectId.fromString(revision);
+        return lastBuild.getActions(BuildData.class).stream().anyMatch(buildData -> buildData.hasBeenBuilt(sha1));
+    }
+
+    private static boolean matches(BranchSpec branchSpec, String remoteName, BitbucketRefChange refChange) {
+        return branchSpec.matches(refChange.getRef().getId()) ||
+               branchSpec.matches(remoteName + '/' + refChange.getRef().getDisplayId());
+    }
+
+    /**
+     * @return the SCMs the job checks out, including the SCM a pipeline script is loaded from
+     */
+    Collection<? extends SCM> getSCMs() {
+        if (job instanceof WorkflowJob) {
+            FlowDefinition definition = ((WorkflowJob) job).getDefinition();
+            return definition instanceof CpsScmFlowDefinition ?
+                    Collections.singleton(((CpsScmFlowDefinition) definition).getScm()) : Collections.emptySet();
+        }
+        return triggerItem.getSCMs();
     }
 
     @CheckForNull
-    public Job<?, ?> getJob() {
-        return job;
+    private GitSCM getGitSCM() {
+        Collection<? extends SCM> scms = getSCMs();
+        if (scms.size() != 1) {
+            return null;
+        }
+        SCM scm = scms.iterator().next();
+        if (scm instanceof BitbucketSCM) {
+            return ((BitbucketSCM) scm).getGitSCM();
+        }
+        return scm instanceof GitSCM ? (GitSCM) scm : null;
     }
 
-    public SCMTriggerItem getTriggerItem() {
-        return triggerItem;
+    /**
+     * Works out which revision the webhook asks this job to build, by matching the changed refs against the branch
+     * specs of the job. This is only possible for jobs with a single git repository whose branch specs don't
+     * depend on build parameters or environment variables, and that don't exclude commits from polling.
+     * <p>
+     * The revision is tied to the URL of that repository, so a pipeline checking out other repositories only builds
+     * the revision for this one.
+     */
+    private WebhookRevision resolveWebhookRevision() {
+        if (refChanges.isEmpty()) {
+            return WebhookRevision.UNKNOWN;
+        }
+        GitSCM gitSCM = getGitSCM();
+        if (gitSCM == null || gitSCM.getRepositories().size() != 1 || hasPollingExclusions(gitSCM)) {
+            return WebhookRevision.UNKNOWN;
+        }
+        List<BranchSpec> branches = gitSCM.getBranches();
+        if (branches.isEmpty() || branches.stream().anyMatch(branch -> branch.getName().contains("$"))) {
+            return WebhookRevision.UNKNOWN;
+        }
+        RemoteConfig remote = gitSCM.getRepositories().get(0);
+        if (remote.getURIs().isEmpty()) {
+            return WebhookRevision.UNKNOWN;
+        }
+        String remoteName = remote.getName();
+        Set<String> revisions = refChanges.stream()
+                .filter(refChange -> branches.stream().anyMatch(branch -> matches(branch, remoteName, refChange)))
+                .map(BitbucketRefChange::getToHash)
+                .collect(Collectors.toSet());
+        if (revisions.size() > 1) {
+            // Several matching branches moved, leave it to polling to work out what to build
+            return WebhookRevision.UNKNOWN;
+        }
+        return revisions.isEmpty() ? WebhookRevision.NO_MATCH :
+                new WebhookRevision(revisions.iterator().next(), remote.getURIs().get(0));
+    }
+
+    private void scheduleWebhookRevision(WebhookRevision webhookRevision, PrintStream logger) {
+        String revision = webhookRevision.getRevision();
+        if (revision == null) {
+            logger.println("None of the changed refs match the branches to build, skipping polling");
+        } else if (isBuilt(job, revision)) {
+            logger.println("Revision " + revision + " has already been built, skipping polling");
+        } else {
+            logger.println("Building revision " + revision + " from the webhook without polling");
+            List<Action> buildActions = new ArrayList<>(actions);
+            buildActions.add(new RevisionParameterAction(revision, webhookRevision.getRepositoryUrl()));
+            triggerItem.scheduleBuild2(0, buildActions.toArray(ACTION_ARRAY));
+        }
+    }
+
+    /**
+     * The outcome of matching the webhook's ref changes against the branches of a job.
+     */
+    private static final class WebhookRevision {
+
+        private static final WebhookRevision NO_MATCH = new WebhookRevision(null, null);
+        private static final WebhookRevision UNKNOWN = new WebhookRevision(null, null);
+
+        private final URIish repositoryUrl;
+        private final String revision;
+
+        private WebhookRevision(@CheckForNull String revision, @CheckForNull URIish repositoryUrl) {
+            this.revision = revision;
+            this.repositoryUrl = repositoryUrl;
+        }
+
+        @CheckForNull
+        URIish getRepositoryUrl() {
+            return repositoryUrl;
+        }
+
+        @CheckForNull
+        String getRevision() {
+            return revision;
+        }
+
+        boolean isResolved() {
+            return this != UNKNOWN;
+        }
     }
 }
 
@@ -3,9 +3,12 @@ package com.atlassian.bitbucket.jenkins.internal.trigger;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirrorServer;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChangeType;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefType;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketRepositoryCache;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
 import hudson.plugins.git.GitSCM;
@@ -14,7 +17,6 @@ import hudson.security.ACL;
 import hudson.security.ACLContext;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
-import jenkins.model.Jenkins;
 import jenkins.model.ParameterizedJobMixIn;
 import jenkins.plugins.git.GitBranchSCMHead;
 import jenkins.plugins.git.GitBranchSCMRevision;
@@ -33,6 +35,7 @@ import java.util.stream.Collectors;
 
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -44,35 +47,56 @@ public class BitbucketWebhookConsumer {
 
     @Inject
     private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+    @Inject
+    private BitbucketJobIndex jobIndex;
+    @Inject
+    private BitbucketRepositoryCache repositoryCache;
 
     void process(RefsChangedWebhookEvent event) {
         BitbucketRepository repository = event.getRepository();
         LOGGER.fine(format("Received refs changed event from repo: %s/%s  ", repository.getProject().getKey(), repository.getSlug()));
-        if (!isEligibleRefs(event)) {
-            return;
+        repositoryCache.invalidate(repository);
+        if (isEligibleRefs(event)) {
+            triggerJob(event, new RefChangedDetails(event));
         }
-        RefChangedDetails refChangedDetails = new RefChangedDetails(event);
-        triggerJob(event, refChangedDetails);
+        fireHeadEvents(event);
     }
 
     void process(MirrorSynchronizedWebhookEvent event) {
         BitbucketRepository repository = event.getRepository();
         LOGGER.fine(format("Received Mirror Synchronized changed event from repo: %s/%s  ", repository.getProject().getKey(), repository.getSlug()));
-        if (!isEligibleRefs(event)) {
-            return;
+        if (isEligibleRefs(event)) {
+            triggerJob(event, new RefChangedDetails(event));
         }
-        RefChangedDetails refChangedDetails = new RefChangedDetails(event);
-        triggerJob(event, refChangedDetails);
+        fireHeadEvents(event);
     }
 
-    private static Set<String> eligibleRefs(RefsChangedWebhookEvent event) {
+    private static List<BitbucketRefChange> eligibleRefChanges(RefsChangedWebhookEvent event) {
         return event.getChanges()
                 .stream()
                 .filter(refChange -> refChange.getType() != BitbucketRefChangeType.DELETE)
+                .collect(Collectors.toList());
+    }
+
+    private static Set<String> eligibleRefs(RefsChangedWebhookEvent event) {
+        return eligibleRefChanges(event)
+                .stream()
                 .map(refChange -> refChange.getRef().getId())
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Fires a head event for every branch the event changed, so that multibranch projects create, update or remove
+     * just the jobs of those branches rather than indexing every branch of the repository.
+     */
+    private static void fireHeadEvents(RefsChangedWebhookEvent event) {
+        event.getChanges()
+                .stream()
+                .filter(refChange -> refChange.getRef().getType() == BitbucketRefType.BRANCH)
+                .forEach(refChange -> BitbucketSCMHeadEvent.fireNow(new BitbucketSCMHeadEvent(
+                        toEventType(refChange.getType()), event, refChange, event.getRepository().getSlug())));
+    }
+
     private static Optional<? extends SCM> getScmFromWorkflowJob(WorkflowJob job) {
         if (job.getDefinition() instanceof CpsScmFlowDefinition) {
             CpsScmFlowDefinition scmFlowDefinition = (CpsScmFlowDefinition) job.getDefinition();
@@ -114,6 +138,17 @@ public class BitbucketWebhookConsumer {
                scmRepo.getRepositorySlug().equalsIgnoreCase(repository.getSlug());
     }
 
+    private static SCMEvent.Type toEventType(BitbucketRefChangeType refChangeType) {
+        switch (refChangeType) {
+            case ADD:
+                return SCMEvent.Type.CREATED;
+            case DELETE:
+                return SCMEvent.Type.REMOVED;
+            default:
+                return SCMEvent.Type.UPDATED;
+        }
+    }
+
     private static Optional<TriggerDetails> toTriggerDetails(ParameterizedJobMixIn.ParameterizedJob<?, ?> job) {
         BitbucketWebhookTriggerImpl trigger = triggerFrom(job);
         if (trigger != null) {
@@ -178,8 +213,9 @@ public class BitbucketWebhookConsumer {
         try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
             BitbucketWebhookTriggerRequest.Builder requestBuilder = BitbucketWebhookTriggerRequest.builder();
             event.getActor().ifPresent(requestBuilder::actor);
+            requestBuilder.refChanges(eligibleRefChanges(event));
 
-            Jenkins.get().getAllItems(ParameterizedJobMixIn.ParameterizedJob.class)
+            jobIndex.getJobs(refChangedDetails.getRepository(), refChangedDetails.getCloneLinks())
                     .stream()
                     .map(BitbucketWebhookConsumer::toTriggerDetails)
                     .filter(Optional::isPresent)
@@ -187,15 +223,21 @@ public class BitbucketWebhookConsumer {
                     .filter(triggerDetails -> hasMatchingRepository(refChangedDetails, triggerDetails.getJob()))
                     .peek(triggerDetails -> LOGGER.fine("Triggering " + triggerDetails.getJob().getFullDisplayName()))
                     .forEach(triggerDetails -> triggerDetails.getTrigger().trigger(requestBuilder.build()));
-            //fire the head event to indicate to the SCMSources that changes have happened.
-            BitbucketSCMHeadEvent.fireNow(new BitbucketSCMHeadEvent(SCMEvent.Type.UPDATED, event, event.getRepository().getSlug()));
         }
     }
 
+    /**
+     * A change to a single branch: {@link SCMEvent.Type#CREATED} when the branch was added,
+     * {@link SCMEvent.Type#UPDATED} when it was pushed to and {@link SCMEvent.Type#REMOVED} when it was deleted.
+     */
     static class BitbucketSCMHeadEvent extends SCMHeadEvent<RefsChangedWebhookEvent> {
 
-        public BitbucketSCMHeadEvent(Type type, RefsChangedWebhookEvent payload, String origin) {
+        private final BitbucketRefChange refChange;
+
+        public BitbucketSCMHeadEvent(Type type, RefsChangedWebhookEvent payload, BitbucketRefChange refChange,
+                                     String origin) {
             super(type, payload, origin);
+            this.refChange = refChange;
         }
 
         @Override
@@ -212,7 +254,10 @@ public class BitbucketWebhookConsumer {
             if (!matchingRepo(getPayload().getRepository(), src.getBitbucketSCMRepository())) {
                 return emptyMap();
             }
-            return getPayload().getChanges().stream().collect(Collectors.toMap(change -> new GitBranchSCMHead(change.getRef().getDisplayId()), change -> new GitBranchSCMRevision(new GitBranchSCMHead(change.getRef().getDisplayId()), change.getToHash())));
+            GitBranchSCMHead head = new GitBranchSCMHead(refChange.getRef().getDisplayId());
+            // A removed branch has no revision
+            return singletonMap(head, getType() == Type.REMOVED ? null :
+                    new GitBranchSCMRevision(head, refChange.getToHash()));
         }
 
         @Override
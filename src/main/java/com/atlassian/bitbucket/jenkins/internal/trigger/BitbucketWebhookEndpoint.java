@@ -29,6 +29,8 @@ public class BitbucketWebhookEndpoint implements UnprotectedRootAction {
 
     @Inject
     private BitbucketWebhookConsumer webhookConsumer;
+    @Inject
+    private BitbucketWebhookEventQueue webhookEventQueue;
 
     @POST
     public HttpResponse doTrigger(StaplerRequest request, StaplerResponse response) {
@@ -90,14 +92,24 @@ public class BitbucketWebhookEndpoint implements UnprotectedRootAction {
 
     private HttpResponse processMirrorSynchronizedEvent(StaplerRequest request) {
         MirrorSynchronizedWebhookEvent event = parse(request, MirrorSynchronizedWebhookEvent.class);
-        webhookConsumer.process(event);
-        return org.kohsuke.stapler.HttpResponses.ok();
+        return process(() -> webhookConsumer.process(event));
     }
 
     private HttpResponse processRefChangedEvent(StaplerRequest request) {
         RefsChangedWebhookEvent event = parse(request, RefsChangedWebhookEvent.class);
-        webhookConsumer.process(event);
-        return org.kohsuke.stapler.HttpResponses.ok();
+        return process(() -> webhookConsumer.process(event));
+    }
+
+    private HttpResponse process(Runnable processor) {
+        if (!webhookEventQueue.isEnabled()) {
+            processor.run();
+            return org.kohsuke.stapler.HttpResponses.ok();
+        }
+        if (webhookEventQueue.submit(processor)) {
+            return org.kohsuke.stapler.HttpResponses.status(HttpServletResponse.SC_ACCEPTED);
+        }
+        throw org.kohsuke.stapler.HttpResponses.errorWithoutStack(
+                HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many webhook events are waiting to be processed");
     }
 
     private void validateContentType(StaplerRequest request) {
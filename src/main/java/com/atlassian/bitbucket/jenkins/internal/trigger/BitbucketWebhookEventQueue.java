@@ -0,0 +1,218 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.google.common.annotations.VisibleForTesting;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.inject.Singleton;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.format;
+
+/**
+ * Optionally decouples receiving a webhook from processing it. When enabled (see {@link #ENABLED_PROPERTY}),
+ * {@link BitbucketWebhookEndpoint} hands parsed events to this queue and responds with 202 straight away, and a small
+ * pool of workers drains the queue. The queue is bounded; what happens when it is full is governed by
+ * {@link OverflowPolicy}.
+ */
+@Singleton
+public class BitbucketWebhookEventQueue {
+
+    static final String ENABLED_PROPERTY = "bitbucket.webhook.async.enabled";
+    static final String OVERFLOW_POLICY_PROPERTY = "bitbucket.webhook.async.overflow.policy";
+    static final String QUEUE_SIZE_PROPERTY = "bitbucket.webhook.async.queue.size";
+    static final String WORKERS_PROPERTY = "bitbucket.webhook.async.workers";
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookEventQueue.class.getName());
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final boolean enabled;
+    private final AtomicLong maxQueueWaitMillis = new AtomicLong();
+    private final AtomicLong processedEvents = new AtomicLong();
+    private final AtomicLong rejectedEvents = new AtomicLong();
+    private final AtomicLong totalQueueWaitMillis = new AtomicLong();
+    private final int queueSize;
+    private final OverflowPolicy overflowPolicy;
+    private final int workers;
+    private volatile ThreadPoolExecutor executor;
+
+    public BitbucketWebhookEventQueue() {
+        this(Boolean.getBoolean(ENABLED_PROPERTY),
+                (int) parsePositiveLongFromSystemProperty(QUEUE_SIZE_PROPERTY, 1000),
+                (int) parsePositiveLongFromSystemProperty(WORKERS_PROPERTY, 4),
+                OverflowPolicy.fromSystemProperty());
+    }
+
+    @VisibleForTesting
+    BitbucketWebhookEventQueue(boolean enabled, int queueSize, int workers, OverflowPolicy overflowPolicy) {
+        this.enabled = enabled;
+        this.queueSize = Math.max(queueSize, 1);
+        this.workers = Math.max(workers, 1);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return true if webhooks should be queued and processed in the background; false if they should be processed
+     *         on the request thread
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the processing of a webhook event.
+     *
+     * @param processor processes the event
+     * @return true if the event was queued; false if the queue is full and the event was rejected
+     */
+    public boolean submit(Runnable processor) {
+        try {
+            getExecutor().execute(new QueuedEvent(processor));
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedEvents.incrementAndGet();
+            LOGGER.warning(format("Rejecting webhook event as the queue already holds %d events", queueSize));
+            return false;
+        }
+    }
+
+    public long getAverageQueueWaitMillis() {
+        long processed = processedEvents.get();
+        return processed == 0 ? 0 : totalQueueWaitMillis.get() / processed;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis.get();
+    }
+
+    public long getProcessedEvents() {
+        return processedEvents.get();
+    }
+
+    public int getQueueDepth() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    public long getRejectedEvents() {
+        return rejectedEvents.get();
+    }
+
+    /**
+     * Stops the workers when Jenkins shuts down. Events that are still queued are not processed, and events received
+     * from now on are rejected.
+     */
+    @Terminator
+    public void shutdown() throws InterruptedException {
+        ThreadPoolExecutor current;
+        synchronized (this) {
+            current = executor;
+            if (current == null) {
+                return;
+            }
+            current.shutdown();
+        }
+        int dropped = current.getQueue().size();
+        if (dropped > 0) {
+            LOGGER.info(format("Discarding %d queued webhook events on shutdown", dropped));
+        }
+        current.getQueue().clear();
+        // Let the events being processed finish, rather than interrupting them halfway
+        if (!current.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOGGER.warning("Webhook events were still being processed on shutdown");
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    RejectedExecutionHandler rejectionHandler = overflowPolicy == OverflowPolicy.DROP_OLDEST ?
+                            new DropOldestPolicy() : new ThreadPoolExecutor.AbortPolicy();
+                    executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(queueSize),
+                            new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketWebhookEventQueue"),
+                            rejectionHandler);
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * What to do with a new event when the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Discard the event that has been waiting the longest and queue the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Refuse the new event, which the endpoint reports to Bitbucket as 503 Service Unavailable.
+         */
+        REJECT;
+
+        private static OverflowPolicy fromSystemProperty() {
+            String value = System.getProperty(OVERFLOW_POLICY_PROPERTY);
+            if (value == null || value.trim().isEmpty()) {
+                return REJECT;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning(format("Invalid value '%s' for system property '%s', defaulting to %s",
+                        value, OVERFLOW_POLICY_PROPERTY, REJECT));
+                return REJECT;
+            }
+        }
+    }
+
+    private final class DropOldestPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Webhook event queue has been shut down");
+            }
+            if (pool.getQueue().poll() != null) {
+                droppedEvents.incrementAndGet();
+                LOGGER.warning("Webhook event queue is full, dropping the oldest queued event");
+            }
+            pool.execute(r);
+        }
+    }
+
+    private final class QueuedEvent implements Runnable {
+
+        private final long enqueuedAt = System.nanoTime();
+        private final Runnable processor;
+
+        private QueuedEvent(Runnable processor) {
+            this.processor = processor;
+        }
+
+        @Override
+        public void run() {
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt);
+            totalQueueWaitMillis.addAndGet(waitMillis);
+            maxQueueWaitMillis.accumulateAndGet(waitMillis, Math::max);
+            processedEvents.incrementAndGet();
+            LOGGER.fine(format("Processing webhook event after waiting %d ms in the queue", waitMillis));
+            try {
+                processor.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Failed to process queued webhook event", e);
+            }
+        }
+    }
+}
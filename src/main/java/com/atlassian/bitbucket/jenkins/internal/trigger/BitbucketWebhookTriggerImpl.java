@@ -1,16 +1,18 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRateLimiter;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
 import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
 import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProviderModule;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Guice;
 import hudson.Extension;
-import hudson.model.CauseAction;
 import hudson.model.Item;
 import hudson.model.Job;
 import hudson.scm.SCM;
@@ -18,10 +20,10 @@ import hudson.security.ACL;
 import hudson.security.ACLContext;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
-import hudson.util.NamingThreadFactory;
 import hudson.util.SequentialExecutionQueue;
 import jenkins.model.ParameterizedJobMixIn;
 import jenkins.triggers.SCMTriggerItem;
+import jenkins.util.Timer;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
@@ -29,15 +31,19 @@ import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.util.Objects.requireNonNull;
 import static jenkins.triggers.SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -71,12 +77,21 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
         if (skipWebhookRegistration(project, newInstance)) {
             return;
         }
+        if (newInstance) {
+            registerWebhooks(project);
+        } else {
+            // Every job loaded at startup registers its webhook, so don't let that hold up other requests
+            BitbucketRateLimiter.inBackground(() -> registerWebhooks(project));
+        }
+    }
+
+    private void registerWebhooks(Job<?, ?> project) {
         SCMTriggerItem triggerItem = asSCMTriggerItem(job);
         if (isWorkflowJob(triggerItem)) {
             BitbucketWebhookTriggerDescriptor descriptor = getDescriptor();
             Optional<SCM> maybeScm = fetchWorkflowSCM(triggerItem);
             maybeScm.ifPresent(scm -> {
-                if (scm instanceof BitbucketSCM) {
+                if (scm instanceof BitbucketSCM && isResolved((BitbucketSCM) scm)) {
                     boolean isAdded = descriptor.addTrigger(project, (BitbucketSCM) scm);
                     ((BitbucketSCM) scm).setWebhookRegistered(isAdded);
                 }
@@ -87,6 +102,7 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                     .stream()
                     .filter(scm -> scm instanceof BitbucketSCM)
                     .map(scm -> (BitbucketSCM) scm)
+                    .filter(this::isResolved)
                     .filter(scm -> !scm.isWebhookRegistered())
                     .filter(scm -> !checkTriggerExists(descriptor, scm))
                     .forEach(scm -> {
@@ -96,6 +112,20 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
         }
     }
 
+    /**
+     * Looks up the repository of a lazily resolved SCM, as the webhook can't be registered for the names it was saved
+     * with. If the lookup fails, the SCM registers the webhook itself once it has looked the repository up.
+     */
+    private boolean isResolved(BitbucketSCM scm) {
+        scm.resolveIfPending();
+        if (scm.isResolutionPending()) {
+            LOGGER.fine("Not registering the webhook for " + scm.getProjectName() + "/" + scm.getRepositoryName() +
+                        " until the repository has been looked up");
+            return false;
+        }
+        return true;
+    }
+
     private boolean checkTriggerExists(BitbucketWebhookTriggerDescriptor descriptor,
                                        BitbucketSCM scm) {
         boolean isExists = descriptor.webhookExists(job, scm);
@@ -150,28 +180,40 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
     @Extension
     public static class BitbucketWebhookTriggerDescriptor extends TriggerDescriptor {
 
-        // For now, the max threads is just a constant. In the future this may become configurable.
-        private static final int MAX_THREADS = 10;
+        private static final String DEBOUNCE_PROPERTY = "bitbucket.webhook.trigger.debounce";
+        private static final String TRUST_WEBHOOK_REVISION_PROPERTY = "bitbucket.webhook.trigger.trustRevision";
 
         @Inject
         private RetryingWebhookHandler retryingWebhookHandler;
         @Inject
+        private BitbucketJobIndex jobIndex;
+        @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
         private transient JenkinsProvider jenkinsProvider;
 
         @SuppressWarnings("TransientFieldInNonSerializableClass")
-        private final transient SequentialExecutionQueue queue;
+        private final transient BitbucketTriggerCoalescer coalescer;
+        @SuppressWarnings("TransientFieldInNonSerializableClass")
+        private final transient BitbucketTriggerExecutor executor;
 
         @SuppressWarnings("unused")
         public BitbucketWebhookTriggerDescriptor() {
-            this.queue = createSequentialQueue();
+            // The coalescer never runs two workers for the same job at once, so the workers can go straight to the
+            // executor without a sequential queue in between
+            this.executor = new BitbucketTriggerExecutor(
+                    () -> bitbucketPluginConfiguration.getWebhookTriggerThreads(),
+                    serverId -> bitbucketPluginConfiguration.getServerById(serverId)
+                            .map(BitbucketServerConfiguration::getWebhookTriggerThreads)
+                            .orElse(0));
+            this.coalescer = createCoalescer(executor);
         }
 
         public BitbucketWebhookTriggerDescriptor(SequentialExecutionQueue queue,
                                                  RetryingWebhookHandler webhookHandler,
                                                  JenkinsProvider jenkinsProvider,
                                                  BitbucketPluginConfiguration bitbucketPluginConfiguration) {
-            this.queue = queue;
+            this.executor = null;
+            this.coalescer = createCoalescer(queue);
             this.retryingWebhookHandler = webhookHandler;
             this.jenkinsProvider = jenkinsProvider;
             this.bitbucketPluginConfiguration = bitbucketPluginConfiguration;
@@ -201,8 +243,31 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                 @Nullable Job<?, ?> job,
                 SCMTriggerItem triggerItem,
                 BitbucketWebhookTriggerRequest triggerRequest) {
-            CauseAction causeAction = new CauseAction(new BitbucketWebhookTriggerCause(triggerRequest));
-            queue.execute(new BitbucketTriggerWorker(job, triggerItem, causeAction, triggerRequest.getAdditionalActions()));
+            // Without the ref changes the worker falls back to polling for changes
+            List<BitbucketRefChange> refChanges =
+                    trustWebhookRevision() ? triggerRequest.getRefChanges() : Collections.emptyList();
+            coalescer.schedule(job, triggerItem, new BitbucketWebhookTriggerCause(triggerRequest),
+                    triggerRequest.getAdditionalActions(), refChanges);
+        }
+
+        /**
+         * Registers the webhook of an SCM that has looked up the repository it was saved with after its jobs started.
+         *
+         * @param scm the SCM whose repository details have changed
+         */
+        public void registerWebhooks(BitbucketSCM scm) {
+            if (jobIndex == null || scm.isWebhookRegistered()) {
+                return;
+            }
+            // The webhook belongs to the repository, so it only has to be registered through one of the jobs
+            for (ParameterizedJobMixIn.ParameterizedJob<?, ?> job : jobIndex.getJobs(scm)) {
+                try {
+                    scm.setWebhookRegistered(addTrigger(job, scm));
+                    return;
+                } catch (RuntimeException e) {
+                    // Already logged, try the next job
+                }
+            }
         }
 
         private boolean addTrigger(Item item, BitbucketSCM scm) {
@@ -215,11 +280,30 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
             }
         }
 
-        private static SequentialExecutionQueue createSequentialQueue() {
-            return new SequentialExecutionQueue(
-                    Executors.newFixedThreadPool(
-                            MAX_THREADS,
-                            new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookTrigger")));
+        /**
+         * @return the coalescer merging webhook triggers for the same job, and counting how many were merged
+         */
+        public BitbucketTriggerCoalescer getCoalescer() {
+            return coalescer;
+        }
+
+        /**
+         * @return the executor running webhook triggers, with its queue depths and active workers; or {@code null}
+         *         if triggers are run by another executor
+         */
+        @CheckForNull
+        public BitbucketTriggerExecutor getExecutor() {
+            return executor;
+        }
+
+        @VisibleForTesting
+        boolean trustWebhookRevision() {
+            return Boolean.getBoolean(TRUST_WEBHOOK_REVISION_PROPERTY);
+        }
+
+        private static BitbucketTriggerCoalescer createCoalescer(Executor executor) {
+            return new BitbucketTriggerCoalescer(executor, parsePositiveLongFromSystemProperty(DEBOUNCE_PROPERTY, 0),
+                    Timer::get);
         }
 
         private void registerWebhook(Item item, BitbucketSCMRepository repository) {
@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketUser;
 import hudson.model.Action;
 
@@ -12,10 +13,13 @@ public final class BitbucketWebhookTriggerRequest {
 
     private final BitbucketUser actor;
     private final List<Action> additionalActions;
+    // Only needed to schedule the build, so not persisted with the cause and not part of equality
+    private final transient List<BitbucketRefChange> refChanges;
 
     private BitbucketWebhookTriggerRequest(Builder builder) {
         actor = builder.actor;
         additionalActions = builder.additionalActions;
+        refChanges = builder.refChanges;
     }
 
     public static Builder builder() {
@@ -42,6 +46,13 @@ public final class BitbucketWebhookTriggerRequest {
         return additionalActions;
     }
 
+    /**
+     * @return the added or updated refs that caused this request, or an empty list if they are not known
+     */
+    public List<BitbucketRefChange> getRefChanges() {
+        return refChanges == null ? Collections.emptyList() : refChanges;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(actor, additionalActions);
@@ -50,6 +61,7 @@ public final class BitbucketWebhookTriggerRequest {
     public static final class Builder {
 
         private final List<Action> additionalActions = new ArrayList<>();
+        private final List<BitbucketRefChange> refChanges = new ArrayList<>();
         private BitbucketUser actor;
 
         public Builder actor(@Nullable BitbucketUser value) {
@@ -62,6 +74,11 @@ public final class BitbucketWebhookTriggerRequest {
             return this;
         }
 
+        public Builder refChanges(Collection<BitbucketRefChange> refChanges) {
+            this.refChanges.addAll(refChanges);
+            return this;
+        }
+
         public BitbucketWebhookTriggerRequest build() {
             return new BitbucketWebhookTriggerRequest(this);
         }
@@ -13,6 +13,8 @@ import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEndpoint.BIBUCKET_WEBHOOK_URL;
@@ -69,10 +71,20 @@ public class BitbucketWebhookHandler implements WebhookHandler {
     }
 
     private void deleteWebhooks(List<BitbucketWebhook> webhooks) {
-        webhooks.stream()
+        // Deleted concurrently, so that a repository with many obsolete webhooks doesn't hold up registration
+        CompletableFuture<?>[] deletions = webhooks.stream()
                 .map(BitbucketWebhook::getId)
                 .peek(id -> LOGGER.info("Deleting obsolete webhook" + id))
-                .forEach(webhookClient::deleteWebhook);
+                .map(webhookClient::deleteWebhookAsync)
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(deletions).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     private Optional<BitbucketWebhook> findSame(List<BitbucketWebhook> webhooks, WebhookRegisterRequest request,
@@ -125,8 +137,9 @@ public class BitbucketWebhookHandler implements WebhookHandler {
                                      BitbucketWebhookEvent event) {
         String callback = constructCallbackUrl(request);
         List<BitbucketWebhook> ownedHooks =
-                webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())
-                        .filter(hook -> hook.getName().equals(request.getName()) || hook.getUrl().equals(callback))
+                webhookClient.getWebhooks(
+                        hook -> hook.getName().equals(request.getName()) || hook.getUrl().equals(callback),
+                        REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())
                         .collect(toList());
         List<BitbucketWebhook> webhookWithMirrorSync = ownedHooks.stream()
                 .filter(hook -> hook.getEvents().contains(MIRROR_SYNCHRONIZED_EVENT.getEventId()))
@@ -0,0 +1,72 @@
+package com.atlassian.bitbucket.jenkins.internal.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Chains {@link CompletableFuture futures} such that cancelling the chained future cancels the futures it was built
+ * from. The stages returned by {@link CompletableFuture} itself don't pass cancellation back to their source, so
+ * cancelling one of those leaves the request behind it running.
+ */
+public class FutureUtils {
+
+    /**
+     * Like {@link CompletableFuture#thenApply(Function)}, but cancelling the returned future also cancels the source
+     * future.
+     *
+     * @param source the future to chain from
+     * @param fn     maps the result of the source
+     * @param <T>    the type of the result of the source
+     * @param <R>    the type of the result
+     * @return the chained future
+     */
+    public static <T, R> CompletableFuture<R> thenApply(CompletableFuture<T> source,
+                                                        Function<? super T, ? extends R> fn) {
+        CompletableFuture<R> result = source.thenApply(fn);
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Like {@link CompletableFuture#thenCompose(Function)}, but cancelling the returned future also cancels the
+     * source future, and the future returned by the function once it has been called.
+     *
+     * @param source the future to chain from
+     * @param fn     returns the future to chain to, given the result of the source
+     * @param <T>    the type of the result of the source
+     * @param <R>    the type of the result
+     * @return the chained future
+     */
+    public static <T, R> CompletableFuture<R> thenCompose(CompletableFuture<T> source,
+                                                          Function<? super T, ? extends CompletableFuture<R>> fn) {
+        AtomicReference<CompletableFuture<R>> next = new AtomicReference<>();
+        AtomicReference<CompletableFuture<R>> chained = new AtomicReference<>();
+        CompletableFuture<R> result = source.thenCompose(value -> {
+            CompletableFuture<R> future = fn.apply(value);
+            next.set(future);
+            // The chained future may have been cancelled before the next one existed, and doesn't exist yet if the
+            // source was already complete
+            CompletableFuture<R> cancellable = chained.get();
+            if (cancellable != null && cancellable.isCancelled()) {
+                future.cancel(true);
+            }
+            return future;
+        });
+        chained.set(result);
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                source.cancel(true);
+                CompletableFuture<R> future = next.get();
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+}
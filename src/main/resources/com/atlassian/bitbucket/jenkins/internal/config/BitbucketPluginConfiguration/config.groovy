@@ -13,4 +13,10 @@ f.section(title: _("bitbucket")) {
                 hasHeader: "true",
                 addCaption: _("bitbucket.add.server"))
     }
+
+    f.advanced() {
+        f.entry(title: _("bitbucket.webhook.trigger.threads"), field: "webhookTriggerThreads") {
+            f.number(clazz: "positive-number", min: 1, default: 10)
+        }
+    }
 }
\ No newline at end of file
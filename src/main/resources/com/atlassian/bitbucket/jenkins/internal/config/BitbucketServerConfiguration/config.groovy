@@ -22,6 +22,42 @@ f.section() {
         c.select(context: app, includeUser: false, expressionAllowed: false, checkMethod: "post")
     }
 
+    f.advanced() {
+        f.entry(title: _("bitbucket.webhook.trigger.threads"), field: "webhookTriggerThreads") {
+            f.number(clazz: "non-negative-number", min: 0, default: 0)
+        }
+        f.entry(title: _("bitbucket.max.requests.per.host"), field: "maxRequestsPerHost") {
+            f.number(clazz: "non-negative-number", min: 0, default: 0)
+        }
+        f.entry(title: _("bitbucket.max.idle.connections"), field: "maxIdleConnections") {
+            f.number(clazz: "non-negative-number", min: 0, default: 0)
+        }
+        f.entry(title: _("bitbucket.keep.alive"), field: "keepAlive") {
+            f.number(clazz: "non-negative-number", min: 0, default: 0)
+        }
+        f.entry(title: _("bitbucket.connect.timeout"), field: "connectTimeout") {
+            f.number(clazz: "non-negative-number", min: 0, default: 0)
+        }
+        f.entry(title: _("bitbucket.read.timeout"), field: "readTimeout") {
+            f.number(clazz: "non-negative-number", min: 0, default: 0)
+        }
+        f.entry(title: _("bitbucket.write.timeout"), field: "writeTimeout") {
+            f.number(clazz: "non-negative-number", min: 0, default: 0)
+        }
+    }
+
+    if (instance?.baseUrl != null) {
+        f.entry(title: _("bitbucket.circuit.breaker")) {
+            text(descriptor.getCircuitBreakerStatus(instance.baseUrl))
+        }
+        def poolStatus = descriptor.getConnectionPoolStatus(instance.baseUrl)
+        if (poolStatus != null) {
+            f.entry(title: _("bitbucket.connection.pool")) {
+                text(poolStatus)
+            }
+        }
+    }
+
     f.block() {
         f.validateButton(
                 title: _("bitbucket.test.connection"),
@@ -3,23 +3,44 @@ package com.atlassian.bitbucket.jenkins.internal.client;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.client.supply.BitbucketCapabilitiesSupplier;
 import com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilities;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCICapabilities;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketResponse;
+import okhttp3.HttpUrl;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilities.RICH_BUILDSTATUS_CAPABILITY_KEY;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class BitbucketCapabilitiesClientImplTest {
 
+    private static final String CI_CAPABILITIES_URL = "http://localhost:7990/bitbucket/rest/api/1.0/build/capabilities";
+
+    @Mock
+    private BitbucketRequestExecutor bitbucketRequestExecutor;
     @Mock
     private BitbucketCapabilitiesSupplier capabilitiesSupplier;
     @Mock
     private AtlassianServerCapabilities newCapabilities, cachedCapabilities;
-    @InjectMocks
     private BitbucketCapabilitiesClientImpl capabilitiesClient;
+    private final AtomicLong clock = new AtomicLong();
+
+    @Before
+    public void setup() {
+        BitbucketCapabilitiesCache cache = new BitbucketCapabilitiesCache(1000, Runnable::run, clock::get);
+        capabilitiesClient = new BitbucketCapabilitiesClientImpl(bitbucketRequestExecutor, cache, capabilitiesSupplier);
+    }
 
     @Test(expected = BitbucketClientException.class)
     public void testGetServerCapabilitiesExceptionFromSupplier() {
@@ -43,4 +64,42 @@ public class BitbucketCapabilitiesClientImplTest {
         assertEquals(cachedCapabilities, capabilitiesClient.getServerCapabilities());
         verifyNoMoreInteractions(capabilitiesSupplier);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetServerCapabilitiesRefreshesExpiredValue() {
+        when(capabilitiesSupplier.get()).thenReturn(cachedCapabilities, newCapabilities);
+        capabilitiesClient.getServerCapabilities();
+        clock.set(1000);
+
+        // The expired value is still served while the refresh happens
+        assertEquals(cachedCapabilities, capabilitiesClient.getServerCapabilities());
+        assertEquals(newCapabilities, capabilitiesClient.getServerCapabilities());
+        verify(capabilitiesSupplier, times(2)).get();
+    }
+
+    @Test
+    public void testGetServerCapabilitiesKeepsValueWhenRefreshFails() {
+        when(capabilitiesSupplier.get())
+                .thenReturn(cachedCapabilities)
+                .thenThrow(new BitbucketClientException("Client exception"));
+        capabilitiesClient.getServerCapabilities();
+        clock.set(1000);
+
+        assertEquals(cachedCapabilities, capabilitiesClient.getServerCapabilities());
+        assertEquals(cachedCapabilities, capabilitiesClient.getServerCapabilities());
+    }
+
+    @Test
+    public void testGetCICapabilitiesWithCache() {
+        BitbucketCICapabilities ciCapabilities = mock(BitbucketCICapabilities.class);
+        when(capabilitiesSupplier.get()).thenReturn(cachedCapabilities);
+        when(cachedCapabilities.getCapabilities())
+                .thenReturn(singletonMap(RICH_BUILDSTATUS_CAPABILITY_KEY, CI_CAPABILITIES_URL));
+        when(bitbucketRequestExecutor.makeGetRequest(any(HttpUrl.class), eq(BitbucketCICapabilities.class)))
+                .thenReturn(new BitbucketResponse<>(emptyMap(), ciCapabilities));
+
+        assertEquals(ciCapabilities, capabilitiesClient.getCICapabilities());
+        assertEquals(ciCapabilities, capabilitiesClient.getCICapabilities());
+        verify(bitbucketRequestExecutor).makeGetRequest(any(HttpUrl.class), eq(BitbucketCICapabilities.class));
+    }
+}
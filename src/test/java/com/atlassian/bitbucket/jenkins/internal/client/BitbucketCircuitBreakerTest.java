@@ -0,0 +1,125 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketCircuitBreaker.State;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.CircuitBreakerOpenException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.ConnectionFailureException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.atlassian.bitbucket.jenkins.internal.client.BitbucketCircuitBreaker.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class BitbucketCircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final BitbucketCircuitBreaker circuitBreaker =
+            new BitbucketCircuitBreaker("http://localhost:7990", clock::get);
+
+    @Test
+    public void testAsyncCallsRecordedOnCompletion() {
+        for (int i = 0; i < MINIMUM_CALLS; i++) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            assertThat(circuitBreaker.callAsync(() -> future), is(future));
+            assertThat(circuitBreaker.getState(), is(State.CLOSED));
+            future.completeExceptionally(new ConnectionFailureException(new ConnectException()));
+        }
+
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        assertThat(circuitBreaker.callAsync(() -> CompletableFuture.completedFuture("ok"))
+                .isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testClosesAfterSuccessfulTrialCalls() {
+        open();
+        clock.addAndGet(OPEN_DURATION);
+        assertThat(circuitBreaker.getState(), is(State.HALF_OPEN));
+
+        for (int i = 0; i < HALF_OPEN_CALLS; i++) {
+            assertThat(circuitBreaker.call(() -> "ok"), is("ok"));
+        }
+
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testIgnoresClientErrors() {
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            try {
+                circuitBreaker.call(() -> {
+                    throw new NotFoundException("Not found", null);
+                });
+                fail("Expected NotFoundException");
+            } catch (NotFoundException e) {
+                // expected
+            }
+        }
+
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        assertThat(circuitBreaker.getFailureRate(), is(0));
+    }
+
+    @Test
+    public void testOpensAfterFailures() {
+        open();
+
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testOpensAfterSlowCalls() {
+        for (int i = 0; i < MINIMUM_CALLS; i++) {
+            circuitBreaker.call(() -> clock.addAndGet(SLOW_CALL_DURATION));
+        }
+
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testRejectsCallsWhileOpen() {
+        open();
+        AtomicInteger calls = new AtomicInteger();
+
+        try {
+            circuitBreaker.call(calls::incrementAndGet);
+            fail("Expected CircuitBreakerOpenException");
+        } catch (CircuitBreakerOpenException e) {
+            assertThat(e.getRetryAfterMillis(), is(OPEN_DURATION));
+        }
+        assertThat(calls.get(), is(0));
+        assertThat(circuitBreaker.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void testReopensAfterFailedTrialCall() {
+        open();
+        clock.addAndGet(OPEN_DURATION);
+
+        failCalls(1);
+
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+    }
+
+    private void failCalls(int count) {
+        for (int i = 0; i < count; i++) {
+            try {
+                circuitBreaker.call(() -> {
+                    throw new ConnectionFailureException(new ConnectException());
+                });
+            } catch (ConnectionFailureException e) {
+                // expected
+            }
+        }
+    }
+
+    private void open() {
+        failCalls(MINIMUM_CALLS);
+    }
+}
@@ -0,0 +1,40 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirror;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.BITBUCKET_BASE_URL;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.OBJECT_MAPPER;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class BitbucketMirrorClientImplTest {
+
+    private static final String MIRROR_URL = "http://mirror.example.com:7992";
+
+    @Test
+    public void testCancellingRepositoryDetailsCancelsRequest() {
+        HttpRequestExecutor httpExecutor = mock(HttpRequestExecutor.class);
+        CompletableFuture<Object> request = new CompletableFuture<>();
+        doReturn(request).when(httpExecutor).executeGetAsync(any(), any(), any());
+        BitbucketMirrorClientImpl client = new BitbucketMirrorClientImpl(
+                new BitbucketRequestExecutor(BITBUCKET_BASE_URL, httpExecutor, OBJECT_MAPPER, ANONYMOUS_CREDENTIALS), 1);
+        BitbucketMirroredRepositoryDescriptor descriptor = new BitbucketMirroredRepositoryDescriptor(
+                singletonMap("self", singletonList(new BitbucketNamedLink("self",
+                        MIRROR_URL + "/rest/mirroring/latest/upstreamServers/1/repos/1"))),
+                new BitbucketMirror(MIRROR_URL, true, "mirror"));
+
+        client.getRepositoryDetailsAsync(descriptor).cancel(true);
+
+        assertTrue(request.isCancelled());
+    }
+}
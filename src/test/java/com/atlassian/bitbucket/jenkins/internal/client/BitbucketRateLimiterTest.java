@@ -0,0 +1,90 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRateLimiter.Lane;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class BitbucketRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final BitbucketRateLimiter rateLimiter = new BitbucketRateLimiter(10, 4, clock::get, () -> scheduler);
+
+    @Test
+    public void testAcquireAsyncSchedulesRetryWhenEmpty() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(rateLimiter.acquireAsync().isDone(), is(true));
+        }
+        verifyZeroInteractions(scheduler);
+
+        CompletableFuture<Void> acquired = rateLimiter.acquireAsync();
+
+        assertThat(acquired.isDone(), is(false));
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(retry.capture(), eq(100L), eq(MILLISECONDS));
+        clock.addAndGet(100);
+        retry.getValue().run();
+        assertThat(acquired.isDone(), is(true));
+    }
+
+    @Test
+    public void testAcquireAsyncCancelledStopsWaiting() {
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.tryAcquire(Lane.INTERACTIVE);
+        }
+        CompletableFuture<Void> acquired = rateLimiter.acquireAsync();
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(retry.capture(), eq(100L), eq(MILLISECONDS));
+
+        acquired.cancel(true);
+        clock.addAndGet(100);
+        retry.getValue().run();
+
+        // The cancelled request left the token it was waiting for to other requests
+        assertThat(rateLimiter.tryAcquire(Lane.INTERACTIVE), is(0L));
+    }
+
+    @Test
+    public void testAllowsBurst() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(rateLimiter.tryAcquire(Lane.INTERACTIVE), is(0L));
+        }
+
+        assertThat(rateLimiter.tryAcquire(Lane.INTERACTIVE), is(100L));
+    }
+
+    @Test
+    public void testBackgroundLeavesReserve() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.tryAcquire(Lane.BACKGROUND), is(0L));
+        }
+
+        assertThat(rateLimiter.tryAcquire(Lane.BACKGROUND), is(100L));
+        assertThat(rateLimiter.tryAcquire(Lane.INTERACTIVE), is(0L));
+    }
+
+    @Test
+    public void testRefills() {
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.tryAcquire(Lane.INTERACTIVE);
+        }
+        clock.addAndGet(50);
+        assertThat(rateLimiter.tryAcquire(Lane.INTERACTIVE), is(50L));
+
+        clock.addAndGet(50);
+
+        assertThat(rateLimiter.tryAcquire(Lane.INTERACTIVE), is(0L));
+    }
+}
@@ -0,0 +1,108 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.fixture.FakeRemoteHttpServer;
+import com.atlassian.bitbucket.jenkins.internal.http.HttpRequestExecutorImpl;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentNode;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentType;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class BitbucketRepositoryClientImplTest {
+
+    private static final String REPOSITORY_URL = BITBUCKET_BASE_URL + "/rest/api/1.0/projects/PROJ/repos/repo";
+
+    private final FakeRemoteHttpServer fakeRemoteHttpServer = new FakeRemoteHttpServer();
+    private final BitbucketRequestExecutor bitbucketRequestExecutor = new BitbucketRequestExecutor(BITBUCKET_BASE_URL,
+            new HttpRequestExecutorImpl(fakeRemoteHttpServer), OBJECT_MAPPER, ANONYMOUS_CREDENTIALS);
+    private final BitbucketRepositoryClientImpl client =
+            new BitbucketRepositoryClientImpl(bitbucketRequestExecutor, "PROJ", "repo");
+
+    @Test
+    public void testGetBranches() {
+        fakeRemoteHttpServer.mapUrlToResult(REPOSITORY_URL + "/branches?orderBy=ALPHABETICAL",
+                readFileToString("/branches-response.json"));
+
+        List<BitbucketBranch> branches = client.getBranches(null).collect(toList());
+
+        assertThat(branches.stream().map(BitbucketBranch::getDisplayId).collect(toList()),
+                contains("feature/one", "master"));
+        assertThat(branches.get(1).getLatestCommit(), is("0a943a29376f2336b78312d99e65da17048951db"));
+        assertThat(branches.get(1).isDefault(), is(true));
+    }
+
+    @Test
+    public void testGetBranchesWithFilter() {
+        fakeRemoteHttpServer.mapUrlToResult(REPOSITORY_URL + "/branches?orderBy=ALPHABETICAL&filterText=feature",
+                readFileToString("/branches-response.json"));
+
+        assertThat(client.getBranches("feature").count(), is(2L));
+    }
+
+    @Test
+    public void testGetBranchesKeepsOnlyAccepted() {
+        fakeRemoteHttpServer.mapUrlToResult(REPOSITORY_URL + "/branches?orderBy=ALPHABETICAL",
+                readFileToString("/branches-response.json"));
+
+        List<BitbucketBranch> branches = client.getBranches(null, BitbucketBranch::isDefault).collect(toList());
+
+        assertThat(branches.size(), is(1));
+        assertThat(branches.get(0).isDefault(), is(true));
+    }
+
+    @Test
+    public void testGetContentType() {
+        fakeRemoteHttpServer.mapUrlToResult(REPOSITORY_URL + "/browse/ci/Jenkinsfile?at=master&type=true",
+                "{\"type\":\"FILE\"}");
+
+        assertThat(client.getContentType("ci/Jenkinsfile", "master"), is(BitbucketContentType.FILE));
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testGetContentTypeOfMissingPath() {
+        fakeRemoteHttpServer.mapUrlToResponseCode(REPOSITORY_URL + "/browse/Jenkinsfile?at=master&type=true", 404);
+
+        client.getContentType("Jenkinsfile", "master");
+    }
+
+    @Test
+    public void testGetDirectoryContent() {
+        fakeRemoteHttpServer.mapUrlToResult(REPOSITORY_URL + "/browse/ci?at=master",
+                "{\"children\":{\"isLastPage\":false,\"nextPageStart\":1,\"values\":[" +
+                "{\"path\":{\"name\":\"Jenkinsfile\"},\"type\":\"FILE\"}]}}");
+        fakeRemoteHttpServer.mapUrlToResult(REPOSITORY_URL + "/browse/ci?at=master&start=1",
+                "{\"children\":{\"isLastPage\":true,\"values\":[" +
+                "{\"path\":{\"name\":\"scripts\"},\"type\":\"DIRECTORY\"}]}}");
+
+        List<BitbucketContentNode> content = client.getDirectoryContent("ci", "master").collect(toList());
+
+        assertThat(content.stream().map(BitbucketContentNode::getName).collect(toList()),
+                contains("Jenkinsfile", "scripts"));
+        assertThat(content.stream().map(BitbucketContentNode::getType).collect(toList()),
+                contains(BitbucketContentType.FILE, BitbucketContentType.DIRECTORY));
+    }
+
+    @Test
+    public void testGetRawContent() {
+        fakeRemoteHttpServer.mapUrlToResult(REPOSITORY_URL + "/raw/ci/Jenkinsfile?at=master", "pipeline {}");
+
+        assertThat(new String(client.getRawContent("ci/Jenkinsfile", "master"), UTF_8), is("pipeline {}"));
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testGetRawContentOfMissingFile() {
+        fakeRemoteHttpServer.mapUrlToResponseCode(REPOSITORY_URL + "/raw/Jenkinsfile?at=master", 404);
+
+        client.getRawContent("Jenkinsfile", "master");
+    }
+}
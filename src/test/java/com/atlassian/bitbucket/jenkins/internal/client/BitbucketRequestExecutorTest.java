@@ -1,16 +1,27 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.NoContentException;
 import com.atlassian.bitbucket.jenkins.internal.fixture.FakeRemoteHttpServer;
 import com.atlassian.bitbucket.jenkins.internal.http.HttpRequestExecutorImpl;
+import okhttp3.HttpUrl;
 import org.junit.Test;
 
+import java.util.Map;
+
 import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.BITBUCKET_BASE_URL;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.OBJECT_MAPPER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 public class BitbucketRequestExecutorTest {
 
+    private static final String MIRROR_URL = "http://mirror.example.com/rest/api/1.0/projects/PROJ/repos/repo";
+
     private final FakeRemoteHttpServer fakeRemoteHttpServer = new FakeRemoteHttpServer();
     private final HttpRequestExecutor requestExecutor = new HttpRequestExecutorImpl(fakeRemoteHttpServer);
     private final BitbucketRequestExecutor bitbucketRequestExecutor =
@@ -22,4 +33,34 @@ public class BitbucketRequestExecutorTest {
 
         bitbucketRequestExecutor.makeGetRequest(bitbucketRequestExecutor.getBaseUrl(), Object.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRawRequest() {
+        fakeRemoteHttpServer.mapUrlToResult(BITBUCKET_BASE_URL, "pipeline {}");
+
+        byte[] body = bitbucketRequestExecutor.makeGetRawRequest(bitbucketRequestExecutor.getBaseUrl(), 11).getBody();
+
+        assertThat(new String(body, UTF_8), equalTo("pipeline {}"));
+    }
+
+    @Test(expected = BitbucketClientException.class)
+    public void testRawRequestLargerThanMaxSize() {
+        fakeRemoteHttpServer.mapUrlToResult(BITBUCKET_BASE_URL, "pipeline {}");
+
+        bitbucketRequestExecutor.makeGetRawRequest(bitbucketRequestExecutor.getBaseUrl(), 10);
+    }
+
+    @Test
+    public void testRequestToOtherServerBypassesCircuitBreakerAndRateLimiter() {
+        BitbucketCircuitBreaker circuitBreaker = mock(BitbucketCircuitBreaker.class);
+        BitbucketRateLimiter rateLimiter = mock(BitbucketRateLimiter.class);
+        BitbucketRequestExecutor executor = new BitbucketRequestExecutor(BITBUCKET_BASE_URL, requestExecutor,
+                OBJECT_MAPPER, ANONYMOUS_CREDENTIALS, circuitBreaker, rateLimiter);
+        fakeRemoteHttpServer.mapUrlToResult(MIRROR_URL, "{\"name\":\"mirror\"}");
+
+        Map<?, ?> body = executor.makeGetRequest(HttpUrl.parse(MIRROR_URL), Map.class).getBody();
+
+        assertThat(body.get("name"), equalTo("mirror"));
+        verifyZeroInteractions(circuitBreaker, rateLimiter);
+    }
+}
@@ -0,0 +1,93 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.http.HttpHeaders.ETAG;
+import static org.apache.http.HttpHeaders.LAST_MODIFIED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BitbucketResponseCacheTest {
+
+    private static final HttpUrl BASE_URL = HttpUrl.parse("http://localhost:7990/bitbucket");
+
+    private final BitbucketResponseCache cache = new BitbucketResponseCache(BASE_URL, 100);
+
+    @Test
+    public void testCacheableResources() {
+        assertThat(cache.isCacheable(url("rest/capabilities")), is(true));
+        assertThat(cache.isCacheable(url("rest/api/1.0/projects/PROJ")), is(true));
+        assertThat(cache.isCacheable(url("rest/api/1.0/projects/PROJ/repos/repo")), is(true));
+        assertThat(cache.isCacheable(url("rest/mirroring/1.0/repos/1/mirrors")), is(true));
+    }
+
+    @Test
+    public void testDisabled() {
+        BitbucketResponseCache disabled = new BitbucketResponseCache(BASE_URL, 0);
+
+        assertThat(disabled.isCacheable(url("rest/capabilities")), is(false));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.put("a", Headers.of(ETAG, "\"a\""), new byte[40]);
+        cache.put("b", Headers.of(ETAG, "\"b\""), new byte[40]);
+        cache.get("a");
+
+        cache.put("c", Headers.of(ETAG, "\"c\""), new byte[40]);
+
+        assertThat(cache.get("a"), notNullValue());
+        assertThat(cache.get("b"), nullValue());
+        assertThat(cache.get("c"), notNullValue());
+    }
+
+    @Test
+    public void testKeepsBodyAndValidators() throws IOException {
+        cache.put("key", Headers.of(ETAG, "\"etag\"", LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT"),
+                "{\"key\":\"PROJ\"}".getBytes(UTF_8));
+
+        BitbucketResponseCache.Entry entry = cache.get("key");
+        // Every caller reads the body from the start and parses it into a result of its own
+        assertThat(IOUtils.toString(entry.openBody(), UTF_8), is("{\"key\":\"PROJ\"}"));
+        assertThat(IOUtils.toString(entry.openBody(), UTF_8), is("{\"key\":\"PROJ\"}"));
+        assertThat(entry.getEtag(), is("\"etag\""));
+        assertThat(entry.getLastModified(), is("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testNotCacheableResources() {
+        assertThat(cache.isCacheable(url("rest/api/1.0/projects")), is(false));
+        assertThat(cache.isCacheable(url("rest/api/1.0/projects/PROJ/repos/repo/branches")), is(false));
+        assertThat(cache.isCacheable(url("rest/api/1.0/projects/PROJ/repos/repo").newBuilder()
+                .addQueryParameter("start", "25").build()), is(false));
+        assertThat(cache.isCacheable(HttpUrl.parse("http://localhost:7990/rest/capabilities")), is(false));
+        assertThat(cache.isCacheable(HttpUrl.parse("http://mirror:7990/bitbucket/rest/capabilities")), is(false));
+    }
+
+    @Test
+    public void testSkipsResponsesWithoutValidators() {
+        cache.put("key", Headers.of(), new byte[10]);
+
+        assertThat(cache.get("key"), nullValue());
+    }
+
+    @Test
+    public void testSkipsResponsesTooBig() {
+        cache.put("key", Headers.of(ETAG, "\"etag\""), new byte[101]);
+
+        assertThat(cache.get("key"), nullValue());
+    }
+
+    private static HttpUrl url(String path) {
+        return BASE_URL.newBuilder().addPathSegments(path).build();
+    }
+}
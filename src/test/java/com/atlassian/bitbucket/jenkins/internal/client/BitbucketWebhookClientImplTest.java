@@ -14,6 +14,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
@@ -27,6 +28,9 @@ import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.hamcrest.core.IsIterableContaining.hasItems;
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 
 public class BitbucketWebhookClientImplTest {
 
@@ -127,6 +131,19 @@ public class BitbucketWebhookClientImplTest {
         assertThat(next.isLastPage(), is(true));
     }
 
+    @Test
+    public void testCancellingPageFetchCancelsRequest() {
+        HttpRequestExecutor httpExecutor = mock(HttpRequestExecutor.class);
+        CompletableFuture<Object> request = new CompletableFuture<>();
+        doReturn(request).when(httpExecutor).executeGetAsync(any(), any(), any());
+        NextPageFetcherImpl fetcher = new NextPageFetcherImpl(parse(BITBUCKET_BASE_URL),
+                new BitbucketRequestExecutor(BITBUCKET_BASE_URL, httpExecutor, OBJECT_MAPPER, ANONYMOUS_CREDENTIALS));
+
+        fetcher.fetch(0).cancel(true);
+
+        assertTrue(request.isCancelled());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testLastPageDoesNotHaveNext() {
         NextPageFetcherImpl fetcher = new NextPageFetcherImpl(parse(BITBUCKET_BASE_URL), bitbucketRequestExecutor);
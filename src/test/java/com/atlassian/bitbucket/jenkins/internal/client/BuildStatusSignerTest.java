@@ -0,0 +1,78 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBuildStatus;
+import com.atlassian.bitbucket.jenkins.internal.model.BuildState;
+import com.atlassian.bitbucket.jenkins.internal.provider.InstanceKeyPairProvider;
+import com.atlassian.bitbucket.jenkins.internal.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.atlassian.bitbucket.jenkins.internal.client.BuildStatusSigner.KEY_REFRESH_INTERVAL;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BuildStatusSignerTest {
+
+    private final BitbucketBuildStatus buildStatus =
+            new BitbucketBuildStatus.Builder("REPO-42", BuildState.SUCCESSFUL, "http://example.com/builds/repo-42")
+                    .setRef("refs/heads/master")
+                    .build();
+    private final AtomicLong clock = new AtomicLong();
+    @Mock
+    private InstanceKeyPairProvider keyPairProvider;
+    private BuildStatusSigner signer;
+
+    @Before
+    public void setup() {
+        signer = new BuildStatusSigner(keyPairProvider, clock::get);
+    }
+
+    @Test
+    public void testReusesSignatureAndKey() throws Exception {
+        KeyPair keyPair = TestUtils.createTestKeyPair();
+        when(keyPairProvider.getPrivate()).thenReturn((RSAPrivateKey) keyPair.getPrivate());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(isValid(keyPair, signer.sign(buildStatus)), is(true));
+        }
+
+        assertThat(signer.getAlgorithm(), equalTo("SHA256withRSA"));
+        verify(keyPairProvider).getPrivate();
+    }
+
+    @Test
+    public void testPicksUpRotatedKey() throws Exception {
+        KeyPair oldKeyPair = TestUtils.createTestKeyPair();
+        KeyPair newKeyPair = TestUtils.createTestKeyPair();
+        when(keyPairProvider.getPrivate())
+                .thenReturn((RSAPrivateKey) oldKeyPair.getPrivate(), (RSAPrivateKey) newKeyPair.getPrivate());
+        assertThat(isValid(oldKeyPair, signer.sign(buildStatus)), is(true));
+
+        clock.addAndGet(KEY_REFRESH_INTERVAL);
+
+        assertThat(isValid(newKeyPair, signer.sign(buildStatus)), is(true));
+    }
+
+    private boolean isValid(KeyPair keyPair, String signature) throws Exception {
+        Signature verifySignature = Signature.getInstance("SHA256withRSA");
+        verifySignature.initVerify(keyPair.getPublic());
+        verifySignature.update(buildStatus.getKey().getBytes(UTF_8));
+        verifySignature.update(buildStatus.getRef().getBytes(UTF_8));
+        verifySignature.update(buildStatus.getState().getBytes(UTF_8));
+        verifySignature.update(buildStatus.getUrl().getBytes(UTF_8));
+        return verifySignature.verify(Base64.getDecoder().decode(signature));
+    }
+}
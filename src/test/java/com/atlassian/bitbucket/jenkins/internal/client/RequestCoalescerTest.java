@@ -0,0 +1,105 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.ServerErrorException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareResult() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(executor.submit(() -> coalescer.execute("key", () -> {
+                sent.incrementAndGet();
+                await(release);
+                return new Object();
+            })));
+        }
+        waitForCoalesced(2);
+
+        release.countDown();
+
+        Object result = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<Object> future : results) {
+            assertThat(future.get(5, TimeUnit.SECONDS), is(result));
+        }
+        assertThat(sent.get(), is(1));
+        assertThat(coalescer.getSentCount(), is(1L));
+    }
+
+    @Test
+    public void testConcurrentRequestsShareFailure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> first = executor.submit(() -> coalescer.execute("key", () -> {
+            await(release);
+            throw new ServerErrorException("Down", 500, null);
+        }));
+        waitForSent(1);
+        Future<Object> second = executor.submit(() -> coalescer.execute("key", Object::new));
+        waitForCoalesced(1);
+
+        release.countDown();
+
+        for (Future<Object> future : asList(first, second)) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("Expected ServerErrorException");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(ServerErrorException.class));
+            }
+        }
+    }
+
+    @Test
+    public void testSequentialRequestsAreSent() {
+        AtomicInteger sent = new AtomicInteger();
+
+        coalescer.execute("key", sent::incrementAndGet);
+        coalescer.execute("key", sent::incrementAndGet);
+
+        assertThat(sent.get(), is(2));
+        assertThat(coalescer.getCoalescedCount(), is(0L));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitForCoalesced(long count) throws InterruptedException {
+        while (coalescer.getCoalescedCount() < count) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void waitForSent(long count) throws InterruptedException {
+        while (coalescer.getSentCount() < count) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -6,21 +6,28 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.convertToElementStream;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class BitbucketPageStreamUtilTest {
 
     @Mock
     private NextPageFetcher nextPageFetcher;
+    @Mock
+    private OffsetPageFetcher<Integer> offsetPageFetcher;
 
     @Test
     public void testPageStream() {
@@ -42,6 +49,46 @@ public class BitbucketPageStreamUtilTest {
         assertThat(convertToElementStream(stream).collect(toList()), contains(1, 2, 3, 4, 5, 6));
     }
 
+    @Test
+    public void testPrefetchingStream() {
+        BitbucketPage<Integer> firstPage = createPage(0, asList(1, 2), false);
+        CompletableFuture<BitbucketPage<Integer>> secondPage = new CompletableFuture<>();
+        CompletableFuture<BitbucketPage<Integer>> thirdPage = new CompletableFuture<>();
+        when(offsetPageFetcher.fetch(2)).thenReturn(secondPage);
+        when(offsetPageFetcher.fetch(4)).thenReturn(thirdPage);
+        when(offsetPageFetcher.fetch(6)).thenReturn(new CompletableFuture<>());
+        Iterator<BitbucketPage<Integer>> pages =
+                BitbucketPageStreamUtil.toPrefetchingStream(firstPage, offsetPageFetcher, 2).iterator();
+
+        assertThat(pages.next(), is(firstPage));
+        // Both following pages are requested before the first one is consumed
+        verify(offsetPageFetcher).fetch(2);
+        verify(offsetPageFetcher).fetch(4);
+
+        secondPage.complete(createPage(2, asList(3, 4), false));
+        thirdPage.complete(createPage(4, asList(5), true));
+        List<Integer> values = pages.next().getValues();
+        assertThat(pages.next().getValues(), contains(5));
+
+        assertThat(values, contains(3, 4));
+        assertThat(pages.hasNext(), is(false));
+    }
+
+    @Test
+    public void testPrefetchingStreamRefetchesMisalignedPages() {
+        BitbucketPage<Integer> firstPage = createPage(0, asList(1, 2), false);
+        when(offsetPageFetcher.fetch(2)).thenReturn(completedFuture(createPage(2, asList(3), false, 3)));
+        CompletableFuture<BitbucketPage<Integer>> misaligned = new CompletableFuture<>();
+        when(offsetPageFetcher.fetch(4)).thenReturn(misaligned);
+        when(offsetPageFetcher.fetch(3)).thenReturn(completedFuture(createPage(3, asList(4), true)));
+
+        Stream<BitbucketPage<Integer>> stream = BitbucketPageStreamUtil.toPrefetchingStream(firstPage,
+                offsetPageFetcher, 2);
+
+        assertThat(convertToElementStream(stream).collect(toList()), contains(1, 2, 3, 4));
+        assertThat(misaligned.isCancelled(), is(true));
+    }
+
     @Test
     public void testSinglePage() {
         BitbucketPage<Integer> firstPage = new BitbucketPage<>();
@@ -59,4 +106,18 @@ public class BitbucketPageStreamUtilTest {
 
         assertTrue(stream.collect(toList()).size() == 0);
     }
-}
\ No newline at end of file
+
+    private static BitbucketPage<Integer> createPage(int start, List<Integer> values, boolean lastPage) {
+        return createPage(start, values, lastPage, start + values.size());
+    }
+
+    private static BitbucketPage<Integer> createPage(int start, List<Integer> values, boolean lastPage,
+                                                     int nextPageStart) {
+        BitbucketPage<Integer> page = new BitbucketPage<>();
+        page.setStart(start);
+        page.setValues(values);
+        page.setLastPage(lastPage);
+        page.setNextPageStart(nextPageStart);
+        return page;
+    }
+}
@@ -0,0 +1,58 @@
+package com.atlassian.bitbucket.jenkins.internal.client.paging;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.OBJECT_MAPPER;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.readFileToString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class StreamingPageReaderTest {
+
+    @Test
+    public void testFiltersValues() throws IOException {
+        StreamingPageReader<BitbucketWebhook> reader =
+                new StreamingPageReader<>(OBJECT_MAPPER, BitbucketWebhook.class, hook -> hook.getId() == 2);
+
+        BitbucketPage<BitbucketWebhook> page =
+                reader.read(IOUtils.toInputStream(readFileToString("/webhook/web_hooks_in_system.json"), UTF_8));
+
+        assertThat(page.getValues().stream().map(BitbucketWebhook::getName).collect(toList()), contains("w2"));
+        assertThat(page.isLastPage(), is(true));
+        assertThat(page.getLimit(), is(25));
+        assertThat(page.getSize(), is(2));
+    }
+
+    @Test
+    public void testReadsPagingFieldsAfterValues() throws IOException {
+        StreamingPageReader<Integer> reader = new StreamingPageReader<>(OBJECT_MAPPER, Integer.class, i -> true);
+
+        BitbucketPage<Integer> page = reader.read(IOUtils.toInputStream(
+                "{\"values\":[1,2],\"unknown\":{\"a\":[1]},\"start\":4,\"nextPageStart\":6,\"isLastPage\":false}",
+                UTF_8));
+
+        assertThat(page.getValues(), contains(1, 2));
+        assertThat(page.getStart(), is(4));
+        assertThat(page.getNextPageStart(), is(6));
+        assertThat(page.isLastPage(), is(false));
+    }
+
+    @Test
+    public void testReadsEmptyPage() throws IOException {
+        StreamingPageReader<Integer> reader = new StreamingPageReader<>(OBJECT_MAPPER, Integer.class, i -> true);
+
+        BitbucketPage<Integer> page = reader.read(IOUtils.toInputStream("{\"values\":[],\"isLastPage\":true}", UTF_8));
+
+        assertThat(page.getValues(), empty());
+        assertThat(page.isLastPage(), is(true));
+    }
+}
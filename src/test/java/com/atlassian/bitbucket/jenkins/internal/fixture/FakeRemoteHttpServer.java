@@ -3,6 +3,7 @@ package com.atlassian.bitbucket.jenkins.internal.fixture;
 import okhttp3.*;
 import okio.Buffer;
 import okio.BufferedSource;
+import okio.Timeout;
 import org.apache.tools.ant.filters.StringInputStream;
 
 import javax.annotation.Nullable;
@@ -16,6 +17,7 @@ import static java.util.Objects.requireNonNull;
 import static org.apache.commons.lang3.StringUtils.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -122,6 +124,7 @@ public class FakeRemoteHttpServer implements Call.Factory {
             int returnCode = requireNonNull(urlToReturnCode.get(url), "Input URL " + url);
             Map<String, String> headers = requireNonNull(this.headers.get(url));
             Call mockCall = mock(Call.class);
+            lenient().when(mockCall.timeout()).thenReturn(new Timeout());
             when(mockCall.execute()).thenReturn(getResponse(url, returnCode, headers, mockBody));
             return mockCall;
         } catch (IOException ex) {
@@ -132,6 +135,7 @@ public class FakeRemoteHttpServer implements Call.Factory {
     private Call mockCallToThrowException(String url) {
         try {
             Call mockCall = mock(Call.class);
+            lenient().when(mockCall.timeout()).thenReturn(new Timeout());
             when(mockCall.execute()).thenThrow(urlToException.get(url));
             return mockCall;
         } catch (IOException ex) {
@@ -4,8 +4,8 @@ import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials
 import com.atlassian.bitbucket.jenkins.internal.client.HttpRequestExecutor;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
 import com.atlassian.bitbucket.jenkins.internal.fixture.FakeRemoteHttpServer;
-import okhttp3.HttpUrl;
-import okhttp3.Response;
+import okhttp3.*;
+import okio.Timeout;
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -17,28 +17,46 @@ import org.mockito.junit.MockitoJUnitRunner;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
 import static java.net.HttpURLConnection.*;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static okhttp3.HttpUrl.parse;
 import static org.apache.http.HttpHeaders.AUTHORIZATION;
-import static org.hamcrest.core.Is.is;
-import static org.hamcrest.core.IsEqual.equalTo;
-import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertThat;
-import static org.mockito.Mockito.when;
+import static org.apache.http.HttpHeaders.IF_NONE_MATCH;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HttpRequestExecutorImplTest {
 
     private static final String BASE_URL = "http://localhost:7990/bitbucket";
     private static final HttpUrl PARSED_BASE_URL = parse(BASE_URL);
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(3, 100, 1000, 10000);
 
+    @Mock
+    private Call call;
+    @Mock
+    private Call.Factory callFactory;
+    private final AtomicLong clock = new AtomicLong();
     @Mock
     private BitbucketCredentials credential;
     private FakeRemoteHttpServer factory = new FakeRemoteHttpServer();
     private HttpRequestExecutor httpBasedRequestExecutor = new HttpRequestExecutorImpl(factory);
+    @Mock
+    private ScheduledExecutorService retryScheduler;
+    private final List<Long> sleeps = new ArrayList<>();
 
     @Before
     public void setup() {
@@ -60,6 +78,63 @@ public class HttpRequestExecutorImplTest {
         assertThat(factory.getHeaderValue(BASE_URL, AUTHORIZATION), is(equalTo("aToken")));
     }
 
+    @Test
+    public void testAsyncCancelCancelsCall() {
+        when(callFactory.newCall(any())).thenReturn(call);
+        when(call.timeout()).thenReturn(new Timeout());
+        HttpRequestExecutorImpl executor = createRetryingExecutor(callFactory);
+
+        CompletableFuture<Integer> future = executor.executeGetAsync(PARSED_BASE_URL, credential, Response::code);
+        future.cancel(true);
+
+        verify(call).enqueue(any());
+        verify(call).cancel();
+    }
+
+    @Test
+    public void testAsyncFailure() throws InterruptedException {
+        when(callFactory.newCall(any())).thenReturn(call);
+        when(call.timeout()).thenReturn(new Timeout());
+        doAnswer(invocation -> {
+            invocation.<Callback>getArgument(0).onFailure(call, new IOException());
+            return null;
+        }).when(call).enqueue(any());
+        HttpRequestExecutorImpl executor = createRetryingExecutor(callFactory);
+
+        try {
+            executor.executeGetAsync(PARSED_BASE_URL, credential, Response::code).get();
+            fail("Expected BitbucketClientException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(BitbucketClientException.class));
+            verifyZeroInteractions(retryScheduler);
+        }
+    }
+
+    @Test
+    public void testAsyncRetriesOnScheduler() throws Exception {
+        when(callFactory.newCall(any())).thenReturn(call);
+        when(call.timeout()).thenReturn(new Timeout());
+        List<Response> responses = new ArrayList<>();
+        responses.add(createResponse(HTTP_UNAVAILABLE, Headers.of("Retry-After", "1")));
+        responses.add(createResponse(HTTP_OK, Headers.of()));
+        doAnswer(invocation -> {
+            invocation.<Callback>getArgument(0).onResponse(call, responses.remove(0));
+            return null;
+        }).when(call).enqueue(any());
+        when(retryScheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(invocation -> {
+            sleeps.add(invocation.getArgument(1));
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        });
+        HttpRequestExecutorImpl executor = createRetryingExecutor(callFactory);
+
+        CompletableFuture<Integer> future = executor.executeGetAsync(PARSED_BASE_URL, credential, Response::code);
+
+        assertThat(future.get(), is(HTTP_OK));
+        assertThat(sleeps, contains(1000L));
+        assertThat(executor.getRetryCount(), is(1L));
+    }
+
     @Test(expected = ServerErrorException.class)
     public void testBadGateway() {
         factory.mapUrlToResponseCode(BASE_URL, HTTP_BAD_GATEWAY);
@@ -113,6 +188,20 @@ public class HttpRequestExecutorImplTest {
         httpBasedRequestExecutor.executeGet(PARSED_BASE_URL, credential, response -> null);
     }
 
+    @Test
+    public void testNoRetryOfPostOnServerError() {
+        factory.mapUrlToResponseCode(BASE_URL, HTTP_INTERNAL_ERROR);
+        HttpRequestExecutorImpl executor = createRetryingExecutor(factory);
+
+        try {
+            executor.executePost(PARSED_BASE_URL, credential, "aRequest", response -> null, Headers.of());
+            fail("Expected ServerErrorException");
+        } catch (ServerErrorException e) {
+            assertThat(sleeps, empty());
+            assertThat(executor.getRetryCount(), is(0L));
+        }
+    }
+
     @Test
     public void testPut() throws IOException {
         String requestBody = "aRequest";
@@ -125,6 +214,111 @@ public class HttpRequestExecutorImplTest {
         assertThat(IOUtils.toString(r.body().byteStream(), UTF_8), is(equalTo(responseBody)));
     }
 
+    @Test
+    public void testRetriesConnectionFailure() throws IOException {
+        when(callFactory.newCall(any())).thenReturn(call);
+        when(call.timeout()).thenReturn(new Timeout());
+        when(call.execute()).thenThrow(new ConnectException()).thenReturn(createResponse(HTTP_OK, Headers.of()));
+        HttpRequestExecutorImpl executor = createRetryingExecutor(callFactory);
+
+        assertThat(executor.executeGet(PARSED_BASE_URL, credential, Response::code), is(HTTP_OK));
+        assertThat(sleeps, contains(both(greaterThanOrEqualTo(50L)).and(lessThanOrEqualTo(100L))));
+        assertThat(executor.getRetryCount(), is(1L));
+    }
+
+    @Test
+    public void testRetriesOutsideAttemptGuard() throws IOException {
+        Timeout timeout = new Timeout();
+        when(callFactory.newCall(any())).thenReturn(call);
+        when(call.timeout()).thenReturn(timeout);
+        when(call.execute()).thenThrow(new ConnectException()).thenReturn(createResponse(HTTP_OK, Headers.of()));
+        List<String> events = new ArrayList<>();
+        HttpRequestExecutorImpl executor = new HttpRequestExecutorImpl(callFactory, RETRY_POLICY, millis -> {
+            events.add("sleep");
+            clock.addAndGet(millis);
+        }, () -> retryScheduler, clock::get);
+        HttpRequestExecutor guardedExecutor = executor.withAttemptGuard(new HttpRequestExecutor.AttemptGuard() {
+            @Override
+            public <T> T attempt(Supplier<T> attempt) {
+                events.add("attempt");
+                try {
+                    return attempt.get();
+                } catch (RuntimeException e) {
+                    events.add(e.getClass().getSimpleName());
+                    throw e;
+                }
+            }
+        });
+
+        assertThat(guardedExecutor.executeGet(PARSED_BASE_URL, credential, Response::code), is(HTTP_OK));
+        assertThat(events, contains("attempt", "ConnectionFailureException", "sleep", "attempt"));
+        assertThat(executor.getRetryCount(), is(1L));
+        // The second attempt only has what is left of the budget
+        assertThat(timeout.timeoutNanos(), is(TimeUnit.MILLISECONDS.toNanos(10000 - clock.get())));
+    }
+
+    @Test
+    public void testRetriesHonourRetryAfter() throws IOException {
+        when(callFactory.newCall(any())).thenReturn(call);
+        when(call.timeout()).thenReturn(new Timeout());
+        when(call.execute())
+                .thenReturn(createResponse(429, Headers.of("Retry-After", "2")))
+                .thenReturn(createResponse(HTTP_OK, Headers.of()));
+        HttpRequestExecutorImpl executor = createRetryingExecutor(callFactory);
+
+        executor.executePost(PARSED_BASE_URL, credential, "aRequest", response -> null, Headers.of());
+
+        assertThat(sleeps, contains(2000L));
+    }
+
+    @Test
+    public void testRetriesServerErrorUntilAttemptsExhausted() {
+        factory.mapUrlToResponseCode(BASE_URL, HTTP_BAD_GATEWAY);
+        HttpRequestExecutorImpl executor = createRetryingExecutor(factory);
+
+        try {
+            executor.executeGet(PARSED_BASE_URL, credential, response -> null);
+            fail("Expected ServerErrorException");
+        } catch (ServerErrorException e) {
+            assertThat(sleeps, hasSize(2));
+            assertThat(executor.getRetryCount(), is(2L));
+            assertThat(executor.getRetriesExhaustedCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void testRetriesStopWhenBudgetSpent() throws IOException {
+        when(callFactory.newCall(any())).thenReturn(call);
+        when(call.timeout()).thenReturn(new Timeout());
+        when(call.execute()).thenReturn(createResponse(HTTP_UNAVAILABLE, Headers.of("Retry-After", "60")));
+        HttpRequestExecutorImpl executor = createRetryingExecutor(callFactory);
+
+        try {
+            executor.executeGet(PARSED_BASE_URL, credential, response -> null);
+            fail("Expected ServerErrorException");
+        } catch (ServerErrorException e) {
+            verify(call).execute();
+            assertThat(sleeps, empty());
+            assertThat(executor.getRetriesExhaustedCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void testNotModifiedForConditionalRequest() {
+        factory.mapUrlToResponseCode(BASE_URL, HTTP_NOT_MODIFIED);
+
+        String result = httpBasedRequestExecutor.executeGet(PARSED_BASE_URL, credential,
+                Headers.of(IF_NONE_MATCH, "\"etag\""), response -> "cached");
+
+        assertThat(result, is("cached"));
+    }
+
+    @Test(expected = UnhandledErrorException.class)
+    public void testNotModifiedWithoutValidators() {
+        factory.mapUrlToResponseCode(BASE_URL, HTTP_NOT_MODIFIED);
+        httpBasedRequestExecutor.executeGet(PARSED_BASE_URL, credential, response -> null);
+    }
+
     @Test(expected = UnhandledErrorException.class)
     public void testRedirect() {
         // by default the client will follow re-directs, this test just makes sure that if that is
@@ -169,4 +363,22 @@ public class HttpRequestExecutorImplTest {
 
         httpBasedRequestExecutor.executeGet(PARSED_BASE_URL, credential, response -> null);
     }
-}
\ No newline at end of file
+
+    private Response createResponse(int responseCode, Headers headers) {
+        return new Response.Builder()
+                .code(responseCode)
+                .request(new Request.Builder().url(BASE_URL).build())
+                .protocol(Protocol.HTTP_1_1)
+                .message("")
+                .headers(headers)
+                .body(ResponseBody.create(null, ""))
+                .build();
+    }
+
+    private HttpRequestExecutorImpl createRetryingExecutor(Call.Factory callFactory) {
+        return new HttpRequestExecutorImpl(callFactory, RETRY_POLICY, millis -> {
+            sleeps.add(millis);
+            clock.addAndGet(millis);
+        }, () -> retryScheduler, clock::get);
+    }
+}
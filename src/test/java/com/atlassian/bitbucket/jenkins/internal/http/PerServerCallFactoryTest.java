@@ -0,0 +1,74 @@
+package com.atlassian.bitbucket.jenkins.internal.http;
+
+import okhttp3.OkHttpClient;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static okhttp3.HttpUrl.parse;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class PerServerCallFactoryTest {
+
+    private static final String BASE_URL = "http://localhost:7990/bitbucket";
+
+    private final OkHttpClient baseClient = new OkHttpClient();
+    private final Map<String, HttpClientSettings> settings = new HashMap<>();
+    private final PerServerCallFactory callFactory = new PerServerCallFactory(baseClient, () -> settings);
+
+    @Test
+    public void testAppliesServerSettings() {
+        settings.put(BASE_URL + "/", new HttpClientSettings(10, 60, 20, 1, 2, 3));
+
+        OkHttpClient client = callFactory.getClient(parse(BASE_URL + "/rest/api/1.0/projects"));
+
+        assertThat(client, not(sameInstance(baseClient)));
+        assertThat(client.dispatcher().getMaxRequestsPerHost(), is(20));
+        assertThat(client.dispatcher().executorService(), sameInstance(baseClient.dispatcher().executorService()));
+        assertThat(client.connectTimeoutMillis(), is(1000));
+        assertThat(client.readTimeoutMillis(), is(2000));
+        assertThat(client.writeTimeoutMillis(), is(3000));
+        assertThat(callFactory.getPoolStatus(BASE_URL), startsWith("0 open connections"));
+    }
+
+    @Test
+    public void testLooksUpSettingsUntilInvalidated() {
+        AtomicInteger lookups = new AtomicInteger();
+        PerServerCallFactory factory = new PerServerCallFactory(baseClient, () -> {
+            lookups.incrementAndGet();
+            return settings;
+        });
+        factory.getClient(parse(BASE_URL + "/rest"));
+        factory.getClient(parse(BASE_URL + "/rest"));
+        assertThat(lookups.get(), is(1));
+
+        factory.invalidateSettings();
+        factory.getClient(parse(BASE_URL + "/rest"));
+
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test
+    public void testRebuildsClientWhenSettingsChange() {
+        settings.put(BASE_URL, HttpClientSettings.DEFAULT);
+        OkHttpClient client = callFactory.getClient(parse(BASE_URL + "/rest"));
+        assertThat(callFactory.getClient(parse(BASE_URL + "/rest")), sameInstance(client));
+
+        settings.put(BASE_URL, new HttpClientSettings(0, 0, 10, 0, 0, 0));
+
+        assertThat(callFactory.getClient(parse(BASE_URL + "/rest")), not(sameInstance(client)));
+    }
+
+    @Test
+    public void testUsesBaseClientForOtherUrls() {
+        settings.put(BASE_URL, new HttpClientSettings(10, 60, 20, 1, 2, 3));
+
+        assertThat(callFactory.getClient(parse("http://localhost:7990/bitbucket-mirror/rest")),
+                sameInstance(baseClient));
+        assertThat(callFactory.getClient(parse("http://mirror:7990/rest")), sameInstance(baseClient));
+        assertThat(callFactory.getPoolStatus("http://mirror:7990"), nullValue());
+    }
+}
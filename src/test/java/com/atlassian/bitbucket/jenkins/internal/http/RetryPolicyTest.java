@@ -0,0 +1,35 @@
+package com.atlassian.bitbucket.jenkins.internal.http;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy retryPolicy = new RetryPolicy(5, 100, 1000, 10000);
+
+    @Test
+    public void testBackoffIsCapped() {
+        assertThat(retryPolicy.getBackoffMillis(5, 0), is(500L));
+        assertThat(retryPolicy.getBackoffMillis(40, 0.99), is(995L));
+    }
+
+    @Test
+    public void testBackoffDoubles() {
+        assertThat(retryPolicy.getBackoffMillis(1, 0), is(50L));
+        assertThat(retryPolicy.getBackoffMillis(2, 0), is(100L));
+        assertThat(retryPolicy.getBackoffMillis(3, 0), is(200L));
+    }
+
+    @Test
+    public void testBackoffJitter() {
+        assertThat(retryPolicy.getBackoffMillis(1, 0.5), is(75L));
+        assertThat(retryPolicy.getBackoffMillis(1, 0.99), is(99L));
+    }
+
+    @Test
+    public void testNoRetry() {
+        assertThat(RetryPolicy.NO_RETRY.getMaxAttempts(), is(1));
+    }
+}
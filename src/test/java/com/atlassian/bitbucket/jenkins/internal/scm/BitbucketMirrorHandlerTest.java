@@ -17,19 +17,26 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.AVAILABLE;
 import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.NOT_MIRRORED;
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorHandler.NEAREST_MIRROR;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
 import static java.lang.String.format;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.collection.IsIterableWithSize.iterableWithSize;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsIterableContaining.hasItems;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -49,6 +56,7 @@ public class BitbucketMirrorHandlerTest {
     @Mock
     private GlobalCredentialsProvider globalCredentialsProvider;
     private BitbucketMirrorHandler bitbucketMirrorHandler;
+    private final MirrorLatencyTable mirrorLatencyTable = new MirrorLatencyTable();
 
     @Before
     public void setup() {
@@ -76,6 +84,38 @@ public class BitbucketMirrorHandlerTest {
         bitbucketMirrorHandler.fetchRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror1"));
     }
 
+    @Test
+    public void testFetchAsListBoxLeavesOutMirrorsThatTimeOut() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
+                createMirroredRepoDescriptors(2);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+        CompletableFuture<BitbucketResponse<BitbucketMirroredRepository>> slowMirror = new CompletableFuture<>();
+        when(bbRepoMirrorsClient.getRepositoryDetailsAsync(descriptors.get("Mirror1"))).thenReturn(slowMirror);
+
+        List<Option> options =
+                bitbucketMirrorHandler.fetchAsListBox(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror0"));
+
+        assertThat(options.stream()
+                .map(Option::toString)
+                .collect(Collectors.toList()), contains("Primary Server=", "Nearest mirror=(nearest)", "Mirror0=Mirror0[selected]"));
+        assertThat(slowMirror.isCancelled(), is(true));
+    }
+
+    @Test
+    public void testFetchAsListBoxAndFetchRepositoryShareMirrors() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
+                createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+        MirrorFetchRequest request =
+                new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror0");
+
+        bitbucketMirrorHandler.fetchAsListBox(request);
+        bitbucketMirrorHandler.fetchRepository(request);
+
+        verify(bbRepoMirrorsClient).getMirroredRepositoryDescriptors();
+        verify(bbRepoMirrorsClient).getRepositoryDetailsAsync(descriptors.get("Mirror0"));
+    }
+
     @Test
     public void testFetchAsListBox() {
         Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
@@ -86,13 +126,67 @@ public class BitbucketMirrorHandlerTest {
         List<Option> options =
                 bitbucketMirrorHandler.fetchAsListBox(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror0"));
 
-        assertThat(options.size(), is(equalTo(3)));
+        assertThat(options.size(), is(equalTo(4)));
 
         assertThat(options.stream()
                 .map(Option::toString)
                 .collect(Collectors.toList()), hasItems("Primary Server=", "Mirror0=Mirror0[selected]", "Mirror1=Mirror1"));
     }
 
+    @Test
+    public void testFetchAsListBoxSelectsNearestMirror() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
+                createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+
+        List<Option> options =
+                bitbucketMirrorHandler.fetchAsListBox(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, NEAREST_MIRROR));
+
+        assertThat(options.stream()
+                .map(Option::toString)
+                .collect(Collectors.toList()), contains("Primary Server=", "Nearest mirror=(nearest)[selected]", "Mirror0=Mirror0"));
+    }
+
+    @Test
+    public void testFetchNearestRepository() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
+                createMirroredRepoDescriptors(3);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+        mockMirroredRepo(descriptors.get("Mirror1"));
+        mockMirroredRepo(descriptors.get("Mirror2"), NOT_MIRRORED);
+        mirrorLatencyTable.recordLatency(BITBUCKET_BASE_URL, "Mirror0", TimeUnit.SECONDS.toNanos(1));
+        mirrorLatencyTable.recordLatency(BITBUCKET_BASE_URL, "Mirror1", TimeUnit.MILLISECONDS.toNanos(1));
+        mirrorLatencyTable.recordLatency(BITBUCKET_BASE_URL, "Mirror2", 0);
+
+        EnrichedBitbucketMirroredRepository repository =
+                bitbucketMirrorHandler.fetchRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, NEAREST_MIRROR));
+
+        assertThat(repository.getMirroringDetails().getMirrorName(), is(equalTo("Mirror1")));
+    }
+
+    @Test
+    public void testFetchRepositoryRecordsLatencyOfRequest() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
+                createMirroredRepoDescriptors(2);
+        mockMirroredRepo(descriptors.get("Mirror0"), AVAILABLE, 250);
+        mockMirroredRepo(descriptors.get("Mirror1"), AVAILABLE, -1);
+
+        bitbucketMirrorHandler.fetchRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, NEAREST_MIRROR));
+
+        assertThat(mirrorLatencyTable.getLatency(BITBUCKET_BASE_URL, "Mirror0"),
+                is(equalTo(TimeUnit.MILLISECONDS.toNanos(250))));
+        assertThat(mirrorLatencyTable.getLatency(BITBUCKET_BASE_URL, "Mirror1"), is(equalTo(Long.MAX_VALUE)));
+    }
+
+    @Test(expected = MirrorFetchException.class)
+    public void testFetchNearestRepositoryWhenNoMirrorIsAvailable() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
+                createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"), NOT_MIRRORED);
+
+        bitbucketMirrorHandler.fetchRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, NEAREST_MIRROR));
+    }
+
     @Test
     public void testFindMirroredRepository() {
         Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
@@ -146,7 +240,8 @@ public class BitbucketMirrorHandlerTest {
                                 BitbucketRepoFetcher repoFetcher) {
         bitbucketMirrorHandler =
                 new BitbucketMirrorHandler(bitbucketClientFactoryProvider,
-                        jenkinsToBitbucketCredentials, repoFetcher);
+                        jenkinsToBitbucketCredentials, repoFetcher,
+                        new MirroredRepositoriesCache(60_000, System::currentTimeMillis), mirrorLatencyTable, 100);
     }
 
     private String mockMirroredRepo(BitbucketMirroredRepositoryDescriptor descriptor) {
@@ -155,6 +250,11 @@ public class BitbucketMirrorHandlerTest {
 
     private String mockMirroredRepo(BitbucketMirroredRepositoryDescriptor descriptor,
                                     BitbucketMirroredRepositoryStatus status) {
+        return mockMirroredRepo(descriptor, status, -1);
+    }
+
+    private String mockMirroredRepo(BitbucketMirroredRepositoryDescriptor descriptor,
+                                    BitbucketMirroredRepositoryStatus status, long elapsedMillis) {
         Map<String, List<BitbucketNamedLink>> repoLinks = new HashMap<>();
         String repoCloneUrl = "http://mirror.example.com/scm/stash/jenkins/jenkins.git";
         repoLinks.put("clone", singletonList(new BitbucketNamedLink("http", repoCloneUrl)));
@@ -163,7 +263,8 @@ public class BitbucketMirrorHandlerTest {
                 new BitbucketMirroredRepository(
                         status == AVAILABLE, repoLinks, descriptor.getMirrorServer().getName(), REPO_ID, status);
 
-        when(bbRepoMirrorsClient.getRepositoryDetails(descriptor)).thenReturn(mirroredRepo);
+        when(bbRepoMirrorsClient.getRepositoryDetailsAsync(descriptor))
+                .thenReturn(completedFuture(new BitbucketResponse<>(emptyMap(), mirroredRepo, elapsedMillis)));
         return repoCloneUrl;
     }
 
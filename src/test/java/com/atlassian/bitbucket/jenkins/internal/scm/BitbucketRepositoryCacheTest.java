@@ -0,0 +1,69 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.RepositoryState;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BitbucketRepositoryCacheTest {
+
+    private static final String BASE_URL = "http://localhost:7990/bitbucket";
+
+    private final AtomicLong clock = new AtomicLong();
+    private final BitbucketRepositoryCache cache = new BitbucketRepositoryCache(1000, clock::get);
+    private final BitbucketRepository repository = repository("PROJ", "repo");
+
+    @Test
+    public void testExpires() {
+        cache.put(BASE_URL, "credentials", "Project", "Repo", repository);
+        clock.set(999);
+
+        assertThat(cache.get(BASE_URL, "credentials", "Project", "Repo"), is(repository));
+
+        clock.set(1000);
+
+        assertThat(cache.get(BASE_URL, "credentials", "Project", "Repo"), nullValue());
+    }
+
+    @Test
+    public void testInvalidate() {
+        BitbucketRepository other = repository("PROJ", "other");
+        cache.put(BASE_URL, "credentials", "Project", "Repo", repository);
+        cache.put(BASE_URL, "credentials", "Project", "Other", other);
+
+        cache.invalidate(repository("proj", "REPO"));
+
+        assertThat(cache.get(BASE_URL, "credentials", "Project", "Repo"), nullValue());
+        assertThat(cache.get(BASE_URL, "credentials", "Project", "Other"), is(other));
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        cache.put(BASE_URL, "credentials", "Project", "Repo", repository);
+
+        cache.invalidateAll();
+
+        assertThat(cache.get(BASE_URL, "credentials", "Project", "Repo"), nullValue());
+    }
+
+    @Test
+    public void testKeptPerCredentials() {
+        cache.put(BASE_URL, "credentials", "Project", "Repo", repository);
+
+        assertThat(cache.get(BASE_URL, "credentials", "Project", "Repo"), is(repository));
+        assertThat(cache.get(BASE_URL + "/", "credentials", "Project", "Repo"), is(repository));
+        assertThat(cache.get(BASE_URL, null, "Project", "Repo"), nullValue());
+        assertThat(cache.get(BASE_URL, "other", "Project", "Repo"), nullValue());
+    }
+
+    private static BitbucketRepository repository(String projectKey, String slug) {
+        return new BitbucketRepository(1, slug, null, new BitbucketProject(projectKey, null, projectKey), slug,
+                RepositoryState.AVAILABLE);
+    }
+}
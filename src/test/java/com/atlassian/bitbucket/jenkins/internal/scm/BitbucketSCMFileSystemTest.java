@@ -0,0 +1,106 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentNode;
+import jenkins.scm.api.SCMFile;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentType.DIRECTORY;
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketContentType.FILE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketSCMFileSystemTest {
+
+    private static final String COMMIT = "0a943a29376f2336b78312d99e65da17048951db";
+
+    @Mock
+    private BitbucketRepositoryClient client;
+
+    @Test
+    public void testChildren() throws Exception {
+        when(client.getDirectoryContent("ci", COMMIT)).thenReturn(Stream.of(
+                new BitbucketContentNode("Jenkinsfile", FILE), new BitbucketContentNode("scripts", DIRECTORY)));
+
+        List<String> children = new ArrayList<>();
+        for (SCMFile child : createFileSystem().getRoot().child("ci").children()) {
+            children.add(child.getPath() + " " + child.getType());
+        }
+
+        assertThat(children, contains("ci/Jenkinsfile REGULAR_FILE", "ci/scripts DIRECTORY"));
+    }
+
+    @Test
+    public void testContentIsCachedByCommit() throws Exception {
+        when(client.getContentType("Jenkinsfile", COMMIT)).thenReturn(FILE);
+        when(client.getRawContent("Jenkinsfile", COMMIT)).thenReturn("pipeline {}".getBytes(UTF_8));
+        RepositoryContentCache cache = new RepositoryContentCache(1000);
+
+        assertThat(createFileSystem(cache).getRoot().child("Jenkinsfile").contentAsString(), is("pipeline {}"));
+        assertThat(createFileSystem(cache).getRoot().child("Jenkinsfile").contentAsString(), is("pipeline {}"));
+
+        verify(client, times(1)).getRawContent("Jenkinsfile", COMMIT);
+        verify(client, times(1)).getContentType("Jenkinsfile", COMMIT);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testContentOfMissingFile() throws Exception {
+        when(client.getContentType("Jenkinsfile", COMMIT)).thenReturn(FILE);
+        when(client.getRawContent("Jenkinsfile", COMMIT)).thenThrow(new NotFoundException("Not found", null));
+
+        createFileSystem().getRoot().child("Jenkinsfile").content();
+    }
+
+    @Test
+    public void testTypeOfMissingPath() throws Exception {
+        when(client.getContentType("Jenkinsfile", COMMIT)).thenThrow(new NotFoundException("Not found", null));
+
+        assertThat(createFileSystem().getRoot().child("Jenkinsfile").getType(), is(SCMFile.Type.NONEXISTENT));
+    }
+
+    @Test
+    public void testRefOfBranchSpec() {
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("master", "repo", ""), is("master"));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("*/feature/one", "repo", ""), is("feature/one"));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("repo/feature/one", "repo", ""), is("feature/one"));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("refs/heads/master", "repo", ""),
+                is("refs/heads/master"));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("refs/tags/v1.0", "repo", ""), is("refs/tags/v1.0"));
+    }
+
+    @Test
+    public void testRefOfUnmappableBranchSpec() {
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("origin/master", "repo", ""), is(nullValue()));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("refs/remotes/origin/master", "repo", ""),
+                is(nullValue()));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("*/feature/*", "repo", ""), is(nullValue()));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("**", "repo", ""), is(nullValue()));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("${BRANCH}", "repo", ""), is(nullValue()));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef(":^feature/.*", "repo", ""), is(nullValue()));
+        assertThat(BitbucketSCMFileSystem.BuilderImpl.getRef("master", "repo", "mirror"), is(nullValue()));
+    }
+
+    private BitbucketSCMFileSystem createFileSystem() {
+        return createFileSystem(new RepositoryContentCache(0));
+    }
+
+    private BitbucketSCMFileSystem createFileSystem(RepositoryContentCache cache) {
+        return new BitbucketSCMFileSystem(client, "repo", COMMIT, null, cache);
+    }
+}
@@ -1,29 +1,39 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBranch;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookMultibranchTrigger;
 import com.atlassian.bitbucket.jenkins.internal.trigger.RetryingWebhookHandler;
+import hudson.model.TaskListener;
 import hudson.plugins.git.GitSCM;
 import hudson.plugins.git.UserRemoteConfig;
 import hudson.scm.SCM;
 import jenkins.branch.MultiBranchProject;
-import jenkins.scm.api.SCMHead;
-import jenkins.scm.api.SCMSourceDescriptor;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
+import jenkins.plugins.git.GitSCMSourceContext;
+import jenkins.scm.api.*;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
+import static com.atlassian.bitbucket.jenkins.internal.model.RepositoryState.AVAILABLE;
 import static java.util.Collections.singletonList;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyOrNullString;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
@@ -36,6 +46,10 @@ public class BitbucketSCMSourceTest {
 
     private static final String httpCloneLink = "http://localhost:7990/fake.git";
     private static final String sshCloneLink = "ssh://git@localhost:7990/fake.git";
+    private static final BitbucketRepository REPOSITORY = new BitbucketRepository(1, "repo",
+            new BitbucketProject("PROJ_1", null, "Project 1"), "repo", AVAILABLE,
+            singletonList(new BitbucketNamedLink("http", httpCloneLink)),
+            "http://localhost:7990/projects/PROJ_1/repos/repo/browse");
 
     @Test
     public void testBuildHttp() {
@@ -144,6 +158,265 @@ public class BitbucketSCMSourceTest {
         verify(triggerDesc).addTrigger(any(), same(bitbucketSCMsource));
     }
 
+    @Test
+    public void testLazyResolutionKeepsEnteredNames() {
+        BitbucketSCMSource.DescriptorImpl descriptor = mockLazyDescriptor(new AtomicBoolean());
+
+        BitbucketSCMSource scmSource = createLazyInstance(descriptor);
+
+        verify(descriptor, never()).getBitbucketScmHelper(nullable(String.class), nullable(String.class));
+        assertThat(scmSource.getProjectName(), is(equalTo("Project 1")));
+        assertThat(scmSource.getRepositoryName(), is(equalTo("repo")));
+        assertThat(scmSource.getServerId(), is(equalTo("serverId")));
+    }
+
+    @Test
+    public void testLazyResolutionCopyKeepsSavedRepository() {
+        AtomicBoolean available = new AtomicBoolean(true);
+        BitbucketSCMSource.DescriptorImpl descriptor = mockLazyDescriptor(available);
+        BitbucketSCMSource oldSource = createLazyInstance(descriptor);
+        oldSource.resolveIfPending();
+        available.set(false);
+
+        BitbucketSCMSource scmSource = new BitbucketSCMSource(oldSource) {
+            @Override
+            public SCMSourceDescriptor getDescriptor() {
+                return descriptor;
+            }
+        };
+        scmSource.resolveIfPending();
+
+        assertThat(scmSource.getRemote(), is(equalTo(httpCloneLink)));
+        assertThat(scmSource.getProjectKey(), is(equalTo("PROJ_1")));
+        assertThat(scmSource.getRepositorySlug(), is(equalTo("repo")));
+    }
+
+    @Test
+    public void testLazyResolutionRetriesAfterFailure() {
+        AtomicBoolean available = new AtomicBoolean();
+        BitbucketSCMSource scmSource = createLazyInstance(mockLazyDescriptor(available));
+
+        scmSource.resolveIfPending();
+
+        assertThat(scmSource.getRemote(), is(emptyOrNullString()));
+        assertThat(scmSource.getProjectKey(), is(equalTo("Project 1")));
+
+        available.set(true);
+        scmSource.resolveIfPending();
+
+        assertThat(scmSource.getRemote(), is(equalTo(httpCloneLink)));
+        assertThat(scmSource.getProjectKey(), is(equalTo("PROJ_1")));
+        assertThat(scmSource.getProjectName(), is(equalTo("Project 1")));
+    }
+
+    @Test
+    public void testIsRestDiscoverable() {
+        BitbucketSCMSource scmSource = createRestInstance(mock(BitbucketRepositoryClient.class));
+        GitSCMSourceContext<?, ?> context = createContext(SCMHeadObserver.collect());
+
+        assertThat(scmSource.isRestDiscoverable(context), is(true));
+    }
+
+    @Test
+    public void testIsNotRestDiscoverableWithTags() {
+        BitbucketSCMSource scmSource = createRestInstance(mock(BitbucketRepositoryClient.class));
+        GitSCMSourceContext<?, ?> context = createContext(SCMHeadObserver.collect());
+        context.wantTags(true);
+
+        assertThat(scmSource.isRestDiscoverable(context), is(false));
+    }
+
+    @Test
+    public void testIsNotRestDiscoverableWithRefSpecs() {
+        BitbucketSCMSource scmSource = createRestInstance(mock(BitbucketRepositoryClient.class));
+        GitSCMSourceContext<?, ?> context = createContext(SCMHeadObserver.collect());
+        context.withRefSpec("+refs/heads/release/*:refs/remotes/@{remote}/release/*");
+
+        assertThat(scmSource.isRestDiscoverable(context), is(false));
+    }
+
+    @Test
+    public void testRetrieveBranches() throws Exception {
+        BitbucketRepositoryClient client = mockBranches(new ArrayList<>(), "master", "feature");
+        BitbucketSCMSource scmSource = createRestInstance(client);
+        SCMHeadObserver.Collector collector = SCMHeadObserver.collect();
+
+        scmSource.retrieveBranches(createContext(collector), null, TaskListener.NULL);
+
+        assertThat(collector.result().keySet(),
+                containsInAnyOrder(new GitBranchSCMHead("master"), new GitBranchSCMHead("feature")));
+        assertThat(((GitBranchSCMRevision) collector.result().get(new GitBranchSCMHead("feature"))).getHash(),
+                is(equalTo("feature-commit")));
+        verify(client).getBranches(isNull(), any(Predicate.class));
+    }
+
+    @Test
+    public void testRetrieveBranchesSkipsExcludedBranches() throws Exception {
+        BitbucketSCMSource scmSource = createRestInstance(mockBranches(new ArrayList<>(), "master", "feature"));
+        SCMHeadObserver.Collector collector = SCMHeadObserver.collect();
+        GitSCMSourceContext<?, ?> context = createContext(collector);
+        context.withPrefilter(new SCMHeadPrefilter() {
+            @Override
+            public boolean isExcluded(SCMSource source, SCMHead head) {
+                return "feature".equals(head.getName());
+            }
+        });
+
+        scmSource.retrieveBranches(context, null, TaskListener.NULL);
+
+        assertThat(collector.result().keySet(), contains(new GitBranchSCMHead("master")));
+    }
+
+    @Test
+    public void testRetrieveBranchesStopsOnceObserverIsDone() throws Exception {
+        List<String> listed = new ArrayList<>();
+        BitbucketSCMSource scmSource = createRestInstance(mockBranches(listed, "master", "feature", "bugfix"));
+        List<String> observed = new ArrayList<>();
+        SCMHeadObserver observer = new SCMHeadObserver() {
+            @Override
+            public void observe(SCMHead head, SCMRevision revision) {
+                observed.add(head.getName());
+            }
+
+            @Override
+            public boolean isObserving() {
+                return observed.isEmpty();
+            }
+        };
+
+        scmSource.retrieveBranches(createContext(observer), null, TaskListener.NULL);
+
+        assertThat(observed, contains("master"));
+        assertThat(listed, contains("master"));
+    }
+
+    @Test
+    public void testRetrieveBranchesOfEvent() throws Exception {
+        BitbucketRepositoryClient client = mockBranches(new ArrayList<>(), "master", "feature");
+        BitbucketSCMSource scmSource = createRestInstance(client);
+        SCMHeadObserver.Collector collector = SCMHeadObserver.collect();
+
+        scmSource.retrieveBranches(createContext(collector), mockEvent(scmSource, "feature"), TaskListener.NULL);
+
+        assertThat(collector.result().keySet(), contains(new GitBranchSCMHead("feature")));
+        verify(client).getBranches(eq("feature"), any(Predicate.class));
+    }
+
+    @Test
+    public void testRetrieveBranchesOfEventWithoutWantedBranches() throws Exception {
+        BitbucketRepositoryClient client = mock(BitbucketRepositoryClient.class);
+        BitbucketSCMSource scmSource = createRestInstance(client);
+        SCMHeadObserver observer = SCMHeadObserver.select(new GitBranchSCMHead("master"));
+
+        scmSource.retrieveBranches(createContext(observer), mockEvent(scmSource, "feature"), TaskListener.NULL);
+
+        verifyZeroInteractions(client);
+    }
+
+    @Test
+    public void testGetWantedBranchesWhenEveryBranchIsWanted() {
+        BitbucketSCMSource scmSource = createRestInstance(mock(BitbucketRepositoryClient.class));
+
+        assertThat(scmSource.getWantedBranches(SCMHeadObserver.collect(), null), is(nullValue()));
+    }
+
+    @Test
+    public void testGetWantedBranchesOfObserver() {
+        BitbucketSCMSource scmSource = createRestInstance(mock(BitbucketRepositoryClient.class));
+
+        assertThat(scmSource.getWantedBranches(SCMHeadObserver.select(new GitBranchSCMHead("master")), null),
+                contains("master"));
+    }
+
+    @Test
+    public void testGetWantedBranchesOfEvent() {
+        BitbucketSCMSource scmSource = createRestInstance(mock(BitbucketRepositoryClient.class));
+
+        assertThat(scmSource.getWantedBranches(SCMHeadObserver.collect(), mockEvent(scmSource, "master", "feature")),
+                containsInAnyOrder("master", "feature"));
+    }
+
+    @Test
+    public void testGetWantedBranchesOfObserverAndEvent() {
+        BitbucketSCMSource scmSource = createRestInstance(mock(BitbucketRepositoryClient.class));
+        SCMHeadObserver observer = SCMHeadObserver.select(new GitBranchSCMHead("master"));
+
+        assertThat(scmSource.getWantedBranches(observer, mockEvent(scmSource, "master", "feature")),
+                contains("master"));
+    }
+
+    private GitSCMSourceContext<?, ?> createContext(SCMHeadObserver observer) {
+        GitSCMSourceContext<?, ?> context = new GitSCMSourceContext<>(null, observer);
+        context.wantBranches(true);
+        return context;
+    }
+
+    /**
+     * Returns a client listing branches with the given names, whose latest commit is the name followed by
+     * {@code -commit}. The names of the branches are added to {@code listed} as they are read.
+     */
+    @SuppressWarnings("unchecked")
+    private BitbucketRepositoryClient mockBranches(List<String> listed, String... names) {
+        BitbucketRepositoryClient client = mock(BitbucketRepositoryClient.class);
+        when(client.getBranches(nullable(String.class), any(Predicate.class))).thenAnswer(invocation ->
+                Arrays.stream(names)
+                        .map(name -> new BitbucketBranch("refs/heads/" + name, name, name + "-commit", false))
+                        .filter(invocation.<Predicate<BitbucketBranch>>getArgument(1))
+                        .peek(branch -> listed.add(branch.getDisplayId())));
+        return client;
+    }
+
+    private SCMHeadEvent<?> mockEvent(SCMSource scmSource, String... branchNames) {
+        SCMHeadEvent<?> event = mock(SCMHeadEvent.class);
+        Map<SCMHead, SCMRevision> heads = new HashMap<>();
+        for (String branchName : branchNames) {
+            heads.put(new GitBranchSCMHead(branchName), null);
+        }
+        doReturn(heads).when(event).heads(scmSource);
+        return event;
+    }
+
+    private BitbucketSCMSource createRestInstance(BitbucketRepositoryClient client) {
+        BitbucketSCMSource.DescriptorImpl descriptor = mockLazyDescriptor(new AtomicBoolean(true));
+        when(descriptor.isLazyResolution()).thenReturn(false);
+        when(descriptor.isRestDiscovery()).thenReturn(true);
+        BitbucketScmHelper scmHelper = descriptor.getBitbucketScmHelper("", "");
+        when(scmHelper.getRepositoryClient("PROJ_1", "repo")).thenReturn(client);
+        return new BitbucketSCMSource("1", "credentialsId", "", Collections.emptyList(), "Project 1", "repo",
+                "serverId", null) {
+            @Override
+            public SCMSourceDescriptor getDescriptor() {
+                return descriptor;
+            }
+        };
+    }
+
+    private BitbucketSCMSource createLazyInstance(BitbucketSCMSource.DescriptorImpl descriptor) {
+        return new BitbucketSCMSource("1", "credentialsId", "", Collections.emptyList(), "Project 1", "repo",
+                "serverId", null) {
+            @Override
+            public SCMSourceDescriptor getDescriptor() {
+                return descriptor;
+            }
+        };
+    }
+
+    /**
+     * Returns a descriptor for lazily resolved sources, which only finds the server while {@code available} is set.
+     */
+    private BitbucketSCMSource.DescriptorImpl mockLazyDescriptor(AtomicBoolean available) {
+        BitbucketSCMSource.DescriptorImpl descriptor = mock(BitbucketSCMSource.DescriptorImpl.class);
+        BitbucketScmHelper scmHelper = mock(BitbucketScmHelper.class);
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(serverConfiguration.getBaseUrl()).thenReturn("http://localhost:7990");
+        when(descriptor.isLazyResolution()).thenReturn(true);
+        when(descriptor.getConfiguration(nullable(String.class))).thenAnswer(invocation ->
+                available.get() ? Optional.of(serverConfiguration) : Optional.empty());
+        when(descriptor.getBitbucketScmHelper(nullable(String.class), nullable(String.class))).thenReturn(scmHelper);
+        when(scmHelper.getRepository("Project 1", "repo")).thenReturn(REPOSITORY);
+        return descriptor;
+    }
+
     private BitbucketSCMSource createInstance(String credentialId) {
         return createInstance(credentialId, null);
     }
@@ -1,14 +1,23 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 import hudson.scm.SCMDescriptor;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
+import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.atlassian.bitbucket.jenkins.internal.model.RepositoryState.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorHandler.NEAREST_MIRROR;
+import static java.util.Collections.singletonList;
 import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.hamcrest.Matchers.emptyOrNullString;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
@@ -19,6 +28,12 @@ import static org.mockito.Mockito.*;
 
 public class BitbucketSCMTest {
 
+    private static final String CLONE_URL = "http://localhost:7990/scm/proj_1/repo.git";
+    private static final BitbucketRepository REPOSITORY = new BitbucketRepository(1, "repo",
+            new BitbucketProject("PROJ_1", null, "Project 1"), "repo", AVAILABLE,
+            singletonList(new BitbucketNamedLink("http", CLONE_URL)),
+            "http://localhost:7990/projects/PROJ_1/repos/repo/browse");
+
     @Test
     public void testCredentialsIdAreSavedIfServerIdNotSelected() {
         String credentialsId = "valid-credentials";
@@ -51,6 +66,102 @@ public class BitbucketSCMTest {
         assertThat(bitbucketSCM.getProjectName(), is(equalTo(projectName)));
     }
 
+    @Test
+    public void testLazyResolutionKeepsEnteredNames() {
+        BitbucketSCM.DescriptorImpl descriptor = mock(BitbucketSCM.DescriptorImpl.class);
+        when(descriptor.isLazyResolution()).thenReturn(true);
+
+        BitbucketSCM bitbucketSCM = new BitbucketSCM("1", Collections.emptyList(), "valid-credentials", "",
+                Collections.emptyList(), "", "Project 1", "repo", "serverId1", "") {
+            @Override
+            public SCMDescriptor<?> getDescriptor() {
+                return descriptor;
+            }
+        };
+
+        verify(descriptor, never()).getBitbucketScmHelper(nullable(String.class), nullable(String.class));
+        assertThat(bitbucketSCM.getProjectName(), is(equalTo("Project 1")));
+        assertThat(bitbucketSCM.getRepositoryName(), is(equalTo("repo")));
+        assertThat(bitbucketSCM.getServerId(), is(equalTo("serverId1")));
+    }
+
+    @Test
+    public void testLazyResolutionCopyKeepsSavedRepository() {
+        AtomicBoolean available = new AtomicBoolean(true);
+        BitbucketSCM.DescriptorImpl descriptor = mockLazyDescriptor(available);
+        BitbucketSCM oldScm = createLazyInstance(descriptor);
+        oldScm.resolveIfPending();
+        available.set(false);
+
+        BitbucketSCM bitbucketSCM = new BitbucketSCM(oldScm) {
+            @Override
+            public SCMDescriptor<?> getDescriptor() {
+                return descriptor;
+            }
+        };
+        bitbucketSCM.resolveIfPending();
+
+        assertThat(bitbucketSCM.getUserRemoteConfigs().get(0).getUrl(), is(equalTo(CLONE_URL)));
+        assertThat(bitbucketSCM.getProjectKey(), is(equalTo("PROJ_1")));
+        assertThat(bitbucketSCM.getRepositorySlug(), is(equalTo("repo")));
+    }
+
+    @Test
+    public void testLazyResolutionRetriesAfterFailure() {
+        AtomicBoolean available = new AtomicBoolean();
+        BitbucketSCM bitbucketSCM = createLazyInstance(mockLazyDescriptor(available));
+
+        bitbucketSCM.resolveIfPending();
+
+        assertThat(bitbucketSCM.getUserRemoteConfigs().get(0).getUrl(), emptyOrNullString());
+        assertThat(bitbucketSCM.getProjectKey(), is(equalTo("Project 1")));
+
+        available.set(true);
+        bitbucketSCM.resolveIfPending();
+
+        assertThat(bitbucketSCM.getUserRemoteConfigs().get(0).getUrl(), is(equalTo(CLONE_URL)));
+        assertThat(bitbucketSCM.getProjectKey(), is(equalTo("PROJ_1")));
+        assertThat(bitbucketSCM.getProjectName(), is(equalTo("Project 1")));
+    }
+
+    @Test
+    public void testLazyResolutionIsNotSaved() throws NoSuchFieldException {
+        BitbucketSCM bitbucketSCM = createLazyInstance(mockLazyDescriptor(new AtomicBoolean()));
+
+        assertThat(bitbucketSCM.isResolutionPending(), is(true));
+        // XStream skips transient fields
+        assertThat(Modifier.isTransient(BitbucketSCM.class.getDeclaredField("resolutionPending").getModifiers()),
+                is(true));
+    }
+
+    @Test
+    public void testReadResolveKeepsResolvedRepository() {
+        BitbucketSCM bitbucketSCM = createLazyInstance(mockLazyDescriptor(new AtomicBoolean(true)));
+        bitbucketSCM.resolveIfPending();
+
+        bitbucketSCM.readResolve();
+
+        assertThat(bitbucketSCM.isResolutionPending(), is(false));
+        assertThat(bitbucketSCM.getUserRemoteConfigs().get(0).getUrl(), is(equalTo(CLONE_URL)));
+    }
+
+    @Test
+    public void testNearestMirrorClonesFromPrimary() {
+        BitbucketSCM.DescriptorImpl descriptor = mockLazyDescriptor(new AtomicBoolean(true));
+        when(descriptor.isLazyResolution()).thenReturn(false);
+
+        BitbucketSCM bitbucketSCM = new BitbucketSCM("1", Collections.emptyList(), "valid-credentials", "",
+                Collections.emptyList(), "", "Project 1", "repo", "serverId1", NEAREST_MIRROR) {
+            @Override
+            public SCMDescriptor<?> getDescriptor() {
+                return descriptor;
+            }
+        };
+
+        assertThat(bitbucketSCM.getUserRemoteConfigs().get(0).getUrl(), is(equalTo(CLONE_URL)));
+        assertThat(bitbucketSCM.getMirrorName(), is(equalTo(NEAREST_MIRROR)));
+    }
+
     @Test
     public void testPrivateProjectName() {
         String credentialsId = "valid-credentials";
@@ -81,6 +192,31 @@ public class BitbucketSCMTest {
         assertEquals(projectName, scm.getProjectName());
     }
 
+    private BitbucketSCM createLazyInstance(BitbucketSCM.DescriptorImpl descriptor) {
+        return new BitbucketSCM("1", Collections.emptyList(), "valid-credentials", "", Collections.emptyList(), "",
+                "Project 1", "repo", "serverId1", "") {
+            @Override
+            public SCMDescriptor<?> getDescriptor() {
+                return descriptor;
+            }
+        };
+    }
+
+    /**
+     * Returns a descriptor for lazily resolved SCMs, which only finds the server while {@code available} is set.
+     */
+    private BitbucketSCM.DescriptorImpl mockLazyDescriptor(AtomicBoolean available) {
+        BitbucketSCM.DescriptorImpl descriptor = mock(BitbucketSCM.DescriptorImpl.class);
+        BitbucketScmHelper scmHelper = mock(BitbucketScmHelper.class);
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(descriptor.isLazyResolution()).thenReturn(true);
+        when(descriptor.getConfiguration(nullable(String.class))).thenAnswer(invocation ->
+                available.get() ? Optional.of(serverConfiguration) : Optional.empty());
+        when(descriptor.getBitbucketScmHelper(nullable(String.class), nullable(String.class))).thenReturn(scmHelper);
+        when(scmHelper.getRepository("Project 1", "repo")).thenReturn(REPOSITORY);
+        return descriptor;
+    }
+
     private BitbucketSCM createInstance(String credentialId) {
         return createInstance(credentialId, null);
     }
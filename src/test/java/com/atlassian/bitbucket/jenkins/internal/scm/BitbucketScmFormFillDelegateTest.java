@@ -33,6 +33,7 @@ import org.kohsuke.stapler.HttpResponses;
 import org.kohsuke.stapler.StaplerResponse;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
@@ -79,6 +80,11 @@ public class BitbucketScmFormFillDelegateTest {
     private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     @Mock
     private JenkinsProvider jenkinsProvider;
+    @Spy
+    private MirrorLatencyTable mirrorLatencyTable = new MirrorLatencyTable();
+    @Spy
+    private MirroredRepositoriesCache mirroredRepositoriesCache =
+            new MirroredRepositoriesCache(0, System::currentTimeMillis);
     @Mock
     private Jenkins jenkins;
     @Mock
@@ -19,6 +19,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
@@ -65,6 +66,11 @@ public class BitbucketScmFormValidationDelegateTest {
     private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     @Mock
     private JenkinsProvider jenkinsProvider;
+    @Spy
+    private MirrorLatencyTable mirrorLatencyTable = new MirrorLatencyTable();
+    @Spy
+    private MirroredRepositoriesCache mirroredRepositoriesCache =
+            new MirroredRepositoriesCache(0, System::currentTimeMillis);
     @Mock
     private Jenkins jenkins;
     @Mock
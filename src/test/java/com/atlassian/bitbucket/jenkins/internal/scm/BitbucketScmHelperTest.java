@@ -59,7 +59,8 @@ public class BitbucketScmHelperTest {
                 new BitbucketScmHelper("myBaseUrl",
                         bitbucketClientFactoryProvider,
                         "",
-                        jenkinsToBitbucketCredentials);
+                        jenkinsToBitbucketCredentials,
+                        new BitbucketRepositoryCache());
     }
 
     @Test
@@ -81,6 +82,25 @@ public class BitbucketScmHelperTest {
         assertThat(repo.getProject().getName(), equalTo("my project"));
     }
 
+    @Test
+    public void testGetRepositoryIsCached() {
+        BitbucketPage<BitbucketProject> projectPage = new BitbucketPage<>();
+        BitbucketProject expectedProject = new BitbucketProject("myProject", null, "my project");
+        projectPage.setValues(singletonList(expectedProject));
+        when(searchClient.findProjects()).thenReturn(projectPage);
+        BitbucketPage<BitbucketRepository> repositoryPage = new BitbucketPage<>();
+        BitbucketRepository expectedRepo =
+                new BitbucketRepository(0, "my repo", null, expectedProject, "myRepo", RepositoryState.AVAILABLE);
+        repositoryPage.setValues(singletonList(expectedRepo));
+        when(searchClient.findRepositories("my repo")).thenReturn(repositoryPage);
+        bitbucketScmHelper.getRepository("my project", "my repo");
+        when(searchClient.findProjects()).thenThrow(new BitbucketClientException("some error", 500, "an error"));
+
+        BitbucketRepository repo = bitbucketScmHelper.getRepository("my project", "my repo");
+        assertThat(repo.getSlug(), equalTo("myRepo"));
+        assertThat(repo.getProject().getKey(), equalTo("myProject"));
+    }
+
     @Test
     public void testGetRepositoryWhenProjectBitbucketClientException() {
         when(searchClient.findProjects()).thenThrow(new BitbucketClientException("some error", 500, "an error"));
@@ -0,0 +1,88 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import jenkins.scm.api.SCMFile;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RepositoryContentCacheTest {
+
+    private static final String COMMIT = "0a943a29376f2336b78312d99e65da17048951db";
+    private static final String OTHER_COMMIT = "8d51122def5632836d1cb1026e879069e10a1e13";
+
+    private final RepositoryContentCache cache = new RepositoryContentCache(100);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.getContent("repo", COMMIT, "a", () -> load(40));
+        cache.getContent("repo", COMMIT, "b", () -> load(40));
+        cache.getContent("repo", COMMIT, "a", () -> load(40));
+
+        cache.getContent("repo", COMMIT, "c", () -> load(40));
+        cache.getContent("repo", COMMIT, "a", () -> load(40));
+        cache.getContent("repo", COMMIT, "b", () -> load(40));
+
+        assertThat(loads.get(), is(4));
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        cache.getContent("repo", COMMIT, "a", () -> load(60));
+        cache.invalidateAll();
+
+        cache.getContent("repo", COMMIT, "a", () -> load(60));
+        // Had the size of the dropped content been kept, this would evict the content read after invalidating
+        cache.getContent("repo", COMMIT, "b", () -> load(40));
+        cache.getContent("repo", COMMIT, "a", () -> load(60));
+
+        assertThat(loads.get(), is(3));
+    }
+
+    @Test
+    public void testKeepsContentPerCommit() {
+        cache.getContent("repo", COMMIT, "Jenkinsfile", () -> load(10));
+        cache.getContent("repo", COMMIT, "Jenkinsfile", () -> load(10));
+        cache.getContent("repo", OTHER_COMMIT, "Jenkinsfile", () -> load(10));
+        cache.getContent("other", COMMIT, "Jenkinsfile", () -> load(10));
+
+        assertThat(loads.get(), is(3));
+    }
+
+    @Test
+    public void testKeepsMissingPaths() {
+        cache.getType("repo", COMMIT, "Jenkinsfile", this::loadMissing);
+
+        assertThat(cache.getType("repo", COMMIT, "Jenkinsfile", this::loadMissing), is(SCMFile.Type.NONEXISTENT));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void testSkipsBranches() {
+        cache.getContent("repo", "master", "Jenkinsfile", () -> load(10));
+        cache.getContent("repo", "master", "Jenkinsfile", () -> load(10));
+
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    public void testSkipsContentTooBig() {
+        cache.getContent("repo", COMMIT, "Jenkinsfile", () -> load(101));
+        cache.getContent("repo", COMMIT, "Jenkinsfile", () -> load(101));
+
+        assertThat(loads.get(), is(2));
+    }
+
+    private byte[] load(int size) {
+        loads.incrementAndGet();
+        return new byte[size];
+    }
+
+    private SCMFile.Type loadMissing() {
+        loads.incrementAndGet();
+        return SCMFile.Type.NONEXISTENT;
+    }
+}
@@ -0,0 +1,280 @@
+package com.atlassian.bitbucket.jenkins.internal.status;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketBuildStatus;
+import com.atlassian.bitbucket.jenkins.internal.model.BuildState;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.atlassian.bitbucket.jenkins.internal.model.BuildState.INPROGRESS;
+import static com.atlassian.bitbucket.jenkins.internal.model.BuildState.SUCCESSFUL;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BuildStatusOutboxTest {
+
+    private static final String REVISION_SHA1 = "67d71c2133aab0e070fb8100e3e71220332c5af1";
+
+    private final AtomicLong clock = new AtomicLong(1000);
+    private File directory;
+    private BuildStatusOutbox outbox;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Mock
+    private BuildStatusOutbox.Sender sender;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("BuildStatusOutboxTest").toFile();
+        outbox = createOutbox();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testDropsDuplicateStatus() {
+        outbox.enqueue(createStatus(INPROGRESS));
+        outbox.enqueue(createStatus(INPROGRESS));
+
+        assertThat(outbox.getPendingStatuses(), hasSize(1));
+        assertThat(outbox.getDuplicateStatuses(), equalTo(1L));
+        assertThat(directory.list(), arrayWithSize(1));
+    }
+
+    @Test
+    public void testDropsStatusSupersededWhilePosting() {
+        PendingBuildStatus successful = createStatus(SUCCESSFUL);
+        doAnswer(invocation -> {
+            outbox.enqueue(successful);
+            throw new BitbucketClientException("Unavailable");
+        }).doNothing().when(sender).send(any());
+        outbox.enqueue(createStatus(INPROGRESS));
+
+        outbox.dispatch();
+
+        assertThat(outbox.getPendingStatuses(), contains(successful));
+        assertThat(outbox.getSupersededStatuses(), equalTo(1L));
+    }
+
+    @Test
+    public void testSkipsStatusSupersededBeforeItsTurn() {
+        PendingBuildStatus other = createStatus(INPROGRESS, "other");
+        PendingBuildStatus superseded = createStatus(INPROGRESS);
+        PendingBuildStatus successful = createStatus(SUCCESSFUL);
+        doAnswer(invocation -> {
+            outbox.enqueue(successful);
+            return null;
+        }).doNothing().when(sender).send(any());
+        outbox.enqueue(other);
+        outbox.enqueue(superseded);
+
+        outbox.dispatch();
+
+        verify(sender).send(other);
+        verify(sender, never()).send(superseded);
+        assertThat(outbox.getPendingStatuses(), contains(successful));
+    }
+
+    @Test
+    public void testFailsAfterMaxAttempts() {
+        doThrow(new BitbucketClientException("Unavailable")).when(sender).send(any());
+        outbox.enqueue(createStatus());
+
+        outbox.dispatch();
+        clock.addAndGet(100);
+        outbox.dispatch();
+
+        verify(sender, times(2)).send(any());
+        assertThat(outbox.getPendingStatuses(), empty());
+        assertThat(outbox.getFailedStatuses(), hasSize(1));
+        assertThat(outbox.getFailedStatuses().get(0).getLastError(), equalTo("Unavailable"));
+    }
+
+    @Test
+    public void testDiscardsExpiredFailedStatuses() {
+        doThrow(new NotFoundException("No such repository", null)).when(sender).send(any());
+        outbox.enqueue(createStatus());
+        outbox.dispatch();
+
+        clock.addAndGet(9999);
+        outbox.dispatch();
+        assertThat(outbox.getFailedStatuses(), hasSize(1));
+
+        clock.addAndGet(1);
+        outbox.dispatch();
+        assertThat(outbox.getFailedStatuses(), empty());
+        assertThat(directory.list(), emptyArray());
+    }
+
+    @Test
+    public void testDiscardsOldestFailedStatusesOverMax() {
+        doThrow(new NotFoundException("No such repository", null)).when(sender).send(any());
+        PendingBuildStatus first = createStatus(INPROGRESS, "first");
+        PendingBuildStatus second = createStatus(INPROGRESS, "second");
+        PendingBuildStatus third = createStatus(INPROGRESS, "third");
+
+        for (PendingBuildStatus status : Arrays.asList(first, second, third)) {
+            outbox.enqueue(status);
+            outbox.dispatch();
+            clock.incrementAndGet();
+        }
+
+        assertThat(outbox.getFailedStatuses(), contains(second, third));
+        assertThat(directory.list(), arrayWithSize(2));
+    }
+
+    @Test
+    public void testFailsOnPermanentError() {
+        doThrow(new NotFoundException("No such repository", null)).when(sender).send(any());
+        outbox.enqueue(createStatus());
+
+        outbox.dispatch();
+
+        verify(sender).send(any());
+        assertThat(outbox.getFailedStatuses(), hasSize(1));
+    }
+
+    @Test
+    public void testLoadsSavedStatuses() {
+        outbox.enqueue(createStatus());
+
+        BuildStatusOutbox restarted = createOutbox();
+        restarted.load();
+        restarted.dispatch();
+
+        verify(sender).send(any());
+        assertThat(restarted.getPendingStatuses(), empty());
+        assertThat(directory.list(), emptyArray());
+    }
+
+    @Test
+    public void testPostsStatus() {
+        PendingBuildStatus status = createStatus();
+        outbox.enqueue(status);
+        assertThat(new File(directory, status.getId() + ".xml").exists(), is(true));
+
+        outbox.dispatch();
+
+        verify(sender).send(status);
+        assertThat(outbox.getPendingStatuses(), empty());
+        assertThat(directory.list(), emptyArray());
+    }
+
+    @Test
+    public void testReplacesSupersededStatus() {
+        PendingBuildStatus successful = createStatus(SUCCESSFUL);
+        outbox.enqueue(createStatus(INPROGRESS));
+        outbox.enqueue(successful);
+
+        outbox.dispatch();
+
+        verify(sender).send(successful);
+        assertThat(outbox.getSupersededStatuses(), equalTo(1L));
+        assertThat(directory.list(), emptyArray());
+    }
+
+    @Test
+    public void testRetriesWithBackoff() {
+        doThrow(new BitbucketClientException("Unavailable")).doNothing().when(sender).send(any());
+        outbox.enqueue(createStatus());
+
+        outbox.dispatch();
+        assertThat(outbox.getPendingStatuses().get(0).getNextAttemptAt(), equalTo(1100L));
+        clock.addAndGet(99);
+        outbox.dispatch();
+        verify(sender).send(any());
+
+        clock.addAndGet(1);
+        outbox.dispatch();
+        verify(sender, times(2)).send(any());
+        assertThat(outbox.getPendingStatuses(), empty());
+    }
+
+    @Test
+    public void testRetryFailed() {
+        doThrow(new NotFoundException("No such repository", null)).doNothing().when(sender).send(any());
+        outbox.enqueue(createStatus());
+        outbox.dispatch();
+
+        outbox.retryFailed();
+        outbox.dispatch();
+
+        verify(sender, times(2)).send(any());
+        assertThat(outbox.getFailedStatuses(), empty());
+    }
+
+    @Test
+    public void testRetryOne() {
+        doThrow(new NotFoundException("No such repository", null)).when(sender).send(any());
+        PendingBuildStatus first = createStatus(INPROGRESS, "first");
+        PendingBuildStatus second = createStatus(INPROGRESS, "second");
+        outbox.enqueue(first);
+        outbox.enqueue(second);
+        outbox.dispatch();
+
+        assertThat(outbox.retry(first.getId()), is(true));
+        assertThat(outbox.retry("unknown"), is(false));
+
+        assertThat(outbox.getPendingStatuses(), contains(first));
+        assertThat(outbox.getFailedStatuses(), contains(second));
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        when(scheduler.awaitTermination(anyLong(), any())).thenReturn(true);
+        outbox.enqueue(createStatus());
+        verify(scheduler).schedule(any(Runnable.class), anyLong(), any());
+
+        outbox.shutdown();
+        outbox.enqueue(createStatus(SUCCESSFUL));
+
+        verify(scheduler).shutdownNow();
+        verifyNoMoreInteractions(sender);
+        verify(scheduler).schedule(any(Runnable.class), anyLong(), any());
+        assertThat(directory.list(), arrayWithSize(1));
+    }
+
+    private BuildStatusOutbox createOutbox() {
+        BuildStatusOutbox outbox = new BuildStatusOutbox(true, 2, 100, 1000, 10000, 2, clock::get);
+        outbox.setDirectory(directory);
+        outbox.setScheduler(scheduler);
+        outbox.setSender(sender);
+        return outbox;
+    }
+
+    private PendingBuildStatus createStatus() {
+        return createStatus(INPROGRESS);
+    }
+
+    private PendingBuildStatus createStatus(BuildState state) {
+        return createStatus(state, "job");
+    }
+
+    private PendingBuildStatus createStatus(BuildState state, String key) {
+        BitbucketSCMRepository repository =
+                new BitbucketSCMRepository(null, null, "Project", "PROJ", "repo", "repo", "server-id", "");
+        BitbucketBuildStatus buildStatus = new BitbucketBuildStatus.Builder(key, state, "http://jenkins/job/1")
+                .build();
+        return new PendingBuildStatus(repository, REVISION_SHA1, "job", buildStatus, buildStatus, clock.get());
+    }
+}
@@ -0,0 +1,143 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.RepositoryState;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.model.FreeStyleProject;
+import hudson.plugins.git.GitSCM;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class BitbucketJobIndexTest {
+
+    private static final String CLONE_URL = "http://bitbucket.example.com/scm/proj/repo.git";
+
+    @ClassRule
+    public static JenkinsRule jenkins = new JenkinsRule();
+    private BitbucketJobIndex jobIndex;
+    private FreeStyleProject project;
+    private BitbucketRepository repository;
+
+    @Before
+    public void setup() throws Exception {
+        jobIndex = jenkins.jenkins.getInjector().getInstance(BitbucketJobIndex.class);
+        jobIndex.rebuild();
+        project = jenkins.createFreeStyleProject();
+        repository = new BitbucketRepository(1, "repo", null, new BitbucketProject("PROJ", emptyMap(), "Project"),
+                "repo", RepositoryState.AVAILABLE);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        project.delete();
+    }
+
+    @Test
+    public void testGetJobsIgnoresJobWithoutTrigger() throws Exception {
+        project.setScm(new GitSCM(CLONE_URL));
+
+        assertThat(jobIndex.getJobs(repository, singleton(CLONE_URL)), empty());
+    }
+
+    @Test
+    public void testGetJobsIgnoresOtherRepository() throws Exception {
+        project.setScm(new GitSCM("http://bitbucket.example.com/scm/proj/other.git"));
+        project.addTrigger(new BitbucketWebhookTriggerImpl());
+
+        assertThat(jobIndex.getJobs(repository, singleton(CLONE_URL)), empty());
+    }
+
+    @Test
+    public void testGetJobsMatchesCloneUrlIgnoringCase() throws Exception {
+        project.setScm(new GitSCM(CLONE_URL.toUpperCase()));
+        project.addTrigger(new BitbucketWebhookTriggerImpl());
+
+        Collection<?> jobs = jobIndex.getJobs(repository, singleton(CLONE_URL));
+
+        assertThat(jobs, contains((Object) project));
+    }
+
+    @Test
+    public void testGetJobsAfterDelete() throws Exception {
+        FreeStyleProject deleted = jenkins.createFreeStyleProject();
+        deleted.setScm(new GitSCM(CLONE_URL));
+        deleted.addTrigger(new BitbucketWebhookTriggerImpl());
+
+        deleted.delete();
+
+        assertThat(jobIndex.getJobs(repository, singleton(CLONE_URL)), empty());
+    }
+
+    @Test
+    public void testGetJobsAfterRename() throws Exception {
+        project.setScm(new GitSCM(CLONE_URL));
+        project.addTrigger(new BitbucketWebhookTriggerImpl());
+
+        project.renameTo(project.getName() + "-renamed");
+
+        Collection<?> jobs = jobIndex.getJobs(repository, singleton(CLONE_URL));
+        assertThat(jobs, contains((Object) project));
+    }
+
+    @Test
+    public void testGetJobsAfterScmResolved() throws Exception {
+        BitbucketRepository entered = new BitbucketRepository(-1, "Repo", null,
+                new BitbucketProject("Project", null, "Project"), "Repo", RepositoryState.AVAILABLE);
+        BitbucketSCM scm = new BitbucketSCM("scm-id", emptyList(), "credentialsId", "", emptyList(), "",
+                "serverId", entered);
+        project.setScm(scm);
+        project.addTrigger(new BitbucketWebhookTriggerImpl());
+
+        // Publish the looked up repository without saving the job, as a background lookup does
+        scm.getRepositories().set(0, new BitbucketSCMRepository("credentialsId", "", "Project", "PROJ", "repo", "repo",
+                "serverId", ""));
+        jobIndex.update(scm);
+
+        Collection<?> jobs = jobIndex.getJobs(repository, singleton(CLONE_URL));
+        assertThat(jobs, contains((Object) project));
+    }
+
+    @Test
+    public void testGetJobsWithoutProjectKeyOrSlug() throws Exception {
+        BitbucketRepository entered = new BitbucketRepository(-1, "Repo", null,
+                new BitbucketProject("Project", null, "Project"), "Repo", RepositoryState.AVAILABLE);
+        BitbucketSCM scm = new BitbucketSCM("scm-id", emptyList(), "credentialsId", "", emptyList(), "",
+                "serverId", entered);
+        project.setScm(scm);
+        project.addTrigger(new BitbucketWebhookTriggerImpl());
+
+        scm.getRepositories().set(0, new BitbucketSCMRepository("credentialsId", "", "Project", null, "Repo", null,
+                "serverId", ""));
+        jobIndex.update(scm);
+
+        assertThat(jobIndex.getJobs(repository, singleton(CLONE_URL)), empty());
+        Collection<?> jobs = jobIndex.getJobs(scm);
+        assertThat(jobs, contains((Object) project));
+    }
+
+    @Test
+    public void testGetJobsAfterTriggerRemoved() throws Exception {
+        BitbucketWebhookTriggerImpl trigger = new BitbucketWebhookTriggerImpl();
+        project.setScm(new GitSCM(CLONE_URL));
+        project.addTrigger(trigger);
+
+        project.removeTrigger(trigger.getDescriptor());
+
+        assertThat(jobIndex.getJobs(repository, singleton(CLONE_URL)), empty());
+    }
+}
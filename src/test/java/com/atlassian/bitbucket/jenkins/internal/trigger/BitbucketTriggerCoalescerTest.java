@@ -0,0 +1,132 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.model.CauseAction;
+import hudson.model.Job;
+import hudson.scm.PollingResult;
+import hudson.util.StreamTaskListener;
+import jenkins.triggers.SCMTriggerItem;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketTriggerCoalescerTest {
+
+    @Mock
+    private Executor executor;
+    @Mock
+    private Job job;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    private File tempDir;
+    @Mock
+    private SCMTriggerItem triggerItem;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("BitbucketTriggerCoalescerTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testDebounceMergesTriggers() {
+        BitbucketTriggerCoalescer coalescer = new BitbucketTriggerCoalescer(executor, 1000, () -> scheduler);
+
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+
+        verify(executor, never()).execute(any());
+        ArgumentCaptor<Runnable> dispatch = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(dispatch.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        dispatch.getValue().run();
+
+        ArgumentCaptor<BitbucketTriggerWorker> worker = ArgumentCaptor.forClass(BitbucketTriggerWorker.class);
+        verify(executor).execute(worker.capture());
+        CauseAction causeAction = (CauseAction) worker.getValue().getActions().get(0);
+        assertThat(causeAction.getCauses(), hasSize(2));
+        assertThat(coalescer.getMergedTriggers(), equalTo(1L));
+        assertThat(coalescer.getExecutedTriggers(), equalTo(1L));
+    }
+
+    @Test
+    public void testTriggersWhileRunningAreMergedIntoOneFollowUp() {
+        when(job.getRootDir()).thenReturn(tempDir);
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenReturn(PollingResult.NO_CHANGES);
+        BitbucketTriggerCoalescer coalescer = new BitbucketTriggerCoalescer(executor, 0, () -> scheduler);
+
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+        ArgumentCaptor<BitbucketTriggerWorker> worker = ArgumentCaptor.forClass(BitbucketTriggerWorker.class);
+        verify(executor).execute(worker.capture());
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+        verify(executor).execute(any());
+        worker.getValue().run();
+
+        // The follow up is handed back to the executor instead of running on the finished worker's thread
+        verify(executor, times(2)).execute(worker.capture());
+        verify(triggerItem).poll(any(StreamTaskListener.class));
+        CauseAction causeAction = (CauseAction) worker.getValue().getActions().get(0);
+        assertThat(causeAction.getCauses(), hasSize(2));
+        assertThat(coalescer.getMergedTriggers(), equalTo(1L));
+        assertThat(coalescer.getExecutedTriggers(), equalTo(2L));
+
+        worker.getValue().run();
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+
+        verify(executor, times(3)).execute(any());
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    public void testFollowUpIsDebounced() {
+        when(job.getRootDir()).thenReturn(tempDir);
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenReturn(PollingResult.NO_CHANGES);
+        BitbucketTriggerCoalescer coalescer = new BitbucketTriggerCoalescer(executor, 1000, () -> scheduler);
+
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+        ArgumentCaptor<Runnable> dispatch = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(dispatch.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        dispatch.getValue().run();
+        ArgumentCaptor<BitbucketTriggerWorker> worker = ArgumentCaptor.forClass(BitbucketTriggerWorker.class);
+        verify(executor).execute(worker.capture());
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+        worker.getValue().run();
+
+        verify(executor).execute(any());
+        verify(scheduler, times(2)).schedule(dispatch.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        coalescer.schedule(job, triggerItem, cause(), emptyList(), emptyList());
+        dispatch.getValue().run();
+
+        verify(executor, times(2)).execute(worker.capture());
+        CauseAction causeAction = (CauseAction) worker.getValue().getActions().get(0);
+        assertThat(causeAction.getCauses(), hasSize(2));
+    }
+
+    private static BitbucketWebhookTriggerCause cause() {
+        return new BitbucketWebhookTriggerCause(BitbucketWebhookTriggerRequest.builder().build());
+    }
+}
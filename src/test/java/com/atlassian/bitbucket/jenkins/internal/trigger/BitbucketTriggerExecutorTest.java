@@ -0,0 +1,87 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import hudson.model.CauseAction;
+import jenkins.triggers.SCMTriggerItem;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.ExecutorService;
+
+import static java.util.Collections.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketTriggerExecutorTest {
+
+    @Mock
+    private ExecutorService executorService;
+
+    @Test
+    public void testLimitsTotalWorkers() {
+        BitbucketTriggerExecutor executor = new BitbucketTriggerExecutor(() -> 1, serverId -> 0, executorService);
+        Runnable first = mock(Runnable.class);
+        Runnable second = mock(Runnable.class);
+
+        executor.execute(first);
+        executor.execute(second);
+
+        ArgumentCaptor<Runnable> dispatched = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).execute(dispatched.capture());
+        dispatched.getValue().run();
+        verify(first).run();
+        verify(executorService, times(2)).execute(dispatched.capture());
+        dispatched.getValue().run();
+        verify(second).run();
+        assertThat(executor.getActiveWorkers(), equalTo(emptyMap()));
+        assertThat(executor.getQueueDepths(), equalTo(emptyMap()));
+    }
+
+    @Test
+    public void testLimitsWorkersPerServer() {
+        BitbucketTriggerExecutor executor = new BitbucketTriggerExecutor(() -> 10,
+                serverId -> "server1".equals(serverId) ? 1 : 0, executorService);
+
+        executor.execute(worker("server1", "repo-a"));
+        executor.execute(worker("server1", "repo-b"));
+        executor.execute(worker("server2", "repo-c"));
+
+        verify(executorService, times(2)).execute(any());
+        assertThat(executor.getQueueDepths(), equalTo(singletonMap("server1:proj/repo-b", 1)));
+    }
+
+    @Test
+    public void testServesRepositoriesRoundRobin() {
+        BitbucketTriggerExecutor executor = new BitbucketTriggerExecutor(() -> 1, serverId -> 0, executorService);
+
+        executor.execute(worker("server1", "repo-a"));
+        executor.execute(worker("server1", "repo-a"));
+        executor.execute(worker("server1", "repo-b"));
+
+        ArgumentCaptor<Runnable> dispatched = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).execute(dispatched.capture());
+        assertThat(executor.getActiveWorkers(), equalTo(singletonMap("server1:proj/repo-a", 1)));
+        dispatched.getValue().run();
+
+        // The second trigger for repo-a waits for repo-b to have its turn
+        assertThat(executor.getActiveWorkers(), equalTo(singletonMap("server1:proj/repo-b", 1)));
+        assertThat(executor.getQueueDepths(), equalTo(singletonMap("server1:proj/repo-a", 1)));
+    }
+
+    private static BitbucketTriggerWorker worker(String serverId, String repositorySlug) {
+        BitbucketSCMRepository repository = new BitbucketSCMRepository(null, null, "Project", "PROJ",
+                repositorySlug, repositorySlug, serverId, "");
+        BitbucketSCM scm = mock(BitbucketSCM.class);
+        when(scm.getRepositories()).thenReturn(singletonList(repository));
+        when(scm.getBitbucketSCMRepository()).thenReturn(repository);
+        SCMTriggerItem triggerItem = mock(SCMTriggerItem.class);
+        doReturn(singletonList(scm)).when(triggerItem).getSCMs();
+        return new BitbucketTriggerWorker(null, triggerItem, new CauseAction(), emptyList());
+    }
+}
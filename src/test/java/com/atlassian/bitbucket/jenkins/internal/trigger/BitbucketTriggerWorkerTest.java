@@ -1,24 +1,45 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRef;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChangeType;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefType;
 import hudson.model.CauseAction;
 import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.RevisionParameterAction;
+import hudson.plugins.git.extensions.impl.PathRestriction;
 import hudson.scm.PollingResult;
+import hudson.util.DescribableList;
 import hudson.util.StreamTaskListener;
 import jenkins.model.RunAction2;
 import jenkins.triggers.SCMTriggerItem;
 import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.File;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -26,9 +47,14 @@ import static org.mockito.Mockito.*;
 @RunWith(MockitoJUnitRunner.class)
 public class BitbucketTriggerWorkerTest {
 
+    private static final String CLONE_URL = "http://localhost:7990/scm/proj/repo.git";
+    private static final String OTHER_CLONE_URL = "http://localhost:7990/scm/proj/other.git";
+
     @Mock
     private CauseAction causeAction;
     @Mock
+    private GitSCM gitSCM;
+    @Mock
     private Job job;
     @Mock
     private SCMTriggerItem triggerItem;
@@ -56,6 +82,24 @@ public class BitbucketTriggerWorkerTest {
         verify(triggerItem).scheduleBuild2(eq(0), eq(causeAction));
     }
 
+    @Test
+    public void testTriggerHandsJobBackOnError() {
+        LinkageError error = new LinkageError("broken");
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenThrow(error);
+        AtomicBoolean completed = new AtomicBoolean();
+
+        BitbucketTriggerWorker worker = new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(),
+                emptyList(), () -> completed.set(true));
+
+        try {
+            worker.run();
+            fail("Expected the error to be rethrown");
+        } catch (LinkageError e) {
+            assertThat(e, sameInstance(error));
+        }
+        assertThat(completed.get(), is(true));
+    }
+
     @Test
     public void testTriggerNoChanges() {
         when(triggerItem.poll(any(StreamTaskListener.class))).thenReturn(PollingResult.NO_CHANGES);
@@ -88,4 +132,91 @@ public class BitbucketTriggerWorkerTest {
         verify(triggerItem).poll(any(StreamTaskListener.class));
         verify(triggerItem).scheduleBuild2(eq(0), eq(causeAction), eq(additionalAction));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTrustWebhookRevisionBuildsMatchingBranch() throws Exception {
+        mockGitSCM("*/master", true);
+
+        BitbucketTriggerWorker worker = new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(),
+                refChanges("master", "0123456789abcdef0123456789abcdef01234567"));
+        worker.run();
+
+        verify(triggerItem, never()).poll(any(StreamTaskListener.class));
+        verify(triggerItem).scheduleBuild2(eq(0), eq(causeAction), any(RevisionParameterAction.class));
+    }
+
+    @Test
+    public void testTrustWebhookRevisionOnlyAppliesToWebhookRepository() throws Exception {
+        mockGitSCM("*/master", true);
+        RemoteConfig otherRepository = mock(RemoteConfig.class);
+        when(otherRepository.getURIs()).thenReturn(singletonList(new URIish(OTHER_CLONE_URL)));
+
+        BitbucketTriggerWorker worker = new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(),
+                refChanges("master", "0123456789abcdef0123456789abcdef01234567"));
+        worker.run();
+
+        ArgumentCaptor<RevisionParameterAction> action = ArgumentCaptor.forClass(RevisionParameterAction.class);
+        verify(triggerItem).scheduleBuild2(eq(0), eq(causeAction), action.capture());
+        assertThat(action.getValue().canOriginateFrom(gitSCM.getRepositories()), is(true));
+        // Other checkouts in the same build, such as in a pipeline, build their own branches
+        assertThat(action.getValue().canOriginateFrom(singletonList(otherRepository)), is(false));
+    }
+
+    @Test
+    public void testTrustWebhookRevisionFallsBackToPollingForParameterizedBranch() throws Exception {
+        mockGitSCM("*/${BRANCH}", false);
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenReturn(PollingResult.NO_CHANGES);
+
+        BitbucketTriggerWorker worker = new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(),
+                refChanges("master", "0123456789abcdef0123456789abcdef01234567"));
+        worker.run();
+
+        verify(triggerItem).poll(any(StreamTaskListener.class));
+    }
+
+    @Test
+    public void testTrustWebhookRevisionFallsBackToPollingWithPathRestriction() {
+        RemoteConfig remoteConfig = mock(RemoteConfig.class);
+        doReturn(singleton(gitSCM)).when(triggerItem).getSCMs();
+        when(gitSCM.getRepositories()).thenReturn(singletonList(remoteConfig));
+        when(gitSCM.getExtensions()).thenReturn(new DescribableList<>(Saveable.NOOP,
+                singletonList(new PathRestriction(null, "docs/.*"))));
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenReturn(PollingResult.NO_CHANGES);
+
+        BitbucketTriggerWorker worker = new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(),
+                refChanges("master", "0123456789abcdef0123456789abcdef01234567"));
+        worker.run();
+
+        verify(triggerItem).poll(any(StreamTaskListener.class));
+        verify(triggerItem, never()).scheduleBuild2(anyInt(), any());
+    }
+
+    @Test
+    public void testTrustWebhookRevisionSkipsOtherBranch() throws Exception {
+        mockGitSCM("*/master", true);
+
+        BitbucketTriggerWorker worker = new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(),
+                refChanges("feature", "0123456789abcdef0123456789abcdef01234567"));
+        worker.run();
+
+        verify(triggerItem, never()).poll(any(StreamTaskListener.class));
+        verify(triggerItem, never()).scheduleBuild2(anyInt(), any());
+    }
+
+    private void mockGitSCM(String branchSpec, boolean evaluated) throws URISyntaxException {
+        RemoteConfig remoteConfig = mock(RemoteConfig.class);
+        doReturn(singleton(gitSCM)).when(triggerItem).getSCMs();
+        when(gitSCM.getRepositories()).thenReturn(singletonList(remoteConfig));
+        when(gitSCM.getExtensions()).thenReturn(new DescribableList<>(Saveable.NOOP));
+        when(gitSCM.getBranches()).thenReturn(singletonList(new BranchSpec(branchSpec)));
+        if (evaluated) {
+            when(remoteConfig.getName()).thenReturn("origin");
+            when(remoteConfig.getURIs()).thenReturn(singletonList(new URIish(CLONE_URL)));
+        }
+    }
+
+    private List<BitbucketRefChange> refChanges(String branch, String toHash) {
+        BitbucketRef ref = new BitbucketRef("refs/heads/" + branch, branch, BitbucketRefType.BRANCH);
+        return singletonList(new BitbucketRefChange(ref, ref.getId(), "fromHash", toHash, BitbucketRefChangeType.UPDATE));
+    }
+}
@@ -3,12 +3,16 @@ package com.atlassian.bitbucket.jenkins.internal.trigger;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.model.*;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketRepositoryCache;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
 import hudson.model.FreeStyleProject;
 import hudson.plugins.git.GitSCM;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
 import jenkins.plugins.git.GitSCMSource;
+import jenkins.scm.api.SCMEvent;
 import org.apache.groovy.util.Maps;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
@@ -22,6 +26,7 @@ import org.junit.runner.RunWith;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.IOException;
@@ -65,6 +70,8 @@ public class BitbucketWebhookConsumerTest {
     private BitbucketWebhookTriggerImpl bitbucketTrigger;
     @InjectMocks
     private BitbucketWebhookConsumer consumer;
+    @Spy
+    private BitbucketJobIndex jobIndex = new BitbucketJobIndex();
     private FreeStyleProject gitProject;
     @Mock
     private GitSCM gitSCM;
@@ -74,6 +81,8 @@ public class BitbucketWebhookConsumerTest {
     private BitbucketWebhookTriggerImpl nullBitbucketTrigger;
     private FreeStyleProject nullProject;
     private RefsChangedWebhookEvent refsChangedEvent;
+    @Mock
+    private BitbucketRepositoryCache repositoryCache;
     private WorkflowJob workflowJob;
     @Mock
     private BitbucketSCM workflowSCM;
@@ -221,6 +230,13 @@ public class BitbucketWebhookConsumerTest {
                         eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
     }
 
+    @Test
+    public void testRefsChangedInvalidatesRepositoryCache() {
+        consumer.process(refsChangedEvent);
+
+        verify(repositoryCache).invalidate(refsChangedEvent.getRepository());
+    }
+
     @Test
     public void testRefsChangedTriggerBuild() {
         consumer.process(refsChangedEvent);
@@ -254,7 +270,7 @@ public class BitbucketWebhookConsumerTest {
     @Test
     public void testRefsChangedNotBitbucketSCM() {
         GitSCMSource scmSource = mock(GitSCMSource.class);
-        BitbucketWebhookConsumer.BitbucketSCMHeadEvent headEvent = new BitbucketWebhookConsumer.BitbucketSCMHeadEvent(null, null, null);
+        BitbucketWebhookConsumer.BitbucketSCMHeadEvent headEvent = new BitbucketWebhookConsumer.BitbucketSCMHeadEvent(null, null, null, null);
 
         assertThat(headEvent.heads(scmSource), equalTo(emptyMap()));
     }
@@ -276,11 +292,36 @@ public class BitbucketWebhookConsumerTest {
         doReturn(mockScmRepo).when(scmSource).getBitbucketSCMRepository();
         doReturn(mockWebhookRepo).when(payload).getRepository();
 
-        BitbucketWebhookConsumer.BitbucketSCMHeadEvent headEvent = new BitbucketWebhookConsumer.BitbucketSCMHeadEvent(null, payload, null);
+        BitbucketWebhookConsumer.BitbucketSCMHeadEvent headEvent = new BitbucketWebhookConsumer.BitbucketSCMHeadEvent(null, payload, null, null);
 
         assertThat(headEvent.heads(scmSource), equalTo(emptyMap()));
     }
 
+    @Test
+    public void testHeadEventOfRemovedBranchHasNoRevision() {
+        BitbucketWebhookConsumer.BitbucketSCMHeadEvent headEvent = new BitbucketWebhookConsumer.BitbucketSCMHeadEvent(
+                SCMEvent.Type.REMOVED, refsChangedEvent, refChanges(BitbucketRefChangeType.DELETE).get(0), null);
+
+        assertThat(headEvent.heads(matchingScmSource()),
+                equalTo(singletonMap(new GitBranchSCMHead("master"), null)));
+    }
+
+    @Test
+    public void testHeadEventOfUpdatedBranch() {
+        BitbucketWebhookConsumer.BitbucketSCMHeadEvent headEvent = new BitbucketWebhookConsumer.BitbucketSCMHeadEvent(
+                SCMEvent.Type.UPDATED, refsChangedEvent, refChanges(BitbucketRefChangeType.UPDATE).get(0), null);
+        GitBranchSCMHead head = new GitBranchSCMHead("master");
+
+        assertThat(headEvent.heads(matchingScmSource()),
+                equalTo(singletonMap(head, new GitBranchSCMRevision(head, "tohash"))));
+    }
+
+    private BitbucketSCMSource matchingScmSource() {
+        BitbucketSCMSource scmSource = mock(BitbucketSCMSource.class);
+        doReturn(bitbucketSCM.getRepositories().get(0)).when(scmSource).getBitbucketSCMRepository();
+        return scmSource;
+    }
+
     private List<BitbucketRefChange> refChanges() {
         return refChanges(BitbucketRefChangeType.ADD);
     }
@@ -0,0 +1,83 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEventQueue.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class BitbucketWebhookEventQueueTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws Exception {
+        BitbucketWebhookEventQueue queue = new BitbucketWebhookEventQueue(true, 1, 1, OverflowPolicy.DROP_OLDEST);
+        AtomicBoolean oldestProcessed = new AtomicBoolean();
+        CountDownLatch newestProcessed = new CountDownLatch(1);
+
+        assertThat(queue.submit(this::awaitRelease), is(true));
+        assertThat(queue.submit(() -> oldestProcessed.set(true)), is(true));
+        assertThat(queue.submit(newestProcessed::countDown), is(true));
+        release.countDown();
+
+        assertThat(newestProcessed.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(oldestProcessed.get(), is(false));
+        assertThat(queue.getDroppedEvents(), equalTo(1L));
+        assertThat(queue.getRejectedEvents(), equalTo(0L));
+    }
+
+    @Test
+    public void testProcessesSubmittedEvent() throws Exception {
+        BitbucketWebhookEventQueue queue = new BitbucketWebhookEventQueue(true, 10, 2, OverflowPolicy.REJECT);
+        CountDownLatch processed = new CountDownLatch(1);
+
+        assertThat(queue.submit(processed::countDown), is(true));
+
+        assertThat(processed.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(queue.getProcessedEvents(), equalTo(1L));
+    }
+
+    @Test
+    public void testRejectWhenFull() {
+        BitbucketWebhookEventQueue queue = new BitbucketWebhookEventQueue(true, 1, 1, OverflowPolicy.REJECT);
+
+        assertThat(queue.submit(this::awaitRelease), is(true));
+        assertThat(queue.submit(() -> { }), is(true));
+        assertThat(queue.submit(() -> { }), is(false));
+
+        assertThat(queue.getQueueDepth(), equalTo(1));
+        assertThat(queue.getRejectedEvents(), equalTo(1L));
+    }
+
+    @Test
+    public void testRejectsAfterShutdown() throws Exception {
+        BitbucketWebhookEventQueue queue = new BitbucketWebhookEventQueue(true, 10, 1, OverflowPolicy.REJECT);
+        CountDownLatch processed = new CountDownLatch(1);
+        assertThat(queue.submit(processed::countDown), is(true));
+        assertThat(processed.await(10, TimeUnit.SECONDS), is(true));
+
+        queue.shutdown();
+
+        assertThat(queue.submit(() -> { }), is(false));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -18,6 +18,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -170,6 +171,34 @@ public class BitbucketWebhookTriggerImplTest {
                         argThat(arg -> arg.equals(repo)));
     }
 
+    @Test
+    public void testWebhookRegisterForWorkflowJobAfterResolution() {
+        BitbucketSCMRepository repo = createSCMRepo();
+        BitbucketSCM scm = createSCM(repo);
+        Job workflowJob = createWorkflowJob();
+
+        BitbucketWebhookTriggerImpl trigger = createInstance(descriptor, scm);
+        trigger.start(workflowJob, true);
+
+        InOrder inOrder = inOrder(scm, webhookHandler);
+        inOrder.verify(scm).resolveIfPending();
+        inOrder.verify(webhookHandler).register(eq(BITBUCKET_BASE_URL), any(GlobalCredentialsProvider.class), eq(repo));
+    }
+
+    @Test
+    public void testWebhookNotRegisteredForWorkflowJobWithPendingResolution() {
+        BitbucketSCM scm = mock(BitbucketSCM.class);
+        when(scm.isResolutionPending()).thenReturn(true);
+        Job workflowJob = createWorkflowJob();
+
+        BitbucketWebhookTriggerImpl trigger = createInstance(descriptor, scm);
+        trigger.start(workflowJob, true);
+
+        verify(scm).resolveIfPending();
+        verify(scm, never()).setWebhookRegistered(anyBoolean());
+        verifyZeroInteractions(webhookHandler);
+    }
+
     @Test
     public void testWebhookRegisterOnStartForNewInstance() {
         BitbucketSCMRepository repo1 = createSCMRepo();
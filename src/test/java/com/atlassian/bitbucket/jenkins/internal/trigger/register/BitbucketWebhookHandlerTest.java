@@ -14,6 +14,8 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.HashSet;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEndpoint.BIBUCKET_WEBHOOK_URL;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
@@ -22,6 +24,7 @@ import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.REPO;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singleton;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.hamcrest.collection.IsIterableWithSize.iterableWithSize;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -29,6 +32,7 @@ import static org.hamcrest.core.IsIterableContaining.hasItem;
 import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -59,7 +63,7 @@ public class BitbucketWebhookHandlerTest {
 
         assertThat(result.getUrl(), is(equalTo(EXPECTED_URL)));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
@@ -69,7 +73,7 @@ public class BitbucketWebhookHandlerTest {
         assertThat(result.getEvents(), iterableWithSize(1));
         assertThat(result.getEvents(), hasItem(REPO_REF_CHANGE.getEventId()));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
@@ -81,7 +85,7 @@ public class BitbucketWebhookHandlerTest {
         assertThat(result.getEvents(), iterableWithSize(1));
         assertThat(result.getEvents(), hasItem(MIRROR_SYNCHRONIZED_EVENT.getEventId()));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
@@ -94,13 +98,14 @@ public class BitbucketWebhookHandlerTest {
                 new BitbucketWebhook(3, WEBHOOK_NAME, singleton(REPO_REF_CHANGE.getEventId()), EXPECTED_URL, true);
         BitbucketWebhook event4 =
                 new BitbucketWebhook(4, WEBHOOK_NAME, singleton(REPO_REF_CHANGE.getEventId()), JENKINS_URL, true);
-        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())).thenReturn(asList(event1, event2, event3, event4).stream());
+        mockWebhooks(event1, event2, event3, event4);
+        when(webhookClient.deleteWebhookAsync(anyInt())).thenReturn(completedFuture(null));
 
         BitbucketWebhook result = handler.register(defaultBuilder.isMirror(false).build());
 
         assertThat(result.getId(), is(equalTo(3)));
-        verify(webhookClient).deleteWebhook(2);
-        verify(webhookClient).deleteWebhook(4);
+        verify(webhookClient).deleteWebhookAsync(2);
+        verify(webhookClient).deleteWebhookAsync(4);
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
     }
 
@@ -116,13 +121,14 @@ public class BitbucketWebhookHandlerTest {
         BitbucketWebhook event4 =
                 new BitbucketWebhook(4,
                         WEBHOOK_NAME + "123", singleton(MIRROR_SYNCHRONIZED_EVENT.getEventId()), EXPECTED_URL, true);
-        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())).thenReturn(asList(event1, event2, event3, event4).stream());
+        mockWebhooks(event1, event2, event3, event4);
+        when(webhookClient.deleteWebhookAsync(anyInt())).thenReturn(completedFuture(null));
 
         BitbucketWebhook result = handler.register(defaultBuilder.isMirror(true).build());
 
         assertThat(result.getId(), is(equalTo(3)));
-        verify(webhookClient).deleteWebhook(2);
-        verify(webhookClient).deleteWebhook(4);
+        verify(webhookClient).deleteWebhookAsync(2);
+        verify(webhookClient).deleteWebhookAsync(4);
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
     }
 
@@ -130,8 +136,7 @@ public class BitbucketWebhookHandlerTest {
     public void testSkipRegistrationIfPresentForRepoRef() {
         BitbucketWebhook event =
                 new BitbucketWebhook(1, WEBHOOK_NAME, singleton(REPO_REF_CHANGE.getEventId()), EXPECTED_URL, true);
-        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId()))
-                .thenReturn(asList(event).stream());
+        mockWebhooks(event);
 
         BitbucketWebhook result = handler.register(defaultBuilder.isMirror(false).build());
 
@@ -139,15 +144,14 @@ public class BitbucketWebhookHandlerTest {
         assertThat(result.getEvents(), hasItem(REPO_REF_CHANGE.getEventId()));
         verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
     public void testSkipRegistrationIfPresentForMirrors() {
         BitbucketWebhook event =
                 new BitbucketWebhook(1, WEBHOOK_NAME, singleton(MIRROR_SYNCHRONIZED_EVENT.getEventId()), EXPECTED_URL, true);
-        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId()))
-                .thenReturn(asList(event).stream());
+        mockWebhooks(event);
 
         BitbucketWebhook result = handler.register(defaultBuilder.isMirror(true).build());
 
@@ -155,14 +159,14 @@ public class BitbucketWebhookHandlerTest {
         assertThat(result.getEvents(), hasItem(MIRROR_SYNCHRONIZED_EVENT.getEventId()));
         verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
     public void testSeperateWebhooksEvents() {
         BitbucketWebhook event =
                 new BitbucketWebhook(-1234, WEBHOOK_NAME, singleton(REPO_REF_CHANGE.getEventId()), EXPECTED_URL, true);
-        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())).thenReturn(asList(event).stream());
+        mockWebhooks(event);
 
         BitbucketWebhook result = handler.register(getRequestBuilder().isMirror(true).build());
 
@@ -170,7 +174,7 @@ public class BitbucketWebhookHandlerTest {
         assertThat(result.getId(), is(not(equalTo(event.getId()))));
         verify(webhookClient).registerWebhook(any(BitbucketWebhookRequest.class));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
@@ -180,14 +184,14 @@ public class BitbucketWebhookHandlerTest {
                 new BitbucketWebhook(1, WEBHOOK_NAME, singleton(REPO_REF_CHANGE.getEventId()), wrongCallback, true);
         BitbucketWebhook event2 =
                 new BitbucketWebhook(1, WEBHOOK_NAME, singleton(MIRROR_SYNCHRONIZED_EVENT.getEventId()), wrongCallback, true);
-        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())).thenReturn(asList(event1, event2).stream());
+        mockWebhooks(event1, event2);
 
         BitbucketWebhook result = handler.register(defaultBuilder.isMirror(false).build());
 
         assertThat(result.getUrl(), is(equalTo(EXPECTED_URL)));
         verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
         verify(webhookClient, times(2)).updateWebhook(anyInt(), argThat((BitbucketWebhookRequest request) -> request.getUrl().equals(EXPECTED_URL)));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
@@ -196,14 +200,14 @@ public class BitbucketWebhookHandlerTest {
                 new BitbucketWebhook(1, WEBHOOK_NAME, singleton(REPO_REF_CHANGE.getEventId()), EXPECTED_URL, false);
         BitbucketWebhook event2 =
                 new BitbucketWebhook(1, WEBHOOK_NAME, singleton(MIRROR_SYNCHRONIZED_EVENT.getEventId()), EXPECTED_URL, false);
-        when(webhookClient.getWebhooks(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId())).thenReturn(asList(event1, event2).stream());
+        mockWebhooks(event1, event2);
 
         BitbucketWebhook result = handler.register(defaultBuilder.isMirror(true).build());
 
         assertThat(result.isActive(), is(equalTo(true)));
         verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
         verify(webhookClient, times(2)).updateWebhook(anyInt(), argThat((BitbucketWebhookRequest request) -> request.isActive()));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
@@ -216,7 +220,7 @@ public class BitbucketWebhookHandlerTest {
         assertThat(result.getEvents(), hasItem(REPO_REF_CHANGE.getEventId()));
         verify(webhookClient).registerWebhook(any(BitbucketWebhookRequest.class));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test
@@ -226,7 +230,7 @@ public class BitbucketWebhookHandlerTest {
 
         assertThat(result.getUrl(), is(equalTo(EXPECTED_URL)));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
     }
 
     @Test(expected = WebhookNotSupportedException.class)
@@ -244,7 +248,14 @@ public class BitbucketWebhookHandlerTest {
         assertThat(result.getEvents(), iterableWithSize(1));
         assertThat(result.getEvents(), hasItem(REPO_REF_CHANGE.getEventId()));
         verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
-        verify(webhookClient, never()).deleteWebhook(anyInt());
+        verify(webhookClient, never()).deleteWebhookAsync(anyInt());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockWebhooks(BitbucketWebhook... webhooks) {
+        when(webhookClient.getWebhooks(any(Predicate.class), eq(REPO_REF_CHANGE.getEventId()),
+                eq(MIRROR_SYNCHRONIZED_EVENT.getEventId()))).thenAnswer(answer ->
+                Stream.of(webhooks).filter((Predicate<? super BitbucketWebhook>) answer.getArgument(0)));
     }
 
     private BitbucketWebhook create(BitbucketWebhookRequest request) {
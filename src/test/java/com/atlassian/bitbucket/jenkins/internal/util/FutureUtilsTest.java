@@ -0,0 +1,51 @@
+package com.atlassian.bitbucket.jenkins.internal.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class FutureUtilsTest {
+
+    @Test
+    public void testThenApplyCancelsSource() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        FutureUtils.thenApply(source, String::length).cancel(true);
+
+        assertThat(source.isCancelled(), is(true));
+    }
+
+    @Test
+    public void testThenApplyMapsResult() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<Integer> result = FutureUtils.thenApply(source, String::length);
+
+        source.complete("value");
+
+        assertThat(result.join(), is(5));
+    }
+
+    @Test
+    public void testThenComposeCancelsNext() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<Integer> next = new CompletableFuture<>();
+        CompletableFuture<Integer> result = FutureUtils.thenCompose(source, value -> next);
+        source.complete("value");
+
+        result.cancel(true);
+
+        assertThat(next.isCancelled(), is(true));
+    }
+
+    @Test
+    public void testThenComposeCancelsSource() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        FutureUtils.thenCompose(source, value -> new CompletableFuture<Integer>()).cancel(true);
+
+        assertThat(source.isCancelled(), is(true));
+    }
+}
@@ -11,6 +11,8 @@ import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorHandler;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketRepoFetcher;
 import com.atlassian.bitbucket.jenkins.internal.scm.EnrichedBitbucketMirroredRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.MirrorFetchRequest;
+import com.atlassian.bitbucket.jenkins.internal.scm.MirrorLatencyTable;
+import com.atlassian.bitbucket.jenkins.internal.scm.MirroredRepositoriesCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
@@ -122,7 +124,8 @@ public class MirrorsIT {
         JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials = mock(JenkinsToBitbucketCredentials.class);
         when(jenkinsToBitbucketCredentials.toBitbucketCredentials(CREDENTIAL_ID)).thenReturn(adminCredentials);
 
-        return new BitbucketMirrorHandler(clientFactoryProvider, jenkinsToBitbucketCredentials, fetcher);
+        return new BitbucketMirrorHandler(clientFactoryProvider, jenkinsToBitbucketCredentials, fetcher,
+                new MirroredRepositoriesCache(), new MirrorLatencyTable());
     }
 
     private BitbucketMirroredRepository createMirrorReppsitory(int repoId, String mirrorName) {